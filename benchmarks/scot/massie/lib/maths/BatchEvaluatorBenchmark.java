@@ -0,0 +1,121 @@
+package scot.massie.lib.maths;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>JMH benchmarks of {@link BatchEvaluator} against evaluating an equation once per set of values, on the same
+ * formulas. Times are per set of values.</p>
+ *
+ * <p>The benchmarks are forked with the {@code jdk.incubator.vector} module, so the batch evaluator uses the vectorised
+ * kernels compiled into this module from the {@code incubator} source directory.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BatchEvaluatorBenchmark
+{
+    /**
+     * The number of sets of values evaluated per invocation.
+     */
+    static final int VALUE_COUNT = 1 << 16;
+
+    @Param({ "product", "quotient", "hypotenuse", "minMax", "trigonometric" })
+    public String formula;
+
+    private Equation equation;
+    private Equation.VariableHandle x;
+    private Equation.VariableHandle y;
+    private BatchEvaluator evaluator;
+    private double[][] inputs;
+    private double[] results;
+
+    @Setup
+    public void setUp()
+    {
+        if(!BatchEvaluator.isVectorised())
+            throw new IllegalStateException("The vectorised batch kernels weren't loaded.");
+
+        Equation.Builder builder = new Equation.Builder().withVariable("x", 0).withVariable("y", 0);
+        equation = builder.build(formulaNamed(formula));
+        x = equation.variableHandle("x");
+        y = equation.variableHandle("y");
+        evaluator = equation.batchEvaluator("x", "y");
+        inputs = new double[2][VALUE_COUNT];
+        results = new double[VALUE_COUNT];
+        Random random = new Random(35);
+
+        for(int i = 0; i < VALUE_COUNT; i++)
+        {
+            inputs[0][i] = random.nextDouble() * 2 - 1;
+            inputs[1][i] = random.nextDouble();
+        }
+    }
+
+    /**
+     * Gets the formula benchmarked by the given name, in terms of x and y.
+     * @param name The name of the formula.
+     * @return The formula by the given name.
+     * @throws IllegalArgumentException If there's no formula by the given name.
+     */
+    static String formulaNamed(String name)
+    {
+        switch(name)
+        {
+            case "product":       return "x * y + 3";
+            case "quotient":      return "(x + 1) * (y - 2) / (x * x + 1)";
+            case "hypotenuse":    return "sqrt(x * x + y * y)";
+            case "minMax":        return "min(x, y, 0.5) + max(x, 0)";
+            case "trigonometric": return "sin(x) * cos(y) + log(y + 2)";
+            default:              throw new IllegalArgumentException("Not a formula name: " + name);
+        }
+    }
+
+    /**
+     * Sets x and y through variable handles, then evaluates the equation, for each set of values.
+     * @param blackhole The blackhole to consume the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(VALUE_COUNT)
+    public void scalar(Blackhole blackhole)
+    {
+        double[] xs = inputs[0];
+        double[] ys = inputs[1];
+
+        for(int i = 0; i < VALUE_COUNT; i++)
+        {
+            x.set(xs[i]);
+            y.set(ys[i]);
+            blackhole.consume(equation.evaluate());
+        }
+    }
+
+    /**
+     * Evaluates the equation for every set of values at once with the batch evaluator.
+     * @return The array of results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(VALUE_COUNT)
+    public double[] batch()
+    {
+        evaluator.evaluate(inputs, results);
+        return results;
+    }
+}
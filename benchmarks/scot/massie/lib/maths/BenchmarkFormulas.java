@@ -0,0 +1,63 @@
+package scot.massie.lib.maths;
+
+/**
+ * The formulas used by the JMH benchmarks, in terms of x and y, at each size benchmarked.
+ */
+final class BenchmarkFormulas
+{
+    private BenchmarkFormulas()
+    {}
+
+    /**
+     * A formula of a few tokens.
+     */
+    static final String SMALL = "x * y + 3";
+
+    /**
+     * A formula of a few dozen tokens, using functions, brackets, and prefix, postfix, and infix operators.
+     */
+    static final String MEDIUM = "sqrt((x - 1)^2 + (y + 2)^2) / max(x, y, 1) + sin(x) * cos(-y) - 3 * x% + √(y * y)";
+
+    /**
+     * The number of copies of {@link #MEDIUM} in {@link #HUGE}.
+     */
+    static final int HUGE_TERM_COUNT = 64;
+
+    /**
+     * A formula of a few thousand tokens: {@link #HUGE_TERM_COUNT} bracketed copies of {@link #MEDIUM}, with y scaled
+     * differently in each, added together.
+     */
+    static final String HUGE = huge();
+
+    /**
+     * Gets the formula of the given size.
+     * @param size "small", "medium", or "huge".
+     * @return The formula of the given size.
+     * @throws IllegalArgumentException If the size isn't one of the above.
+     */
+    static String ofSize(String size)
+    {
+        switch(size)
+        {
+            case "small":  return SMALL;
+            case "medium": return MEDIUM;
+            case "huge":   return HUGE;
+            default:       throw new IllegalArgumentException("Not a formula size: " + size);
+        }
+    }
+
+    private static String huge()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < HUGE_TERM_COUNT; i++)
+        {
+            if(i > 0)
+                sb.append(" + ");
+
+            sb.append('(').append(MEDIUM.replace("y", "(y * " + (i + 1) + ")")).append(')');
+        }
+
+        return sb.toString();
+    }
+}
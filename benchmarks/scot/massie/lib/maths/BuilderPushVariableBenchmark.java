@@ -0,0 +1,70 @@
+package scot.massie.lib.maths;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of {@link Equation.Builder#pushVariable(String, double)}, which updates every equation built by the
+ * builder that's still in use, with different numbers of those equations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BuilderPushVariableBenchmark
+{
+    @Param({ "1", "100", "10000" })
+    public int liveInstances;
+
+    private Equation.Builder builder;
+
+    /**
+     * The equations built by {@link #builder}, held so they stay in use.
+     */
+    private Equation[] instances;
+
+    private double value = 0;
+
+    @Setup
+    public void setUp()
+    {
+        builder = new Equation.Builder().withVariable("x", 0).withVariable("y", 2);
+        instances = new Equation[liveInstances];
+
+        for(int i = 0; i < liveInstances; i++)
+            instances[i] = builder.build(BenchmarkFormulas.SMALL);
+    }
+
+    /**
+     * Pushes a new value of x to every live equation.
+     * @return The builder.
+     */
+    @Benchmark
+    public Equation.Builder pushVariable()
+    { return builder.pushVariable("x", value++); }
+
+    /**
+     * Pushes a new value of x to every live equation, then evaluates one of them, as a check that pushed values are
+     * seen.
+     * @return The result of the evaluation.
+     */
+    @Benchmark
+    public double pushVariableThenEvaluate()
+    {
+        builder.pushVariable("x", value++);
+        return instances[instances.length - 1].evaluate();
+    }
+}
@@ -0,0 +1,111 @@
+package scot.massie.lib.maths;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * <p>Runs the JMH benchmarks, writing the results as JSON so they can be compared across commits.</p>
+ *
+ * <p>This is the main class of {@code benchmarks/target/benchmarks.jar}, built with
+ * {@code mvn -B -f benchmarks/pom.xml package}. It takes the same arguments as JMH's own main class, (e.g. a regular
+ * expression selecting benchmarks, or {@code -p size=huge}) except that unless another result format or file is
+ * given, results are written as JSON to {@code jmh-results/<commit>.json}, where the commit is the abbreviated hash of
+ * the git commit checked out, or the current date and time where that isn't available.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * java -jar benchmarks/target/benchmarks.jar                          # Everything.
+ * java -jar benchmarks/target/benchmarks.jar EquationParsing -p size=huge
+ * java -jar benchmarks/target/benchmarks.jar -rff before.json         # JSON, to the given file.
+ * }</pre>
+ */
+public final class EquationBenchmarks
+{
+    private EquationBenchmarks()
+    {}
+
+    /**
+     * The directory results are written to, unless another result file is given.
+     */
+    static final Path RESULTS_DIRECTORY = Paths.get("jmh-results");
+
+    public static void main(String[] args) throws RunnerException, IOException
+    {
+        CommandLineOptions commandLine;
+
+        try
+        { commandLine = new CommandLineOptions(args); }
+        catch(CommandLineOptionException e)
+        {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        if(commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+        || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams())
+        {
+            // Listing and help are handled by JMH's own main class.
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+        if(!commandLine.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+
+        if(!commandLine.getResult().hasValue())
+        {
+            Files.createDirectories(RESULTS_DIRECTORY);
+            Path resultFile = RESULTS_DIRECTORY.resolve(runName() + ".json");
+            options.result(resultFile.toString());
+            System.out.println("Writing results to " + resultFile.toAbsolutePath());
+        }
+
+        new Runner(options.build()).run();
+    }
+
+    /**
+     * Gets the name of this run of the benchmarks, to name its result file after.
+     * @return The abbreviated hash of the git commit checked out, or the current date and time where that isn't
+     *         available.
+     */
+    static String runName()
+    {
+        try
+        {
+            Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true).start();
+            String commit;
+
+            try(BufferedReader reader = new BufferedReader(new InputStreamReader(git.getInputStream(),
+                                                                                 StandardCharsets.UTF_8)))
+            { commit = reader.readLine(); }
+
+            if(git.waitFor() == 0 && commit != null && commit.matches("[0-9a-f]+"))
+                return commit;
+        }
+        catch(IOException e)
+        { /* Not in a git repository, or git isn't available. */ }
+        catch(InterruptedException e)
+        { Thread.currentThread().interrupt(); }
+
+        return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+    }
+}
@@ -0,0 +1,113 @@
+package scot.massie.lib.maths;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>JMH benchmarks of evaluating equations built from {@link BenchmarkFormulas formulas} of each size.</p>
+ *
+ * <p>The contended benchmark evaluates a single equation from several threads at once, which contend for its lock.
+ * The loop benchmarks set a variable before each evaluation, as in evaluating an equation over many values.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EquationEvaluationBenchmark
+{
+    /**
+     * The number of values of x evaluated per invocation of the loop benchmarks.
+     */
+    static final int LOOP_LENGTH = 1024;
+
+    /**
+     * The number of threads evaluating the same equation in the contended benchmark.
+     */
+    static final int CONTENDING_THREADS = 4;
+
+    @Param({ "small", "medium", "huge" })
+    public String size;
+
+    private Equation equation;
+    private Equation.VariableHandle x;
+    private double[] xs;
+
+    @Setup
+    public void setUp()
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("x", 0.5).withVariable("y", 2);
+        equation = builder.build(BenchmarkFormulas.ofSize(size));
+        x = equation.variableHandle("x");
+        xs = new double[LOOP_LENGTH];
+        Random random = new Random(44);
+
+        for(int i = 0; i < LOOP_LENGTH; i++)
+            xs[i] = random.nextDouble() * 10;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double evaluate()
+    { return equation.evaluate(); }
+
+    @Benchmark
+    @Threads(CONTENDING_THREADS)
+    public double evaluateContended()
+    { return equation.evaluate(); }
+
+    /**
+     * Sets x by name, then evaluates the equation, for each value of x.
+     * @return The sum of the results.
+     */
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(LOOP_LENGTH)
+    public double setVariableThenEvaluate()
+    {
+        double sum = 0;
+
+        for(double value : xs)
+        {
+            equation.setVariable("x", value);
+            sum += equation.evaluate();
+        }
+
+        return sum;
+    }
+
+    /**
+     * Sets x through a variable handle, then evaluates the equation, for each value of x.
+     * @return The sum of the results.
+     */
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(LOOP_LENGTH)
+    public double variableHandleThenEvaluate()
+    {
+        double sum = 0;
+
+        for(double value : xs)
+        {
+            x.set(value);
+            sum += equation.evaluate();
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,223 @@
+package scot.massie.lib.maths;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>JMH benchmarks of the functions in {@link EquationFunctions}, each against the implementation it replaced.</p>
+ *
+ * <p>Each invocation calls the function once for each of {@link #ARGUMENT_SETS} sets of random arguments, so results
+ * can't be hoisted out of the benchmark. Times are per call.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EquationFunctionsBenchmark
+{
+    /**
+     * The number of distinct argument arrays each function is called with per invocation.
+     */
+    static final int ARGUMENT_SETS = 1024;
+
+    private double[][] smallArrays;
+    private double[][] largeArrays;
+    private double[] fibArgs;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(34);
+        smallArrays = randomArrays(random, 9);
+        largeArrays = randomArrays(random, 101);
+        fibArgs = new double[ARGUMENT_SETS];
+
+        for(int i = 0; i < ARGUMENT_SETS; i++)
+            fibArgs[i] = random.nextInt(70);
+    }
+
+    /**
+     * Creates arrays of random numbers.
+     * @param random The source of random numbers.
+     * @param length The length of each array.
+     * @return {@link #ARGUMENT_SETS} arrays of the given length.
+     */
+    private static double[][] randomArrays(Random random, int length)
+    {
+        double[][] result = new double[ARGUMENT_SETS][length];
+
+        for(double[] array : result)
+            for(int i = 0; i < length; i++)
+                array[i] = random.nextDouble() * 2000 - 1000;
+
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void medianSmallSort(Blackhole blackhole)
+    {
+        for(double[] args : smallArrays)
+            blackhole.consume(sortingMedian(args));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void medianSmallInsertion(Blackhole blackhole)
+    {
+        for(double[] args : smallArrays)
+            blackhole.consume(EquationFunctions.median(args));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void medianLargeSort(Blackhole blackhole)
+    {
+        for(double[] args : largeArrays)
+            blackhole.consume(sortingMedian(args));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void medianLargeQuickselect(Blackhole blackhole)
+    {
+        for(double[] args : largeArrays)
+            blackhole.consume(EquationFunctions.median(args));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void fibBinet(Blackhole blackhole)
+    {
+        for(double n : fibArgs)
+            blackhole.consume(binetFib(n));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void fibTable(Blackhole blackhole)
+    {
+        for(double n : fibArgs)
+            blackhole.consume(EquationFunctions.fib(n));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void cbrt(Blackhole blackhole)
+    {
+        for(double[] args : smallArrays)
+            blackhole.consume(Math.cbrt(args[0]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void truncateIntValue(Blackhole blackhole)
+    {
+        for(double[] args : smallArrays)
+            blackhole.consume((double)(int)args[0]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void truncateFloorCeil(Blackhole blackhole)
+    {
+        for(double[] args : smallArrays)
+            blackhole.consume(EquationFunctions.truncate(args[0]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void avg(Blackhole blackhole)
+    {
+        for(double[] args : largeArrays)
+            blackhole.consume(EquationFunctions.avg(args));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void varianceTwoPass(Blackhole blackhole)
+    {
+        for(double[] args : largeArrays)
+            blackhole.consume(twoPassVariance(args));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void varianceOnePass(Blackhole blackhole)
+    {
+        for(double[] args : largeArrays)
+            blackhole.consume(EquationFunctions.variance(args));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARGUMENT_SETS)
+    public void stddev(Blackhole blackhole)
+    {
+        for(double[] args : largeArrays)
+            blackhole.consume(EquationFunctions.stddev(args));
+    }
+
+    /**
+     * The previous median implementation, which sorted a copy of its arguments.
+     * @param args The numbers to get the median of.
+     * @return The median of the given numbers.
+     */
+    private static double sortingMedian(double[] args)
+    {
+        double[] sorted = args.clone();
+        Arrays.sort(sorted);
+
+        return sorted.length % 2 == 0
+                       ? (sorted[sorted.length / 2] + sorted[sorted.length / 2 - 1]) / 2
+                       : sorted[sorted.length / 2];
+    }
+
+    /**
+     * The previous fibonacci implementation, using Binet's formula.
+     * @param n The position in the fibonacci sequence.
+     * @return The nth number of the fibonacci sequence.
+     */
+    private static double binetFib(double n)
+    {
+        double phi = Equation.Builder.PHI;
+        double result = (Math.pow(phi, n) - (Math.pow(-phi, -n))) / (Math.sqrt(5));
+        return n % 1 == 0 ? Math.round(result) : result;
+    }
+
+    /**
+     * The variance of the given numbers, calculated in two passes for comparison.
+     * @param args The numbers to get the variance of.
+     * @return The population variance of the given numbers.
+     */
+    private static double twoPassVariance(double[] args)
+    {
+        double mean = 0;
+
+        for(double arg : args)
+            mean += arg;
+
+        mean /= args.length;
+        double sum = 0;
+
+        for(double arg : args)
+            sum += (arg - mean) * (arg - mean);
+
+        return sum / args.length;
+    }
+}
@@ -0,0 +1,59 @@
+package scot.massie.lib.maths;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of tokenising and building equations from {@link BenchmarkFormulas formulas} of each size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EquationParsingBenchmark
+{
+    @Param({ "small", "medium", "huge" })
+    public String size;
+
+    private Equation.Builder builder;
+    private Equation.Builder snapshot;
+    private String formula;
+
+    @Setup
+    public void setUp()
+    {
+        builder = new Equation.Builder().withVariable("x", 0.5).withVariable("y", 2);
+        snapshot = builder.getParsingSnapshot();
+        formula = BenchmarkFormulas.ofSize(size);
+    }
+
+    /**
+     * Tokenises the formula, as the first stage of building it.
+     * @param blackhole Consumes the tokenisation.
+     */
+    @Benchmark
+    public void tokenise(Blackhole blackhole)
+    { blackhole.consume(snapshot.tokenise(formula)); }
+
+    /**
+     * Builds the formula into an equation - tokenising, parsing, and creating the equation.
+     * @return The equation.
+     */
+    @Benchmark
+    public Equation build()
+    { return builder.build(formula); }
+}
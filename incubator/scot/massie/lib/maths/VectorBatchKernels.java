@@ -0,0 +1,221 @@
+package scot.massie.lib.maths;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * <p>{@link BatchKernels} performing operations with explicit vector instructions, using the incubating Vector API.</p>
+ *
+ * <p>This is compiled separately from the rest of the library, with {@code --add-modules jdk.incubator.vector}, (the
+ * benchmark module in {@code benchmarks} compiles it this way) and is only loaded (by {@link BatchKernels#load()})
+ * where that module is present at runtime.</p>
+ *
+ * <p>The JIT compiler already auto-vectorises the scalar loops for addition, subtraction, multiplication, division,
+ * negation, and square roots, and those loops measured faster than their explicitly vectorised equivalents, so those
+ * are left to the scalar implementations. This takes over the operations the JIT compiler can't vectorise by itself:
+ * powers, cube roots, trigonometric functions, and logarithms, which use the vector maths library where the CPU
+ * supports it, and min and max, which are vectorised as comparisons and blends.</p>
+ */
+final class VectorBatchKernels extends BatchKernels
+{
+    /**
+     * The vector shape used, which is the widest the CPU supports.
+     */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * Creates new vectorised kernels. This is called reflectively by {@link BatchKernels#load()}.
+     */
+    VectorBatchKernels()
+    {}
+
+    @Override
+    boolean isVectorised()
+    { return true; }
+
+    // Each loop below is only intrinsified where the vector operator is a constant by the time it's compiled, so the
+    // loops take the operator as a parameter and are called with constants, relying on them being inlined.
+    // Operations not listed are left to the scalar implementations - see the class documentation.
+
+    @Override
+    void binary(int op, double[] l, double[] r, double[] out, int length)
+    {
+        switch(op)
+        {
+            case POWER:    loop(VectorOperators.POW, l, r, out, length); break;
+            case MIN:      selectLoop(VectorOperators.LT, l, r, out, length); break;
+            case MAX:      selectLoop(VectorOperators.GT, l, r, out, length); break;
+            default:       super.binary(op, l, r, out, length);
+        }
+    }
+
+    @Override
+    void binary(int op, double[] l, double r, double[] out, int length)
+    {
+        switch(op)
+        {
+            case POWER:    loop(VectorOperators.POW, l, r, out, length); break;
+            case MIN:      selectLoop(VectorOperators.LT, l, r, out, length); break;
+            case MAX:      selectLoop(VectorOperators.GT, l, r, out, length); break;
+            default:       super.binary(op, l, r, out, length);
+        }
+    }
+
+    @Override
+    void binary(int op, double l, double[] r, double[] out, int length)
+    {
+        switch(op)
+        {
+            case POWER:    loop(VectorOperators.POW, l, r, out, length); break;
+            default:       super.binary(op, l, r, out, length);
+        }
+    }
+
+    @Override
+    void unary(int op, double[] x, double[] out, int length)
+    {
+        switch(op)
+        {
+            case CBRT:   loop(VectorOperators.CBRT,  x, out, length); break;
+            case SIN:    loop(VectorOperators.SIN,   x, out, length); break;
+            case COS:    loop(VectorOperators.COS,   x, out, length); break;
+            case TAN:    loop(VectorOperators.TAN,   x, out, length); break;
+            case LOG:    loop(VectorOperators.LOG,   x, out, length); break;
+            case LOG10:  loop(VectorOperators.LOG10, x, out, length); break;
+            default:     super.unary(op, x, out, length);
+        }
+    }
+
+    /**
+     * Applies a vector operator to pairs of values from two arrays.
+     * @param op The vector operator.
+     * @param l The left operands.
+     * @param r The right operands.
+     * @param out The array to write the results into.
+     * @param length The number of values to operate on.
+     */
+    private static void loop(VectorOperators.Binary op, double[] l, double[] r, double[] out, int length)
+    {
+        int upperBound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for(; i < upperBound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, l, i).lanewise(op, DoubleVector.fromArray(SPECIES, r, i)).intoArray(out, i);
+
+        for(; i < length; i++)
+            out[i] = DoubleVector.broadcast(SPECIES, l[i]).lanewise(op, r[i]).lane(0);
+    }
+
+    /**
+     * Applies a vector operator to values from an array on the left, and a single value on the right.
+     * @param op The vector operator.
+     * @param l The left operands.
+     * @param r The right operand.
+     * @param out The array to write the results into.
+     * @param length The number of values to operate on.
+     */
+    private static void loop(VectorOperators.Binary op, double[] l, double r, double[] out, int length)
+    {
+        int upperBound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for(; i < upperBound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, l, i).lanewise(op, r).intoArray(out, i);
+
+        for(; i < length; i++)
+            out[i] = DoubleVector.broadcast(SPECIES, l[i]).lanewise(op, r).lane(0);
+    }
+
+    /**
+     * Applies a vector operator to a single value on the left, and values from an array on the right.
+     * @param op The vector operator.
+     * @param l The left operand.
+     * @param r The right operands.
+     * @param out The array to write the results into.
+     * @param length The number of values to operate on.
+     */
+    private static void loop(VectorOperators.Binary op, double l, double[] r, double[] out, int length)
+    {
+        DoubleVector lVector = DoubleVector.broadcast(SPECIES, l);
+        int upperBound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for(; i < upperBound; i += SPECIES.length())
+            lVector.lanewise(op, DoubleVector.fromArray(SPECIES, r, i)).intoArray(out, i);
+
+        for(; i < length; i++)
+            out[i] = lVector.lanewise(op, r[i]).lane(0);
+    }
+
+    /**
+     * Applies a vector operator to values from an array.
+     * @param op The vector operator.
+     * @param x The operands.
+     * @param out The array to write the results into.
+     * @param length The number of values to operate on.
+     */
+    private static void loop(VectorOperators.Unary op, double[] x, double[] out, int length)
+    {
+        int upperBound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for(; i < upperBound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, x, i).lanewise(op).intoArray(out, i);
+
+        for(; i < length; i++)
+            out[i] = DoubleVector.broadcast(SPECIES, x[i]).lanewise(op).lane(0);
+    }
+
+    /**
+     * Takes values from the right where they compare to values on the left by the given comparison, otherwise from the
+     * left. NaN on the right is never taken, as in the scalar implementations of min and max.
+     * @param comparison The comparison of right to left operands.
+     * @param l The left operands.
+     * @param r The right operands.
+     * @param out The array to write the results into.
+     * @param length The number of values to operate on.
+     */
+    private static void selectLoop(VectorOperators.Comparison comparison, double[] l, double[] r, double[] out,
+                                   int length)
+    {
+        int upperBound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for(; i < upperBound; i += SPECIES.length())
+        {
+            DoubleVector lVector = DoubleVector.fromArray(SPECIES, l, i);
+            DoubleVector rVector = DoubleVector.fromArray(SPECIES, r, i);
+            lVector.blend(rVector, rVector.compare(comparison, lVector)).intoArray(out, i);
+        }
+
+        for(; i < length; i++)
+            out[i] = comparison == VectorOperators.LT ? (r[i] < l[i] ? r[i] : l[i]) : (r[i] > l[i] ? r[i] : l[i]);
+    }
+
+    /**
+     * Takes the value on the right where it compares to values on the left by the given comparison, otherwise values
+     * from the left. NaN on the right is never taken, as in the scalar implementations of min and max.
+     * @param comparison The comparison of right to left operands.
+     * @param l The left operands.
+     * @param r The right operand.
+     * @param out The array to write the results into.
+     * @param length The number of values to operate on.
+     */
+    private static void selectLoop(VectorOperators.Comparison comparison, double[] l, double r, double[] out,
+                                   int length)
+    {
+        DoubleVector rVector = DoubleVector.broadcast(SPECIES, r);
+        int upperBound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for(; i < upperBound; i += SPECIES.length())
+        {
+            DoubleVector lVector = DoubleVector.fromArray(SPECIES, l, i);
+            lVector.blend(rVector, rVector.compare(comparison, lVector)).intoArray(out, i);
+        }
+
+        for(; i < length; i++)
+            out[i] = comparison == VectorOperators.LT ? (r < l[i] ? r : l[i]) : (r > l[i] ? r : l[i]);
+    }
+}
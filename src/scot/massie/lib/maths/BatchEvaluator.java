@@ -0,0 +1,649 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.LiteralNumber;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.OperatorAction;
+import scot.massie.lib.maths.Equation.StandardOperatorActions;
+import scot.massie.lib.maths.Equation.VariableReference;
+import scot.massie.lib.maths.Equation.VariableSlot;
+import scot.massie.lib.maths.EquationFunctions.StandardFunction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>Evaluates an equation over arrays of values for some of its variables, giving an array of results.</p>
+ *
+ * <p>Rather than evaluating the whole equation once per set of values, this evaluates each operation once across a
+ * block of values at a time. The default arithmetic operators and the common {@link EquationFunctions standard
+ * functions} are applied by tight loops, which use explicit vector instructions where the {@code jdk.incubator.vector}
+ * module is present at runtime (see {@link #isVectorised()}). Other operators and functions are called once per set of
+ * values, as they would be by {@link Equation#evaluate()}.</p>
+ *
+ * <p>Variables that aren't given arrays of values take their current values in the equation at the start of each
+ * evaluation, and operations on only such values and literal numbers are only performed once per evaluation. Functions
+ * are looked up in the equation at the start of each evaluation, so redefined functions are respected.</p>
+ *
+ * <p>Results are bit-for-bit the same as evaluating the equation once for each set of values, except where vectorised
+ * transcendental functions (such as sin, log, or the power operator) differ from {@link Math}'s implementations within
+ * the error {@link Math} permits.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * Equation eq = new Equation.Builder().withVariable("x", 0).withVariable("k", 2).build("sqrt(x) * k + 1");
+ * BatchEvaluator evaluator = eq.batchEvaluator("x");
+ * double[] results = evaluator.evaluate(new double[] { 0, 1, 4, 9 }); // == [1, 3, 5, 7]
+ * }</pre>
+ */
+public final class BatchEvaluator
+{
+    //region constants
+    /**
+     * The number of sets of values each operation is applied to at a time. This keeps the intermediate results of an
+     * evaluation small enough to stay in the CPU's cache.
+     */
+    static final int BLOCK_SIZE = 1024;
+
+    /**
+     * The node kind of literal numbers.
+     */
+    private static final int NODE_LITERAL = 0;
+
+    /**
+     * The node kind of variables given arrays of values.
+     */
+    private static final int NODE_INPUT = 1;
+
+    /**
+     * The node kind of variables taking their values from the equation.
+     */
+    private static final int NODE_VARIABLE = 2;
+
+    /**
+     * The node kind of operations.
+     */
+    private static final int NODE_OPERATION = 3;
+
+    /**
+     * The node kind of function calls.
+     */
+    private static final int NODE_FUNCTION = 4;
+
+    /**
+     * The value of {@link #nodeKernelOps} for nodes not applied by a kernel.
+     */
+    private static final int NO_KERNEL = -1;
+
+    /**
+     * The kernels used, shared between evaluators.
+     */
+    private static final BatchKernels kernels = BatchKernels.load();
+
+    /**
+     * The kernel operations of the standard functions that have them, against those functions.
+     */
+    private static final Map<StandardFunction, Integer> functionKernelOps = new HashMap<>();
+
+    static
+    {
+        functionKernelOps.put(EquationFunctions.SQRT,  BatchKernels.SQRT);
+        functionKernelOps.put(EquationFunctions.CBRT,  BatchKernels.CBRT);
+        functionKernelOps.put(EquationFunctions.SIN,   BatchKernels.SIN);
+        functionKernelOps.put(EquationFunctions.COS,   BatchKernels.COS);
+        functionKernelOps.put(EquationFunctions.TAN,   BatchKernels.TAN);
+        functionKernelOps.put(EquationFunctions.LOG,   BatchKernels.LOG);
+        functionKernelOps.put(EquationFunctions.LOG10, BatchKernels.LOG10);
+        functionKernelOps.put(EquationFunctions.FLOOR, BatchKernels.FLOOR);
+        functionKernelOps.put(EquationFunctions.CEIL,  BatchKernels.CEIL);
+        functionKernelOps.put(EquationFunctions.MIN,   BatchKernels.MIN);
+        functionKernelOps.put(EquationFunctions.MAX,   BatchKernels.MAX);
+    }
+    //endregion
+
+    //region variables
+    /**
+     * The equation being evaluated.
+     */
+    private final Equation equation;
+
+    /**
+     * The names of the variables given arrays of values, in the order the arrays are given.
+     */
+    private final List<String> inputNames;
+
+    /**
+     * The kinds of each node, in evaluation order. Each is one of the {@code NODE_} constants.
+     */
+    private final int[] nodeKinds;
+
+    /**
+     * The indices of the nodes each node takes as its operands or arguments.
+     */
+    private final int[][] nodeOperands;
+
+    /**
+     * For literal nodes, the number. For input nodes, the index of the input. For variable nodes, the variable name.
+     * For operations, the operator action. For function calls, the function name.
+     */
+    private final Object[] nodeSubjects;
+
+    /**
+     * For operation nodes, the kernel operation applying the operator, or {@link #NO_KERNEL}. For function call nodes,
+     * this is worked out at the start of each evaluation, as functions may be redefined.
+     */
+    private final int[] nodeKernelOps;
+
+    /**
+     * The index of the node giving the result of the equation.
+     */
+    private final int resultNode;
+
+    /**
+     * For each evaluation, whether each node has the same value for every set of values.
+     */
+    private final boolean[] nodeIsUniform;
+
+    /**
+     * For each evaluation, the value of each node with the same value for every set of values.
+     */
+    private final double[] nodeUniformValues;
+
+    /**
+     * For each evaluation, the function implementation of each function call node.
+     */
+    private final ToDoubleFunction<?>[] nodeFunctions;
+
+    /**
+     * The values of each node, for the block of sets of values currently being evaluated. Only allocated for nodes
+     * that don't have the same value for every set of values.
+     */
+    private final double[][] nodeValues;
+
+    /**
+     * The object upon which access to this object should be locked.
+     */
+    private final Object syncLock = new Object();
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new batch evaluator of the given equation.
+     * @param equation The equation to evaluate.
+     * @param inputNames The names of the variables to be given arrays of values, in the order the arrays will be given.
+     * @throws IllegalArgumentException If any of the given names isn't the name of a variable available to the
+     *                                  equation, or the same name is given more than once, or the equation contains
+     *                                  components other than the standard ones that depend on the equation.
+     */
+    BatchEvaluator(Equation equation, List<String> inputNames)
+    {
+        this.equation = equation;
+        this.inputNames = Collections.unmodifiableList(new ArrayList<>(inputNames));
+
+        synchronized(equation.syncLock)
+        {
+            for(String name : inputNames)
+                if(!equation.variableSlots.containsKey(name))
+                    throw new IllegalArgumentException("The equation has no variable \"" + name + "\".");
+        }
+
+        for(int i = 0; i < inputNames.size(); i++)
+            if(inputNames.indexOf(inputNames.get(i)) != i)
+                throw new IllegalArgumentException("The variable \"" + inputNames.get(i) + "\" is given more than "
+                                                   + "once.");
+
+        Compiler compiler = new Compiler();
+        this.resultNode = compiler.compile(equation.topLevelComponent);
+
+        int nodeCount = compiler.kinds.size();
+        this.nodeKinds = new int[nodeCount];
+        this.nodeOperands = compiler.operands.toArray(new int[0][]);
+        this.nodeSubjects = compiler.subjects.toArray();
+        this.nodeKernelOps = new int[nodeCount];
+
+        for(int i = 0; i < nodeCount; i++)
+        {
+            nodeKinds[i] = compiler.kinds.get(i);
+            nodeKernelOps[i] = compiler.kernelOps.get(i);
+        }
+
+        this.nodeIsUniform = new boolean[nodeCount];
+        this.nodeUniformValues = new double[nodeCount];
+        this.nodeFunctions = new ToDoubleFunction<?>[nodeCount];
+        this.nodeValues = new double[nodeCount][];
+    }
+
+    /**
+     * Flattens an equation component tree into a list of nodes in evaluation order.
+     */
+    private final class Compiler
+    {
+        /**
+         * The kind of each node.
+         */
+        final List<Integer> kinds = new ArrayList<>();
+
+        /**
+         * The operands of each node.
+         */
+        final List<int[]> operands = new ArrayList<>();
+
+        /**
+         * The subject of each node.
+         */
+        final List<Object> subjects = new ArrayList<>();
+
+        /**
+         * The kernel operation of each node.
+         */
+        final List<Integer> kernelOps = new ArrayList<>();
+
+        /**
+         * Adds a node.
+         * @param kind The kind of node.
+         * @param subject What the node refers to.
+         * @param kernelOp The kernel operation of the node, or {@link #NO_KERNEL}.
+         * @param nodeOperands The operands of the node.
+         * @return The index of the new node.
+         */
+        int add(int kind, Object subject, int kernelOp, int... nodeOperands)
+        {
+            kinds.add(kind);
+            subjects.add(subject);
+            kernelOps.add(kernelOp);
+            operands.add(nodeOperands);
+            return kinds.size() - 1;
+        }
+
+        /**
+         * Compiles the given equation component, and the components it depends on.
+         * @param component The equation component to compile.
+         * @return The index of the node giving the component's value.
+         */
+        int compile(EquationComponent component)
+        {
+            if(component instanceof LiteralNumber)
+                return add(NODE_LITERAL, ((LiteralNumber)component).getValue(), NO_KERNEL);
+
+            if(component instanceof VariableReference)
+            {
+                String name = ((VariableReference)component).getName();
+                int inputIndex = inputNames.indexOf(name);
+
+                return inputIndex >= 0 ? add(NODE_INPUT, inputIndex, NO_KERNEL)
+                                       : add(NODE_VARIABLE, name, NO_KERNEL);
+            }
+
+            if(component instanceof Operation)
+            {
+                Operation op = (Operation)component;
+                List<EquationComponent> operandComponents = op.getComponents();
+                OperatorAction action = op.getAction();
+
+                if(action == StandardOperatorActions.UNARY_PLUS && operandComponents.size() == 1)
+                    return compile(operandComponents.get(0));
+
+                int[] compiledOperands = new int[operandComponents.size()];
+
+                for(int i = 0; i < compiledOperands.length; i++)
+                    compiledOperands[i] = compile(operandComponents.get(i));
+
+                if(action == StandardOperatorActions.PERCENT && compiledOperands.length == 1)
+                {
+                    int hundred = add(NODE_LITERAL, 100.0, NO_KERNEL);
+                    return add(NODE_OPERATION, StandardOperatorActions.DIVIDE, BatchKernels.DIVIDE,
+                               compiledOperands[0], hundred);
+                }
+
+                return add(NODE_OPERATION, action, kernelOpOf(action, compiledOperands.length), compiledOperands);
+            }
+
+            if(component instanceof FunctionCall)
+            {
+                FunctionCall call = (FunctionCall)component;
+                EquationComponent[] arguments = call.getArguments();
+                int[] compiledArguments = new int[arguments.length];
+
+                for(int i = 0; i < compiledArguments.length; i++)
+                    compiledArguments[i] = compile(arguments[i]);
+
+                return add(NODE_FUNCTION, call.getFunctionName(), NO_KERNEL, compiledArguments);
+            }
+
+            if(!component.referencesEquation())
+                return add(NODE_LITERAL, component.evaluate(equation), NO_KERNEL);
+
+            throw new IllegalArgumentException("Equations containing components of type "
+                                               + component.getClass().getName() + " can't be batch evaluated.");
+        }
+
+        /**
+         * Gets the kernel operation applying the given operator action.
+         * @param action The operator action.
+         * @param operandCount The number of operands the action is applied to.
+         * @return The kernel operation applying the given action, or {@link #NO_KERNEL} if there isn't one.
+         */
+        int kernelOpOf(OperatorAction action, int operandCount)
+        {
+            if(operandCount == 2)
+            {
+                if(action == StandardOperatorActions.ADD)      return BatchKernels.ADD;
+                if(action == StandardOperatorActions.SUBTRACT) return BatchKernels.SUBTRACT;
+                if(action == StandardOperatorActions.MULTIPLY) return BatchKernels.MULTIPLY;
+                if(action == StandardOperatorActions.DIVIDE)   return BatchKernels.DIVIDE;
+                if(action == StandardOperatorActions.POWER)    return BatchKernels.POWER;
+            }
+            else if(operandCount == 1)
+            {
+                if(action == StandardOperatorActions.NEGATE)      return BatchKernels.NEGATE;
+                if(action == StandardOperatorActions.SQUARE_ROOT) return BatchKernels.SQRT;
+            }
+
+            return NO_KERNEL;
+        }
+    }
+    //endregion
+
+    //region methods
+    //region getters
+    /**
+     * Gets the names of the variables given arrays of values.
+     * @return The names of the variables given arrays of values, in the order the arrays are given.
+     */
+    public List<String> getInputNames()
+    { return inputNames; }
+
+    /**
+     * Gets whether batch evaluators apply operations using explicit vector instructions. This is the case where the
+     * {@code jdk.incubator.vector} module is present at runtime, (e.g. where the JVM was started with
+     * {@code --add-modules jdk.incubator.vector}) and the vectorised kernels are on the classpath.
+     * @return True if batch evaluators are vectorised. Otherwise, false.
+     */
+    public static boolean isVectorised()
+    { return kernels.isVectorised(); }
+    //endregion
+
+    //region evaluate
+    /**
+     * Evaluates the equation for each set of values in the given arrays.
+     * @param inputs The values of the variables, one array per variable, in the order of {@link #getInputNames()}.
+     *               Each array must be the same length.
+     * @return The result of evaluating the equation for each set of values, in the same order.
+     * @throws IllegalArgumentException If the wrong number of arrays is given, or they aren't all the same length.
+     */
+    public double[] evaluate(double[]... inputs)
+    {
+        int length = inputs.length == 0 ? 0 : inputs[0].length;
+
+        for(double[] input : inputs)
+            if(input.length != length)
+                throw new IllegalArgumentException("The arrays of values must all be the same length.");
+
+        double[] results = new double[length];
+        evaluate(inputs, results);
+        return results;
+    }
+
+    /**
+     * Evaluates the equation for each set of values in the given arrays, writing the results into the given array.
+     * @param inputs The values of the variables, one array per variable, in the order of {@link #getInputNames()}.
+     *               Each array must be at least as long as the results array.
+     * @param results The array to write the results into. The equation is evaluated once per element of this.
+     * @throws IllegalArgumentException If the wrong number of arrays is given, or any of them is shorter than the
+     *                                  results array.
+     */
+    public void evaluate(double[][] inputs, double[] results)
+    {
+        if(inputs.length != inputNames.size())
+            throw new IllegalArgumentException("Expected " + inputNames.size() + " arrays of values, but was given "
+                                               + inputs.length + ".");
+
+        for(double[] input : inputs)
+            if(input.length < results.length)
+                throw new IllegalArgumentException("The arrays of values must be at least as long as the array of "
+                                                   + "results.");
+
+        synchronized(syncLock)
+        {
+            prepare();
+
+            if(nodeIsUniform[resultNode])
+            {
+                Arrays.fill(results, nodeUniformValues[resultNode]);
+                return;
+            }
+
+            for(int from = 0; from < results.length; from += BLOCK_SIZE)
+            {
+                int blockLength = Math.min(BLOCK_SIZE, results.length - from);
+
+                for(int node = 0; node < nodeKinds.length; node++)
+                    if(!nodeIsUniform[node])
+                        evaluateNode(node, inputs, from, blockLength);
+
+                System.arraycopy(nodeValues[resultNode], 0, results, from, blockLength);
+            }
+        }
+    }
+
+    /**
+     * Reads the equation's current variable values and functions, and works out which nodes have the same value for
+     * every set of values.
+     */
+    private void prepare()
+    {
+        synchronized(equation.syncLock)
+        {
+            for(int node = 0; node < nodeKinds.length; node++)
+            {
+                if(nodeKinds[node] == NODE_VARIABLE)
+                {
+                    VariableSlot slot = equation.variableSlots.get((String)nodeSubjects[node]);
+
+                    if(slot == null)
+                        throw new IllegalStateException("The equation has no variable \"" + nodeSubjects[node]
+                                                        + "\".");
+
+                    nodeUniformValues[node] = slot.value;
+                }
+                else if(nodeKinds[node] == NODE_FUNCTION)
+                {
+                    ToDoubleFunction<double[]> f = equation.functions.get((String)nodeSubjects[node]);
+
+                    if(f == null)
+                        throw new IllegalStateException("The equation has no function \"" + nodeSubjects[node]
+                                                        + "\".");
+
+                    nodeFunctions[node] = f;
+                    nodeKernelOps[node] = functionKernelOpOf(f, nodeOperands[node].length);
+                }
+            }
+        }
+
+        for(int node = 0; node < nodeKinds.length; node++)
+        {
+            switch(nodeKinds[node])
+            {
+                case NODE_LITERAL:
+                    nodeIsUniform[node] = true;
+                    nodeUniformValues[node] = (Double)nodeSubjects[node];
+                    break;
+
+                case NODE_VARIABLE:
+                    nodeIsUniform[node] = true;
+                    break;
+
+                case NODE_INPUT:
+                    nodeIsUniform[node] = false;
+                    break;
+
+                default:
+                    nodeIsUniform[node] = nodeKernelOps[node] != NO_KERNEL && allUniform(nodeOperands[node]);
+
+                    if(nodeIsUniform[node])
+                        nodeUniformValues[node] = evaluateUniformNode(node);
+            }
+
+            if(!nodeIsUniform[node] && nodeValues[node] == null)
+                nodeValues[node] = new double[BLOCK_SIZE];
+        }
+    }
+
+    /**
+     * Gets the kernel operation applying the given function.
+     * @param f The function implementation.
+     * @param argCount The number of arguments the function is called with.
+     * @return The kernel operation applying the given function, or {@link #NO_KERNEL} if there isn't one.
+     */
+    private static int functionKernelOpOf(ToDoubleFunction<double[]> f, int argCount)
+    {
+        if(!(f instanceof StandardFunction) || argCount < 1)
+            return NO_KERNEL;
+
+        Integer op = functionKernelOps.get(((StandardFunction)f).getStandard());
+        return op == null ? NO_KERNEL : op;
+    }
+
+    /**
+     * Gets whether all of the given nodes have the same value for every set of values.
+     * @param nodes The indices of the nodes.
+     * @return True if all of the given nodes are uniform. Otherwise, false.
+     */
+    private boolean allUniform(int[] nodes)
+    {
+        for(int node : nodes)
+            if(!nodeIsUniform[node])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Gets whether the given kernel operation is binary, and so may be folded over any number of arguments.
+     * @param op The kernel operation.
+     * @return True if the operation is binary. Otherwise, false.
+     */
+    private static boolean isBinary(int op)
+    { return op <= BatchKernels.MAX; }
+
+    /**
+     * Evaluates a node applied by a kernel, all of whose operands have the same value for every set of values.
+     * @param node The index of the node.
+     * @return The value of the node.
+     */
+    private double evaluateUniformNode(int node)
+    {
+        int op = nodeKernelOps[node];
+        int[] operands = nodeOperands[node];
+
+        if(!isBinary(op))
+            return BatchKernels.scalar(op, nodeUniformValues[operands[0]]);
+
+        double result = nodeUniformValues[operands[0]];
+
+        for(int i = 1; i < operands.length; i++)
+            result = BatchKernels.scalar(op, result, nodeUniformValues[operands[i]]);
+
+        return result;
+    }
+
+    /**
+     * Evaluates a node that doesn't have the same value for every set of values, for a block of sets of values.
+     * @param node The index of the node.
+     * @param inputs The arrays of values of the variables being given them.
+     * @param from The index in the arrays of values of the first set of values in the block.
+     * @param length The number of sets of values in the block.
+     */
+    private void evaluateNode(int node, double[][] inputs, int from, int length)
+    {
+        double[] out = nodeValues[node];
+
+        if(nodeKinds[node] == NODE_INPUT)
+        {
+            System.arraycopy(inputs[(Integer)nodeSubjects[node]], from, out, 0, length);
+            return;
+        }
+
+        int op = nodeKernelOps[node];
+        int[] operands = nodeOperands[node];
+
+        if(op == NO_KERNEL)
+        {
+            evaluateNodeScalar(node, length);
+            return;
+        }
+
+        if(!isBinary(op))
+        {
+            kernels.unary(op, nodeValues[operands[0]], out, length);
+            return;
+        }
+
+        // Binary operations, including min and max over any number of arguments, folded from the left.
+        int first = operands[0];
+
+        if(operands.length == 1)
+        {
+            System.arraycopy(nodeValues[first], 0, out, 0, length);
+            return;
+        }
+
+        int second = operands[1];
+
+        if(nodeIsUniform[first] && nodeIsUniform[second])
+            Arrays.fill(out, 0, length, BatchKernels.scalar(op, nodeUniformValues[first], nodeUniformValues[second]));
+        else if(nodeIsUniform[first])
+            kernels.binary(op, nodeUniformValues[first], nodeValues[second], out, length);
+        else if(nodeIsUniform[second])
+            kernels.binary(op, nodeValues[first], nodeUniformValues[second], out, length);
+        else
+            kernels.binary(op, nodeValues[first], nodeValues[second], out, length);
+
+        for(int i = 2; i < operands.length; i++)
+        {
+            int next = operands[i];
+
+            if(nodeIsUniform[next])
+                kernels.binary(op, out, nodeUniformValues[next], out, length);
+            else
+                kernels.binary(op, out, nodeValues[next], out, length);
+        }
+    }
+
+    /**
+     * Evaluates a node not applied by a kernel, by calling its operator action or function once per set of values.
+     * @param node The index of the node.
+     * @param length The number of sets of values in the block.
+     */
+    @SuppressWarnings("unchecked")
+    private void evaluateNodeScalar(int node, int length)
+    {
+        double[] out = nodeValues[node];
+        int[] operands = nodeOperands[node];
+        boolean isFunction = nodeKinds[node] == NODE_FUNCTION;
+        OperatorAction action = isFunction ? null : (OperatorAction)nodeSubjects[node];
+        ToDoubleFunction<double[]> f = isFunction ? (ToDoubleFunction<double[]>)nodeFunctions[node] : null;
+
+        for(int i = 0; i < length; i++)
+        {
+            double[] values = new double[operands.length];
+
+            for(int j = 0; j < operands.length; j++)
+            {
+                int operand = operands[j];
+                values[j] = nodeIsUniform[operand] ? nodeUniformValues[operand] : nodeValues[operand][i];
+            }
+
+            out[i] = isFunction ? f.applyAsDouble(values) : action.performOperation(values);
+        }
+    }
+    //endregion
+    //endregion
+}
@@ -0,0 +1,273 @@
+package scot.massie.lib.maths;
+
+import java.util.Optional;
+
+/**
+ * <p>Loops applying a single arithmetic operation across arrays of values, used by {@link BatchEvaluator}.</p>
+ *
+ * <p>This implementation is plain scalar Java, which the JIT compiler may auto-vectorise for the simplest operations.
+ * Where the {@code jdk.incubator.vector} module is present at runtime, {@link #load()} instead loads a subclass
+ * (compiled separately, from the {@code incubator} source directory) that performs the operations the JIT compiler
+ * can't auto-vectorise with explicit vector instructions. Subclasses must give bit-for-bit the same results as this for
+ * all operations other than the transcendental ones ({@link #POWER}, {@link #CBRT}, {@link #SIN}, {@link #COS},
+ * {@link #TAN}, {@link #LOG}, {@link #LOG10}), which may differ from {@link Math}'s implementations by up to the same
+ * error {@link Math} allows itself.</p>
+ *
+ * <p>All methods operate on the first {@code length} elements of the given arrays. The output array may be the same
+ * array as an input.</p>
+ */
+class BatchKernels
+{
+    //region constants
+    /**
+     * The fully qualified name of the vectorised subclass, loaded reflectively so this class doesn't depend on it.
+     */
+    static final String VECTOR_KERNELS_CLASS_NAME = "scot.massie.lib.maths.VectorBatchKernels";
+
+    /**
+     * The name of the module the vectorised subclass requires.
+     */
+    static final String VECTOR_MODULE_NAME = "jdk.incubator.vector";
+
+    /**
+     * Binary operation: l + r.
+     */
+    static final int ADD = 0;
+
+    /**
+     * Binary operation: l - r.
+     */
+    static final int SUBTRACT = 1;
+
+    /**
+     * Binary operation: l * r.
+     */
+    static final int MULTIPLY = 2;
+
+    /**
+     * Binary operation: l / r.
+     */
+    static final int DIVIDE = 3;
+
+    /**
+     * Binary operation: l to the power of r, as by {@link Math#pow(double, double)}.
+     */
+    static final int POWER = 4;
+
+    /**
+     * Binary operation: r if r is less than l, otherwise l. This ignores NaN on the right, as
+     * {@link EquationFunctions#min(double[])} does.
+     */
+    static final int MIN = 5;
+
+    /**
+     * Binary operation: r if r is greater than l, otherwise l. This ignores NaN on the right, as
+     * {@link EquationFunctions#max(double[])} does.
+     */
+    static final int MAX = 6;
+
+    /**
+     * Unary operation: -x.
+     */
+    static final int NEGATE = 7;
+
+    /**
+     * Unary operation: the square root of x.
+     */
+    static final int SQRT = 8;
+
+    /**
+     * Unary operation: the cube root of x.
+     */
+    static final int CBRT = 9;
+
+    /**
+     * Unary operation: the sine of x.
+     */
+    static final int SIN = 10;
+
+    /**
+     * Unary operation: the cosine of x.
+     */
+    static final int COS = 11;
+
+    /**
+     * Unary operation: the tangent of x.
+     */
+    static final int TAN = 12;
+
+    /**
+     * Unary operation: the natural logarithm of x.
+     */
+    static final int LOG = 13;
+
+    /**
+     * Unary operation: the base 10 logarithm of x.
+     */
+    static final int LOG10 = 14;
+
+    /**
+     * Unary operation: x rounded down.
+     */
+    static final int FLOOR = 15;
+
+    /**
+     * Unary operation: x rounded up.
+     */
+    static final int CEIL = 16;
+    //endregion
+
+    //region initialisation
+    /**
+     * Gets the best available kernels: the vectorised ones where the vector module and the vectorised subclass are
+     * both present at runtime, otherwise scalar ones.
+     * @return The best available kernels.
+     */
+    static BatchKernels load()
+    {
+        Optional<Module> vectorModule = ModuleLayer.boot().findModule(VECTOR_MODULE_NAME);
+
+        if(!vectorModule.isPresent())
+            return new BatchKernels();
+
+        try
+        {
+            return (BatchKernels)Class.forName(VECTOR_KERNELS_CLASS_NAME).getDeclaredConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException | LinkageError | ClassCastException e)
+        { return new BatchKernels(); }
+    }
+    //endregion
+
+    //region methods
+    /**
+     * Gets whether this performs operations with explicit vector instructions.
+     * @return True if this is vectorised. Otherwise, false.
+     */
+    boolean isVectorised()
+    { return false; }
+
+    /**
+     * Applies a binary operation to a single pair of values.
+     * @param op The operation, one of the binary operation constants.
+     * @param l The left operand.
+     * @param r The right operand.
+     * @return The result of the operation.
+     */
+    static double scalar(int op, double l, double r)
+    {
+        switch(op)
+        {
+            case ADD:      return l + r;
+            case SUBTRACT: return l - r;
+            case MULTIPLY: return l * r;
+            case DIVIDE:   return l / r;
+            case POWER:    return Math.pow(l, r);
+            case MIN:      return r < l ? r : l;
+            case MAX:      return r > l ? r : l;
+            default: throw new IllegalArgumentException("Not a binary operation: " + op);
+        }
+    }
+
+    /**
+     * Applies a unary operation to a single value.
+     * @param op The operation, one of the unary operation constants.
+     * @param x The operand.
+     * @return The result of the operation.
+     */
+    static double scalar(int op, double x)
+    {
+        switch(op)
+        {
+            case NEGATE: return -x;
+            case SQRT:   return Math.sqrt(x);
+            case CBRT:   return Math.cbrt(x);
+            case SIN:    return Math.sin(x);
+            case COS:    return Math.cos(x);
+            case TAN:    return Math.tan(x);
+            case LOG:    return Math.log(x);
+            case LOG10:  return Math.log10(x);
+            case FLOOR:  return Math.floor(x);
+            case CEIL:   return Math.ceil(x);
+            default: throw new IllegalArgumentException("Not a unary operation: " + op);
+        }
+    }
+
+    /**
+     * Applies a binary operation to pairs of values from two arrays.
+     * @param op The operation, one of the binary operation constants.
+     * @param l The left operands.
+     * @param r The right operands.
+     * @param out The array to write the results into.
+     * @param length The number of values to operate on.
+     */
+    void binary(int op, double[] l, double[] r, double[] out, int length)
+    {
+        switch(op)
+        {
+            case ADD:      for(int i = 0; i < length; i++) out[i] = l[i] + r[i]; break;
+            case SUBTRACT: for(int i = 0; i < length; i++) out[i] = l[i] - r[i]; break;
+            case MULTIPLY: for(int i = 0; i < length; i++) out[i] = l[i] * r[i]; break;
+            case DIVIDE:   for(int i = 0; i < length; i++) out[i] = l[i] / r[i]; break;
+            default:       for(int i = 0; i < length; i++) out[i] = scalar(op, l[i], r[i]);
+        }
+    }
+
+    /**
+     * Applies a binary operation to values from an array on the left, and a single value on the right.
+     * @param op The operation, one of the binary operation constants.
+     * @param l The left operands.
+     * @param r The right operand.
+     * @param out The array to write the results into.
+     * @param length The number of values to operate on.
+     */
+    void binary(int op, double[] l, double r, double[] out, int length)
+    {
+        switch(op)
+        {
+            case ADD:      for(int i = 0; i < length; i++) out[i] = l[i] + r; break;
+            case SUBTRACT: for(int i = 0; i < length; i++) out[i] = l[i] - r; break;
+            case MULTIPLY: for(int i = 0; i < length; i++) out[i] = l[i] * r; break;
+            case DIVIDE:   for(int i = 0; i < length; i++) out[i] = l[i] / r; break;
+            default:       for(int i = 0; i < length; i++) out[i] = scalar(op, l[i], r);
+        }
+    }
+
+    /**
+     * Applies a binary operation to a single value on the left, and values from an array on the right.
+     * @param op The operation, one of the binary operation constants.
+     * @param l The left operand.
+     * @param r The right operands.
+     * @param out The array to write the results into.
+     * @param length The number of values to operate on.
+     */
+    void binary(int op, double l, double[] r, double[] out, int length)
+    {
+        switch(op)
+        {
+            case ADD:      for(int i = 0; i < length; i++) out[i] = l + r[i]; break;
+            case SUBTRACT: for(int i = 0; i < length; i++) out[i] = l - r[i]; break;
+            case MULTIPLY: for(int i = 0; i < length; i++) out[i] = l * r[i]; break;
+            case DIVIDE:   for(int i = 0; i < length; i++) out[i] = l / r[i]; break;
+            default:       for(int i = 0; i < length; i++) out[i] = scalar(op, l, r[i]);
+        }
+    }
+
+    /**
+     * Applies a unary operation to values from an array.
+     * @param op The operation, one of the unary operation constants.
+     * @param x The operands.
+     * @param out The array to write the results into.
+     * @param length The number of values to operate on.
+     */
+    void unary(int op, double[] x, double[] out, int length)
+    {
+        switch(op)
+        {
+            case NEGATE: for(int i = 0; i < length; i++) out[i] = -x[i]; break;
+            case SQRT:   for(int i = 0; i < length; i++) out[i] = Math.sqrt(x[i]); break;
+            default:     for(int i = 0; i < length; i++) out[i] = scalar(op, x[i]);
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,333 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.Builder;
+import scot.massie.lib.maths.Equation.Builder.EquationParseException;
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.MissingFunctionArgumentsException;
+import scot.massie.lib.maths.Equation.Token;
+import scot.massie.lib.maths.Equation.TokenList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>The result of parsing an equation as a string that's being edited, such as in a text box where an equation is
+ * re-parsed on every keystroke. Created by {@link Equation.Builder#buildEditable(String)}.</p>
+ *
+ * <p>Applying an edit with {@link #edit(int, int, String)} parses the edited text incrementally:</p>
+ *
+ * <ul>
+ *     <li>Only the text between the innermost pair of brackets containing the edit is tokenised again, with the
+ *     tokens before and after it reused. Edits not inside any brackets, or that leave the brackets unbalanced, are
+ *     tokenised in full.</li>
+ *     <li>The components of bracketed parts of the equation whose text is the same as in the previous parse are reused
+ *     rather than parsed again. Editing the innermost part of a deeply nested equation only parses the parts of the
+ *     equation enclosing the edit, and the part containing it.</li>
+ * </ul>
+ *
+ * <p>Where the builder's operators or tokens, or the names of its variables or functions, change between edits, the
+ * next edit is parsed in full against the builder as it is then.</p>
+ *
+ * <p>Equations being edited are often temporarily invalid. Rather than throwing, parsing an invalid equation produces
+ * an EditableEquation with the problem available from {@link #getError()}, which may be edited further as any other.
+ * </p>
+ *
+ * <p>EditableEquations are immutable, and are safe to use from several threads at once.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * Equation.Builder builder = new Equation.Builder().withVariable("x", 2);
+ * EditableEquation text = builder.buildEditable("(x + 1) * (x - 1)");
+ * text = text.edit(15, 1, "3");          // "(x + 1) * (x - 3)" - "(x + 1)" is reused.
+ * text = text.edit(17, 0, " +");         // "(x + 1) * (x - 3) +" - invalid.
+ * text.isValid();                        // == false
+ * text = text.edit(19, 0, " 4");         // "(x + 1) * (x - 3) + 4"
+ * text.build().evaluate();               // == 1
+ * }</pre>
+ */
+public final class EditableEquation
+{
+    //region variables
+    /**
+     * The builder this equation was parsed against.
+     */
+    private final Builder builder;
+
+    /**
+     * The parsing snapshot of {@link #builder} this equation was parsed against.
+     */
+    private final Builder snapshot;
+
+    /**
+     * {@link Builder#getNameChangeCount() The number of times the names of the builder's variables and functions had
+     * changed} before this equation was parsed.
+     */
+    private final long nameChangeCount;
+
+    /**
+     * Whether the text between brackets is tokenised the same way regardless of the text around it, using
+     * {@link #snapshot}, such that edits between brackets may be tokenised on their own.
+     */
+    private final boolean bracketsSeparateTokenisation;
+
+    /**
+     * The text of this equation.
+     */
+    private final String text;
+
+    /**
+     * The tokenisation of {@link #text}.
+     */
+    private final TokenList tokenisation;
+
+    /**
+     * The components parsed from the bracketed parts of this equation, against the parts' text.
+     */
+    private final Map<String, EquationComponent> parsedGroups;
+
+    /**
+     * The top level component of this equation, or null if it isn't a valid equation.
+     */
+    private final EquationComponent component;
+
+    /**
+     * Why this isn't a valid equation, or null if it is one.
+     */
+    private final RuntimeException error;
+    //endregion
+
+    //region initialisation
+    /**
+     * Parses an equation in full, for editing.
+     * @param builder The builder to parse the equation against.
+     * @param text The equation as a string.
+     * @throws IllegalArgumentException If the text is null.
+     */
+    EditableEquation(Builder builder, String text)
+    {
+        this(builder, builder.getNameChangeCount(), builder.getParsingSnapshot(), text, null,
+             Collections.emptyMap());
+    }
+
+    /**
+     * Parses an equation for editing.
+     * @param builder The builder to parse the equation against.
+     * @param nameChangeCount The number of times the names of the builder's variables and functions had changed,
+     *                        read before the snapshot was.
+     * @param snapshot The parsing snapshot of the builder to parse the equation against.
+     * @param text The equation as a string.
+     * @param tokenisation The tokenisation of the text, or null to tokenise it in full.
+     * @param reusableGroups The components of bracketed parts of equations already parsed against the same snapshot,
+     *                       against their text, that may be reused.
+     * @throws IllegalArgumentException If the text is null.
+     */
+    private EditableEquation(Builder builder,
+                             long nameChangeCount,
+                             Builder snapshot,
+                             String text,
+                             TokenList tokenisation,
+                             Map<String, EquationComponent> reusableGroups)
+    {
+        if(text == null)
+            throw new IllegalArgumentException("Cannot parse a null string as an equation.");
+
+        this.builder = builder;
+        this.nameChangeCount = nameChangeCount;
+        this.snapshot = snapshot;
+        this.bracketsSeparateTokenisation = snapshot.bracketsSeparateTokenisation();
+        this.text = text;
+        this.tokenisation = tokenisation != null ? tokenisation : snapshot.tokenise(text);
+
+        Builder parser = snapshot.withReusableGroups(reusableGroups);
+        EquationComponent parsed = null;
+        RuntimeException parseError = null;
+
+        if(text.trim().isEmpty())
+            parseError = new IllegalArgumentException("Cannot parse an empty string as an equation.");
+        else
+        {
+            try
+            {
+                parser.verifyTokenisationBrackets(this.tokenisation);
+
+                try
+                { parsed = parser.tryParse(this.tokenisation); }
+                catch(EquationParseException e)
+                { throw e.withFullEquation(this.tokenisation); }
+            }
+            catch(EquationParseException | MissingFunctionArgumentsException e)
+            { parseError = e; }
+        }
+
+        this.parsedGroups = parser.getParsedGroups();
+        this.component = parsed;
+        this.error = parseError;
+    }
+    //endregion
+
+    //region methods
+    //region getters
+    /**
+     * Gets the text of this equation.
+     * @return This equation as a string.
+     */
+    public String getText()
+    { return text; }
+
+    /**
+     * Gets whether this is a valid equation, which may be built.
+     * @return True if this is a valid equation. Otherwise, false.
+     */
+    public boolean isValid()
+    { return error == null; }
+
+    /**
+     * Gets why this isn't a valid equation.
+     * @return The exception that building this equation with {@link Equation.Builder#build(String)} would throw, or
+     *         null if this is a valid equation.
+     */
+    public RuntimeException getError()
+    { return error; }
+
+    /**
+     * Gets the top level component of this equation.
+     * @return The top level component of this equation, or null if it isn't a valid equation.
+     */
+    EquationComponent getComponent()
+    { return component; }
+
+    /**
+     * Gets the tokenisation of this equation.
+     * @return The tokenisation of this equation's text.
+     */
+    TokenList getTokenisation()
+    { return tokenisation; }
+
+    @Override
+    public String toString()
+    { return text; }
+    //endregion
+
+    //region build
+    /**
+     * Builds this equation into an {@link Equation}, which may then be evaluated, as though it were built from its
+     * text by the builder it was parsed against. This doesn't parse the equation again.
+     * @return A new equation.
+     * @throws EquationParseException If this isn't a valid equation.
+     * @throws IllegalArgumentException If this equation's text is empty.
+     */
+    public Equation build()
+    {
+        if(error != null)
+            throw error;
+
+        return builder.build(component);
+    }
+    //endregion
+
+    //region edit
+    /**
+     * Applies an edit to the text of this equation, and parses the result incrementally as described in
+     * {@link EditableEquation}.
+     * @param offset The offset in this equation's text at which the edit starts.
+     * @param removedLength The number of characters removed from the text, starting at the offset.
+     * @param insertedText The text inserted at the offset, in place of the removed characters.
+     * @return The edited equation.
+     * @throws IndexOutOfBoundsException If the offset and removed length don't describe a range of this equation's
+     *                                   text.
+     * @throws IllegalArgumentException If the inserted text is null.
+     */
+    public EditableEquation edit(int offset, int removedLength, String insertedText)
+    {
+        if(offset < 0 || removedLength < 0 || offset > text.length() - removedLength)
+            throw new IndexOutOfBoundsException("Cannot remove " + removedLength + " characters at offset " + offset
+                                                + " from text of length " + text.length() + ".");
+
+        if(insertedText == null)
+            throw new IllegalArgumentException("Cannot insert null text into an equation.");
+
+        String newText = text.substring(0, offset) + insertedText + text.substring(offset + removedLength);
+        long currentNameChangeCount = builder.getNameChangeCount();
+        Builder currentSnapshot = builder.getParsingSnapshot();
+
+        if(currentSnapshot != snapshot || currentNameChangeCount != nameChangeCount)
+            return new EditableEquation(builder, currentNameChangeCount, currentSnapshot, newText, null,
+                                        Collections.emptyMap());
+
+        return new EditableEquation(builder, nameChangeCount, snapshot, newText,
+                                    retokenise(offset, removedLength, insertedText, newText), parsedGroups);
+    }
+
+    /**
+     * Gets the tokenisation of this equation's text after an edit, tokenising only the text between the innermost
+     * pair of brackets containing the edit where possible.
+     * @param offset The offset in this equation's text at which the edit starts.
+     * @param removedLength The number of characters removed by the edit.
+     * @param insertedText The text inserted by the edit.
+     * @param newText This equation's text after the edit.
+     * @return The tokenisation of the edited text.
+     */
+    private TokenList retokenise(int offset, int removedLength, String insertedText, String newText)
+    {
+        if(!bracketsSeparateTokenisation)
+            return snapshot.tokenise(newText);
+
+        int editEnd = offset + removedLength;
+        int openBracket = -1;
+        int closeBracket = -1;
+
+        // Pairs of brackets containing the edit are nested in one another, so the last found is the innermost.
+        for(int i = 0; i < tokenisation.size() && tokenisation.getStartOffsetOf(i) < editEnd; i++)
+        {
+            if(!tokenisation.isOpenBracketAt(i))
+                continue;
+
+            int match = tokenisation.getMatchingBracketIndex(i);
+
+            if(match >= 0
+            && tokenisation.getEndOffsetOf(i) <= offset
+            && tokenisation.getStartOffsetOf(match) >= editEnd)
+            {
+                openBracket = i;
+                closeBracket = match;
+            }
+        }
+
+        if(openBracket < 0)
+            return snapshot.tokenise(newText);
+
+        int innerStart = tokenisation.getEndOffsetOf(openBracket);
+        int innerEnd = tokenisation.getStartOffsetOf(closeBracket) + insertedText.length() - removedLength;
+        TokenList inner = snapshot.tokenise(newText.substring(innerStart, innerEnd));
+
+        for(int i = 0; i < inner.size(); i++)
+            if((inner.isOpenBracketAt(i) || inner.isCloseBracketAt(i)) && inner.getMatchingBracketIndex(i) < 0)
+                return snapshot.tokenise(newText);
+
+        int size = tokenisation.size();
+        List<Token> oldTokens = tokenisation.toListOfTokens();
+        int newSize = size - (closeBracket - openBracket - 1) + inner.size();
+        List<Token> tokens = new ArrayList<>(newSize);
+        List<Integer> spacings = new ArrayList<>(newSize + 1);
+
+        tokens.addAll(oldTokens.subList(0, openBracket + 1));
+        tokens.addAll(inner.toListOfTokens());
+        tokens.addAll(oldTokens.subList(closeBracket, size));
+
+        for(int i = 0; i <= openBracket; i++)
+            spacings.add(tokenisation.getSpacingSize(i));
+
+        // The inner tokenisation's trailing spacing is the spacing before the close bracket.
+        spacings.addAll(inner.toListOfSpacingSizes());
+
+        for(int i = closeBracket + 1; i <= size; i++)
+            spacings.add(tokenisation.getSpacingSize(i));
+
+        return new TokenList(newText, tokens, spacings);
+    }
+    //endregion
+    //endregion
+}
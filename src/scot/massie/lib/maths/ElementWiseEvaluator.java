@@ -0,0 +1,279 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.Iteration;
+import scot.massie.lib.maths.Equation.IterationIndex;
+import scot.massie.lib.maths.Equation.LiteralNumber;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.OperatorAction;
+import scot.massie.lib.maths.Equation.VariableReference;
+import scot.massie.lib.maths.EquationFunctions.StandardFunction;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>Evaluates an equation element-wise, over the arrays its variables are
+ * {@link Equation#setArrayVariable(String, double[]) bound to}, as by {@link Equation#evaluateElementWise()}.</p>
+ *
+ * <p>Every component evaluates to an array of numbers, where single numbers are arrays of length 1. Operators and
+ * functions are applied once per element of their operands, where every operand must either be of the same length, or
+ * of length 1, in which case its one number is used for every element. Standard functions that are
+ * {@link StandardFunction#isReduction() reductions}, such as "sum", "max", and "avg", are instead called once, with
+ * the elements of all of their arguments in order, giving a single number.</p>
+ *
+ * <p>The bounds of iterations must evaluate to single numbers. Their bodies are combined element-wise, so
+ * "sum(i, 1, 3, xs^i)" is xs + xs^2 + xs^3 for each element of xs.</p>
+ *
+ * <p>This should only be used while the equation being evaluated is locked. The arrays variables are bound to are read,
+ * but never modified or returned.</p>
+ */
+final class ElementWiseEvaluator
+{
+    /**
+     * The equation being evaluated.
+     */
+    private final Equation equation;
+
+    /**
+     * Creates a new element-wise evaluator of the given equation.
+     * @param equation The equation to evaluate the components of.
+     */
+    ElementWiseEvaluator(Equation equation)
+    { this.equation = equation; }
+
+    /**
+     * Evaluates the given component element-wise.
+     * @param component The component to evaluate.
+     * @return The results of the component, one for each element. This is a new array, which may be modified.
+     * @throws IllegalArgumentException If operands of the same operation or function call are arrays of different
+     *                                  lengths, other than 1, or the bounds of an iteration aren't single numbers.
+     */
+    double[] evaluate(EquationComponent component)
+    {
+        double[] results = evaluateShared(component);
+
+        // Only variable references evaluate to arrays that aren't new.
+        return component instanceof VariableReference ? results.clone() : results;
+    }
+
+    /**
+     * Evaluates the given component element-wise, where the result may be an array a variable is bound to.
+     * @param component The component to evaluate.
+     * @return The results of the component, one for each element. This must not be modified.
+     */
+    private double[] evaluateShared(EquationComponent component)
+    {
+        if(component instanceof Operation)
+            return evaluateOperation((Operation)component);
+
+        if(component instanceof FunctionCall)
+            return evaluateFunctionCall((FunctionCall)component);
+
+        if(component instanceof Iteration)
+            return evaluateIteration((Iteration)component);
+
+        if(component instanceof VariableReference)
+        {
+            String name = ((VariableReference)component).getName();
+            double[] values = equation.arrayVariables.get(name);
+            return values != null ? values : new double[] { equation.variableSlots.get(name).value };
+        }
+
+        if(component instanceof IterationIndex)
+            return new double[] { equation.getIterationIndexValue((IterationIndex)component) };
+
+        if(component instanceof LiteralNumber)
+            return new double[] { ((LiteralNumber)component).getValue() };
+
+        return new double[] { component.evaluate(equation) };
+    }
+
+    /**
+     * Evaluates the given operation element-wise.
+     * @param operation The operation to evaluate.
+     * @return The results of the operation.
+     */
+    private double[] evaluateOperation(Operation operation)
+    {
+        List<EquationComponent> components = operation.getComponents();
+        OperatorAction action = operation.getAction();
+        double[][] operands = new double[components.size()][];
+
+        for(int i = 0; i < operands.length; i++)
+            operands[i] = evaluateShared(components.get(i));
+
+        double[] results = new double[broadcastLength(operands)];
+
+        for(int i = 0; i < results.length; i++)
+            results[i] = action.performOperation(elementsAt(operands, i));
+
+        return results;
+    }
+
+    /**
+     * Evaluates the given function call element-wise, or as a reduction where the function called is one.
+     * @param call The function call to evaluate.
+     * @return The results of the function call.
+     */
+    private double[] evaluateFunctionCall(FunctionCall call)
+    {
+        ToDoubleFunction<double[]> f = equation.functions.get(call.getFunctionName());
+        EquationComponent[] arguments = call.getArguments();
+        double[][] argumentValues = new double[arguments.length][];
+        int elementCount = 0;
+
+        for(int i = 0; i < arguments.length; i++)
+        {
+            argumentValues[i] = evaluateShared(arguments[i]);
+            elementCount += argumentValues[i].length;
+        }
+
+        if(f instanceof StandardFunction && ((StandardFunction)f).isReduction())
+        {
+            double[] elements = new double[elementCount];
+            int position = 0;
+
+            for(double[] values : argumentValues)
+            {
+                System.arraycopy(values, 0, elements, position, values.length);
+                position += values.length;
+            }
+
+            return new double[] { f.applyAsDouble(elements) };
+        }
+
+        double[] results = new double[broadcastLength(argumentValues)];
+
+        for(int i = 0; i < results.length; i++)
+            results[i] = f.applyAsDouble(elementsAt(argumentValues, i));
+
+        return results;
+    }
+
+    /**
+     * Evaluates the given iteration, combining the results of its body element-wise. This follows
+     * {@link Iteration#evaluate(Equation)}.
+     * @param iteration The iteration to evaluate.
+     * @return The combined results of the iteration's body.
+     */
+    private double[] evaluateIteration(Iteration iteration)
+    {
+        double first = scalar(evaluateShared(iteration.getFrom()), "from");
+        double last = scalar(evaluateShared(iteration.getTo()), "to");
+        int kind = iteration.getKind();
+
+        if(Double.isNaN(first) || Double.isNaN(last))
+            return new double[] { Double.NaN };
+
+        if(last < first)
+            return new double[] { kind == Iteration.SUM ? 0 : kind == Iteration.PRODUCT ? 1 : Double.NaN };
+
+        long count = Iteration.countOf(first, last);
+
+        if(count == 0)
+            return new double[] { Double.NaN };
+
+        if(equation.evaluationBudget != null)
+            equation.evaluationBudget.chargeIteration(iteration, count);
+
+        int frame = equation.pushIterationIndex(iteration.getIndex(), first);
+
+        try
+        {
+            double[] results = evaluate(iteration.getBody());
+
+            for(long i = 1; i < count; i++)
+            {
+                equation.iterationIndexValues[frame] = first + i;
+                double[] values = evaluateShared(iteration.getBody());
+                double[] combined = values.length > results.length ? new double[values.length] : results;
+
+                if(results.length != values.length && results.length != 1 && values.length != 1)
+                    throw new IllegalArgumentException("Arrays of lengths " + results.length + " and " + values.length
+                                                       + " can't be combined element-wise.");
+
+                for(int j = 0; j < combined.length; j++)
+                {
+                    double result = results[results.length == 1 ? 0 : j];
+                    double value = values[values.length == 1 ? 0 : j];
+
+                    switch(kind)
+                    {
+                        case Iteration.SUM:     result += value; break;
+                        case Iteration.PRODUCT: result *= value; break;
+                        case Iteration.MIN:     if(value < result) result = value; break;
+                        default:                if(value > result) result = value; break;
+                    }
+
+                    combined[j] = result;
+                }
+
+                results = combined;
+            }
+
+            return results;
+        }
+        finally
+        { equation.popIterationIndex(); }
+    }
+
+    /**
+     * Gets the length of the results of applying an operator or function element-wise to the given operands.
+     * @param operands The values of the operands.
+     * @return The length of the longest operand.
+     * @throws IllegalArgumentException If any two operands are of different lengths, where neither is of length 1.
+     */
+    private static int broadcastLength(double[][] operands)
+    {
+        int length = 1;
+
+        for(double[] operand : operands)
+        {
+            if(operand.length == 1 || operand.length == length)
+                continue;
+
+            if(length != 1)
+                throw new IllegalArgumentException("Arrays of lengths " + length + " and " + operand.length
+                                                   + " can't be combined element-wise.");
+
+            length = operand.length;
+        }
+
+        return length;
+    }
+
+    /**
+     * Gets the operands of a single element of an element-wise operation or function call.
+     * @param operands The values of the operands.
+     * @param element The position of the element.
+     * @return A new array of the value of each operand at the given position, where operands of length 1 have the same
+     *         value at every position.
+     */
+    private static double[] elementsAt(double[][] operands, int element)
+    {
+        double[] elements = new double[operands.length];
+
+        for(int i = 0; i < operands.length; i++)
+            elements[i] = operands[i][operands[i].length == 1 ? 0 : element];
+
+        return elements;
+    }
+
+    /**
+     * Gets the single number an iteration's bound evaluated to.
+     * @param values The values the bound evaluated to.
+     * @param boundName The name of the bound, as reported where it isn't a single number.
+     * @return The single number in the given array.
+     * @throws IllegalArgumentException If the given array isn't of length 1.
+     */
+    private static double scalar(double[] values, String boundName)
+    {
+        if(values.length != 1)
+            throw new IllegalArgumentException("The \"" + boundName + "\" bound of an iteration must be a single "
+                                               + "number, not an array of " + values.length + ".");
+
+        return values[0];
+    }
+}
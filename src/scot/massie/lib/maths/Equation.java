@@ -5,6 +5,8 @@ import scot.massie.lib.collections.trees.RecursiveTree;
 import scot.massie.lib.collections.trees.Tree;
 import scot.massie.lib.collections.trees.TreePath;
 
+import java.util.AbstractList;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -12,6 +14,9 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -19,6 +24,9 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.DoubleSupplier;
 import java.util.function.ToDoubleBiFunction;
 import java.util.function.ToDoubleFunction;
@@ -48,6 +56,11 @@ import static scot.massie.lib.utils.ControlFlowUtils.*;
  * new Equation("fib(5) + 3.2");
  *
  *
+ * // Creates a new equation object representing the sum of the squares of 1 to 10.
+ * // "prod", "min over", and "max over" are also available. See Equation.Iteration.
+ * new Equation("sum(i, 1, 10, i^2)");
+ *
+ *
  * // Creates a builder with a custom binary operator "€" and uses it to create two equations.
  * // Prefix and postfix operators are also available.
  * Equation.Builder b = new Equation.Builder().withOperator("€", (l, r) -> l * 3 + r);
@@ -152,8 +165,13 @@ public class Equation
     //endregion
 
     /**
-     * Class for constructing instances of {@link Equation}. Allows the definition of operators, functions, and
-     * variables for use in equations.
+     * <p>Class for constructing instances of {@link Equation}. Allows the definition of operators, functions, and
+     * variables for use in equations.</p>
+     *
+     * <p>Builders are threadsafe. Equations may be built from multiple threads at once, and the builder may be updated
+     * (including by pushing variables and functions) while equations are being built. Each call to
+     * {@link #build(String)} parses against a consistent snapshot of the builder's operators and tokens, taken when
+     * the build started.</p>
      */
     public static final class Builder
     {
@@ -182,8 +200,8 @@ public class Equation
              */
             EquationParseException(TokenList fullEquation, TokenList equationSection)
             {
-                super("Equation was not parsable as an equation: " + fullEquation.equationAsString
-                      + "\nSpecifically, this portion: " + equationSection.equationAsString);
+                super("Equation was not parsable as an equation: " + fullEquation
+                      + "\nSpecifically, this portion: " + equationSection);
 
                 this.fullEquation = fullEquation;
                 this.equationSection = equationSection;
@@ -207,14 +225,14 @@ public class Equation
              * @return The specific substring of the given equation that caused this exception.
              */
             public String getEquationSection()
-            { return equationSection.equationAsString.trim(); }
+            { return equationSection.toString().trim(); }
 
             /**
              * Gets the equation that caused this exception.
              * @return The full equation as a string, that caused this exception.
              */
             public String getFullEquation()
-            { return fullEquation.equationAsString.trim(); }
+            { return fullEquation.toString().trim(); }
 
             /**
              * Copies this exception with a different given full equation. This allows the exception to be caught and
@@ -242,8 +260,8 @@ public class Equation
             {
                 super(fullEquation, equationSection,
                       "Equation contained a dangling operator that could not be a prefix nor postfix operator: "
-                        + fullEquation.equationAsString
-                        + "\nSpecifically, this portion: " + equationSection.equationAsString);
+                        + fullEquation
+                        + "\nSpecifically, this portion: " + equationSection);
             }
 
             /**
@@ -274,8 +292,8 @@ public class Equation
             {
                 super(fullEquation, equationSection,
                       "Equation contained a leading operator that could not be a prefix operator: "
-                      + fullEquation.equationAsString
-                      + "\nSpecifically, this portion: " + equationSection.equationAsString);
+                      + fullEquation
+                      + "\nSpecifically, this portion: " + equationSection);
             }
 
             /**
@@ -306,8 +324,8 @@ public class Equation
             {
                 super(fullEquation, equationSection,
                       "Equation contained a trailing operator that could not be a postfix operator: "
-                      + fullEquation.equationAsString
-                      + "\nSpecifically, this portion: " + equationSection.equationAsString);
+                      + fullEquation
+                      + "\nSpecifically, this portion: " + equationSection);
             }
 
             /**
@@ -338,8 +356,8 @@ public class Equation
             {
                 super(fullEquation, equationSection,
                       "Equation contained an argument list with a dangling separator: "
-                      + fullEquation.equationAsString
-                      + "\nSpecifically, this portion: " + equationSection.equationAsString);
+                      + fullEquation
+                      + "\nSpecifically, this portion: " + equationSection);
             }
 
             /**
@@ -370,8 +388,8 @@ public class Equation
             {
                 super(fullEquation, equationSection,
                       "Equation contained an argument list with a leading separator: "
-                      + fullEquation.equationAsString
-                      + "\nSpecifically, this portion: " + equationSection.equationAsString);
+                      + fullEquation
+                      + "\nSpecifically, this portion: " + equationSection);
             }
 
             /**
@@ -402,8 +420,8 @@ public class Equation
             {
                 super(fullEquation, equationSection,
                       "Equation contained an argument list with a trailing separator: "
-                      + fullEquation.equationAsString
-                      + "\nSpecifically, this portion: " + equationSection.equationAsString);
+                      + fullEquation
+                      + "\nSpecifically, this portion: " + equationSection);
             }
 
             /**
@@ -435,8 +453,8 @@ public class Equation
                 super(fullEquation, equationSection,
                       "Equation contained an empty argument to a function. That is, argument separators were used, but "
                       + "an argument wasn't passed in:"
-                      + fullEquation.equationAsString
-                      + "\nSpecifically, this portion: " + equationSection.equationAsString);
+                      + fullEquation
+                      + "\nSpecifically, this portion: " + equationSection);
             }
 
             /**
@@ -459,7 +477,7 @@ public class Equation
              * @param equation The full equation causing this exception, as a TokenList.
              */
             public BracketMismatchException(TokenList equation)
-            { super(equation, equation, "Equation contained a bracket mismatch: " + equation.equationAsString); }
+            { super(equation, equation, "Equation contained a bracket mismatch: " + equation); }
 
             /**
              * Creates a new BracketMismatchException.
@@ -486,7 +504,7 @@ public class Equation
             public UnexpectedCloseBracketException(TokenList equation)
             {
                 super(equation, "Equation contained a close bracket that didn't correlate to a matching open bracket: "
-                                + equation.equationAsString);
+                                + equation);
             }
 
             /**
@@ -514,7 +532,7 @@ public class Equation
             public UnmatchedOpenBracketException(TokenList equation)
             {
                 super(equation, "Equation contained an open bracket that didn't correlate to a matching close bracket: "
-                                + equation.equationAsString);
+                                + equation);
             }
 
             /**
@@ -581,6 +599,39 @@ public class Equation
             public UnrecognisedFunctionException withFullEquation(TokenList fullEquation)
             { return new UnrecognisedFunctionException(functionName, fullEquation, equationSection); }
         }
+
+        /**
+         * Thrown when an iteration (e.g. "sum(i, 1, n, i^2)") isn't of the form "name(index, from, to, body)", where
+         * the index is a plain name.
+         */
+        public static class MalformedIterationException extends EquationParseException
+        {
+            /**
+             * Creates a new MalformedIterationException.
+             * @param fullEquation The full equation causing this exception, as a TokenList.
+             * @param equationSection The specific section of the equation causing this exception, as a TokenList.
+             */
+            public MalformedIterationException(TokenList fullEquation, TokenList equationSection)
+            {
+                super(fullEquation, equationSection,
+                      "Equation contained an iteration not of the form \"name(index, from, to, body)\": "
+                      + fullEquation
+                      + "\nSpecifically, this portion: " + equationSection);
+            }
+
+            /**
+             * Creates a new MalformedIterationException.
+             * @param fullEquation The full equation causing this exception, as a TokenList.
+             * @param equationSection The specific section of the equation causing this exception, as a TokenList.
+             * @param msg The exception message
+             */
+            public MalformedIterationException(TokenList fullEquation, TokenList equationSection, String msg)
+            { super(fullEquation, equationSection, msg); }
+
+            @Override
+            public MalformedIterationException withFullEquation(TokenList fullEquation)
+            { return new MalformedIterationException(fullEquation, equationSection); }
+        }
         //endregion
 
         /**
@@ -593,6 +644,95 @@ public class Equation
             final Map<Token, PostfixOperator> postfixOperators = new HashMap<>();
             final Tree<Token, InfixOperator> leftAssociativeInfixOperators = new RecursiveTree<>();
             final Tree<Token, InfixOperator> rightAssociativeInfixOperators = new RecursiveTree<>();
+
+            /**
+             * {@link #leftAssociativeInfixOperators}, with the keys reversed, as left-associative operators are
+             * searched for from right to left. This is set once the group's operators are all added, by
+             * {@link Builder#buildOperatorGroups()}.
+             */
+            Tree<Token, InfixOperator> leftAssociativeInfixOperatorsReversed = null;
+        }
+
+        /**
+         * <p>The results of parsing parts of a single tokenisation with a single parser, so that no part of the
+         * tokenisation is analysed more than once by that parser, in the manner of a packrat parser.</p>
+         *
+         * <p>Without this, the same ranges of tokens are parsed many times over. Most notably, text like "x * (y)" is
+         * parsed as a call to a function named "x *" before it's found not to be one, and then parsed as an operation -
+         * parsing the arguments of the would-be function call twice, which compounds exponentially with each level of
+         * nesting. Whether each operator token may be an infix operator, which depends on the run of operator tokens
+         * it's in, is likewise only worked out once, rather than once per operator priority group per range of tokens
+         * containing it.</p>
+         *
+         * <p>Memos are created for each tokenisation as it's parsed, and are only used by the thread parsing it.</p>
+         */
+        static final class ParseMemo
+        {
+            /**
+             * One more than the number of tokens in the tokenisation, used to combine the start and end of a range of
+             * tokens into a single key.
+             */
+            private final long rangeKeyBase;
+
+            /**
+             * The components parsed from ranges of tokens, against {@link #rangeKey(TokenList) the ranges' keys}.
+             */
+            private final Map<Long, EquationComponent> components = new HashMap<>();
+
+            /**
+             * For each operator token in the tokenisation, the index of the first token in the run of operator tokens
+             * it's in. Only set where the corresponding element of {@link #operatorRunEnds} is.
+             */
+            private final int[] operatorRunStarts;
+
+            /**
+             * For each operator token in the tokenisation, one more than the index of the last token in the run of
+             * operator tokens it's in, or 0 if its run hasn't been worked out yet.
+             */
+            private final int[] operatorRunEnds;
+
+            /**
+             * For each operator token in the tokenisation, whether all tokens in its run of operator tokens before it
+             * may be postfix operators and all tokens after it may be prefix operators, such that it may be an infix
+             * operator. Only set where the corresponding element of {@link #operatorRunEnds} is.
+             */
+            private final boolean[] mayBeInfixInRun;
+
+            /**
+             * Creates a new empty memo.
+             * @param tokenCount The number of tokens in the tokenisation.
+             */
+            ParseMemo(int tokenCount)
+            {
+                this.rangeKeyBase = tokenCount + 1L;
+                this.operatorRunStarts = new int[tokenCount];
+                this.operatorRunEnds = new int[tokenCount];
+                this.mayBeInfixInRun = new boolean[tokenCount];
+            }
+
+            /**
+             * Gets the key of the range of tokens the given token list covers.
+             * @param tokenList A view of the tokenisation this is a memo of.
+             * @return A key unique to the range of tokens the given token list covers.
+             */
+            private long rangeKey(TokenList tokenList)
+            { return tokenList.from * rangeKeyBase + tokenList.to; }
+
+            /**
+             * Gets the component already parsed from the given range of tokens.
+             * @param tokenList A view of the tokenisation this is a memo of.
+             * @return The component parsed from the given token list, or null if it hasn't been parsed yet.
+             */
+            EquationComponent getComponent(TokenList tokenList)
+            { return components.get(rangeKey(tokenList)); }
+
+            /**
+             * Records the component parsed from the given range of tokens.
+             * @param tokenList A view of the tokenisation this is a memo of.
+             * @param component The component parsed from the given token list.
+             */
+            void putComponent(TokenList tokenList, EquationComponent component)
+            { components.put(rangeKey(tokenList), component); }
         }
 
         /**
@@ -703,6 +843,134 @@ public class Equation
                 return tokensAfterPivot;
             }
         }
+
+        /**
+         * A function defined as an equation, whose calls are replaced with its body when equations are parsed.
+         */
+        static final class FunctionDefinition
+        {
+            /**
+             * The name of the function.
+             */
+            private final String name;
+
+            /**
+             * The names of the function's parameters, in order.
+             */
+            private final List<String> parameterNames;
+
+            /**
+             * The function's body, where its parameters are referenced as variables.
+             */
+            private final EquationComponent body;
+
+            /**
+             * Creates a new function definition.
+             * @param name The name of the function.
+             * @param parameterNames The names of the function's parameters, in order.
+             * @param body The function's body, where its parameters are referenced as variables.
+             */
+            public FunctionDefinition(String name, List<String> parameterNames, EquationComponent body)
+            {
+                this.name = name;
+                this.parameterNames = Collections.unmodifiableList(new ArrayList<>(parameterNames));
+                this.body = body;
+            }
+
+            /**
+             * Gets the name of this function.
+             * @return The name of this function.
+             */
+            public String getName()
+            { return name; }
+
+            /**
+             * Gets the names of this function's parameters.
+             * @return The names of this function's parameters, in order.
+             */
+            public List<String> getParameterNames()
+            { return parameterNames; }
+
+            /**
+             * Gets this function's body.
+             * @return This function's body, where its parameters are referenced as variables.
+             */
+            public EquationComponent getBody()
+            { return body; }
+
+            /**
+             * Produces a copy of this function's body with the given arguments substituted in for its parameters.
+             * Arguments beyond the number of parameters are ignored.
+             * @param arguments The arguments of a call to this function.
+             * @return This function's body, with references to its parameters replaced with the given arguments.
+             * @throws MissingFunctionArgumentsException If fewer arguments were given than this function has
+             *                                           parameters.
+             */
+            public EquationComponent inline(EquationComponent[] arguments)
+            {
+                if(arguments.length < parameterNames.size())
+                    throw new MissingFunctionArgumentsException(name,
+                                                                parameterNames.size(),
+                                                                arguments.length);
+
+                Map<String, EquationComponent> substitutions = new HashMap<>();
+
+                for(int i = 0; i < parameterNames.size(); i++)
+                    substitutions.put(parameterNames.get(i), arguments[i]);
+
+                return substitute(body, substitutions);
+            }
+
+            /**
+             * Produces a copy of the given equation component where references to the given variables are replaced with
+             * the equation components they're mapped to.
+             * @param component The equation component to copy.
+             * @param substitutions The equation components to substitute in, mapped against the names of the variables
+             *                      they replace.
+             * @return A copy of the given equation component with the given substitutions made.
+             */
+            static EquationComponent substitute(EquationComponent component,
+                                                Map<String, EquationComponent> substitutions)
+            {
+                if(component instanceof VariableReference)
+                {
+                    EquationComponent substitution = substitutions.get(((VariableReference)component).getName());
+                    return substitution == null ? component : substitution;
+                }
+
+                if(component instanceof Operation)
+                {
+                    Operation op = (Operation)component;
+                    List<EquationComponent> operands = op.getComponents();
+                    operands.replaceAll(x -> substitute(x, substitutions));
+                    return new Operation(operands, op.getAction());
+                }
+
+                if(component instanceof FunctionCall)
+                {
+                    FunctionCall call = (FunctionCall)component;
+                    EquationComponent[] args = call.getArguments().clone();
+
+                    for(int i = 0; i < args.length; i++)
+                        args[i] = substitute(args[i], substitutions);
+
+                    return new FunctionCall(call.getFunctionName(), args);
+                }
+
+                if(component instanceof Iteration)
+                {
+                    Iteration iteration = (Iteration)component;
+
+                    return new Iteration(iteration.getKind(),
+                                         iteration.getIndex(),
+                                         substitute(iteration.getFrom(), substitutions),
+                                         substitute(iteration.getTo(), substitutions),
+                                         substitute(iteration.getBody(), substitutions));
+                }
+
+                return component;
+            }
+        }
         //endregion
 
         //region constants
@@ -781,15 +1049,23 @@ public class Equation
 
         /**
          * Functions available to equations. The function that is called when the function is invoked in an equation,
-         * mapped against the name of the equation which may be used to invoke them.
+         * mapped against the name of the equation which may be used to invoke them. This is shared with this
+         * builder's {@link #parsingSnapshot}.
+         */
+        private final Map<String, ToDoubleFunction<double[]>> functions;
+
+        /**
+         * Functions available to equations that are defined as equations themselves, rather than as Java
+         * implementations. Calls to these are inlined into equations when they're parsed. The function definitions
+         * mapped against the names of the functions. This is shared with this builder's {@link #parsingSnapshot}.
          */
-        private final Map<String, ToDoubleFunction<double[]>> functions           = new HashMap<>();
+        private final Map<String, FunctionDefinition>         functionDefinitions;
 
         /**
          * Variables available to equations. The variable's value mapped against the name of the variable as it may be
-         * referred to as in an equation.
+         * referred to as in an equation. This is shared with this builder's {@link #parsingSnapshot}.
          */
-        private final Map<String, Double>                     variables           = new HashMap<>();
+        private final Map<String, Double>                     variables;
 
 
         /**
@@ -809,9 +1085,54 @@ public class Equation
 
         /**
          * Instances of {@link Equation} created by this builder not yet picked up by the garbage collector. This allows
-         * updates to be pushed to these objects.
+         * updates to be pushed to these objects. Access to this should be synchronised on this set.
          */
         private final Set<Equation> instances = Collections.newSetFromMap(new WeakHashMap<>());
+
+        /**
+         * An unchanging copy of this builder's operators and tokens, with its operator groups and tokeniser already
+         * built, against which equations are parsed. This is created when an equation needs to be built (if it isn't
+         * already), and is invalidated when a new operator or token is registered. Variables and functions are shared
+         * with this builder rather than copied, and so aren't part of the snapshot.
+         */
+        private volatile Builder parsingSnapshot = null;
+
+        /**
+         * The tokeniser used to tokenise equations parsed by this builder. This is only set on parsing snapshots, and is
+         * null otherwise.
+         */
+        private final Tokeniser tokeniser;
+
+        /**
+         * The number of times the names of the variables and functions available to this builder have changed, such
+         * that the same text may now be parsed differently. Changes to the values of existing variables aren't counted.
+         */
+        private final AtomicLong nameChangeCount = new AtomicLong();
+
+        /**
+         * Components already parsed from bracketed groups of tokens, against the text of the groups, to be reused
+         * rather than parsed again. This is only set on parsers created for a single incremental parse by
+         * {@link EditableEquation}, and is null otherwise.
+         */
+        private final Map<String, EquationComponent> reusableGroups;
+
+        /**
+         * The components parsed from bracketed groups of tokens during the incremental parse this parser was created
+         * for, against the text of the groups. This is only set where {@link #reusableGroups} is, and is null
+         * otherwise.
+         */
+        private final Map<String, EquationComponent> parsedGroups;
+
+        /**
+         * The cache equations built from text by this builder are loaded from and stored in, or null if they're always
+         * parsed. See {@link #withCache(EquationCache)}.
+         */
+        private volatile EquationCache cache = null;
+
+        /**
+         * The object upon which changes to this builder's operators and tokens should be locked.
+         */
+        private final Object syncLock = new Object();
         //endregion
 
         //region initialisation
@@ -833,6 +1154,13 @@ public class Equation
          */
         public Builder(boolean includeDefaults)
         {
+            this.functions = new ConcurrentHashMap<>();
+            this.functionDefinitions = new ConcurrentHashMap<>();
+            this.variables = new ConcurrentHashMap<>();
+            this.tokeniser = null;
+            this.reusableGroups = null;
+            this.parsedGroups = null;
+
             if(includeDefaults)
             {
                 addDefaultOperators();
@@ -840,6 +1168,50 @@ public class Equation
                 addDefaultVariables();
             }
         }
+
+        /**
+         * Creates a parsing snapshot of the given builder. The resulting builder has copies of the given builder's
+         * operators and tokens, with its operator groups and tokeniser already built, and shares the given builder's
+         * functions and function definitions.
+         * @param source The builder to create a snapshot of. This should be locked upon while this is called.
+         * @param variables The variables the snapshot should recognise. This is normally the given builder's own
+         *                  variables map, which is then shared with it.
+         */
+        private Builder(Builder source, Map<String, Double> variables)
+        { this(source, variables, null); }
+
+        /**
+         * Creates a parsing snapshot of the given builder, as in {@link #Builder(Builder, Map)}, that reuses the
+         * components of bracketed groups of tokens already parsed where the same groups are parsed again, and records
+         * the components of all bracketed groups it parses.
+         * @param source The builder to create a snapshot of. This should be locked upon while this is called.
+         * @param variables The variables the snapshot should recognise.
+         * @param reusableGroups Components already parsed from bracketed groups of tokens, against the text of the
+         *                       groups, or null to create a normal parsing snapshot that neither reuses nor records
+         *                       components.
+         */
+        Builder(Builder source, Map<String, Double> variables, Map<String, EquationComponent> reusableGroups)
+        {
+            this.functions = source.functions;
+            this.functionDefinitions = source.functionDefinitions;
+            this.variables = variables;
+            this.reusableGroups = reusableGroups;
+            this.parsedGroups = reusableGroups == null ? null : new HashMap<>();
+
+            possibleTokens.addAll(source.possibleTokens);
+            possibleTokensInOrder.clear();
+            possibleTokensInOrder.addAll(source.possibleTokensInOrder);
+            operatorTokens.addAll(source.operatorTokens);
+            infixOperatorTokens.addAll(source.infixOperatorTokens);
+            infixOperators.putAll(source.infixOperators);
+            prefixOperators.putAll(source.prefixOperators);
+            postfixOperators.putAll(source.postfixOperators);
+            buildOperatorGroups();
+
+            List<Token> possibleTokensInReverseOrder = new ArrayList<>(possibleTokensInOrder);
+            Collections.reverse(possibleTokensInReverseOrder);
+            this.tokeniser = new Tokeniser(possibleTokensInReverseOrder);
+        }
         //endregion
 
         //region methods
@@ -892,24 +1264,23 @@ public class Equation
         /**
          * Adds the default operators to this builder.
          */
-        @SuppressWarnings({"MagicNumber", "Convert2MethodRef"})
+        @SuppressWarnings("MagicNumber")
         // The magic numbers are the operator precedences, and here is as good a place to declare them as anywhere.
-        // Having the implementations be full-formed rather than method references makes more sense in this context.
         void addDefaultOperators()
         {
-            withOperator        ("-",             100,  (l, r)    -> l - r);
-            withOperator        ("+",             100,  (l, r)    -> l + r);
-            withOperator        ("/",             200,  (l, r)    -> l / r);
-            withOperator        ("÷",             200,  (l, r)    -> l / r);
-            withOperator        ("*",             200,  (l, r)    -> l * r);
-            withOperator        ("×",             200,  (l, r)    -> l * r);
-            withOperator        ("%",             300,  (l, r)    -> l % r);
-            withPrefixOperator  ("-",             500,  x         -> -x);
-            withPrefixOperator  ("+",             500,  x         -> +x);
-            withOperator        ("√",      false, 600,  (l, r)    -> Math.pow(r, 1.0 / l));
-            withPrefixOperator  ("√",             700,  x         -> Math.sqrt(x));
-            withOperator        ("^",      false, 800,  (l, r)    -> Math.pow(l, r));
-            withPostfixOperator ("%",             900,  x         -> x / 100);
+            withOperator        ("-",             100,  StandardOperatorActions.SUBTRACT);
+            withOperator        ("+",             100,  StandardOperatorActions.ADD);
+            withOperator        ("/",             200,  StandardOperatorActions.DIVIDE);
+            withOperator        ("÷",             200,  StandardOperatorActions.DIVIDE);
+            withOperator        ("*",             200,  StandardOperatorActions.MULTIPLY);
+            withOperator        ("×",             200,  StandardOperatorActions.MULTIPLY);
+            withOperator        ("%",             300,  StandardOperatorActions.MODULO);
+            withPrefixOperator  ("-",             500,  StandardOperatorActions.NEGATE);
+            withPrefixOperator  ("+",             500,  StandardOperatorActions.UNARY_PLUS);
+            withOperator        ("√",      false, 600,  StandardOperatorActions.ROOT);
+            withPrefixOperator  ("√",             700,  StandardOperatorActions.SQUARE_ROOT);
+            withOperator        ("^",      false, 800,  StandardOperatorActions.POWER);
+            withPostfixOperator ("%",             900,  StandardOperatorActions.PERCENT);
         }
 
         /**
@@ -965,68 +1336,28 @@ public class Equation
          */
         void addDefaultFunctions()
         {
-            withMonoFunction("cos",      Math::cos);
-            withMonoFunction("sin",      Math::sin);
-            withMonoFunction("tan",      Math::tan);
-            withMonoFunction("sqrt",     Math::sqrt);
-            withMonoFunction("cbrt",     Math::sqrt);
-            withMonoFunction("log",      Math::log);
-            withMonoFunction("log10",    Math::log10);
-
-            withMonoFunction("fib", n ->
-            {
-                double result = (Math.pow(PHI, n) - (Math.pow(-PHI, -n))) / (Math.sqrt(5));
-                return n % 1 == 0 ? Math.round(result) : result;
-            });
-
-            withMonoFunction("floor",    Math::floor);
-            withMonoFunction("ceiling",  Math::ceil);
-            withMonoFunction("ceil",     Math::ceil);
-            withMonoFunction("truncate", Double::intValue);
-            withMonoFunction("trunc",    Double::intValue);
-            withMonoFunction("round",    Math::round);
-
-            withFunction("min", 1, args ->
-            {
-                double min = args[0];
-
-                for(int i = 1; i < args.length; i++)
-                    if(args[i] < min)
-                        min = args[i];
-
-                return min;
-            });
-
-            withFunction("max", 1, args ->
-            {
-                double max = args[0];
-
-                for(int i = 1; i < args.length; i++)
-                    if(args[i] > max)
-                        max = args[i];
-
-                return max;
-            });
-
-            withFunction("avg", 1, args ->
-            {
-                double avg = args[0];
-
-                for(int i = 1; i < args.length; i++)
-                    avg += (args[i] - avg) / (i + 1);
-
-                return avg;
-            });
-
-            withFunction("median", 1, args ->
-            {
-                Arrays.sort(args);
-
-                if(args.length % 2 == 0)
-                    return (args[args.length / 2] + args[args.length / 2 - 1]) / 2;
-                else
-                    return args[args.length / 2];
-            });
+            withFunction("cos",      EquationFunctions.COS);
+            withFunction("sin",      EquationFunctions.SIN);
+            withFunction("tan",      EquationFunctions.TAN);
+            withFunction("sqrt",     EquationFunctions.SQRT);
+            withFunction("cbrt",     EquationFunctions.CBRT);
+            withFunction("log",      EquationFunctions.LOG);
+            withFunction("log10",    EquationFunctions.LOG10);
+            withFunction("fib",      EquationFunctions.FIB);
+            withFunction("floor",    EquationFunctions.FLOOR);
+            withFunction("ceiling",  EquationFunctions.CEIL.named("ceiling"));
+            withFunction("ceil",     EquationFunctions.CEIL);
+            withFunction("truncate", EquationFunctions.TRUNCATE);
+            withFunction("trunc",    EquationFunctions.TRUNCATE.named("trunc"));
+            withFunction("round",    EquationFunctions.ROUND);
+            withFunction("min",      EquationFunctions.MIN);
+            withFunction("max",      EquationFunctions.MAX);
+            withFunction("avg",      EquationFunctions.AVG);
+            withFunction("median",   EquationFunctions.MEDIAN);
+            withFunction("variance", EquationFunctions.VARIANCE);
+            withFunction("stddev",   EquationFunctions.STDDEV);
+            withFunction("sum",      EquationFunctions.SUM);
+            withFunction("prod",     EquationFunctions.PROD);
         }
 
         /**
@@ -1069,10 +1400,13 @@ public class Equation
          */
         void addOperator(PrefixOperator op)
         {
-            invalidateOperatorGroups();
-            Token popToken = op.getToken();
-            prefixOperators.put(popToken, op);
-            addOperatorToken(popToken);
+            synchronized(syncLock)
+            {
+                invalidateOperatorGroups();
+                Token popToken = op.getToken();
+                prefixOperators.put(popToken, op);
+                addOperatorToken(popToken);
+            }
         }
 
         /**
@@ -1081,10 +1415,13 @@ public class Equation
          */
         void addOperator(PostfixOperator op)
         {
-            invalidateOperatorGroups();
-            Token popToken = op.getToken();
-            postfixOperators.put(popToken, op);
-            addOperatorToken(popToken);
+            synchronized(syncLock)
+            {
+                invalidateOperatorGroups();
+                Token popToken = op.getToken();
+                postfixOperators.put(popToken, op);
+                addOperatorToken(popToken);
+            }
         }
 
         /**
@@ -1093,11 +1430,14 @@ public class Equation
          */
         void addOperator(InfixOperator op)
         {
-            invalidateOperatorGroups();
-            List<Token> iopTokens = op.getTokens();
-            infixOperators.put(iopTokens, op);
-            addOperatorTokens(iopTokens);
-            infixOperatorTokens.addAll(iopTokens);
+            synchronized(syncLock)
+            {
+                invalidateOperatorGroups();
+                List<Token> iopTokens = op.getTokens();
+                infixOperators.put(iopTokens, op);
+                addOperatorTokens(iopTokens);
+                infixOperatorTokens.addAll(iopTokens);
+            }
         }
 
         /**
@@ -1115,10 +1455,14 @@ public class Equation
          */
         void addOperatorToken(Token token)
         {
-            if(possibleTokens.add(token))
+            synchronized(syncLock)
             {
-                possibleTokensInOrder.add(token);
-                operatorTokens.add(token);
+                if(possibleTokens.add(token))
+                {
+                    invalidateOperatorGroups();
+                    possibleTokensInOrder.add(token);
+                    operatorTokens.add(token);
+                }
             }
         }
 
@@ -1139,12 +1483,16 @@ public class Equation
                                        // May not be weakened, order affects result
                                        List<? extends Token> tokens)
         {
-            for(Token token : tokens)
-                if(possibleTokens.add(token))
-                {
-                    possibleTokensInOrder.add(token);
-                    operatorTokens.add(token);
-                }
+            synchronized(syncLock)
+            {
+                for(Token token : tokens)
+                    if(possibleTokens.add(token))
+                    {
+                        invalidateOperatorGroups();
+                        possibleTokensInOrder.add(token);
+                        operatorTokens.add(token);
+                    }
+            }
         }
         //endregion
         //endregion
@@ -1203,7 +1551,9 @@ public class Equation
          */
         public Builder withVariable(String name, double value)
         {
-            variables.put(name, value);
+            if(variables.put(name, value) == null)
+                nameChangeCount.incrementAndGet();
+
             return this;
         }
 
@@ -1219,10 +1569,23 @@ public class Equation
          */
         public Builder pushVariable(String name, double value)
         {
-            variables.put(name, value);
+            synchronized(instances)
+            {
+                if(variables.put(name, value) == null)
+                    nameChangeCount.incrementAndGet();
+
+                for(Equation e : instances)
+                    synchronized(e.syncLock)
+                    {
+                        e.initialVariableValues.put(name, value);
+                        VariableSlot slot = e.variableSlots.get(name);
 
-            for(Equation e : instances)
-                e.initialVariableValues.put(name, value);
+                        if(slot == null)
+                            e.variableSlots.put(name, new VariableSlot(value));
+                        else
+                            slot.push(value);
+                    }
+            }
 
             return this;
         }
@@ -1254,7 +1617,16 @@ public class Equation
          *     <li>max</li>
          *     <li>avg</li>
          *     <li>median</li>
+         *     <li>variance</li>
+         *     <li>stddev</li>
+         *     <li>sum</li>
+         *     <li>prod</li>
          * </ul>
+         *
+         * <p>See {@link EquationFunctions} for the implementations of those that aren't in {@link Math}. "sum" and
+         * "prod" are called like any other function, as in "sum(xs)" or "sum(1, 2, 3)", except where they're given
+         * four arguments, the first of which is a name that isn't a variable, as in "sum(i, 1, n, i^2)". These are
+         * {@link Iteration iterations}.</p>
          * @return This
          */
         public Builder withDefaultFunctions()
@@ -1276,6 +1648,8 @@ public class Equation
         public Builder withFunction(String name, ToDoubleFunction<double[]> f)
         {
             functions.put(name, f);
+            functionDefinitions.remove(name);
+            nameChangeCount.incrementAndGet();
             return this;
         }
 
@@ -1352,6 +1726,99 @@ public class Equation
             });
         }
 
+        /**
+         * Defines a function for equations made by this builder, taking a single argument and looking it up in the
+         * given table. (Additional arguments are ignored if provided) The table's points aren't copied - every equation
+         * made by this builder, and by any other builder the table is registered with, shares them.
+         * @param name The name of the function.
+         * @param table The table to look arguments up in.
+         * @return This.
+         */
+        public Builder withLookupTable(String name, LookupTable table)
+        {
+            return withFunction(name, args ->
+            {
+                if(args.length < 1)
+                    throw new MissingFunctionArgumentsException(name, 1, args.length);
+
+                return table.get(args[0]);
+            });
+        }
+
+        /**
+         * <p>Defines a function for equations made by this builder, where the function is itself written as an
+         * equation. e.g. "hyp(a, b) = sqrt(a^2 + b^2)" defines a function "hyp" taking two arguments.</p>
+         *
+         * <p>The body of the function is parsed once, when it's defined, using the operators, functions, and variables
+         * available to this builder at that point, with the function's parameters available as variables. Calls to the
+         * function are then inlined into equations as they're built, with the arguments of the call substituted in for
+         * the function's parameters. Arguments used more than once in the function's body are evaluated each time
+         * they're used.</p>
+         *
+         * <p>As the body is parsed before the function is registered, functions defined this way may not call
+         * themselves.</p>
+         * @param signatureAndBody The function's name, followed by a comma-separated list of parameter names enclosed in
+         *                         (brackets), followed by "=", followed by the body of the function as an equation.
+         * @return This.
+         * @throws IllegalArgumentException If the given string is not of the form "name(parameters) = body", or lists
+         *                                  the same parameter more than once.
+         * @throws EquationParseException If the body of the function is not a valid equation.
+         */
+        public Builder withFunctionDefinition(String signatureAndBody)
+        {
+            int equalsIndex = signatureAndBody.indexOf('=');
+
+            if(equalsIndex < 0)
+                throw new IllegalArgumentException("Function definitions must be of the form \"name(parameters) = "
+                                                   + "body\": " + signatureAndBody);
+
+            String signature = signatureAndBody.substring(0, equalsIndex).trim();
+            String body = signatureAndBody.substring(equalsIndex + 1);
+            int openBracketIndex = signature.indexOf('(');
+
+            if(openBracketIndex <= 0 || !signature.endsWith(")"))
+                throw new IllegalArgumentException("Function definitions must be of the form \"name(parameters) = "
+                                                   + "body\": " + signatureAndBody);
+
+            String name = signature.substring(0, openBracketIndex).trim();
+            String parameterList = signature.substring(openBracketIndex + 1, signature.length() - 1).trim();
+            List<String> parameterNames = new ArrayList<>();
+
+            if(!parameterList.isEmpty())
+            {
+                for(String parameter : parameterList.split(",", -1))
+                {
+                    String parameterName = parameter.trim();
+
+                    if(parameterName.isEmpty())
+                        throw new IllegalArgumentException("Function definition has an empty parameter name: "
+                                                           + signatureAndBody);
+
+                    if(parameterNames.contains(parameterName))
+                        throw new IllegalArgumentException("Function definition lists the parameter \""
+                                                           + parameterName + "\" more than once: " + signatureAndBody);
+
+                    parameterNames.add(parameterName);
+                }
+            }
+
+            Map<String, Double> variablesInBody = new HashMap<>(variables);
+
+            for(String parameterName : parameterNames)
+                variablesInBody.put(parameterName, 0.0);
+
+            Builder parser;
+
+            synchronized(syncLock)
+            { parser = new Builder(this, variablesInBody); }
+
+            EquationComponent bodyComponent = parse(body, parser);
+            functionDefinitions.put(name, new FunctionDefinition(name, parameterNames, bodyComponent));
+            functions.remove(name);
+            nameChangeCount.incrementAndGet();
+            return this;
+        }
+
         /**
          * <p>Defines a function for equations made by this builder as in
          * {@link #withFunction(String, ToDoubleFunction)}, but also pushes this change to instances of {@link Equation}
@@ -1366,10 +1833,16 @@ public class Equation
          */
         public Builder pushFunction(String name, ToDoubleFunction<double[]> f)
         {
-            functions.put(name, f);
+            synchronized(instances)
+            {
+                functions.put(name, f);
+                functionDefinitions.remove(name);
+                nameChangeCount.incrementAndGet();
 
-            for(Equation e : instances)
-                e.initialFunctions.put(name, f);
+                for(Equation e : instances)
+                    synchronized(e.syncLock)
+                    { e.initialFunctions.put(name, f); }
+            }
 
             return this;
         }
@@ -2023,89 +2496,368 @@ public class Equation
         //region parsing
 
         /**
-         * Builds the given equation as a string, into an {@link Equation} object, which may then be evaluated.
-         * @param toParse The equation as a string.
-         * @return The equation representation of the given string.
+         * <p>Has equations built from text by this builder loaded from the given cache where they've been built before,
+         * rather than parsed, and stored in it otherwise. See {@link EquationCache}.</p>
+         *
+         * <p>Only {@link #build(String)} uses the cache. Equations are only loaded from it where they were stored by a
+         * builder with the same operators, tokens, and names of variables and functions as this one.</p>
+         * @param cache The cache to use, or null to always parse equations.
+         * @return This.
+         */
+        public Builder withCache(EquationCache cache)
+        {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Builds the given equation as a string, into an {@link Equation} object, which may then be evaluated.
+         * @param toParse The equation as a string.
+         * @return The equation representation of the given string.
          * @throws EquationParseException is the given string is not a valid equation.
+         * @throws java.io.UncheckedIOException If this builder {@link #withCache(EquationCache) has a cache}, and it
+         *                                      couldn't be read or written.
          */
         public Equation build(String toParse)
+        {
+            EquationCache cache = this.cache;
+            return build(cache == null ? parse(toParse) : cache.parse(this, toParse));
+        }
+
+        /**
+         * <p>Parses the given equation as a string for editing, such that edits to it may be parsed incrementally,
+         * reusing the results of parsing the parts of it not affected by each edit. See {@link EditableEquation}.</p>
+         *
+         * <p>Unlike {@link #build(String)}, this doesn't throw where the given string isn't a valid equation, as
+         * equations being edited are often temporarily invalid. The problem with the equation is available from the
+         * result instead.</p>
+         * @param toParse The equation as a string.
+         * @return The result of parsing the given string, which may be edited, and built into an {@link Equation}
+         *         where valid.
+         */
+        public EditableEquation buildEditable(String toParse)
+        { return new EditableEquation(this, toParse); }
+
+        /**
+         * Creates an {@link Equation} of the given already-parsed equation, registered with this builder as though it
+         * were built by {@link #build(String)}.
+         * @param topLevelComponent The top level component of the equation.
+         * @return A new equation of the given component.
+         */
+        Equation build(EquationComponent topLevelComponent)
+        {
+            Equation equation;
+
+            // Copying the variables and functions and registering the equation have to happen together, so that
+            // pushes made between the two aren't missed.
+            synchronized(instances)
+            {
+                equation = new Equation(this, topLevelComponent, new HashMap<>(variables), new HashMap<>(functions));
+                instances.add(equation);
+            }
+
+            return equation;
+        }
+
+        /**
+         * <p>Builds the given named equations as strings into an {@link EquationSystem}, which evaluates all of them
+         * together.</p>
+         *
+         * <p>The equations in the resulting system share the variables and functions available to this builder at the
+         * time of building. Updates later pushed by this builder are not reflected in the system.</p>
+         *
+         * <p>Equation systems don't support iterations, such as {@code sum(i, 1, n, i)}.</p>
+         * @param namedEquations The equations as strings, mapped against the names of the outputs they produce. The
+         *                       outputs of the system are in the iteration order of this map.
+         * @return An equation system producing the results of the given equations.
+         * @throws EquationParseException if any of the given strings is not a valid equation.
+         * @throws IllegalArgumentException if no equations are given, or any of the given equations contain iterations.
+         */
+        public EquationSystem buildSystem(Map<String, String> namedEquations)
+        {
+            if(namedEquations.isEmpty())
+                throw new IllegalArgumentException("Cannot build an equation system with no equations.");
+
+            Map<String, EquationComponent> components = new LinkedHashMap<>();
+
+            for(Map.Entry<String, String> e : namedEquations.entrySet())
+                components.put(e.getKey(), parse(e.getValue()));
+
+            return new EquationSystem(components, new HashMap<>(variables), new HashMap<>(functions));
+        }
+
+        /**
+         * Parses the given equation as a string into an equation component, against this builder's current parsing
+         * snapshot.
+         * @param toParse The equation as a string.
+         * @return The top level component of the given equation.
+         * @throws EquationParseException if the given string is not a valid equation.
+         */
+        EquationComponent parse(String toParse)
+        { return parse(toParse, getParsingSnapshot()); }
+
+        /**
+         * Parses the given equation as a string into an equation component, against the given parsing snapshot.
+         * @param toParse The equation as a string.
+         * @param parser The parsing snapshot to parse the equation against.
+         * @return The top level component of the given equation.
+         * @throws EquationParseException if the given string is not a valid equation.
+         */
+        static EquationComponent parse(String toParse, Builder parser)
         {
             if(toParse == null)
                 throw new IllegalArgumentException("Cannot parse a null string as an equation.");
 
-            if(toParse.isEmpty())
+            if(toParse.trim().isEmpty())
                 throw new IllegalArgumentException("Cannot parse an empty string as an equation.");
 
-            buildOperatorGroups();
-            List<Token> possibleTokensInReverseOrder = new ArrayList<>(this.possibleTokensInOrder);
-            Collections.reverse(possibleTokensInReverseOrder);
-            Tokeniser tokeniser = new Tokeniser(possibleTokensInReverseOrder);
-            TokenList tokenisation = tokeniser.tokenise(toParse).unmodifiable();
-            verifyTokenisationBrackets(tokenisation);
-            EquationComponent topLevelComponent;
+            TokenList tokenisation = parser.tokeniser.tokenise(toParse).unmodifiable();
+            parser.verifyTokenisationBrackets(tokenisation);
 
             try
-            { topLevelComponent = tryParse(tokenisation); }
+            { return parser.tryParse(tokenisation); }
             catch(EquationParseException e)
             { throw e.withFullEquation(tokenisation); }
+        }
 
+        /**
+         * Tokenises the given string, using this builder's tokeniser. This must be a parsing snapshot.
+         * @param toTokenise The string to tokenise.
+         * @return The tokenisation of the given string.
+         */
+        TokenList tokenise(String toTokenise)
+        { return tokeniser.tokenise(toTokenise).unmodifiable(); }
 
-            Equation equation = new Equation(this, topLevelComponent, new HashMap<>(variables), new HashMap<>(functions));
-            instances.add(equation);
-            return equation;
+        /**
+         * Gets the number of times the names of the variables and functions available to this builder have changed.
+         * Where this hasn't changed, and neither has the {@link #getParsingSnapshot() parsing snapshot}, the same text
+         * is parsed into the same components.
+         * @return The number of times the names of this builder's variables and functions have changed.
+         */
+        long getNameChangeCount()
+        { return nameChangeCount.get(); }
+
+        /**
+         * <p>Gets a fingerprint of everything about this builder that affects how text is parsed: its tokens in the
+         * order they were registered, its operators, and the names of its variables, functions, and function
+         * definitions, along with the bodies of those definitions.</p>
+         *
+         * <p>Builders with the same fingerprint parse the same text into equations with the same structure. The
+         * fingerprint is the same across runs, but isn't cached, so this should only be called where the
+         * {@link #getParsingSnapshot() parsing snapshot} or {@link #getNameChangeCount() name change count} has
+         * changed.</p>
+         * @return This builder's fingerprint, or null if a function definition's body uses an operator no longer
+         *         registered to this builder, such that it can't be fingerprinted.
+         */
+        Long getGrammarFingerprint()
+        {
+            synchronized(syncLock)
+            {
+                long result = EquationPrinter.hashText("grammar");
+
+                for(Token token : possibleTokensInOrder)
+                    result = EquationPrinter.combine(result, EquationPrinter.hashText(token.toString()));
+
+                // Operators, variables, and functions are combined independently of the order they're stored in.
+                long operatorsHash = 0;
+
+                for(Operator operator : getOperators())
+                {
+                    long operatorHash = EquationPrinter.combine(EquationPrinter.fixityOf(operator),
+                                                                Double.doubleToLongBits(operator.priority));
+
+                    if(operator instanceof InfixOperator)
+                        operatorHash = EquationPrinter.combine(operatorHash,
+                                                               ((InfixOperator)operator).isLeftAssociative ? 1 : 0);
+
+                    for(Token token : operator.tokens)
+                    {
+                        long tokenHash = EquationPrinter.hashText(token.toString());
+                        operatorHash = EquationPrinter.combine(operatorHash, tokenHash);
+                    }
+
+                    operatorsHash += EquationPrinter.combine(operatorHash, operator.tokens.size());
+                }
+
+                long namesHash = 0;
+
+                for(String variableName : variables.keySet())
+                    namesHash += EquationPrinter.combine(1, EquationPrinter.hashText(variableName));
+
+                for(Map.Entry<String, ToDoubleFunction<double[]>> e : functions.entrySet())
+                {
+                    // Standard reductions called with a single argument are parsed differently to other functions.
+                    boolean isStandardReduction = e.getValue() instanceof EquationFunctions.StandardFunction
+                                               && ((EquationFunctions.StandardFunction)e.getValue()).isReduction();
+
+                    namesHash += EquationPrinter.combine(isStandardReduction ? 3 : 2,
+                                                         EquationPrinter.hashText(e.getKey()));
+                }
+
+                EquationPrinter printer = new EquationPrinter(this);
+
+                for(FunctionDefinition definition : functionDefinitions.values())
+                {
+                    long definitionHash = EquationPrinter.combine(4, EquationPrinter.hashText(definition.getName()));
+
+                    for(String parameterName : definition.getParameterNames())
+                        definitionHash = EquationPrinter.combine(definitionHash,
+                                                                 EquationPrinter.hashText(parameterName));
+
+                    try
+                    { namesHash += EquationPrinter.combine(definitionHash, printer.hash(definition.getBody())); }
+                    catch(IllegalArgumentException e)
+                    { return null; }
+                }
+
+                return EquationPrinter.combine(EquationPrinter.combine(result, operatorsHash), namesHash);
+            }
         }
 
         /**
-         * Compiles this builder's operator priority groups from its operators.
+         * Gets whether the text between a pair of brackets is always tokenised the same way, whatever text surrounds
+         * the brackets. This is the case where no token other than the brackets themselves includes a bracket.
+         * @return True if the text between brackets is tokenised independently of the text around them. Otherwise,
+         *         false.
          */
-        void buildOperatorGroups()
+        boolean bracketsSeparateTokenisation()
         {
-            if(operatorGroups != null)
-                return;
+            synchronized(syncLock)
+            {
+                for(Token token : possibleTokens)
+                    if(!token.equals(Token.OPEN_BRACKET)
+                    && !token.equals(Token.CLOSE_BRACKET)
+                    && (token.text.contains(Token.OPEN_BRACKET.text) || token.text.contains(Token.CLOSE_BRACKET.text)))
+                        return false;
+
+                return true;
+            }
+        }
+
+        /**
+         * Creates a parser from this parsing snapshot for a single incremental parse, reusing the components of
+         * bracketed groups of tokens already parsed. See {@link #Builder(Builder, Map, Map)}.
+         * @param reusableGroups Components already parsed from bracketed groups of tokens, against the text of the
+         *                       groups.
+         * @return A new parser, recording the components of the bracketed groups it parses in
+         *         {@link #getParsedGroups()}.
+         */
+        Builder withReusableGroups(Map<String, EquationComponent> reusableGroups)
+        {
+            synchronized(syncLock)
+            { return new Builder(this, variables, reusableGroups); }
+        }
+
+        /**
+         * Gets the components of the bracketed groups of tokens parsed by this parser, against the text of the groups.
+         * This is only available on parsers created by {@link #withReusableGroups(Map)}.
+         * @return The components parsed from bracketed groups, or null if this parser doesn't record them.
+         */
+        Map<String, EquationComponent> getParsedGroups()
+        { return parsedGroups; }
+
+        /**
+         * Gets the parsing snapshot of this builder, creating it if it doesn't currently exist. The snapshot is an
+         * unchanging copy of this builder's operators and tokens, and can safely be used to parse equations while this
+         * builder is being updated.
+         * @return This builder's current parsing snapshot.
+         */
+        Builder getParsingSnapshot()
+        {
+            Builder snapshot = parsingSnapshot;
 
-            operatorGroups = new HashMap<>();
+            if(snapshot != null)
+                return snapshot;
 
-            for(Map.Entry<Token, PrefixOperator> e : prefixOperators.entrySet())
+            synchronized(syncLock)
             {
-                operatorGroups.computeIfAbsent(e.getValue().priority, x -> new OperatorPriorityGroup())
-                        .prefixOperators
-                        .put(e.getKey(), e.getValue());
+                if(parsingSnapshot == null)
+                    parsingSnapshot = new Builder(this, variables);
+
+                return parsingSnapshot;
             }
+        }
 
-            for(Map.Entry<Token, PostfixOperator> e : postfixOperators.entrySet())
+        /**
+         * Gets the operators registered to this builder.
+         * @return A new list of this builder's infix, prefix, and postfix operators, in no particular order.
+         */
+        List<Operator> getOperators()
+        {
+            synchronized(syncLock)
             {
-                operatorGroups.computeIfAbsent(e.getValue().priority, x -> new OperatorPriorityGroup())
-                        .postfixOperators
-                        .put(e.getKey(), e.getValue());
+                List<Operator> result = new ArrayList<>(infixOperators.values());
+                result.addAll(prefixOperators.values());
+                result.addAll(postfixOperators.values());
+                return result;
             }
+        }
 
-            for(Map.Entry<List<Token>, InfixOperator> e : infixOperators.entrySet())
+        /**
+         * Compiles this builder's operator priority groups from its operators.
+         */
+        void buildOperatorGroups()
+        {
+            synchronized(syncLock)
             {
-                if(e.getValue().isLeftAssociative)
-                    operatorGroups.computeIfAbsent(e.getValue().priority, x -> new OperatorPriorityGroup())
-                            .leftAssociativeInfixOperators
-                            .setAt(new TreePath<>(e.getValue().getTokens()), e.getValue());
-                else
-                    operatorGroups.computeIfAbsent(e.getValue().priority, x -> new OperatorPriorityGroup())
-                            .rightAssociativeInfixOperators
-                            .setAt(new TreePath<>(e.getValue().getTokens()), e.getValue());
-            }
+                if(operatorGroups != null)
+                    return;
+
+                Map<Double, OperatorPriorityGroup> groups = new HashMap<>();
+
+                for(Map.Entry<Token, PrefixOperator> e : prefixOperators.entrySet())
+                {
+                    groups.computeIfAbsent(e.getValue().priority, x -> new OperatorPriorityGroup())
+                          .prefixOperators
+                          .put(e.getKey(), e.getValue());
+                }
+
+                for(Map.Entry<Token, PostfixOperator> e : postfixOperators.entrySet())
+                {
+                    groups.computeIfAbsent(e.getValue().priority, x -> new OperatorPriorityGroup())
+                          .postfixOperators
+                          .put(e.getKey(), e.getValue());
+                }
+
+                for(Map.Entry<List<Token>, InfixOperator> e : infixOperators.entrySet())
+                {
+                    if(e.getValue().isLeftAssociative)
+                        groups.computeIfAbsent(e.getValue().priority, x -> new OperatorPriorityGroup())
+                              .leftAssociativeInfixOperators
+                              .setAt(new TreePath<>(e.getValue().getTokens()), e.getValue());
+                    else
+                        groups.computeIfAbsent(e.getValue().priority, x -> new OperatorPriorityGroup())
+                              .rightAssociativeInfixOperators
+                              .setAt(new TreePath<>(e.getValue().getTokens()), e.getValue());
+                }
 
-            operatorGroupsInOrder = operatorGroups.entrySet()
-                                                  .stream()
-                                                  .sorted(Map.Entry.comparingByKey())
-                                                  .map(Map.Entry::getValue)
-                                                  .collect(Collectors.toList());
+                for(OperatorPriorityGroup group : groups.values())
+                    group.leftAssociativeInfixOperatorsReversed
+                            = group.leftAssociativeInfixOperators.withReversedKeys();
+
+                operatorGroupsInOrder = groups.entrySet()
+                                              .stream()
+                                              .sorted(Map.Entry.comparingByKey())
+                                              .map(Map.Entry::getValue)
+                                              .collect(Collectors.toList());
+
+                operatorGroups = groups;
+            }
         }
 
         /**
-         * Invalidates this builder's currently built priority groups. This should be done when the builder is updated
-         * in a way that renders the previously built priority groups wrong, such as a new operator being added.
+         * Invalidates this builder's currently built priority groups and parsing snapshot. This should be done when the
+         * builder is updated in a way that renders the previously built priority groups wrong, such as a new operator
+         * being added.
          */
         void invalidateOperatorGroups()
         {
-            operatorGroups = null;
-            operatorGroupsInOrder = null;
+            synchronized(syncLock)
+            {
+                operatorGroups = null;
+                operatorGroupsInOrder = null;
+                parsingSnapshot = null;
+            }
         }
 
         /**
@@ -2116,7 +2868,7 @@ public class Equation
         {
             int bracketDepth = 0;
 
-            for(Token t : tokenisation.tokens)
+            for(Token t : tokenisation.toListOfTokens())
             {
                 if(t.equals(Token.OPEN_BRACKET))
                     bracketDepth++;
@@ -2132,12 +2884,37 @@ public class Equation
         }
 
         /**
-         * Attempts to parse a tokenlist into an equation component.
+         * Attempts to parse a tokenlist into an equation component. Where the same range of the same tokenisation has
+         * already been parsed by this parser, the component already parsed from it is returned. See
+         * {@link ParseMemo}.
          * @param tokenisation The tokenlist to parse.
          * @return The given tokenlist, compiled into an equation component.
          * @throws EquationParseException if the given tokenlist is not a valid equation.
          */
         EquationComponent tryParse(TokenList tokenisation)
+        {
+            if(tokenisation.isEmpty())
+                return tryParseUnmemoised(tokenisation);
+
+            ParseMemo memo = tokenisation.getParseMemo(this);
+            EquationComponent result = memo.getComponent(tokenisation);
+
+            if(result == null)
+            {
+                result = tryParseUnmemoised(tokenisation);
+                memo.putComponent(tokenisation, result);
+            }
+
+            return result;
+        }
+
+        /**
+         * Attempts to parse a tokenlist into an equation component, without checking whether it's already been parsed.
+         * @param tokenisation The tokenlist to parse.
+         * @return The given tokenlist, compiled into an equation component.
+         * @throws EquationParseException if the given tokenlist is not a valid equation.
+         */
+        EquationComponent tryParseUnmemoised(TokenList tokenisation)
         {
             if(startsWithNonPrefixOperator(tokenisation))
                 throw new LeadingNonPrefixOperatorException(tokenisation, tokenisation);
@@ -2146,15 +2923,38 @@ public class Equation
                 throw new TrailingNonPostfixOperatorException(tokenisation, tokenisation);
 
             if(tokenisation.isInBrackets())
-                return tryParse(tokenisation.withoutFirstAndLast());
+                return tryParseBracketedGroup(tokenisation);
 
             return nullCoalesce(() -> tryParseVariable(tokenisation),
-                                () -> tryParseFunctionCall(tokenisation),
+                                () -> tryParseIteration(tokenisation),
+                                () -> inlineIfDefined(tryParseFunctionCall(tokenisation)),
                                 () -> tryParseOperation(tokenisation),
                                 () -> tryParseNumber(tokenisation),
                                 () -> { throw new EquationParseException(tokenisation, tokenisation); });
         }
 
+        /**
+         * Parses a tokenlist enclosed in matching brackets, reusing the component already parsed from the same text
+         * where this parser was created for an incremental parse.
+         * @param tokenisation The tokenlist to parse, including the brackets enclosing it.
+         * @return The contents of the brackets, compiled into an equation component.
+         * @throws EquationParseException if the contents of the brackets are not a valid equation.
+         */
+        EquationComponent tryParseBracketedGroup(TokenList tokenisation)
+        {
+            if(parsedGroups == null)
+                return tryParse(tokenisation.withoutFirstAndLast());
+
+            String groupText = tokenisation.toString().trim();
+            EquationComponent result = reusableGroups.get(groupText);
+
+            if(result == null)
+                result = tryParse(tokenisation.withoutFirstAndLast());
+
+            parsedGroups.put(groupText, result);
+            return result;
+        }
+
         //region parsing utility functions
 
         /**
@@ -2220,6 +3020,73 @@ public class Equation
             return true;
         }
 
+        /**
+         * Checks whether or not the token at a given index in a given tokenlist can be an infix operator, as
+         * {@link #canBeInfixOperatorToken(List, int)} does, working out the run of operator tokens it's in only once
+         * per tokenisation. See {@link ParseMemo}.
+         * @param tokens The tokenlist to check in.
+         * @param tokenIndex The index of the token in the given tokenlist to check. This must be an operator token.
+         * @return True if the token at the given index in the tokenlist can theoretically be an infix operator.
+         *         Otherwise, false.
+         */
+        boolean canBeInfixOperatorToken(TokenList tokens, int tokenIndex)
+        {
+            ParseMemo memo = memoiseOpRun(tokens, tokenIndex);
+            int index = tokens.from + tokenIndex;
+
+            // Where the run extends to or past either end of the tokenlist, there's no operand on that side.
+            return memo.operatorRunStarts[index] > tokens.from
+                && memo.operatorRunEnds[index] < tokens.to
+                && memo.mayBeInfixInRun[index];
+        }
+
+        /**
+         * Works out the run of operator tokens in the whole tokenisation that the token at the given index is in, and
+         * which tokens in that run may be infix operators, recording them in the tokenisation's memo if they aren't
+         * already.
+         * @param tokens The tokenlist containing the token.
+         * @param tokenIndex The index of the token in the given tokenlist. This must be an operator token.
+         * @return The memo of the tokenlist's tokenisation for this parser, with the token's run recorded.
+         */
+        ParseMemo memoiseOpRun(TokenList tokens, int tokenIndex)
+        {
+            ParseMemo memo = tokens.getParseMemo(this);
+            int index = tokens.from + tokenIndex;
+
+            if(memo.operatorRunEnds[index] != 0)
+                return memo;
+
+            Token[] allTokens = tokens.tokens;
+            int start = index;
+            int end = index;
+
+            while(start > 0 && operatorTokens.contains(allTokens[start - 1]))
+                start--;
+
+            while(end < allTokens.length - 1 && operatorTokens.contains(allTokens[end + 1]))
+                end++;
+
+            boolean allBeforeMayBePostfix = true;
+
+            for(int i = start; i <= end; i++)
+            {
+                memo.operatorRunStarts[i] = start;
+                memo.operatorRunEnds[i] = end + 1;
+                memo.mayBeInfixInRun[i] = allBeforeMayBePostfix;
+                allBeforeMayBePostfix &= postfixOperators.containsKey(allTokens[i]);
+            }
+
+            boolean allAfterMayBePrefix = true;
+
+            for(int i = end; i >= start; i--)
+            {
+                memo.mayBeInfixInRun[i] &= allAfterMayBePrefix;
+                allAfterMayBePrefix &= prefixOperators.containsKey(allTokens[i]);
+            }
+
+            return memo;
+        }
+
         // idk, I'm bad at naming things.
 
         /**
@@ -2273,7 +3140,7 @@ public class Equation
          */
         VariableReference tryParseVariable(TokenList tokenList)
         {
-            String varName = tokenList.equationAsString.trim();
+            String varName = tokenList.toString().trim();
             Double variableValue = variables.get(varName);
             return variableValue == null ? null : new VariableReference(varName);
         }
@@ -2304,9 +3171,14 @@ public class Equation
 
             for(int i = 1; i <= lastIndexToCheck; i++)
             {
-                if(tokenList.get(i).equals(Token.OPEN_BRACKET))
+                if(tokenList.isOpenBracketAt(i))
                 {
-                    functionName = tokenList.subList(0, i).equationAsString.trim();
+                    // Where the first open bracket isn't closed by the last token, as in "f(x) + g(x)" or
+                    // "((x)) / (y)", the list as a whole isn't a function call.
+                    if(!tokenList.subList(i, tokenList.size()).isInBrackets())
+                        return null;
+
+                    functionName = tokenList.subList(0, i).toString().trim();
                     argListTokenList = tokenList.subList(i + 1, tokenList.size() - 1);
                     break;
                 }
@@ -2315,6 +3187,16 @@ public class Equation
             if(argListTokenList == null)
                 return null;
 
+            // Checked before the arguments are parsed, as where the list isn't a function call, they may not be valid
+            // on their own, as in "2 + sum(i, 1, n, i)", where "i" is only a variable within the iteration.
+            if(!functions.containsKey(functionName) && !functionDefinitions.containsKey(functionName))
+            {
+                if(tokenList.containsAnyOf(operatorTokens))
+                    return null;
+
+                throw new UnrecognisedFunctionException(functionName, tokenList, tokenList);
+            }
+
             EquationComponent[] arguments;
 
             if(argListTokenList.isEmpty())
@@ -2341,15 +3223,127 @@ public class Equation
                 }
             }
 
-            if(!functions.containsKey(functionName))
+            return new FunctionCall(functionName, arguments);
+        }
+
+        /**
+         * Replaces the given function call with the body of the function it calls, where the function called is
+         * defined as an equation.
+         * @param functionCall The function call to inline. May be null.
+         * @return Null if the given function call is null. The given function call if it calls a function that isn't
+         *         defined as an equation. Otherwise, the body of the called function with the function call's arguments
+         *         substituted in for its parameters.
+         */
+        EquationComponent inlineIfDefined(FunctionCall functionCall)
+        {
+            if(functionCall == null)
+                return null;
+
+            FunctionDefinition definition = functionDefinitions.get(functionCall.getFunctionName());
+            return definition == null ? functionCall : definition.inline(functionCall.getArguments());
+        }
+        //endregion
+
+        //region iteration parsing
+
+        /**
+         * <p>Checks to see if the given tokenlist is an iteration, as in "sum(i, 1, n, i^2)". See {@link Iteration}.</p>
+         *
+         * <p>Functions with the same name as an iteration take precedence over it, so equations written against
+         * builders that define their own "sum" or "prod" functions continue to call them. The exceptions are the
+         * {@link EquationFunctions#SUM standard} "sum" and "prod" functions provided by default. These are only parsed
+         * as iterations where they're given exactly four arguments, the first of which is a name that isn't a variable
+         * available to this builder, as in "sum(i, 1, n, i^2)". Otherwise, they're called as functions, as in
+         * "sum(xs)" or "sum(x, 1, 2, 3)".</p>
+         * @param tokenList The tokenlist to check.
+         * @return Null if the given tokenlist isn't an iteration. Otherwise, the iteration it represents.
+         * @throws MalformedIterationException Where the given tokenlist can only be an iteration, but doesn't have an
+         *                                     index name, bounds, and a body.
+         */
+        Iteration tryParseIteration(TokenList tokenList)
+        {
+            if(tokenList.size() < 3 || !tokenList.last().equals(Token.CLOSE_BRACKET))
+                return null;
+
+            int openBracketIndex = -1;
+
+            for(int i = 1; i < tokenList.size() - 1; i++)
             {
-                if(tokenList.containsAnyOf(operatorTokens))
+                if(tokenList.isOpenBracketAt(i))
+                {
+                    openBracketIndex = i;
+                    break;
+                }
+            }
+
+            if(openBracketIndex < 0)
+                return null;
+
+            TokenList nameTokenList = tokenList.subList(0, openBracketIndex);
+
+            if(nameTokenList.size() != 1 || !(nameTokenList.first() instanceof UntokenisedString))
+                return null;
+
+            String name = nameTokenList.toString().trim().replaceAll("\\s+", " ");
+            int kind = Iteration.kindNamed(name);
+
+            if(kind < 0 || functionDefinitions.containsKey(name))
+                return null;
+
+            ToDoubleFunction<double[]> function = functions.get(name);
+            boolean isStandardReduction = function instanceof EquationFunctions.StandardFunction
+                                       && ((EquationFunctions.StandardFunction)function).isReduction();
+
+            if(function != null && !isStandardReduction)
+                return null;
+
+            if(!tokenList.subList(openBracketIndex, tokenList.size()).isInBrackets())
+                return null;
+
+            TokenList argListTokenList = tokenList.subList(openBracketIndex + 1, tokenList.size() - 1);
+
+            if(argListTokenList.isEmpty())
+            {
+                if(isStandardReduction)
                     return null;
 
-                throw new UnrecognisedFunctionException(functionName, tokenList, tokenList);
+                throw new MalformedIterationException(tokenList, tokenList);
             }
 
-            return new FunctionCall(functionName, arguments);
+            List<TokenList> argTokenLists = argListTokenList.splitBy(Token.ARGUMENT_SEPARATOR);
+
+            TokenList indexTokenList = argTokenLists.get(0);
+            boolean hasIndexName = indexTokenList.size() == 1 && indexTokenList.first() instanceof UntokenisedString;
+            String indexName = hasIndexName ? indexTokenList.toString().trim() : null;
+
+            if(isStandardReduction
+               && (argTokenLists.size() != 4 || !hasIndexName || variables.containsKey(indexName)))
+                return null;
+
+            if(argTokenLists.size() != 4 || !hasIndexName)
+                throw new MalformedIterationException(tokenList, tokenList);
+
+            for(int i = 1; i < 4; i++)
+                if(argTokenLists.get(i).isEmpty())
+                    throw new EmptyFunctionArgumentException(tokenList, tokenList);
+
+            EquationComponent from = tryParse(argTokenLists.get(1));
+            EquationComponent to = tryParse(argTokenLists.get(2));
+
+            // The body is parsed once, with the index available as a variable, then references to that variable are
+            // replaced with the iteration's index. References to the same name in nested iterations' bodies have
+            // already been replaced with their own indices by this point, so they shadow this one.
+            Map<String, Double> variablesInBody = new HashMap<>(variables);
+            variablesInBody.put(indexName, 0.0);
+            Builder bodyParser;
+
+            synchronized(syncLock)
+            { bodyParser = new Builder(this, variablesInBody); }
+
+            IterationIndex index = new IterationIndex(indexName);
+            EquationComponent body = bodyParser.tryParse(argTokenLists.get(3));
+            body = FunctionDefinition.substitute(body, Collections.singletonMap(indexName, index));
+            return new Iteration(kind, index, from, to, body);
         }
         //endregion
 
@@ -2454,13 +3448,13 @@ public class Equation
 
                 Token itoken = of.get(i);
 
-                if(itoken.equals(Token.OPEN_BRACKET))
+                if(of.isOpenBracketAt(i))
                     bracketDepth++;
-                else if(itoken.equals(Token.CLOSE_BRACKET))
+                else if(of.isCloseBracketAt(i))
                     bracketDepth--;
                 else if(bracketDepth == 0
                      && infixOperatorTokens.contains(itoken)
-                     && canBeInfixOperatorToken(of.tokens, i))
+                     && canBeInfixOperatorToken(of, i))
                 {
                     if(opsBranch.hasItemsAtOrUnder(new TreePath<>(itoken)))
                     {
@@ -2510,8 +3504,8 @@ public class Equation
             if(opTree.isEmpty())
                 return null;
 
-            List<Integer> opTokenPoints
-                    = getInfixTokenPoints_leftAssociative(tokenList, opTree.withReversedKeys(), tokenList.size() - 1);
+            List<Integer> opTokenPoints = getInfixTokenPoints_leftAssociative(
+                    tokenList, opGroup.leftAssociativeInfixOperatorsReversed, tokenList.size() - 1);
 
             if(opTokenPoints == null)
                 return null;
@@ -2546,13 +3540,13 @@ public class Equation
 
                 Token itoken = of.get(i);
 
-                if(itoken.equals(Token.CLOSE_BRACKET))
+                if(of.isCloseBracketAt(i))
                     bracketDepth++;
-                else if(itoken.equals(Token.OPEN_BRACKET))
+                else if(of.isOpenBracketAt(i))
                     bracketDepth--;
                 else if(bracketDepth == 0
                      && infixOperatorTokens.contains(itoken)
-                     && canBeInfixOperatorToken(of.tokens, i))
+                     && canBeInfixOperatorToken(of, i))
                 {
                     if(opsBranch.hasItemsAtOrUnder(new TreePath<>(itoken)))
                     {
@@ -2604,8 +3598,12 @@ public class Equation
             int firstOpTokenPoint = potentiallyInnerOpTokenPoints.get(0);
             int lastOpTokenPoint = potentiallyInnerOpTokenPoints.get(potentiallyInnerOpTokenPoints.size() - 1);
 
-            int skipFromInclusive = getOpRun(tokenList.tokens, firstOpTokenPoint).getStartIndexInSource();
-            int skipToExclusive   = getOpRun(tokenList.tokens, lastOpTokenPoint).getEndIndexInSource() + 1;
+            // The runs of operator tokens containing the operator, limited to the tokenlist.
+            int from = tokenList.from;
+            int skipFromInclusive = Math.max(memoiseOpRun(tokenList, firstOpTokenPoint)
+                                                     .operatorRunStarts[from + firstOpTokenPoint], from) - from;
+            int skipToExclusive   = Math.min(memoiseOpRun(tokenList, lastOpTokenPoint)
+                                                     .operatorRunEnds[from + lastOpTokenPoint], tokenList.to) - from;
 
             // Don't need to check the same associativity of the same priority group, as in a nested arrangement of
             // infix operators of the same associativity and priority group, the outer infix operator will always be
@@ -2617,7 +3615,7 @@ public class Equation
 
                 List<Integer> possiblyEnclosingInfixOpPoints = getInfixTokenPoints_leftAssociative(
                         tokenList,
-                        opGroup.leftAssociativeInfixOperators.withReversedKeys(),
+                        opGroup.leftAssociativeInfixOperatorsReversed,
                         tokenList.size() - 1,
                         skipFromInclusive,
                         skipToExclusive);
@@ -2647,7 +3645,7 @@ public class Equation
 
                 possiblyEnclosingInfixOpPoints = getInfixTokenPoints_leftAssociative(
                         tokenList,
-                        opGroup.leftAssociativeInfixOperators.withReversedKeys(),
+                        opGroup.leftAssociativeInfixOperatorsReversed,
                         tokenList.size() - 1,
                         skipFromInclusive,
                         skipToExclusive);
@@ -2706,13 +3704,8 @@ public class Equation
          */
         LiteralNumber tryParseNumber(TokenList tokenList)
         {
-            try
-            {
-                double literalNumberValue = Double.parseDouble(tokenList.equationAsString.trim());
-                return new LiteralNumber(literalNumberValue);
-            }
-            catch(NumberFormatException e)
-            { return null; }
+            NumberToken asNumber = Tokeniser.tryScanNumber(tokenList.toString());
+            return asNumber == null ? null : new LiteralNumber(asNumber.getValue());
         }
         //endregion
         //endregion
@@ -2729,7 +3722,14 @@ public class Equation
     static final class Tokeniser
     {
         /**
-         * The defined tokens this tokeniser should look for, in the order it should look for them in.
+         * The powers of ten that are exactly representable as doubles, indexed by exponent.
+         */
+        private static final double[] POWERS_OF_TEN
+                = { 1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+                    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+        /**
+         * The defined tokens this tokeniser should look for, in the order it should look for them in.
          */
         private final List<? extends Token> tokens;
 
@@ -2777,15 +3777,15 @@ public class Equation
 
                     resultIterator.remove();
 
-                    for(Token subtoken : tokenSplit.tokens)
+                    for(Token subtoken : tokenSplit.toListOfTokens())
                         resultIterator.add(subtoken);
 
                     // First and last spacing should be ignored; should be 0 on both counts, as the spaces have
                     // already been accounted for and are in spacesBeforeTokens.
-                    int lastSpacingIndexToAdd = tokenSplit.spacings.size() - 2;
+                    int lastSpacingIndexToAdd = tokenSplit.size() - 1;
 
                     for(int i = 1; i <= lastSpacingIndexToAdd; i++)
-                        spacingsIterator.add(tokenSplit.spacings.get(i));
+                        spacingsIterator.add(tokenSplit.getSpacingSize(i));
                 }
             }
 
@@ -2860,16 +3860,181 @@ public class Equation
                 if(!(token instanceof UntokenisedString))
                     continue;
 
-                String tokenText = token.toString();
-                double asNumber;
+                NumberToken asNumber = tryScanNumber(token.toString());
+
+                if(asNumber != null)
+                    tokenIterator.set(asNumber);
+            }
+        }
+
+        /**
+         * <p>Interprets the given text as a number, where it's a valid number as accepted by
+         * {@link Double#parseDouble(String)}.</p>
+         *
+         * <p>This recognises numbers in a single pass over the text, without throwing and catching exceptions for text
+         * that isn't a number. Numbers with up to 15 significant digits and up to 22 digits after the decimal point,
+         * and no exponent, are computed directly, as a single exactly-rounded division. Other numbers are passed to
+         * {@link Double#parseDouble(String)} once known to be valid, so results are always the same as it would
+         * produce.</p>
+         * @param text The text to interpret as a number.
+         * @return A number token of the given text and the number it represents, or null if the text isn't a valid
+         *         number.
+         */
+        static NumberToken tryScanNumber(String text)
+        {
+            int start = 0;
+            int end = text.length();
+
+            // Double.parseDouble ignores leading and trailing whitespace, as defined by String.trim().
+            while(start < end && text.charAt(start) <= ' ')
+                start++;
+
+            while(end > start && text.charAt(end - 1) <= ' ')
+                end--;
+
+            if(start == end)
+                return null;
+
+            int i = start;
+            boolean negative = false;
+            char c = text.charAt(i);
+
+            if(c == '+' || c == '-')
+            {
+                negative = c == '-';
+
+                if(++i == end)
+                    return null;
+
+                c = text.charAt(i);
+            }
+
+            if(c == 'N')
+                return text.startsWith("NaN", i) && i + 3 == end ? new NumberToken(text, Double.NaN) : null;
+
+            if(c == 'I')
+            {
+                return text.startsWith("Infinity", i) && i + 8 == end
+                               ? new NumberToken(text, negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY)
+                               : null;
+            }
+
+            if(c == '0' && i + 1 < end && (text.charAt(i + 1) == 'x' || text.charAt(i + 1) == 'X'))
+                return scanHexNumberRemainder(text, i + 2, end) ? new NumberToken(text, Double.parseDouble(text)) : null;
+
+            long significand = 0;
+            int significantDigits = 0;
+            int digitsBeforePoint = 0;
+            int digitsAfterPoint = 0;
+
+            for(; i < end && (c = text.charAt(i)) >= '0' && c <= '9'; i++, digitsBeforePoint++)
+                if(significantDigits > 0 || c != '0')
+                {
+                    significantDigits++;
+                    significand = significand * 10 + (c - '0');
+                }
+
+            if(i < end && text.charAt(i) == '.')
+            {
+                for(i++; i < end && (c = text.charAt(i)) >= '0' && c <= '9'; i++, digitsAfterPoint++)
+                    if(significantDigits > 0 || c != '0')
+                    {
+                        significantDigits++;
+                        significand = significand * 10 + (c - '0');
+                    }
+            }
+
+            if(digitsBeforePoint == 0 && digitsAfterPoint == 0)
+                return null;
+
+            boolean hasExponent = false;
+
+            if(i < end && ((c = text.charAt(i)) == 'e' || c == 'E'))
+            {
+                hasExponent = true;
+                i = scanSignedDigits(text, i + 1, end);
+
+                if(i < 0)
+                    return null;
+            }
+
+            if(i < end && ((c = text.charAt(i)) == 'f' || c == 'F' || c == 'd' || c == 'D'))
+            {
+                // Float-suffixed numbers are still parsed as doubles by Double.parseDouble; leave them to it.
+                return i + 1 == end ? new NumberToken(text, Double.parseDouble(text)) : null;
+            }
+
+            if(i != end)
+                return null;
+
+            if(hasExponent || significantDigits > 15 || digitsAfterPoint > 22)
+                return new NumberToken(text, Double.parseDouble(text));
+
+            // Both the significand and the power of ten are exactly representable as doubles here, so a single
+            // division is correctly rounded, as Double.parseDouble is.
+            double value = digitsAfterPoint == 0 ? (double)significand
+                                                 : (double)significand / POWERS_OF_TEN[digitsAfterPoint];
+
+            return new NumberToken(text, negative ? -value : value);
+        }
+
+        /**
+         * Checks whether the given range of text, following a "0x" or "0X" prefix, is the rest of a valid hexadecimal
+         * floating-point number as accepted by {@link Double#parseDouble(String)}.
+         * @param text The text containing the number.
+         * @param start The index of the first character after the "0x" prefix.
+         * @param end The index after the last character of the number.
+         * @return True if the range of text completes a valid hexadecimal number. Otherwise, false.
+         */
+        static boolean scanHexNumberRemainder(String text, int start, int end)
+        {
+            int i = start;
+            int digits = 0;
+
+            for(; i < end && Character.digit(text.charAt(i), 16) >= 0 && text.charAt(i) < 128; i++)
+                digits++;
+
+            if(i < end && text.charAt(i) == '.')
+                for(i++; i < end && Character.digit(text.charAt(i), 16) >= 0 && text.charAt(i) < 128; i++)
+                    digits++;
+
+            if(digits == 0 || i == end || (text.charAt(i) != 'p' && text.charAt(i) != 'P'))
+                return false;
+
+            i = scanSignedDigits(text, i + 1, end);
 
-                try
-                { asNumber = Double.parseDouble(tokenText); }
-                catch(NumberFormatException e)
-                { continue; }
+            if(i < 0)
+                return false;
 
-                tokenIterator.set(new NumberToken(tokenText, asNumber));
+            if(i < end)
+            {
+                char c = text.charAt(i);
+                return i + 1 == end && (c == 'f' || c == 'F' || c == 'd' || c == 'D');
             }
+
+            return true;
+        }
+
+        /**
+         * Scans an optionally signed run of at least one decimal digit, as found in the exponent of a number.
+         * @param text The text containing the digits.
+         * @param start The index of the sign or first digit.
+         * @param end The index after the last character that may be scanned.
+         * @return The index after the last digit, or -1 if there were no digits.
+         */
+        static int scanSignedDigits(String text, int start, int end)
+        {
+            int i = start;
+
+            if(i < end && (text.charAt(i) == '+' || text.charAt(i) == '-'))
+                i++;
+
+            int firstDigit = i;
+
+            while(i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+                i++;
+
+            return i == firstDigit ? -1 : i;
         }
 
         /**
@@ -2902,28 +4067,104 @@ public class Equation
     }
 
     /**
-     * A pseudo-list containing tokens in order at specific indices. This retains the text representation of the tokens
-     * within for quick access, and the spacings (number of spaces) between each token.
+     * <p>A pseudo-list containing tokens in order at specific indices. This retains the text representation of the
+     * tokens within for quick access, and the spacings (number of spaces) between each token.</p>
+     *
+     * <p>Token lists are immutable views over a shared, array-backed tokenisation of a single string. Each token is
+     * stored with its start and end offsets into that string, along with what kind of token it is and, for brackets,
+     * the index of the bracket it's matched with. Sublists and splits are new views over the same arrays, so taking
+     * them doesn't copy tokens or text, and the text of a token list is only cut out of the original string when it's
+     * asked for.</p>
      */
     static final class TokenList
     {
+        //region constants
+        /**
+         * The kind of token that isn't any of the other kinds.
+         */
+        private static final byte KIND_OTHER = 0;
+
+        /**
+         * The kind of token that is an open bracket.
+         */
+        private static final byte KIND_OPEN_BRACKET = 1;
+
+        /**
+         * The kind of token that is a close bracket.
+         */
+        private static final byte KIND_CLOSE_BRACKET = 2;
+
+        /**
+         * An empty token list with no text.
+         */
+        private static final TokenList EMPTY
+                = new TokenList("", Collections.emptyList(), Collections.singletonList(0));
+        //endregion
+
         //region variables
         /**
-         * The string representation of this token list.
+         * The string the tokenisation this token list is a view of was made from.
+         */
+        private final String source;
+
+        /**
+         * All tokens of the tokenisation this token list is a view of. This is shared between all views of the same
+         * tokenisation, and is never modified.
+         */
+        private final Token[] tokens;
+
+        /**
+         * The offset in {@link #source} of the first character of each token in {@link #tokens}.
          */
-        private final String equationAsString;
+        private final int[] tokenStarts;
 
         /**
-         * The tokens in this token list.
+         * The offset in {@link #source} after the last character of each token in {@link #tokens}.
          */
-        private final List<Token> tokens;
+        private final int[] tokenEnds;
 
         /**
-         * The spacings between each token in this token list. Each integer stored is the number of spaces immediately
-         * before the token in {@link #tokens} at the same index. This list contains one more element than
-         * {@link #tokens}, where the final element is the number of trailing spaces.
+         * What kind of token each token in {@link #tokens} is. One of {@link #KIND_OTHER},
+         * {@link #KIND_OPEN_BRACKET}, or {@link #KIND_CLOSE_BRACKET}.
          */
-        private final List<Integer> spacings;
+        private final byte[] tokenKinds;
+
+        /**
+         * For each token in {@link #tokens} that is a bracket, the index of the bracket it's matched with, or -1 if
+         * it's not matched. For tokens that aren't brackets, -1.
+         */
+        private final int[] matchingBrackets;
+
+        /**
+         * The index in {@link #tokens} of the first token in this view.
+         */
+        private final int from;
+
+        /**
+         * The index in {@link #tokens} after the last token in this view.
+         */
+        private final int to;
+
+        /**
+         * The offset in {@link #source} where the text of this view starts, including any leading spaces.
+         */
+        private final int startOffset;
+
+        /**
+         * The offset in {@link #source} where the text of this view ends, including any trailing spaces.
+         */
+        private final int endOffset;
+
+        /**
+         * The text of this view, cut out of {@link #source} the first time it's asked for. Null until then.
+         */
+        private String text;
+
+        /**
+         * The memos of the parsers that have parsed this tokenisation, against the parsers. This is shared between all
+         * views of the same tokenisation. See {@link Builder.ParseMemo}.
+         */
+        private final Map<Builder, Builder.ParseMemo> parseMemos;
         //endregion
 
         //region initialisation
@@ -2936,9 +4177,76 @@ public class Equation
          */
         public TokenList(String equationAsString, List<Token> tokens, List<Integer> spacingList)
         {
-            this.equationAsString = equationAsString;
-            this.tokens = tokens;
-            this.spacings = spacingList;
+            int size = tokens.size();
+            this.source = equationAsString;
+            this.tokens = tokens.toArray(new Token[0]);
+            this.tokenStarts = new int[size];
+            this.tokenEnds = new int[size];
+            this.tokenKinds = new byte[size];
+            this.matchingBrackets = new int[size];
+            this.from = 0;
+            this.to = size;
+            this.startOffset = 0;
+            this.endOffset = equationAsString.length();
+            this.text = equationAsString;
+            this.parseMemos = new IdentityHashMap<>(2);
+
+            Iterator<Integer> spacingIterator = spacingList.iterator();
+            int[] openBrackets = new int[size];
+            int openBracketCount = 0;
+            int offset = 0;
+
+            for(int i = 0; i < size; i++)
+            {
+                Token token = this.tokens[i];
+                offset += spacingIterator.next();
+                tokenStarts[i] = offset;
+                offset += token.text.length();
+                tokenEnds[i] = offset;
+                matchingBrackets[i] = -1;
+
+                if(token.equals(Token.OPEN_BRACKET))
+                {
+                    tokenKinds[i] = KIND_OPEN_BRACKET;
+                    openBrackets[openBracketCount++] = i;
+                }
+                else if(token.equals(Token.CLOSE_BRACKET))
+                {
+                    tokenKinds[i] = KIND_CLOSE_BRACKET;
+
+                    if(openBracketCount > 0)
+                    {
+                        int openBracket = openBrackets[--openBracketCount];
+                        matchingBrackets[i] = openBracket;
+                        matchingBrackets[openBracket] = i;
+                    }
+                }
+                else
+                    tokenKinds[i] = KIND_OTHER;
+            }
+        }
+
+        /**
+         * Creates a new view over the same tokenisation as the given token list.
+         * @param source The token list whose tokenisation this should be a view of.
+         * @param from The index in the tokenisation of the first token in the view.
+         * @param to The index in the tokenisation after the last token in the view.
+         * @param startOffset The offset in the original string where the view's text starts.
+         * @param endOffset The offset in the original string where the view's text ends.
+         */
+        private TokenList(TokenList source, int from, int to, int startOffset, int endOffset)
+        {
+            this.source = source.source;
+            this.tokens = source.tokens;
+            this.tokenStarts = source.tokenStarts;
+            this.tokenEnds = source.tokenEnds;
+            this.tokenKinds = source.tokenKinds;
+            this.matchingBrackets = source.matchingBrackets;
+            this.from = from;
+            this.to = to;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.parseMemos = source.parseMemos;
         }
         //endregion
 
@@ -2949,14 +4257,14 @@ public class Equation
          * @return The number of tokens in this tokenlist.
          */
         public int size()
-        { return tokens.size(); }
+        { return to - from; }
 
         /**
          * Gets whether or not this token list is empty.
          * @return True if this token list has no tokens. Otherwise, false.
          */
         public boolean isEmpty()
-        { return tokens.isEmpty(); }
+        { return to == from; }
 
         /**
          * Gets whether or not this token list is enclosed in matching brackets.
@@ -2966,32 +4274,10 @@ public class Equation
         {
             // Assumes that this TokenList doesn't have any bracket mismatches.
 
-            if(tokens.isEmpty())
-                return false;
-
-            if(!tokens.get(0).equals(Token.OPEN_BRACKET))
-                return false;
-
-            if(!tokens.get(tokens.size() - 1).equals(Token.CLOSE_BRACKET))
+            if(to == from)
                 return false;
 
-            int maxToCheck = tokens.size() - 2;
-            int bracketDepth = 1;
-
-            for(int i = 1; i <= maxToCheck; i++)
-            {
-                Token itoken = tokens.get(i);
-
-                if(itoken.equals(Token.OPEN_BRACKET))
-                    bracketDepth++;
-                else if(itoken.equals(Token.CLOSE_BRACKET))
-                {
-                    if(--bracketDepth == 0)
-                        return false;
-                }
-            }
-
-            return true;
+            return tokenKinds[from] == KIND_OPEN_BRACKET && matchingBrackets[from] == to - 1;
         }
 
         /**
@@ -3002,10 +4288,10 @@ public class Equation
          */
         public boolean startsWith(Token t)
         {
-            if(tokens.isEmpty())
+            if(to == from)
                 return false;
 
-            return tokens.get(0).equals(t);
+            return tokens[from].equals(t);
         }
 
         /**
@@ -3016,10 +4302,10 @@ public class Equation
          */
         public boolean endsWith(Token t)
         {
-            if(tokens.isEmpty())
+            if(to == from)
                 return false;
 
-            return tokens.get(tokens.size() - 1).equals(t);
+            return tokens[to - 1].equals(t);
         }
 
         /**
@@ -3028,7 +4314,13 @@ public class Equation
          * @return True if any element in this token list is equal to the given token. Otherwise, false.
          */
         public boolean contains(Token t)
-        { return tokens.contains(t); }
+        {
+            for(int i = from; i < to; i++)
+                if(tokens[i].equals(t))
+                    return true;
+
+            return false;
+        }
 
         /**
          * Gets whether or not this token list contains any of the given tokens.
@@ -3038,8 +4330,8 @@ public class Equation
          */
         public boolean containsAnyOf(Collection<Token> ts)
         {
-            for(Token token : tokens)
-                if(ts.contains(token))
+            for(int i = from; i < to; i++)
+                if(ts.contains(tokens[i]))
                     return true;
 
             return false;
@@ -3056,7 +4348,7 @@ public class Equation
          *                                   size.
          */
         public Token get(int index)
-        { return tokens.get(index); }
+        { return tokens[from + Objects.checkIndex(index, to - from)]; }
 
         /**
          * Gets the first token in this token list.
@@ -3064,10 +4356,10 @@ public class Equation
          */
         public Token first()
         {
-            if(tokens.isEmpty())
+            if(to == from)
                 return null;
 
-            return tokens.get(0);
+            return tokens[from];
         }
 
         /**
@@ -3076,27 +4368,75 @@ public class Equation
          */
         public Token last()
         {
-            if(tokens.isEmpty())
+            if(to == from)
                 return null;
 
-            return tokens.get(tokens.size() - 1);
+            return tokens[to - 1];
+        }
+
+        /**
+         * Gets whether the token at the given index is an open bracket.
+         * @param index The index in this list of the token to check.
+         * @return True if the token at the given index is an open bracket. Otherwise, false.
+         */
+        boolean isOpenBracketAt(int index)
+        { return tokenKinds[from + index] == KIND_OPEN_BRACKET; }
+
+        /**
+         * Gets whether the token at the given index is a close bracket.
+         * @param index The index in this list of the token to check.
+         * @return True if the token at the given index is a close bracket. Otherwise, false.
+         */
+        boolean isCloseBracketAt(int index)
+        { return tokenKinds[from + index] == KIND_CLOSE_BRACKET; }
+
+        /**
+         * Gets the index of the bracket matched with the bracket at the given index.
+         * @param index The index in this list of the bracket.
+         * @return The index in this list of the matching bracket, or -1 if the token at the given index isn't a
+         *         bracket, or its matching bracket isn't in this list.
+         */
+        int getMatchingBracketIndex(int index)
+        {
+            int match = matchingBrackets[from + index];
+            return (match < from || match >= to) ? -1 : match - from;
         }
+
+        /**
+         * Gets the offset in the string this token list was tokenised from of the first character of a token.
+         * @param index The index in this list of the token.
+         * @return The offset of the token's first character.
+         */
+        int getStartOffsetOf(int index)
+        { return tokenStarts[from + index]; }
+
+        /**
+         * Gets the offset in the string this token list was tokenised from after the last character of a token.
+         * @param index The index in this list of the token.
+         * @return The offset after the token's last character.
+         */
+        int getEndOffsetOf(int index)
+        { return tokenEnds[from + index]; }
+
+        /**
+         * Gets the memo of the given parser's results for the tokenisation this token list is a view of, creating it if
+         * the parser hasn't parsed any of it yet. This must not be called on empty token lists, which may be shared
+         * between threads.
+         * @param parser The parser.
+         * @return The parser's memo for this tokenisation.
+         */
+        Builder.ParseMemo getParseMemo(Builder parser)
+        { return parseMemos.computeIfAbsent(parser, p -> new Builder.ParseMemo(tokens.length)); }
         //endregion
 
         //region get mutations
         /**
-         * Gets a view of this token list where the internal lists of tokens and spacings are explicitly marked as being
-         * unmodifiable. If this token list is updated, that will update the contents of the produced token list as
-         * well.
-         * @return A copy of this tokenlist object, where the internal lists of tokens and spacings are unmodifiable
-         * views of the ones in this tokenlist object.
+         * Gets a view of this token list that can't be modified. As token lists are immutable, this is the token list
+         * itself.
+         * @return This token list.
          */
         public TokenList unmodifiable()
-        {
-            List<Token> newTokens = Collections.unmodifiableList(tokens);
-            List<Integer> newSpacings = Collections.unmodifiableList(spacings);
-            return new TokenList(equationAsString, newTokens, newSpacings);
-        }
+        { return this; }
 
         //region sublists
         /**
@@ -3113,17 +4453,9 @@ public class Equation
                 throw new IllegalArgumentException("howMany < 0");
 
             if(size() < howMany)
-                return new TokenList("", Collections.emptyList(), Collections.singletonList(0));
-
-            List<Token> newTokens = tokens.subList(howMany, tokens.size());
-            List<Integer> newSpacings = spacings.subList(howMany, spacings.size());
-            int charsToDrop = 0;
-
-            for(int i = 0; i < howMany; i++)
-                charsToDrop += tokens.get(i).text.length() + spacings.get(i);
+                return EMPTY;
 
-            String newString = equationAsString.substring(charsToDrop);
-            return new TokenList(newString, newTokens, newSpacings);
+            return subList(howMany, size());
         }
 
         /**
@@ -3134,13 +4466,9 @@ public class Equation
         public TokenList withoutFirst()
         {
             if(size() == 0)
-                return new TokenList("", Collections.emptyList(), Collections.singletonList(0));
+                return EMPTY;
 
-            List<Token> newTokens = tokens.subList(1, tokens.size());
-            List<Integer> newSpacings = spacings.subList(1, spacings.size());
-            int charsToDrop = tokens.get(0).text.length() + spacings.get(0);
-            String newString = equationAsString.substring(charsToDrop);
-            return new TokenList(newString, newTokens, newSpacings);
+            return subList(1, size());
         }
 
         /**
@@ -3156,17 +4484,9 @@ public class Equation
                 throw new IllegalArgumentException("howMany < 0");
 
             if(size() < howMany)
-                return new TokenList("", Collections.emptyList(), Collections.singletonList(0));
+                return EMPTY;
 
-            List<Token> newTokens = tokens.subList(0, tokens.size() - howMany);
-            List<Integer> newSpacings = spacings.subList(0, spacings.size() - howMany);
-            int charsToDrop = 0;
-
-            for(int i = tokens.size() - 1; i >= tokens.size() - howMany; i--)
-                charsToDrop += tokens.get(i).text.length() + spacings.get(i + 1);
-
-            String newString = equationAsString.substring(0, equationAsString.length() - charsToDrop);
-            return new TokenList(newString, newTokens, newSpacings);
+            return subList(0, size() - howMany);
         }
 
         /**
@@ -3177,13 +4497,9 @@ public class Equation
         public TokenList withoutLast()
         {
             if(size() == 0)
-                return new TokenList("", Collections.emptyList(), Collections.singletonList(0));
+                return EMPTY;
 
-            List<Token> newTokens = tokens.subList(0, tokens.size() - 1);
-            List<Integer> newSpacings = spacings.subList(0, spacings.size() - 1);
-            int charsToDrop = tokens.get(tokens.size() - 1).text.length() + spacings.get(spacings.size() - 1);
-            String newString = equationAsString.substring(0, equationAsString.length() - charsToDrop);
-            return new TokenList(newString, newTokens, newSpacings);
+            return subList(0, size() - 1);
         }
 
         /**
@@ -3194,16 +4510,9 @@ public class Equation
         public TokenList withoutFirstAndLast()
         {
             if(size() <= 1)
-                return new TokenList("", Collections.emptyList(), Collections.singletonList(0));
+                return EMPTY;
 
-            List<Token> newTokens = tokens.subList(1, tokens.size() - 1);
-            List<Integer> newSpacings = spacings.subList(1, spacings.size() - 1);
-            int charsToDropFromStart = tokens.get(0).text.length() + spacings.get(0);
-            int charsToDropFromEnd = tokens.get(tokens.size() - 1).text.length() + spacings.get(spacings.size() - 1);
-            String newString = equationAsString.substring(charsToDropFromStart,
-                                                          equationAsString.length() - charsToDropFromEnd);
-
-            return new TokenList(newString, newTokens, newSpacings);
+            return subList(1, size() - 1);
         }
 
         /**
@@ -3227,23 +4536,14 @@ public class Equation
             if(fromInclusive > toExclusive)
                 throw new IllegalArgumentException("fromInclusive > toExclusive");
 
+            int newFrom = from + fromInclusive;
+            int newTo = from + toExclusive;
 
-            List<Token> newTokens = tokens.subList(fromInclusive, toExclusive);
-            List<Integer> newSpacings = spacings.subList(fromInclusive, toExclusive + 1);
-
-            int charsToDropFromStart = 0;
-            int charsToDropFromEnd = 0;
-
-            for(int i = 0; i < fromInclusive; i++)
-                charsToDropFromStart += spacings.get(i) + tokens.get(i).text.length();
-
-            for(int i = tokens.size() - 1; i >= toExclusive; i--)
-                charsToDropFromEnd += spacings.get(i + 1) + tokens.get(i).text.length();
-
-            String newString = equationAsString.substring(charsToDropFromStart,
-                                                          equationAsString.length() - charsToDropFromEnd);
-
-            return new TokenList(newString, newTokens, newSpacings);
+            // The sublist's text includes the spaces before its first token and after its last token, but not the
+            // tokens either side of it.
+            int newStartOffset = (fromInclusive == 0) ? startOffset : tokenEnds[newFrom - 1];
+            int newEndOffset = (newTo == to) ? endOffset : tokenStarts[newTo];
+            return new TokenList(this, newFrom, newTo, newStartOffset, newEndOffset);
         }
         //endregion
 
@@ -3280,15 +4580,15 @@ public class Equation
             int lastMatch = -1;
             int bracketDepth = 0;
 
-            for(int i = 0; i < tokens.size(); i++)
+            for(int i = 0; i < size(); i++)
             {
-                Token itoken = tokens.get(i);
+                byte kind = tokenKinds[from + i];
 
-                if(itoken.equals(Token.OPEN_BRACKET))
+                if(kind == KIND_OPEN_BRACKET)
                     bracketDepth++;
-                else if(itoken.equals(Token.CLOSE_BRACKET))
+                else if(kind == KIND_CLOSE_BRACKET)
                     bracketDepth--;
-                else if(bracketDepth == 0 && itoken.equals(t))
+                else if(bracketDepth == 0 && tokens[from + i].equals(t))
                 {
                     sublists.add(subList(lastMatch + 1, i));
                     lastMatch = i;
@@ -3329,15 +4629,15 @@ public class Equation
             int previousSplitIndex = -1;
             int bracketDepth = 0;
 
-            for(int i = 0; i < tokens.size(); i++)
+            for(int i = 0; i < size(); i++)
             {
-                Token itoken = tokens.get(i);
+                byte kind = tokenKinds[from + i];
 
-                if(itoken.equals(Token.OPEN_BRACKET))
+                if(kind == KIND_OPEN_BRACKET)
                     bracketDepth++;
-                else if(itoken.equals(Token.CLOSE_BRACKET))
+                else if(kind == KIND_CLOSE_BRACKET)
                     bracketDepth--;
-                else if(bracketDepth == 0 && itoken.equals(sequenceToken))
+                else if(bracketDepth == 0 && tokens[from + i].equals(sequenceToken))
                 {
                     result.add(subList(previousSplitIndex + 1, i));
                     previousSplitIndex = i;
@@ -3387,18 +4687,18 @@ public class Equation
             List<TokenList> result = new ArrayList<>();
             int sequenceIndex = sequence.size() - 1;
             Token sequenceToken = sequence.get(sequenceIndex);
-            int previousSplitIndex = tokens.size();
+            int previousSplitIndex = size();
             int bracketDepth = 0;
 
-            for(int i = tokens.size() - 1; i >= 0; i--)
+            for(int i = size() - 1; i >= 0; i--)
             {
-                Token itoken = tokens.get(i);
+                byte kind = tokenKinds[from + i];
 
-                if(itoken.equals(Token.CLOSE_BRACKET))
+                if(kind == KIND_CLOSE_BRACKET)
                     bracketDepth++;
-                else if(itoken.equals(Token.OPEN_BRACKET))
+                else if(kind == KIND_OPEN_BRACKET)
                     bracketDepth--;
-                else if(bracketDepth == 0 && itoken.equals(sequenceToken))
+                else if(bracketDepth == 0 && tokens[from + i].equals(sequenceToken))
                 {
                     result.add(subList(i + 1, previousSplitIndex));
                     previousSplitIndex = i;
@@ -3475,7 +4775,7 @@ public class Equation
          * @return A list of the tokens in this token list, retaining order.
          */
         public List<Token> toListOfTokens()
-        { return Collections.unmodifiableList(tokens); }
+        { return Collections.unmodifiableList(Arrays.asList(tokens).subList(from, to)); }
 
         /**
          * Gets a list of the number of spaces before each token in this token list, with one additional value at the
@@ -3484,7 +4784,33 @@ public class Equation
          *         spaces as an additional last value.
          */
         public List<Integer> toListOfSpacingSizes()
-        { return Collections.unmodifiableList(spacings); }
+        {
+            return new AbstractList<Integer>()
+            {
+                @Override
+                public Integer get(int index)
+                { return getSpacingSize(index); }
+
+                @Override
+                public int size()
+                { return to - from + 1; }
+            };
+        }
+
+        /**
+         * Gets the number of spaces before the token at the given index, or the number of trailing spaces if the given
+         * index is this token list's size.
+         * @param index The index of the token to get the number of spaces before.
+         * @return The number of spaces before the token at the given index, or the number of trailing spaces.
+         * @throws IndexOutOfBoundsException If the index is less than 0 or greater than this token list's size.
+         */
+        public int getSpacingSize(int index)
+        {
+            Objects.checkIndex(index, to - from + 1);
+            int spacingEnd = (from + index == to) ? endOffset : tokenStarts[from + index];
+            int spacingStart = (index == 0) ? startOffset : tokenEnds[from + index - 1];
+            return spacingEnd - spacingStart;
+        }
 
         /**
          * Gets the string representation of this token list. This is the tokens in this token list, each preceded by
@@ -3493,7 +4819,14 @@ public class Equation
          */
         @Override
         public String toString()
-        { return equationAsString; }
+        {
+            String result = text;
+
+            if(result == null)
+                text = result = source.substring(startOffset, endOffset);
+
+            return result;
+        }
         //endregion
         //endregion
     }
@@ -3704,7 +5037,12 @@ public class Equation
          * @param action The implementation of this operator.
          */
         public UnaryOperator(Token token, double priority, UnaryOperatorAction action)
-        { super(Collections.singletonList(token), priority, operands -> action.performOperation(operands[0])); }
+        {
+            super(Collections.singletonList(token),
+                  priority,
+                  action instanceof OperatorAction ? (OperatorAction)action
+                                                   : operands -> action.performOperation(operands[0]));
+        }
 
         /**
          * Gets the token affixed to an operand to invoke this operator.
@@ -3871,7 +5209,8 @@ public class Equation
             super(Collections.singletonList(token),
                   isLeftAssociative,
                   priority,
-                  operands -> action.performOperation(operands[0], operands[1]));
+                  action instanceof OperatorAction ? (OperatorAction)action
+                                                   : operands -> action.performOperation(operands[0], operands[1]));
         }
 
         /**
@@ -3928,7 +5267,7 @@ public class Equation
     /**
      * An evaluatable component of an equation, corresponding to a single step in the equation evaluation process.
      */
-    static abstract class EquationComponent
+    public static abstract class EquationComponent
     {
         /**
          * Evaluates this equation component.
@@ -3950,7 +5289,7 @@ public class Equation
      * it. The operands are other equation components to be evaluated to determine the actual values passed into this
      * operation.
      */
-    static final class Operation extends EquationComponent
+    public static final class Operation extends EquationComponent
     {
         /**
          * Whether or not this equation component references the equation
@@ -4057,7 +5396,7 @@ public class Equation
      * function arguments to be passed into it. The arguments are other equation components to be evaluated to determine
      * the actual values passed into this function call.
      */
-    static final class FunctionCall extends EquationComponent
+    public static final class FunctionCall extends EquationComponent
     {
         /**
          * Ths name of the function being called. This is used to look up the function implementation to run.
@@ -4089,12 +5428,10 @@ public class Equation
         { return functionName; }
 
         /**
-         * <p>Gets the unevaluated arguments to this function call.</p>
-         *
-         * <p>Note: This function exists purely for unit-testing purposes.</p>
+         * Gets the unevaluated arguments to this function call.
          * @return This function call's unevaluated arguments.
          */
-        EquationComponent[] getArguments()
+        public EquationComponent[] getArguments()
         { return arguments; }
 
         /**
@@ -4107,6 +5444,11 @@ public class Equation
         public double evaluate(Equation equationBeingEvaluated)
         {
             ToDoubleFunction<double[]> f = equationBeingEvaluated.functions.get(functionName);
+            ParallelArguments parallelArguments = equationBeingEvaluated.parallelArguments;
+            boolean[] forked = parallelArguments == null ? null : parallelArguments.forkedArgumentsOf(this);
+
+            if(forked != null)
+                return f.applyAsDouble(parallelArguments.evaluateArguments(arguments, forked, equationBeingEvaluated));
 
             double[] results = new double[arguments.length];
 
@@ -4122,140 +5464,811 @@ public class Equation
     }
 
     /**
-     * An equation component referencing a variable.
+     * <p>An equation component that evaluates a body once for each value of an index over a range, and combines the
+     * results. e.g. "sum(i, 1, n, i^2 * w)" is the sum of i^2 * w for each whole number i from 1 to n, inclusive.</p>
+     *
+     * <p>The index starts at the "from" bound, and goes up in steps of 1 while it's less than or equal to the "to"
+     * bound, so bounds needn't be whole numbers. The bounds are each evaluated once per evaluation of the iteration.
+     * Where the range is empty, the result is 0 for sums, 1 for products, and NaN for minimums and maximums. Where
+     * either bound is NaN, or the range is non-empty and either bound is infinite or the index would take
+     * {@link #MAX_COUNT} or more values, the result is NaN.</p>
+     *
+     * <p>The body is parsed once, with references to the index replaced by an {@link IterationIndex}, and is evaluated
+     * in place for each value of the index without any further lookups. Iterations can only be evaluated in the
+     * context of an {@link Equation}, which holds the current values of the indices of the iterations being
+     * evaluated in it.</p>
      */
-    static final class VariableReference extends EquationComponent
+    public static final class Iteration extends EquationComponent
     {
+        //region constants
         /**
-         * The name of the variable being referenced. This is used to look up the actual value.
+         * Kind of iteration that adds together the results of its body. Invoked in equations as "sum".
          */
-        private final String name;
+        public static final int SUM = 0;
 
         /**
-         * Creates a new variable reference from a given name.
-         * @param name The name of the variable this references.
+         * Kind of iteration that multiplies together the results of its body. Invoked in equations as "prod".
          */
-        public VariableReference(String name)
-        { this.name = name; }
+        public static final int PRODUCT = 1;
 
         /**
-         * Gets the name of the variable this is a reference to.
-         * @return The name of the variable.
+         * Kind of iteration that gets the least of the results of its body, as by {@link EquationFunctions#min}.
+         * Invoked in equations as "min over".
          */
-        public String getName()
-        { return name; }
+        public static final int MIN = 2;
 
         /**
-         * Gets the value of the variable this corresponds to and returns it as a double.
-         * @param equationBeingEvaluated The equation this equation component is being evaluated in the context of.
-         * @return The current value of the variable this corresponds to, as a double.
+         * Kind of iteration that gets the greatest of the results of its body, as by {@link EquationFunctions#max}.
+         * Invoked in equations as "max over".
          */
-        @Override
-        public double evaluate(Equation equationBeingEvaluated)
-        { return equationBeingEvaluated.variableValues.get(name); }
+        public static final int MAX = 3;
 
-        @Override
-        public boolean referencesEquation()
-        { return true; }
-    }
+        /**
+         * The number of values an index may take, (2<sup>63</sup>) at or above which an iteration's range is treated
+         * as unbounded. The number of values taken below this can be counted with a long.
+         */
+        public static final double MAX_COUNT = 0x1p63;
+        //endregion
 
-    /**
-     * An equation components referencing a fixed number.
-     */
-    final static class LiteralNumber extends EquationComponent
-    {
+        //region variables
         /**
-         * The number this references.
+         * The kind of iteration this is. One of {@link #SUM}, {@link #PRODUCT}, {@link #MIN}, or {@link #MAX}.
          */
-        private final double value;
+        private final int kind;
 
         /**
-         * Creates a new literal number referencing a given number.
-         * @param value The number to reference.
+         * The index of this iteration, as referenced in its body.
          */
-        public LiteralNumber(double value)
-        { this.value = value; }
+        private final IterationIndex index;
 
         /**
-         * Gets the literal number this represents.
-         * @return The number this represents.
+         * The first value of the index.
          */
-        public double getValue()
-        { return value; }
+        private final EquationComponent from;
 
         /**
-         * Gets the number this references.
-         * @param equationBeingEvaluated The equation this equation component is being evaluated in the context of.
-         * @return The number this references.
+         * The greatest value the index may take.
          */
-        @Override
-        public double evaluate(Equation equationBeingEvaluated)
-        { return value; }
+        private final EquationComponent to;
 
-        @Override
+        /**
+         * The component evaluated for each value of the index.
+         */
+        private final EquationComponent body;
+        //endregion
+
+        //region initialisation
+        /**
+         * Creates a new iteration.
+         * @param kind The kind of iteration. One of {@link #SUM}, {@link #PRODUCT}, {@link #MIN}, or {@link #MAX}.
+         * @param index The index of the iteration, as referenced in its body.
+         * @param from The first value of the index.
+         * @param to The greatest value the index may take.
+         * @param body The component to evaluate for each value of the index.
+         * @throws IllegalArgumentException If the given kind isn't a kind of iteration.
+         */
+        public Iteration(int kind,
+                         IterationIndex index,
+                         EquationComponent from,
+                         EquationComponent to,
+                         EquationComponent body)
+        {
+            if(kind < SUM || kind > MAX)
+                throw new IllegalArgumentException("Not a kind of iteration: " + kind);
+
+            this.kind = kind;
+            this.index = index;
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+        //endregion
+
+        //region methods
+        /**
+         * Gets the kind of iteration the given name invokes in equations.
+         * @param name The name, with any whitespace within it collapsed to single spaces.
+         * @return The kind of iteration the given name invokes, or -1 if it doesn't invoke one.
+         */
+        static int kindNamed(String name)
+        {
+            switch(name)
+            {
+                case "sum":      return SUM;
+                case "prod":     return PRODUCT;
+                case "min over": return MIN;
+                case "max over": return MAX;
+                default:         return -1;
+            }
+        }
+
+        /**
+         * Gets the kind of iteration this is.
+         * @return One of {@link #SUM}, {@link #PRODUCT}, {@link #MIN}, or {@link #MAX}.
+         */
+        public int getKind()
+        { return kind; }
+
+        /**
+         * Gets the index of this iteration, as referenced in its body.
+         * @return This iteration's index.
+         */
+        public IterationIndex getIndex()
+        { return index; }
+
+        /**
+         * Gets the unevaluated first value of this iteration's index.
+         * @return The lower bound of this iteration.
+         */
+        public EquationComponent getFrom()
+        { return from; }
+
+        /**
+         * Gets the unevaluated greatest value this iteration's index may take.
+         * @return The upper bound of this iteration.
+         */
+        public EquationComponent getTo()
+        { return to; }
+
+        /**
+         * Gets the component this iteration evaluates for each value of its index.
+         * @return This iteration's body.
+         */
+        public EquationComponent getBody()
+        { return body; }
+
+        /**
+         * Gets the number of times an iteration's body is evaluated, given its bounds.
+         * @param first The first value of the index.
+         * @param last The greatest value the index may take.
+         * @return The number of values the index takes. This is 0 where the iteration's result doesn't depend on its
+         *         body, as where either bound is NaN, the range is empty, or the range is unbounded.
+         */
+        static long countOf(double first, double last)
+        {
+            if(Double.isNaN(first) || Double.isNaN(last) || last < first)
+                return 0;
+
+            double span = Math.floor(last - first);
+
+            if(Double.isInfinite(first) || Double.isInfinite(last) || span + 1 >= MAX_COUNT)
+                return 0;
+
+            return (long)span + 1;
+        }
+
+        /**
+         * Evaluates this iteration's body for each value of its index, and combines the results.
+         * @param equationBeingEvaluated The equation this equation component is being evaluated in the context of.
+         * @return The combined results of this iteration's body.
+         */
+        @Override
+        public double evaluate(Equation equationBeingEvaluated)
+        {
+            double first = from.evaluate(equationBeingEvaluated);
+            double last = to.evaluate(equationBeingEvaluated);
+
+            if(Double.isNaN(first) || Double.isNaN(last))
+                return Double.NaN;
+
+            if(last < first)
+                return kind == SUM ? 0 : kind == PRODUCT ? 1 : Double.NaN;
+
+            double span = Math.floor(last - first);
+
+            if(Double.isInfinite(first) || Double.isInfinite(last) || span + 1 >= MAX_COUNT)
+                return Double.NaN;
+
+            // The index is calculated from a count rather than accumulated, so it doesn't drift, and so ranges with
+            // bounds too large for adding 1 to change them still end.
+            long count = (long)span + 1;
+
+            if(equationBeingEvaluated.evaluationBudget != null)
+                equationBeingEvaluated.evaluationBudget.chargeIteration(this, count);
+
+            int frame = equationBeingEvaluated.pushIterationIndex(index, first);
+
+            try
+            {
+                double result = body.evaluate(equationBeingEvaluated);
+
+                for(long i = 1; i < count; i++)
+                {
+                    equationBeingEvaluated.iterationIndexValues[frame] = first + i;
+                    double value = body.evaluate(equationBeingEvaluated);
+
+                    switch(kind)
+                    {
+                        case SUM:     result += value; break;
+                        case PRODUCT: result *= value; break;
+                        case MIN:     if(value < result) result = value; break;
+                        default:      if(value > result) result = value; break;
+                    }
+                }
+
+                return result;
+            }
+            finally
+            { equationBeingEvaluated.popIterationIndex(); }
+        }
+
+        @Override
+        public boolean referencesEquation()
+        { return true; }
+        //endregion
+    }
+
+    /**
+     * An equation component referencing the index of an {@link Iteration}. This may only be evaluated within the body
+     * of the iteration it's the index of, where it evaluates to the index's current value. Components are compared by
+     * identity to find the iteration they belong to, so each iteration has its own.
+     */
+    public static final class IterationIndex extends EquationComponent
+    {
+        /**
+         * The name the index is referenced by in the body of its iteration.
+         */
+        private final String name;
+
+        /**
+         * Creates a new iteration index.
+         * @param name The name the index is referenced by in the body of its iteration.
+         */
+        public IterationIndex(String name)
+        { this.name = name; }
+
+        /**
+         * Gets the name this index is referenced by in the body of its iteration.
+         * @return The name of the index.
+         */
+        public String getName()
+        { return name; }
+
+        /**
+         * Gets the current value of this index, in the innermost evaluation of its iteration in the given equation.
+         * @param equationBeingEvaluated The equation this equation component is being evaluated in the context of.
+         * @return The current value of this index.
+         * @throws IllegalStateException If this index's iteration isn't currently being evaluated in the given
+         *                               equation.
+         */
+        @Override
+        public double evaluate(Equation equationBeingEvaluated)
+        { return equationBeingEvaluated.getIterationIndexValue(this); }
+
+        @Override
+        public boolean referencesEquation()
+        { return true; }
+    }
+
+    /**
+     * An equation component referencing a variable.
+     */
+    public static final class VariableReference extends EquationComponent
+    {
+        /**
+         * The name of the variable being referenced. This is used to look up the actual value.
+         */
+        private final String name;
+
+        /**
+         * Creates a new variable reference from a given name.
+         * @param name The name of the variable this references.
+         */
+        public VariableReference(String name)
+        { this.name = name; }
+
+        /**
+         * Gets the name of the variable this is a reference to.
+         * @return The name of the variable.
+         */
+        public String getName()
+        { return name; }
+
+        /**
+         * Gets the value of the variable this corresponds to and returns it as a double.
+         * @param equationBeingEvaluated The equation this equation component is being evaluated in the context of.
+         * @return The current value of the variable this corresponds to, as a double.
+         */
+        @Override
+        public double evaluate(Equation equationBeingEvaluated)
+        { return equationBeingEvaluated.variableSlots.get(name).value; }
+
+        @Override
+        public boolean referencesEquation()
+        { return true; }
+    }
+
+    /**
+     * An equation components referencing a fixed number.
+     */
+    public static final class LiteralNumber extends EquationComponent
+    {
+        /**
+         * The number this references.
+         */
+        private final double value;
+
+        /**
+         * Creates a new literal number referencing a given number.
+         * @param value The number to reference.
+         */
+        public LiteralNumber(double value)
+        { this.value = value; }
+
+        /**
+         * Gets the literal number this represents.
+         * @return The number this represents.
+         */
+        public double getValue()
+        { return value; }
+
+        /**
+         * Gets the number this references.
+         * @param equationBeingEvaluated The equation this equation component is being evaluated in the context of.
+         * @return The number this references.
+         */
+        @Override
+        public double evaluate(Equation equationBeingEvaluated)
+        { return value; }
+
+        @Override
         public boolean referencesEquation()
         { return false; }
     }
     //endregion
 
-    //region actions
-    /**
-     * An implementation of an operator, given any number of operands.
-     */
-    @FunctionalInterface
-    public interface OperatorAction
-    {
+    //region variable slots
+    /**
+     * <p>The current value of a single variable in a single equation.</p>
+     *
+     * <p>Every variable available to an equation has exactly one slot for as long as the equation exists, so
+     * {@link VariableHandle variable handles} may hold onto them. The value and whether it's been overwritten are only
+     * ever written together, through this slot's synchronized methods, so that a value pushed by a builder can't
+     * replace one set at the same time through a handle. They're read without locking, so they're volatile.</p>
+     *
+     * <p>Slots belonging to a {@link VariableScope} are shared by every equation bound to that scope. These are always
+     * considered to be overwritten, so values pushed by builders don't replace them, and can't be reverted.</p>
+     */
+    static final class VariableSlot
+    {
+        /**
+         * The current value of the variable.
+         */
+        volatile double value;
+
+        /**
+         * Whether the variable has been redefined on the equation, rather than having the value provided by the
+         * equation's builder.
+         */
+        volatile boolean isOverwritten;
+
+        /**
+         * Whether this slot belongs to a variable scope, rather than to a single equation.
+         */
+        final boolean isScoped;
+
+        /**
+         * Creates a new slot for a variable that hasn't been redefined on its equation.
+         * @param value The value of the variable.
+         */
+        VariableSlot(double value)
+        { this(value, false); }
+
+        /**
+         * Creates a new slot.
+         * @param value The value of the variable.
+         * @param isScoped Whether the slot belongs to a variable scope. Scoped slots are always overwritten.
+         */
+        VariableSlot(double value, boolean isScoped)
+        {
+            this.value = value;
+            this.isOverwritten = isScoped;
+            this.isScoped = isScoped;
+        }
+
+        /**
+         * Creates a new slot, belonging to a single equation, with the same value as another.
+         * @param source The slot to copy.
+         */
+        VariableSlot(VariableSlot source)
+        {
+            this.value = source.value;
+            this.isOverwritten = source.isOverwritten;
+            this.isScoped = false;
+        }
+
+        /**
+         * Redefines the variable's value, so that values pushed by the equation's builder no longer replace it.
+         * @param newValue The new value of the variable.
+         */
+        synchronized void set(double newValue)
+        {
+            isOverwritten = true;
+            value = newValue;
+        }
+
+        /**
+         * Sets the variable's value as provided by the equation's builder, unless it's been redefined on the equation.
+         * @param newValue The value provided by the builder.
+         */
+        synchronized void push(double newValue)
+        {
+            if(!isOverwritten)
+                value = newValue;
+        }
+
+        /**
+         * Reverts the variable to the value provided by the equation's builder, where it's been redefined on the
+         * equation and doesn't belong to a variable scope.
+         * @param initialValue The value provided by the builder.
+         */
+        synchronized void revert(double initialValue)
+        {
+            if(!isOverwritten || isScoped)
+                return;
+
+            isOverwritten = false;
+            value = initialValue;
+        }
+    }
+
+    /**
+     * <p>A pre-resolved reference to a variable in a specific equation, allowing the variable to be read and reässigned
+     * without looking it up by name. Obtained from {@link Equation#variableHandle(String)}.</p>
+     *
+     * <p>Setting a variable through a handle is equivalent to {@link Equation#setVariable(String, double)}, but doesn't
+     * lock the equation or box the value - it writes straight into the variable's slot. A handle remains valid for as
+     * long as its equation exists, including after the variable is reverted with
+     * {@link Equation#revertVariable(String)}, or a new value for it is pushed by the equation's builder.</p>
+     *
+     * <p>Setting a variable through a handle only locks the variable's slot, and only for as long as it takes to write
+     * it, so it's atomic with respect to values pushed by the builder and to reverting the variable. As handles don't
+     * lock the equation, a value set through a handle while the equation is being evaluated on another thread may or
+     * may not be seen by that evaluation.</p>
+     */
+    public static final class VariableHandle
+    {
+        /**
+         * The name of the variable this is a handle to.
+         */
+        private final String name;
+
+        /**
+         * The slot holding the variable's value.
+         */
+        private final VariableSlot slot;
+
+        /**
+         * Creates a new handle to a variable.
+         * @param name The name of the variable.
+         * @param slot The slot holding the variable's value.
+         */
+        VariableHandle(String name, VariableSlot slot)
+        {
+            this.name = name;
+            this.slot = slot;
+        }
+
+        /**
+         * Gets the name of the variable this is a handle to.
+         * @return The name of the variable.
+         */
+        public String getName()
+        { return name; }
+
+        /**
+         * Gets the current value of the variable.
+         * @return The variable's current value in the equation this handle was obtained from.
+         */
+        public double get()
+        { return slot.value; }
+
+        /**
+         * Reässigns the value of the variable, in the equation this handle was obtained from.
+         * @param newValue The value to assign to the variable.
+         */
+        public void set(double newValue)
+        { slot.set(newValue); }
+    }
+
+    /**
+     * <p>A live view of the values of an equation's variables, as a map of variable names to values. Backs the
+     * deprecated {@link #variableValues} and {@link #overwrittenVariableValues} maps.</p>
+     *
+     * <p>Putting a value into the view is equivalent to {@link #setVariable(String, double)}, and removing one from a
+     * view of only the overwritten variables is equivalent to {@link #revertVariable(String)}. Iterating over the view
+     * iterates over a snapshot of it.</p>
+     */
+    private final class VariableValuesView extends AbstractMap<String, Double>
+    {
+        /**
+         * Whether this view only contains the variables that have been redefined on the equation.
+         */
+        private final boolean overwrittenOnly;
+
+        /**
+         * Creates a new view of the equation's variable values.
+         * @param overwrittenOnly Whether the view should only contain the variables that have been redefined on the
+         *                        equation.
+         */
+        VariableValuesView(boolean overwrittenOnly)
+        { this.overwrittenOnly = overwrittenOnly; }
+
+        /**
+         * Gets the slot of the given variable, where it's in this view.
+         * @param name The name of the variable.
+         * @return The variable's slot, or null if this view doesn't contain it.
+         */
+        private VariableSlot getSlot(Object name)
+        {
+            VariableSlot slot;
+
+            synchronized(syncLock)
+            { slot = variableSlots.get(name); }
+
+            return (slot == null || (overwrittenOnly && !slot.isOverwritten)) ? null : slot;
+        }
+
+        @Override
+        public Double get(Object key)
+        {
+            VariableSlot slot = getSlot(key);
+            return slot == null ? null : slot.value;
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        { return getSlot(key) != null; }
+
+        @Override
+        public Double put(String key, Double value)
+        {
+            Double previous = get(key);
+
+            if(!setVariable(key, value))
+                throw new IllegalArgumentException("The equation has no variable named \"" + key + "\".");
+
+            return previous;
+        }
+
+        @Override
+        public Double remove(Object key)
+        {
+            if(!overwrittenOnly)
+                throw new UnsupportedOperationException("Variables can't be removed from an equation.");
+
+            Double previous = get(key);
+
+            if(previous != null)
+                revertVariable((String)key);
+
+            return previous;
+        }
+
+        @Override
+        public Set<Entry<String, Double>> entrySet()
+        {
+            Set<Entry<String, Double>> snapshot = new HashSet<>();
+
+            synchronized(syncLock)
+            {
+                for(Map.Entry<String, VariableSlot> entry : variableSlots.entrySet())
+                    if(!overwrittenOnly || entry.getValue().isOverwritten)
+                        snapshot.add(new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().value));
+            }
+
+            return Collections.unmodifiableSet(snapshot);
+        }
+    }
+    //endregion
+
+    //region actions
+    /**
+     * An implementation of an operator, given any number of operands.
+     */
+    @FunctionalInterface
+    public interface OperatorAction
+    {
+        /**
+         * Performs this operator implementation on the given operands.
+         * @param o The operands passed into the operation.
+         * @return The result of this operator implementation on the given operands, as a double.
+         */
+        double performOperation(double... o);
+    }
+
+    /**
+     * An implementation of an operator, given one operand.
+     */
+    @FunctionalInterface
+    public interface UnaryOperatorAction
+    {
+        /**
+         * Performs this operator implementation on the given operand.
+         * @param o The operand passed into the operation.
+         * @return The result of this operator implementation on the given operand, as a double.
+         */
+        double performOperation(double o);
+    }
+
+    /**
+     * An implementation of an operator, given two operands.
+     */
+    @FunctionalInterface
+    public interface BinaryOperatorAction
+    {
+        /**
+         * Performs this operator implementation on the given operands.
+         * @param l The left operand passed into the operation.
+         * @param r The right operand passed into the operation.
+         * @return The result of this operator implementation on the given operands, as a double.
+         */
+        double performOperation(double l, double r);
+    }
+
+    /**
+     * An implementation of an operator, given three operands.
+     */
+    @FunctionalInterface
+    public interface TernaryOperatorAction
+    {
+        /**
+         * Performs this operator implementation on the given operands.
+         * @param l The left operand passed into the operation.
+         * @param m The middle operand passed into the operation.
+         * @param r The right operand passed into the operation.
+         * @return The result of this operator implementation on the given operands, as a double.
+         */
+        double performOperation(double l, double m, double r);
+    }
+
+    /**
+     * <p>The implementations of the default operators provided by {@link Builder}.</p>
+     *
+     * <p>These are shared between all builders, so operations using a default operator can be identified by comparing
+     * {@link Operation#getAction()} to these by reference. This is used by {@link EquationSimplifier} to recognise
+     * arithmetic, even where a builder's operators are invoked by different tokens. Operators added with custom
+     * implementations are never equal to these, even if they behave the same way.</p>
+     */
+    public static final class StandardOperatorActions
+    {
+        /**
+         * A default unary operator implementation. This may be used as an implementation of either
+         * {@link OperatorAction} or {@link UnaryOperatorAction}.
+         */
+        public static final class Unary implements OperatorAction, UnaryOperatorAction
+        {
+            /**
+             * The name of this operator implementation.
+             */
+            private final String name;
+
+            /**
+             * The actual implementation.
+             */
+            private final UnaryOperatorAction implementation;
+
+            /**
+             * Creates a new default unary operator implementation.
+             * @param name The name of the implementation.
+             * @param implementation The implementation.
+             */
+            private Unary(String name, UnaryOperatorAction implementation)
+            {
+                this.name = name;
+                this.implementation = implementation;
+            }
+
+            @Override
+            public double performOperation(double o)
+            { return implementation.performOperation(o); }
+
+            @Override
+            public double performOperation(double... o)
+            { return implementation.performOperation(o[0]); }
+
+            @Override
+            public String toString()
+            { return name; }
+        }
+
+        /**
+         * A default binary operator implementation. This may be used as an implementation of either
+         * {@link OperatorAction} or {@link BinaryOperatorAction}.
+         */
+        public static final class Binary implements OperatorAction, BinaryOperatorAction
+        {
+            /**
+             * The name of this operator implementation.
+             */
+            private final String name;
+
+            /**
+             * The actual implementation.
+             */
+            private final BinaryOperatorAction implementation;
+
+            /**
+             * Creates a new default binary operator implementation.
+             * @param name The name of the implementation.
+             * @param implementation The implementation.
+             */
+            private Binary(String name, BinaryOperatorAction implementation)
+            {
+                this.name = name;
+                this.implementation = implementation;
+            }
+
+            @Override
+            public double performOperation(double l, double r)
+            { return implementation.performOperation(l, r); }
+
+            @Override
+            public double performOperation(double... o)
+            { return implementation.performOperation(o[0], o[1]); }
+
+            @Override
+            public String toString()
+            { return name; }
+        }
+
+        /**
+         * l + r
+         */
+        public static final Binary ADD = new Binary("add", (l, r) -> l + r);
+
+        /**
+         * l - r
+         */
+        public static final Binary SUBTRACT = new Binary("subtract", (l, r) -> l - r);
+
+        /**
+         * l * r
+         */
+        public static final Binary MULTIPLY = new Binary("multiply", (l, r) -> l * r);
+
+        /**
+         * l / r
+         */
+        public static final Binary DIVIDE = new Binary("divide", (l, r) -> l / r);
+
         /**
-         * Performs this operator implementation on the given operands.
-         * @param o The operands passed into the operation.
-         * @return The result of this operator implementation on the given operands, as a double.
+         * l % r
          */
-        double performOperation(double... o);
-    }
+        public static final Binary MODULO = new Binary("modulo", (l, r) -> l % r);
 
-    /**
-     * An implementation of an operator, given one operand.
-     */
-    @FunctionalInterface
-    public interface UnaryOperatorAction
-    {
         /**
-         * Performs this operator implementation on the given operand.
-         * @param o The operand passed into the operation.
-         * @return The result of this operator implementation on the given operand, as a double.
+         * The lth root of r.
          */
-        double performOperation(double o);
-    }
+        public static final Binary ROOT = new Binary("root", (l, r) -> Math.pow(r, 1.0 / l));
 
-    /**
-     * An implementation of an operator, given two operands.
-     */
-    @FunctionalInterface
-    public interface BinaryOperatorAction
-    {
         /**
-         * Performs this operator implementation on the given operands.
-         * @param l The left operand passed into the operation.
-         * @param r The right operand passed into the operation.
-         * @return The result of this operator implementation on the given operands, as a double.
+         * l to the power of r.
          */
-        double performOperation(double l, double r);
-    }
+        public static final Binary POWER = new Binary("power", Math::pow);
 
-    /**
-     * An implementation of an operator, given three operands.
-     */
-    @FunctionalInterface
-    public interface TernaryOperatorAction
-    {
         /**
-         * Performs this operator implementation on the given operands.
-         * @param l The left operand passed into the operation.
-         * @param m The middle operand passed into the operation.
-         * @param r The right operand passed into the operation.
-         * @return The result of this operator implementation on the given operands, as a double.
+         * -x
          */
-        double performOperation(double l, double m, double r);
+        public static final Unary NEGATE = new Unary("negate", x -> -x);
+
+        /**
+         * +x
+         */
+        public static final Unary UNARY_PLUS = new Unary("unary plus", x -> +x);
+
+        /**
+         * The square root of x.
+         */
+        public static final Unary SQUARE_ROOT = new Unary("square root", Math::sqrt);
+
+        /**
+         * x percent, as a fraction.
+         */
+        public static final Unary PERCENT = new Unary("percent", x -> x / 100);
+
+        private StandardOperatorActions()
+        {}
     }
     //endregion
     //endregion
@@ -4288,13 +6301,28 @@ public class Equation
     /**
      * The variable values explicitly redefined on this equation. These override variable values provided to the
      * equation by its builder.
+     * @deprecated Variables are held in slots, which this is a view of. Use {@link #setVariable(String, double)},
+     *             {@link #revertVariable(String)}, or {@link #variableHandle(String)} instead.
      */
-    protected final Map<String, Double> overwrittenVariableValues;
+    @Deprecated
+    protected final Map<String, Double> overwrittenVariableValues = new VariableValuesView(true);
 
     /**
      * <p>The variables available to this equation, and their values.</p>
+     * @deprecated Variables are held in slots, which this is a view of. Use {@link #setVariable(String, double)} or
+     *             {@link #variableHandle(String)} instead.
+     */
+    @Deprecated
+    protected final Map<String, Double> variableValues = new VariableValuesView(false);
+
+    /**
+     * <p>The variables available to this equation, and the slots holding their current values. Each variable keeps the
+     * same slot for as long as this equation exists, so that {@link VariableHandle variable handles} remain valid.</p>
+     *
+     * <p>A slot holds the value provided by this equation's builder, unless the variable has been redefined on this
+     * equation.</p>
      */
-    protected final Map<String, Double> variableValues;
+    final Map<String, VariableSlot> variableSlots;
 
     /**
      * The functions and their implementations provided to this equation by its builder. This may be updated by its
@@ -4314,6 +6342,41 @@ public class Equation
      */
     protected final Map<String, ToDoubleFunction<double[]>> functions;
 
+    /**
+     * The indices of the {@link Iteration iterations} currently being evaluated in this equation, innermost last. Only
+     * the first {@link #iterationDepth} elements are in use. Null until an iteration is first evaluated.
+     */
+    IterationIndex[] iterationIndices = null;
+
+    /**
+     * The current values of the indices in {@link #iterationIndices}, at the same positions.
+     */
+    double[] iterationIndexValues = null;
+
+    /**
+     * The number of iterations currently being evaluated in this equation.
+     */
+    int iterationDepth = 0;
+
+    /**
+     * The budget of the current evaluation of this equation by
+     * {@link #evaluateWithinBudget(EquationCostModel, double)}, charged by iterations as they're evaluated. Null where
+     * this equation isn't being evaluated within a budget.
+     */
+    EquationCostModel.Budget evaluationBudget = null;
+
+    /**
+     * The arrays of values variables have been {@link #setArrayVariable(String, double[]) bound to}, against the names
+     * of the variables. While any variables are bound to arrays, this equation is evaluated element-wise.
+     */
+    final Map<String, double[]> arrayVariables = new HashMap<>();
+
+    /**
+     * Which arguments of function calls in this equation are evaluated concurrently, or null where they're all
+     * evaluated in order. See {@link #setParallelArguments(EquationCostModel, double, ForkJoinPool)}.
+     */
+    ParallelArguments parallelArguments = null;
+
     /**
      * The object upon which access to this object should be locked.
      */
@@ -4332,8 +6395,7 @@ public class Equation
         this.sourceBuilder              = defaultBuilder;
         this.topLevelComponent          = parsedEquation.topLevelComponent;
         this.initialVariableValues      = parsedEquation.initialVariableValues;
-        this.overwrittenVariableValues  = parsedEquation.overwrittenVariableValues;
-        this.variableValues             = parsedEquation.variableValues;
+        this.variableSlots              = parsedEquation.variableSlots;
         this.initialFunctions           = parsedEquation.functions;
         this.overwrittenFunctions       = parsedEquation.overwrittenFunctions;
         this.functions                  = parsedEquation.functions;
@@ -4346,19 +6408,62 @@ public class Equation
      * @param original The original equation object to make a copy of.
      */
     public Equation(Equation original)
+    { this(original, original.topLevelComponent); }
+
+    /**
+     * Creates a new equation object by copying an existing one, but with a different top level component. The
+     * resulting equation object will initially have all of the same variable values and function implementations as
+     * the copied one.
+     * @param original The original equation object to make a copy of.
+     * @param topLevelComponent The top level component of the new equation.
+     */
+    Equation(Equation original, EquationComponent topLevelComponent)
+    { this(original, topLevelComponent, null); }
+
+    /**
+     * Creates a new equation object by copying an existing one, but with a different top level component, and with its
+     * variables provided by the given scope where the scope defines them. See {@link #bind(VariableScope)}.
+     * @param original The original equation object to make a copy of.
+     * @param topLevelComponent The top level component of the new equation.
+     * @param scope The scope to bind the new equation's variables to, or null to copy all of the original's variables.
+     */
+    Equation(Equation original, EquationComponent topLevelComponent, VariableScope scope)
     {
         this.sourceBuilder              = original.sourceBuilder;
-        this.topLevelComponent          = original.topLevelComponent;
-        this.initialVariableValues      = new HashMap<>(original.initialVariableValues);
-        this.overwrittenVariableValues  = new HashMap<>(original.overwrittenVariableValues);
-        this.variableValues             = new FallbackMap<>(this.overwrittenVariableValues, this.initialVariableValues);
-        this.initialFunctions           = new HashMap<>(original.initialFunctions);
-        this.overwrittenFunctions       = new HashMap<>(original.overwrittenFunctions);
-        this.functions                  = new FallbackMap<>(this.overwrittenFunctions, this.initialFunctions);
+        this.topLevelComponent          = topLevelComponent;
+
+        // Copying the original's state and registering this equation have to happen together, so that pushes made
+        // between the two aren't missed.
+        synchronized(this.sourceBuilder.instances)
+        {
+            synchronized(original.syncLock)
+            {
+                this.initialVariableValues      = new HashMap<>(original.initialVariableValues);
+                this.variableSlots              = new HashMap<>(original.variableSlots.size());
+                this.initialFunctions           = new HashMap<>(original.initialFunctions);
+                this.overwrittenFunctions       = new HashMap<>(original.overwrittenFunctions);
+
+                for(Map.Entry<String, VariableSlot> entry : original.variableSlots.entrySet())
+                    this.variableSlots.put(entry.getKey(), new VariableSlot(entry.getValue()));
+
+                this.arrayVariables.putAll(original.arrayVariables);
+            }
 
-        // Equation is constructed by this point.
-        //noinspection ThisEscapedInObjectConstruction
-        this.sourceBuilder.instances.add(this);
+            this.functions = new FallbackMap<>(this.overwrittenFunctions, this.initialFunctions);
+
+            if(scope != null)
+                for(Map.Entry<String, VariableSlot> entry : this.variableSlots.entrySet())
+                {
+                    VariableSlot scopedSlot = scope.resolveSlot(entry.getKey());
+
+                    if(scopedSlot != null)
+                        entry.setValue(scopedSlot);
+                }
+
+            // Equation is constructed by this point.
+            //noinspection ThisEscapedInObjectConstruction
+            this.sourceBuilder.instances.add(this);
+        }
     }
 
     /**
@@ -4378,11 +6483,13 @@ public class Equation
         this.sourceBuilder              = sourceBuilder;
         this.topLevelComponent          = topLevelComponent;
         this.initialVariableValues      = variableValues;
-        this.overwrittenVariableValues  = new HashMap<>();
-        this.variableValues             = new FallbackMap<>(this.overwrittenVariableValues, this.initialVariableValues);
+        this.variableSlots              = new HashMap<>(variableValues.size());
         this.initialFunctions           = functions;
         this.overwrittenFunctions       = new HashMap<>();
         this.functions                  = new FallbackMap<>(this.overwrittenFunctions, this.initialFunctions);
+
+        for(Map.Entry<String, Double> entry : variableValues.entrySet())
+            this.variableSlots.put(entry.getKey(), new VariableSlot(entry.getValue()));
     }
     //endregion
 
@@ -4391,16 +6498,294 @@ public class Equation
     /**
      * Evaluates the equation.
      * @return The result of the equation as a double.
+     * @throws IllegalStateException If any variables are {@link #setArrayVariable(String, double[]) bound to arrays},
+     *                               and the result isn't a single number. See {@link #evaluateElementWise()}.
      */
     public double evaluate()
     {
         if(topLevelComponent.referencesEquation())
             synchronized(syncLock)
-            { return topLevelComponent.evaluate(this); }
+            {
+                if(!arrayVariables.isEmpty())
+                {
+                    double[] results = new ElementWiseEvaluator(this).evaluate(topLevelComponent);
+
+                    if(results.length != 1)
+                        throw new IllegalStateException("The equation evaluates to " + results.length + " numbers, "
+                                                        + "rather than 1. Use evaluateElementWise().");
+
+                    return results[0];
+                }
+
+                return topLevelComponent.evaluate(this);
+            }
         else
             return topLevelComponent.evaluate(this);
     }
 
+    /**
+     * <p>Evaluates the equation element-wise, over the arrays its variables are
+     * {@link #setArrayVariable(String, double[]) bound to}, in a single pass over the equation.</p>
+     *
+     * <p>Operators and functions are applied to each element of their array operands in turn, with numbers and arrays
+     * of length 1 broadcast across arrays of any length. Reductions, such as "sum", "max", and "avg", instead collapse
+     * all of their arguments' elements into a single number. See {@link ElementWiseEvaluator}.</p>
+     *
+     * <p>Where no variables are bound to arrays, the result is the same as that of {@link #evaluate()}, as an array of
+     * length 1.</p>
+     *
+     * <p>Examples:</p>
+     *
+     * <pre>{@code
+     * Equation eq = new Equation.Builder().withVariable("xs", 0).build("xs / sum(xs)");
+     * eq.setArrayVariable("xs", new double[] { 1, 3, 4 });
+     * double[] normalised = eq.evaluateElementWise(); // == [0.125, 0.375, 0.5]
+     * }</pre>
+     * @return The results of the equation, one for each element.
+     * @throws IllegalArgumentException If operands of the same operation or function call are arrays of different
+     *                                  lengths, other than 1, or the bounds of an iteration aren't single numbers.
+     */
+    public double[] evaluateElementWise()
+    {
+        synchronized(syncLock)
+        { return new ElementWiseEvaluator(this).evaluate(topLevelComponent); }
+    }
+
+    /**
+     * Evaluates the equation, stopping where doing so would cost more than the given budget, as measured by the
+     * default {@link EquationCostModel}, where every component evaluated costs 1.
+     * @param budget The greatest cost evaluating the equation may have.
+     * @return The result of the equation as a double.
+     * @throws EquationCostModel.BudgetExceededException If evaluating the equation would cost more than the given
+     *                                                   budget.
+     */
+    public double evaluateWithinBudget(double budget)
+    { return evaluateWithinBudget(new EquationCostModel(), budget); }
+
+    /**
+     * <p>Evaluates the equation, stopping where doing so would cost more than the given budget, as measured by the
+     * given cost model.</p>
+     *
+     * <p>The cost of everything other than the repeated evaluation of iterations' bodies is charged before evaluation
+     * starts, so where that exceeds the budget, nothing is evaluated. Iterations are charged for evaluating their
+     * bodies before they start doing so.</p>
+     *
+     * <p>Where any variables are {@link #setArrayVariable(String, double[]) bound to arrays}, the equation is evaluated
+     * element-wise, as by {@link #evaluate()}, and everything is charged once for each element of the longest
+     * array.</p>
+     * @param costModel The cost model measuring the cost of evaluating the equation.
+     * @param budget The greatest cost evaluating the equation may have.
+     * @return The result of the equation as a double.
+     * @throws EquationCostModel.BudgetExceededException If evaluating the equation would cost more than the given
+     *                                                   budget.
+     * @throws IllegalStateException If any variables are bound to arrays, and the result isn't a single number.
+     */
+    public double evaluateWithinBudget(EquationCostModel costModel, double budget)
+    {
+        // Components not referencing the equation contain no iterations or variables, so the budget is fully charged
+        // up front.
+        if(!topLevelComponent.referencesEquation())
+        {
+            costModel.newBudget(topLevelComponent, budget);
+            return topLevelComponent.evaluate(this);
+        }
+
+        synchronized(syncLock)
+        {
+            int elementCount = 1;
+
+            for(double[] array : arrayVariables.values())
+                elementCount = Math.max(elementCount, array.length);
+
+            EquationCostModel.Budget outerBudget = evaluationBudget;
+            evaluationBudget = costModel.newBudget(topLevelComponent, budget, elementCount);
+
+            try
+            {
+                if(arrayVariables.isEmpty())
+                    return topLevelComponent.evaluate(this);
+
+                double[] results = new ElementWiseEvaluator(this).evaluate(topLevelComponent);
+
+                if(results.length != 1)
+                    throw new IllegalStateException("The equation evaluates to " + results.length + " numbers, "
+                                                    + "rather than 1. Use evaluateElementWise().");
+
+                return results[0];
+            }
+            finally
+            { evaluationBudget = outerBudget; }
+        }
+    }
+
+    /**
+     * <p>Creates a sweep of this equation over a grid of variable values, where each of the given ranges makes up one
+     * dimension of the grid. The sweep evaluates copies of this equation, so changes made to this equation after the
+     * sweep is created aren't reflected in it. See {@link ParameterSweep} for how results are laid out.</p>
+     * @param ranges The ranges of values to sweep variables over, slowest-varying first.
+     * @return A new parameter sweep, which may be written to a buffer or file to evaluate it.
+     * @throws IllegalArgumentException If no ranges were given, a range is of a variable not available to this
+     *                                  equation, or more than one range is of the same variable.
+     */
+    public ParameterSweep sweep(ParameterSweep.Range... ranges)
+    { return sweep(Arrays.asList(ranges)); }
+
+    /**
+     * <p>Creates a sweep of this equation over a grid of variable values, where each of the given ranges makes up one
+     * dimension of the grid. The sweep evaluates copies of this equation, so changes made to this equation after the
+     * sweep is created aren't reflected in it. See {@link ParameterSweep} for how results are laid out.</p>
+     * @param ranges The ranges of values to sweep variables over, slowest-varying first.
+     * @return A new parameter sweep, which may be written to a buffer or file to evaluate it.
+     * @throws IllegalArgumentException If no ranges were given, a range is of a variable not available to this
+     *                                  equation, or more than one range is of the same variable.
+     */
+    public ParameterSweep sweep(List<ParameterSweep.Range> ranges)
+    { return new ParameterSweep(new Equation(this), ranges, ParameterSweep.DEFAULT_POINTS_PER_BLOCK); }
+
+    /**
+     * <p>Creates an evaluator of this equation over arrays of values for the given variables. See
+     * {@link BatchEvaluator}.</p>
+     *
+     * <p>The evaluator evaluates this equation, rather than a copy of it - other variables take their values in this
+     * equation at the time of each evaluation.</p>
+     * @param inputVariableNames The names of the variables that will be given arrays of values, in the order the
+     *                           arrays will be given.
+     * @return A new batch evaluator of this equation.
+     * @throws IllegalArgumentException If any of the given names isn't the name of a variable available to this
+     *                                  equation, or the same name is given more than once.
+     */
+    public BatchEvaluator batchEvaluator(String... inputVariableNames)
+    { return new BatchEvaluator(this, Arrays.asList(inputVariableNames)); }
+
+    /**
+     * <p>Creates a solver of this equation for the given variable, which finds values of the variable at which this
+     * equation evaluates to given targets, or is least. See {@link EquationSolver}.</p>
+     *
+     * <p>The solver evaluates copies of this equation, so changes made to this equation after the solver is created
+     * aren't reflected in it.</p>
+     * @param variableName The name of the variable to solve for.
+     * @return A new solver of this equation.
+     * @throws IllegalArgumentException If this equation doesn't have a variable available to it by the given name.
+     */
+    public EquationSolver solver(String variableName)
+    { return new EquationSolver(new Equation(this), variableName); }
+
+    /**
+     * Gets this equation in canonical form, written with the operators of the builder that built it, independent of
+     * the whitespace and brackets of the text it was parsed from. See {@link EquationPrinter}.
+     * @return This equation in canonical form.
+     */
+    public String toCanonicalString()
+    { return new EquationPrinter(sourceBuilder).print(this); }
+
+    /**
+     * Gets a 64-bit hash of the structure of this equation, which is the same for any two equations with the same
+     * {@link #toCanonicalString() canonical form}. See {@link EquationPrinter#hash(Equation)}.
+     * @return This equation's structural hash.
+     */
+    public long structuralHash()
+    { return new EquationPrinter(sourceBuilder).hash(this); }
+
+    /**
+     * Compiles this equation into an evaluator in exact 64-bit integer arithmetic, using the default operators and
+     * functions of {@link LongBackend}. The evaluator's variables start with their current values in this equation.
+     * @return A new evaluator of this equation.
+     * @throws IllegalArgumentException If this equation contains an operator or function the default backend has no
+     *                                  implementation of, a number that isn't a whole number within the range of a
+     *                                  {@code long}, or references a variable whose current value isn't one.
+     */
+    public LongEvaluator toLongEvaluator()
+    { return LongBackend.DEFAULT.compile(this); }
+
+    /**
+     * Compiles this equation into an evaluator in single-precision arithmetic, using the default operators and
+     * functions of {@link FloatBackend}. The evaluator's variables start with their current values in this equation.
+     * @return A new evaluator of this equation.
+     * @throws IllegalArgumentException If this equation contains an operator or function the default backend has no
+     *                                  implementation of.
+     */
+    public FloatEvaluator toFloatEvaluator()
+    { return FloatBackend.DEFAULT.compile(this); }
+
+    /**
+     * Has costly arguments of function calls in this equation evaluated concurrently on the
+     * {@link ForkJoinPool#commonPool() common pool}. See
+     * {@link #setParallelArguments(EquationCostModel, double, ForkJoinPool)}.
+     * @param costModel The cost model estimating the cost of evaluating arguments.
+     * @param costThreshold The least estimated cost an argument may have to be evaluated concurrently.
+     */
+    public void setParallelArguments(EquationCostModel costModel, double costThreshold)
+    { setParallelArguments(costModel, costThreshold, ForkJoinPool.commonPool()); }
+
+    /**
+     * <p>Has costly arguments of function calls in this equation evaluated concurrently on the given pool.</p>
+     *
+     * <p>Where at least two arguments of the same function call are each estimated by the given cost model to cost at
+     * least the given threshold, they're evaluated at the same time, so "max(f(a), g(b), h(c))" can evaluate f, g, and
+     * h at once. Functions are marked as expensive by {@link EquationCostModel#withFunctionWeight(String, double)
+     * weighting} them in the cost model, and the threshold keeps cheap arguments from being evaluated concurrently,
+     * where doing so would cost more than it saves. Arguments containing iterations are always evaluated in order.</p>
+     *
+     * <p>Results are the same as where arguments are evaluated in order, provided the functions called by arguments
+     * evaluated concurrently are safe to call from several threads at once. Where more than one argument of a call
+     * throws an exception, the exception thrown by the first of them is rethrown.</p>
+     *
+     * <p>This only applies to this equation, and not to copies of it.</p>
+     *
+     * <p>Examples:</p>
+     *
+     * <pre>{@code
+     * Equation eq = builder.build("max(integrate(a), integrate(b), integrate(c))");
+     * eq.setParallelArguments(new EquationCostModel().withFunctionWeight("integrate", 1e6), 1000);
+     * double result = eq.evaluate(); // Evaluates the three integrations at once.
+     * }</pre>
+     * @param costModel The cost model estimating the cost of evaluating arguments.
+     * @param costThreshold The least estimated cost an argument may have to be evaluated concurrently.
+     * @param pool The pool to evaluate arguments on, where the thread evaluating this equation isn't already in a
+     *             fork/join pool.
+     */
+    public void setParallelArguments(EquationCostModel costModel, double costThreshold, ForkJoinPool pool)
+    {
+        ParallelArguments newParallelArguments
+                = new ParallelArguments(topLevelComponent, costModel, costThreshold, pool);
+
+        synchronized(syncLock)
+        { parallelArguments = newParallelArguments; }
+    }
+
+    /**
+     * Has all arguments of function calls in this equation evaluated in order, on the thread evaluating the equation,
+     * as they are by default.
+     */
+    public void clearParallelArguments()
+    {
+        synchronized(syncLock)
+        { parallelArguments = null; }
+    }
+
+    /**
+     * <p>Gets a copy of this equation with its operations simplified by the default rules of
+     * {@link EquationSimplifier}. Only rewrites that give exactly the same results in floating-point arithmetic are
+     * made.</p>
+     *
+     * <p>The resulting equation starts with the same variable values and function implementations as this one, but
+     * changes made in one won't be reflected in the other.</p>
+     * @return A simplified copy of this equation.
+     */
+    public Equation simplified()
+    { return simplified(new EquationSimplifier()); }
+
+    /**
+     * <p>Gets a copy of this equation with its operations simplified by the given simplifier.</p>
+     *
+     * <p>The resulting equation starts with the same variable values and function implementations as this one, but
+     * changes made in one won't be reflected in the other.</p>
+     * @param simplifier The simplifier to simplify this equation with.
+     * @return A simplified copy of this equation.
+     */
+    public Equation simplified(EquationSimplifier simplifier)
+    { return new Equation(this, simplifier.simplify(topLevelComponent)); }
+
     /**
      * <p>Reässigns the value of a variable in this equation. If the equation does not have a variable available to it
      * by the given variable name, does nothing.</p>
@@ -4413,15 +6798,139 @@ public class Equation
     {
         synchronized(syncLock)
         {
-            if(!variableValues.containsKey(variableName))
+            VariableSlot slot = variableSlots.get(variableName);
+
+            if(slot == null)
+                return false;
+
+            slot.set(newValue);
+            arrayVariables.remove(variableName);
+        }
+
+        return true;
+    }
+
+    /**
+     * <p>Binds a variable in this equation to an array of values, so that the equation is evaluated element-wise over
+     * them. See {@link #evaluateElementWise()}. If the equation does not have a variable available to it by the given
+     * variable name, does nothing.</p>
+     *
+     * <p>The array is used directly rather than copied, so changes to its elements are seen by subsequent evaluations.
+     * It isn't modified by this equation. The binding is removed by {@link #setVariable(String, double) setting} the
+     * variable to a single number, or {@link #revertVariable(String) reverting} it, but not by setting it through a
+     * {@link VariableHandle}.</p>
+     * @param variableName The name of the variable to bind.
+     * @param values The values of the variable.
+     * @return True if the variable was bound successfully. False if it was not, as a result of the variable not being
+     *         available to this equation.
+     * @throws IllegalArgumentException If the given array is empty.
+     */
+    public boolean setArrayVariable(String variableName, double[] values)
+    {
+        if(values.length == 0)
+            throw new IllegalArgumentException("Variables can't be bound to empty arrays.");
+
+        synchronized(syncLock)
+        {
+            if(!variableSlots.containsKey(variableName))
                 return false;
 
-            overwrittenVariableValues.put(variableName, newValue);
+            arrayVariables.put(variableName, values);
         }
 
         return true;
     }
 
+    /**
+     * <p>Gets a copy of this equation, with its variables bound to the given variable scope.</p>
+     *
+     * <p>Each variable of this equation that the scope or any of its ancestors defines is resolved, at the time of
+     * binding, to the innermost scope defining it. The bound equation then reads and writes that variable's value in
+     * that scope directly, so evaluating it costs the same however deeply the scope is nested, and changes to the
+     * scope's values are seen by the bound equation. Setting the variable on the bound equation sets it in the scope.
+     * Variables the scope doesn't define are copied from this equation, as by {@link #Equation(Equation)}.</p>
+     *
+     * <p>Which scope provides each variable is fixed at the time of binding - variables defined in a scope afterwards,
+     * including ones that would shadow variables defined by its ancestors, aren't seen by already bound equations.
+     * Variables provided by a scope aren't affected by values pushed by this equation's builder, and can't be
+     * reverted.</p>
+     * @param scope The scope to bind this equation's variables to.
+     * @return A copy of this equation, bound to the given scope.
+     */
+    public Equation bind(VariableScope scope)
+    { return new Equation(this, topLevelComponent, scope); }
+
+    /**
+     * <p>Gets a handle to a variable in this equation, which may be used to read and reässign the variable without
+     * looking it up by name each time. This is intended for code that sets variables many times, such as between
+     * evaluations in a loop.</p>
+     *
+     * <p>The handle remains valid for as long as this equation exists, including after the variable is reverted, or a
+     * new value for it is pushed by this equation's builder. It doesn't affect copies of this equation.</p>
+     * @param variableName The name of the variable.
+     * @return A handle to the variable with the given name in this equation.
+     * @throws IllegalArgumentException If this equation doesn't have a variable available to it by the given name.
+     */
+    public VariableHandle variableHandle(String variableName)
+    {
+        VariableSlot slot;
+
+        synchronized(syncLock)
+        { slot = variableSlots.get(variableName); }
+
+        if(slot == null)
+            throw new IllegalArgumentException("The equation has no variable \"" + variableName + "\".");
+
+        return new VariableHandle(variableName, slot);
+    }
+
+    /**
+     * Records that an iteration has started being evaluated in this equation. This should be called while this
+     * equation is locked, as it is during evaluation, and be matched by a call to {@link #popIterationIndex()}.
+     * @param index The index of the iteration.
+     * @param value The first value of the index.
+     * @return The position of the index in {@link #iterationIndexValues}, at which its value may be updated.
+     */
+    int pushIterationIndex(IterationIndex index, double value)
+    {
+        if(iterationIndices == null)
+        {
+            iterationIndices = new IterationIndex[4];
+            iterationIndexValues = new double[4];
+        }
+        else if(iterationDepth == iterationIndices.length)
+        {
+            iterationIndices = Arrays.copyOf(iterationIndices, iterationDepth * 2);
+            iterationIndexValues = Arrays.copyOf(iterationIndexValues, iterationDepth * 2);
+        }
+
+        iterationIndices[iterationDepth] = index;
+        iterationIndexValues[iterationDepth] = value;
+        return iterationDepth++;
+    }
+
+    /**
+     * Records that the innermost iteration being evaluated in this equation has finished being evaluated.
+     */
+    void popIterationIndex()
+    { iterationIndices[--iterationDepth] = null; }
+
+    /**
+     * Gets the current value of the given index, in the innermost evaluation of its iteration in this equation.
+     * @param index The index.
+     * @return The current value of the given index.
+     * @throws IllegalStateException If the given index's iteration isn't currently being evaluated in this equation.
+     */
+    double getIterationIndexValue(IterationIndex index)
+    {
+        for(int i = iterationDepth - 1; i >= 0; i--)
+            if(iterationIndices[i] == index)
+                return iterationIndexValues[i];
+
+        throw new IllegalStateException("The index \"" + index.getName() + "\" was evaluated outside of its "
+                                        + "iteration.");
+    }
+
     //region redefine functions
     /**
      * <p>Provides a new implementation of function in this equation. If the equation does not have a function
@@ -4552,12 +7061,20 @@ public class Equation
      *
      * <p>Note that this may be different to the variable's value before being overwritten, where the equation's builder
      * pushed out a new value for the variable after it was overwritten.</p>
+     *
+     * <p>Where the variable is {@link #setArrayVariable(String, double[]) bound to an array}, it's unbound.</p>
      * @param name The name of the variable.
      */
     public void revertVariable(String name)
     {
         synchronized(syncLock)
-        { overwrittenVariableValues.remove(name); }
+        {
+            arrayVariables.remove(name);
+            VariableSlot slot = variableSlots.get(name);
+
+            if(slot != null)
+                slot.revert(initialVariableValues.get(name));
+        }
     }
 
     /**
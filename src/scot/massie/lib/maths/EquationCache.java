@@ -0,0 +1,856 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.Builder;
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.InfixOperator;
+import scot.massie.lib.maths.Equation.Iteration;
+import scot.massie.lib.maths.Equation.IterationIndex;
+import scot.massie.lib.maths.Equation.LiteralNumber;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.Operator;
+import scot.massie.lib.maths.Equation.Token;
+import scot.massie.lib.maths.Equation.VariableReference;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * <p>A cache of parsed equations in a directory on disk, so that equations built from the same text in later runs can
+ * be loaded rather than parsed again. Builders use a cache once given it by
+ * {@link Equation.Builder#withCache(EquationCache)}.</p>
+ *
+ * <p>Equations are stored against their text, as given to {@link Equation.Builder#build(String)}, and a fingerprint of
+ * everything about the builder that affects how text is parsed: its tokens, its operators, and the names of its
+ * variables, functions, and function definitions. Equations are only loaded by builders with the same fingerprint as
+ * the builder that stored them, so changing a builder's grammar invalidates everything stored by it before. Operators
+ * and functions are stored by their tokens and names rather than their implementations, which are those of the builder
+ * loading the equation.</p>
+ *
+ * <p>Each fingerprint has its own pair of files in the directory: an append-only data file of the text and structure of
+ * each equation stored, and an index of the position of each equation in the data file against the hash of its text.
+ * The index is memory-mapped and read in full when a builder with its fingerprint first builds an equation, after
+ * which equations stored are looked up in memory and read from the data file one at a time. Files of fingerprints no
+ * longer in use aren't removed, and may be deleted while no cache is open on the directory.</p>
+ *
+ * <p>Entries that can't be read, such as those partly written by a process that was stopped while writing them, are
+ * ignored, and the equations they're of are parsed again. Several processes may share a directory, as writes to it are
+ * locked, but equations stored by one process aren't seen by another until it next opens the directory. Within a
+ * process, a directory should only have one cache open on it at a time, which may be shared between builders.</p>
+ */
+public final class EquationCache implements Closeable
+{
+    //region constants
+    /**
+     * The version of the format equations are stored in, which is part of every fingerprint, such that changing the
+     * format invalidates equations stored in earlier formats.
+     */
+    private static final long FORMAT_VERSION = 2;
+
+    /**
+     * The size, in bytes, of each entry in an index file: the hash of an equation's text, and the position of its
+     * record in the data file.
+     */
+    private static final int INDEX_ENTRY_SIZE = 16;
+
+    /**
+     * The size, in bytes, of the header of each record in a data file: the length of the record's contents, and their
+     * CRC-32 checksum.
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * The tags identifying each kind of component in stored equations.
+     */
+    private static final byte TAG_LITERAL = 0,
+                              TAG_VARIABLE = 1,
+                              TAG_INDEX = 2,
+                              TAG_FUNCTION = 3,
+                              TAG_ITERATION = 4,
+                              TAG_OPERATION = 5,
+                              TAG_REPEAT = 6;
+    //endregion
+
+    //region variables
+    /**
+     * The directory equations are stored in.
+     */
+    private final Path directory;
+
+    /**
+     * The stores of equations open, against the fingerprints of the builders they're of.
+     */
+    private final Map<Long, Store> stores = new HashMap<>();
+
+    /**
+     * The grammar of each builder's parsing snapshot, as last used, against the snapshot.
+     */
+    private final Map<Builder, Grammar> grammars = new WeakHashMap<>();
+
+    /**
+     * The number of equations loaded from this cache rather than parsed.
+     */
+    private long hitCount = 0;
+
+    /**
+     * The number of equations parsed and stored in this cache, where they couldn't be loaded.
+     */
+    private long missCount = 0;
+
+    /**
+     * Whether this cache has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * The object upon which access to this cache should be locked.
+     */
+    private final Object syncLock = new Object();
+    //endregion
+
+    //region initialisation
+    /**
+     * Opens a cache of equations in the given directory, creating it if it doesn't exist. Files in the directory
+     * aren't read until equations are built using the cache.
+     * @param directory The directory to store equations in.
+     * @throws IOException If the directory doesn't exist and couldn't be created.
+     */
+    public EquationCache(Path directory) throws IOException
+    {
+        Files.createDirectories(directory);
+        this.directory = directory;
+    }
+    //endregion
+
+    //region inner classes
+    /**
+     * What's needed to store and load the equations of one builder's parsing snapshot.
+     */
+    private static final class Grammar
+    {
+        /**
+         * The {@link Builder#getNameChangeCount() name change count} of the builder at the time this was created.
+         */
+        final long nameChangeCount;
+
+        /**
+         * The builder's fingerprint, or null if it has none, in which case equations aren't cached.
+         */
+        final Long fingerprint;
+
+        /**
+         * A printer of the builder's operators, used to find the operators performing operations.
+         */
+        final EquationPrinter printer;
+
+        /**
+         * The builder's operators, against their {@link #keyOf(int, List) keys}.
+         */
+        final Map<String, Operator> operators = new HashMap<>();
+
+        /**
+         * Gets the grammar of the given builder.
+         * @param snapshot The builder's parsing snapshot.
+         * @param nameChangeCount The builder's name change count, read before the snapshot was.
+         */
+        Grammar(Builder snapshot, long nameChangeCount)
+        {
+            this.nameChangeCount = nameChangeCount;
+            Long builderFingerprint = snapshot.getGrammarFingerprint();
+            this.fingerprint = builderFingerprint == null
+                                       ? null
+                                       : EquationPrinter.combine(builderFingerprint, FORMAT_VERSION);
+            this.printer = new EquationPrinter(snapshot);
+
+            for(Operator operator : snapshot.getOperators())
+            {
+                List<String> tokens = new ArrayList<>(operator.tokens.size());
+
+                for(Token token : operator.tokens)
+                    tokens.add(token.toString());
+
+                operators.put(keyOf(EquationPrinter.fixityOf(operator), tokens), operator);
+            }
+        }
+
+        /**
+         * Gets the key of the operator with the given fixity and tokens.
+         * @param fixity The {@link EquationPrinter#fixityOf(Operator) fixity} of the operator.
+         * @param tokens The text of the operator's tokens, in order.
+         * @return The operator's key.
+         */
+        static String keyOf(int fixity, List<String> tokens)
+        { return fixity + "\u0000" + String.join("\u0000", tokens); }
+    }
+
+    /**
+     * The open data and index files of a single fingerprint.
+     */
+    private static final class Store
+    {
+        /**
+         * The data file, of the records of each equation stored.
+         */
+        final FileChannel data;
+
+        /**
+         * The index file, of the position of each record in the data file against the hash of its equation's text.
+         */
+        final FileChannel index;
+
+        /**
+         * The position in the data file of the record of the last equation stored with each hash of its text.
+         */
+        final Map<Long, Long> positions = new HashMap<>();
+
+        /**
+         * Opens the files of the given fingerprint in the given directory, creating them where they don't exist, and
+         * reads the index.
+         * @param directory The directory the files are in.
+         * @param fingerprint The fingerprint the files are of.
+         * @throws IOException If the files couldn't be opened or read.
+         */
+        Store(Path directory, long fingerprint) throws IOException
+        {
+            String fileName = String.format("%016x", fingerprint);
+            data = FileChannel.open(directory.resolve(fileName + ".eqdata"),
+                                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            try
+            {
+                index = FileChannel.open(directory.resolve(fileName + ".eqindex"),
+                                         StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            catch(IOException e)
+            {
+                data.close();
+                throw e;
+            }
+
+            long dataSize = data.size();
+            long indexSize = index.size() - index.size() % INDEX_ENTRY_SIZE;
+
+            if(indexSize == 0)
+                return;
+
+            MappedByteBuffer entries = index.map(FileChannel.MapMode.READ_ONLY, 0, indexSize);
+
+            while(entries.remaining() >= INDEX_ENTRY_SIZE)
+            {
+                long textHash = entries.getLong();
+                long position = entries.getLong();
+
+                // Entries of records not fully written are ignored.
+                if(position >= 0 && position < dataSize)
+                    positions.put(textHash, position);
+            }
+        }
+
+        /**
+         * Reads the contents of the record at the given position in the data file.
+         * @param position The position of the record.
+         * @return The contents of the record, or null if it wasn't fully written or is corrupt.
+         * @throws IOException If the data file couldn't be read.
+         */
+        byte[] read(long position) throws IOException
+        {
+            long dataSize = data.size();
+
+            if(position + RECORD_HEADER_SIZE > dataSize)
+                return null;
+
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            readFully(header, position);
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+
+            if(length < 0 || position + RECORD_HEADER_SIZE + length > dataSize)
+                return null;
+
+            ByteBuffer contents = ByteBuffer.allocate(length);
+            readFully(contents, position + RECORD_HEADER_SIZE);
+            return checksumOf(contents.array()) == checksum ? contents.array() : null;
+        }
+
+        /**
+         * Fills the given buffer from the data file, from the given position.
+         * @param buffer The buffer to fill.
+         * @param position The position in the data file to read from.
+         * @throws IOException If the data file couldn't be read, or ended before the buffer was filled.
+         */
+        private void readFully(ByteBuffer buffer, long position) throws IOException
+        {
+            while(buffer.hasRemaining())
+                if(data.read(buffer, position + buffer.position()) < 0)
+                    throw new IOException("Unexpected end of equation cache data file.");
+        }
+
+        /**
+         * Appends a record of the given contents to the data file, and an entry for it to the index. The data file is
+         * locked while this happens, so that other processes don't write to either file at the same time.
+         * @param textHash The hash of the text of the equation the record is of.
+         * @param contents The contents of the record.
+         * @throws IOException If either file couldn't be written.
+         */
+        void append(long textHash, byte[] contents) throws IOException
+        {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + contents.length);
+            record.putInt(contents.length).putInt(checksumOf(contents)).put(contents).flip();
+
+            FileLock lock = data.lock();
+
+            try
+            {
+                long position = data.size();
+
+                while(record.hasRemaining())
+                    data.write(record, position + record.position());
+
+                // An entry only partly written is overwritten, rather than misaligning every entry after it.
+                long indexSize = index.size();
+                ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+                entry.putLong(textHash).putLong(position).flip();
+
+                while(entry.hasRemaining())
+                    index.write(entry, indexSize - indexSize % INDEX_ENTRY_SIZE + entry.position());
+
+                positions.put(textHash, position);
+            }
+            finally
+            { lock.release(); }
+        }
+
+        /**
+         * Closes the data and index files.
+         * @throws IOException If either file couldn't be closed.
+         */
+        void close() throws IOException
+        {
+            try
+            { data.close(); }
+            finally
+            { index.close(); }
+        }
+    }
+    //endregion
+
+    //region methods
+    //region accessors
+    /**
+     * Gets the directory equations are stored in.
+     * @return The directory equations are stored in.
+     */
+    public Path getDirectory()
+    { return directory; }
+
+    /**
+     * Gets the number of equations loaded from this cache, rather than parsed, since it was opened.
+     * @return The number of equations loaded from this cache.
+     */
+    public long getHitCount()
+    {
+        synchronized(syncLock)
+        { return hitCount; }
+    }
+
+    /**
+     * Gets the number of equations parsed and stored in this cache, where they couldn't be loaded from it, since it was
+     * opened. Equations that couldn't be parsed, or couldn't be stored, aren't counted.
+     * @return The number of equations stored in this cache.
+     */
+    public long getMissCount()
+    {
+        synchronized(syncLock)
+        { return missCount; }
+    }
+    //endregion
+
+    //region parse
+    /**
+     * Gets the top level component of the given equation as built by the given builder, loading it from this cache
+     * where it was stored by a builder with the same fingerprint, and otherwise parsing it and storing it. Once this
+     * cache has been closed, equations are always parsed.
+     * @param builder The builder building the equation.
+     * @param toParse The equation as a string.
+     * @return The top level component of the given equation.
+     * @throws Equation.Builder.EquationParseException If the given string isn't a valid equation.
+     * @throws UncheckedIOException If this cache's files couldn't be read or written.
+     */
+    EquationComponent parse(Builder builder, String toParse)
+    {
+        // The name change count is read first, so that where names change while this is parsing, the grammar is worked
+        // out again next time, rather than kept against the old count.
+        long nameChangeCount = builder.getNameChangeCount();
+        Builder snapshot = builder.getParsingSnapshot();
+        Grammar grammar;
+        Store store;
+        long textHash = EquationPrinter.hashText(toParse);
+
+        synchronized(syncLock)
+        {
+            if(closed)
+                return Builder.parse(toParse, snapshot);
+
+            grammar = grammars.get(snapshot);
+
+            if(grammar == null || grammar.nameChangeCount != nameChangeCount)
+            {
+                grammar = new Grammar(snapshot, nameChangeCount);
+                grammars.put(snapshot, grammar);
+            }
+
+            if(grammar.fingerprint == null)
+                return Builder.parse(toParse, snapshot);
+
+            try
+            {
+                store = storeOf(grammar.fingerprint);
+                Long position = store.positions.get(textHash);
+
+                if(position != null)
+                {
+                    EquationComponent loaded = load(store.read(position), toParse, grammar);
+
+                    if(loaded != null)
+                    {
+                        hitCount++;
+                        return loaded;
+                    }
+                }
+            }
+            catch(IOException e)
+            { throw new UncheckedIOException(e); }
+        }
+
+        EquationComponent parsed = Builder.parse(toParse, snapshot);
+        byte[] contents;
+
+        try
+        { contents = encode(toParse, parsed, grammar); }
+        catch(IllegalArgumentException e)
+        { return parsed; } // Equations using operators or components that can't be stored are just not cached.
+
+        synchronized(syncLock)
+        {
+            if(closed)
+                return parsed;
+
+            try
+            { store.append(textHash, contents); }
+            catch(IOException e)
+            { throw new UncheckedIOException(e); }
+
+            missCount++;
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Gets the store of the given fingerprint, opening it if it isn't already open. This cache should be locked upon
+     * while this is called.
+     * @param fingerprint The fingerprint of the store to get.
+     * @return The store of the given fingerprint.
+     * @throws IOException If the store's files couldn't be opened or read.
+     */
+    private Store storeOf(long fingerprint) throws IOException
+    {
+        Store store = stores.get(fingerprint);
+
+        if(store == null)
+        {
+            store = new Store(directory, fingerprint);
+            stores.put(fingerprint, store);
+        }
+
+        return store;
+    }
+    //endregion
+
+    //region encoding
+    /**
+     * <p>Encodes the given equation as the contents of a record: its text, followed by its structure.</p>
+     *
+     * <p>Components are written depth-first, each as a tag followed by its contents. Operations are written as the
+     * fixity and tokens of the operator performing them, function calls as the name of the function called, and
+     * references to iteration indices as the number of iterations between them and their iteration. Components
+     * appearing more than once, such as the arguments of inlined function definitions, are written once, then referred
+     * to by the order they were first written in.</p>
+     *
+     * <p>Components referring to iteration indices are always written in full, as inlined definitions share their
+     * indices between every call, and each copy must refer to the iteration it's in rather than the first one
+     * written.</p>
+     * @param text The text of the equation.
+     * @param component The top level component of the equation.
+     * @param grammar The grammar of the builder that parsed the equation.
+     * @return The contents of a record of the equation.
+     * @throws IllegalArgumentException If the equation can't be encoded, as it contains an operation whose action isn't
+     *                                  performed by any of the builder's operators, or an unrecognised component.
+     */
+    private static byte[] encode(String text, EquationComponent component, Grammar grammar)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try(DataOutputStream out = new DataOutputStream(bytes))
+        {
+            writeString(out, text);
+            encode(out, component, grammar, new ArrayList<>(), new IdentityHashMap<>());
+        }
+        catch(IOException e)
+        { throw new UncheckedIOException(e); } // Writing to a byte array doesn't throw.
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the given component.
+     * @param out The stream to write to.
+     * @param component The component to write.
+     * @param grammar The grammar of the builder that parsed the component.
+     * @param indices The indices of the iterations the component is in, from outermost to innermost.
+     * @param written The order each component already written was first written in, where it may be referred to.
+     * @return True if the component refers to any iteration index, and so wasn't recorded in {@code written}.
+     *         Otherwise, false.
+     * @throws IOException If the stream couldn't be written to.
+     */
+    private static boolean encode(DataOutputStream out,
+                                  EquationComponent component,
+                                  Grammar grammar,
+                                  List<IterationIndex> indices,
+                                  Map<EquationComponent, Integer> written) throws IOException
+    {
+        Integer repeated = written.get(component);
+
+        if(repeated != null)
+        {
+            out.writeByte(TAG_REPEAT);
+            out.writeInt(repeated);
+            return false;
+        }
+
+        boolean refersToIndex = false;
+
+        if(component instanceof LiteralNumber)
+        {
+            out.writeByte(TAG_LITERAL);
+            out.writeDouble(((LiteralNumber)component).getValue());
+        }
+        else if(component instanceof VariableReference)
+        {
+            out.writeByte(TAG_VARIABLE);
+            writeString(out, ((VariableReference)component).getName());
+        }
+        else if(component instanceof IterationIndex)
+        {
+            int depth = indices.lastIndexOf(component);
+
+            if(depth < 0)
+                throw new IllegalArgumentException("Iteration index outside of its iteration.");
+
+            out.writeByte(TAG_INDEX);
+            out.writeInt(indices.size() - 1 - depth);
+            refersToIndex = true;
+        }
+        else if(component instanceof FunctionCall)
+        {
+            FunctionCall call = (FunctionCall)component;
+            EquationComponent[] arguments = call.getArguments();
+            out.writeByte(TAG_FUNCTION);
+            writeString(out, call.getFunctionName());
+            out.writeInt(arguments.length);
+
+            for(EquationComponent argument : arguments)
+                refersToIndex |= encode(out, argument, grammar, indices, written);
+        }
+        else if(component instanceof Iteration)
+        {
+            Iteration iteration = (Iteration)component;
+            out.writeByte(TAG_ITERATION);
+            out.writeByte(iteration.getKind());
+            writeString(out, iteration.getIndex().getName());
+            refersToIndex |= encode(out, iteration.getFrom(), grammar, indices, written);
+            refersToIndex |= encode(out, iteration.getTo(), grammar, indices, written);
+            indices.add(iteration.getIndex());
+            refersToIndex |= encode(out, iteration.getBody(), grammar, indices, written);
+            indices.remove(indices.size() - 1);
+        }
+        else if(component instanceof Operation)
+        {
+            Operation operation = (Operation)component;
+            Operator operator = grammar.printer.operatorOf(operation);
+            out.writeByte(TAG_OPERATION);
+            out.writeByte(EquationPrinter.fixityOf(operator));
+            out.writeInt(operator.tokens.size());
+
+            for(Token token : operator.tokens)
+                writeString(out, token.toString());
+
+            for(EquationComponent operand : operation.getComponents())
+                refersToIndex |= encode(out, operand, grammar, indices, written);
+        }
+        else
+            throw new IllegalArgumentException("Unrecognised equation component: " + component.getClass().getName());
+
+        if(!refersToIndex)
+            written.put(component, written.size());
+
+        return refersToIndex;
+    }
+
+    /**
+     * Writes the given string, as its length in bytes followed by its bytes in UTF-8.
+     * @param out The stream to write to.
+     * @param s The string to write.
+     * @throws IOException If the stream couldn't be written to.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    //endregion
+
+    //region decoding
+    /**
+     * Decodes the contents of a record, where it's of the given equation.
+     * @param contents The contents of the record, or null if it couldn't be read.
+     * @param text The text of the equation being built.
+     * @param grammar The grammar of the builder building the equation.
+     * @return The top level component of the equation, or null if the record couldn't be read, is of a different
+     *         equation whose text has the same hash, or can't be decoded.
+     */
+    private static EquationComponent load(byte[] contents, String text, Grammar grammar)
+    {
+        if(contents == null)
+            return null;
+
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents)))
+        {
+            if(!readString(in).equals(text))
+                return null;
+
+            EquationComponent result = decode(in, grammar, new ArrayList<>(), new ArrayList<>(),
+                                              Collections.newSetFromMap(new IdentityHashMap<>()));
+            return in.available() == 0 ? result : null;
+        }
+        catch(IOException | RuntimeException e)
+        { return null; } // Records that can't be decoded are treated as though they weren't there.
+    }
+
+    /**
+     * Reads a component.
+     * @param in The stream to read from.
+     * @param grammar The grammar of the builder building the equation.
+     * @param indices The indices of the iterations the component is in, from outermost to innermost.
+     * @param read The components already read that don't refer to iteration indices, in the order they were first
+     *             read, where they may be referred to.
+     * @param referringToIndices The components already read that refer to iteration indices.
+     * @return The component read.
+     * @throws IOException If the stream couldn't be read from, or doesn't contain a valid component.
+     */
+    private static EquationComponent decode(DataInputStream in,
+                                            Grammar grammar,
+                                            List<IterationIndex> indices,
+                                            List<EquationComponent> read,
+                                            Set<EquationComponent> referringToIndices) throws IOException
+    {
+        byte tag = in.readByte();
+        EquationComponent result;
+        List<EquationComponent> parts;
+
+        switch(tag)
+        {
+            case TAG_REPEAT:
+                return read.get(in.readInt());
+
+            case TAG_LITERAL:
+                result = new LiteralNumber(in.readDouble());
+                read.add(result);
+                return result;
+
+            case TAG_VARIABLE:
+                result = new VariableReference(readString(in));
+                read.add(result);
+                return result;
+
+            case TAG_INDEX:
+                result = indices.get(indices.size() - 1 - in.readInt());
+                referringToIndices.add(result);
+                return result;
+
+            case TAG_FUNCTION:
+            {
+                String name = readString(in);
+                EquationComponent[] arguments = new EquationComponent[readCount(in)];
+
+                for(int i = 0; i < arguments.length; i++)
+                    arguments[i] = decode(in, grammar, indices, read, referringToIndices);
+
+                result = new FunctionCall(name, arguments);
+                parts = Arrays.asList(arguments);
+                break;
+            }
+
+            case TAG_ITERATION:
+            {
+                int kind = in.readByte();
+                IterationIndex index = new IterationIndex(readString(in));
+                EquationComponent from = decode(in, grammar, indices, read, referringToIndices);
+                EquationComponent to = decode(in, grammar, indices, read, referringToIndices);
+                indices.add(index);
+                EquationComponent body = decode(in, grammar, indices, read, referringToIndices);
+                indices.remove(indices.size() - 1);
+                result = new Iteration(kind, index, from, to, body);
+                parts = Arrays.asList(from, to, body);
+                break;
+            }
+
+            case TAG_OPERATION:
+            {
+                int fixity = in.readByte();
+                List<String> tokens = new ArrayList<>();
+
+                for(int i = readCount(in); i > 0; i--)
+                    tokens.add(readString(in));
+
+                Operator operator = grammar.operators.get(Grammar.keyOf(fixity, tokens));
+
+                if(operator == null)
+                    throw new IOException("Unrecognised operator: " + tokens);
+
+                int operandCount = operator instanceof InfixOperator ? tokens.size() + 1 : 1;
+                List<EquationComponent> operands = new ArrayList<>(operandCount);
+
+                for(int i = 0; i < operandCount; i++)
+                    operands.add(decode(in, grammar, indices, read, referringToIndices));
+
+                result = new Operation(operands, operator.action);
+                parts = operands;
+                break;
+            }
+
+            default:
+                throw new IOException("Unrecognised component tag: " + tag);
+        }
+
+        // Components are only numbered as they were when written, where they don't refer to any iteration index.
+        boolean refersToIndex = false;
+
+        for(EquationComponent part : parts)
+            if(referringToIndices.contains(part))
+            {
+                refersToIndex = true;
+                break;
+            }
+
+        if(refersToIndex)
+            referringToIndices.add(result);
+        else
+            read.add(result);
+
+        return result;
+    }
+
+    /**
+     * Reads a string, as written by {@link #writeString(DataOutputStream, String)}.
+     * @param in The stream to read from.
+     * @return The string read.
+     * @throws IOException If the stream couldn't be read from.
+     */
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a count of things that follow, which must be no more than the number of bytes left to read.
+     * @param in The stream to read from.
+     * @return The count read.
+     * @throws IOException If the stream couldn't be read from, or the count is negative or too large.
+     */
+    private static int readCount(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+
+        if(count < 0 || count > in.available())
+            throw new IOException("Invalid count: " + count);
+
+        return count;
+    }
+
+    /**
+     * Gets the CRC-32 checksum of the given bytes.
+     * @param bytes The bytes to checksum.
+     * @return The checksum of the given bytes.
+     */
+    private static int checksumOf(byte[] bytes)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int)crc.getValue();
+    }
+    //endregion
+
+    /**
+     * Closes this cache's files. Builders using this cache parse every equation after this.
+     * @throws IOException If any of this cache's files couldn't be closed.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized(syncLock)
+        {
+            if(closed)
+                return;
+
+            closed = true;
+            IOException thrown = null;
+
+            for(Store store : stores.values())
+            {
+                try
+                { store.close(); }
+                catch(IOException e)
+                {
+                    if(thrown == null)
+                        thrown = e;
+                    else
+                        thrown.addSuppressed(e);
+                }
+            }
+
+            stores.clear();
+            grammars.clear();
+
+            if(thrown != null)
+                throw thrown;
+        }
+    }
+    //endregion
+}
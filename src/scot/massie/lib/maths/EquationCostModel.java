@@ -0,0 +1,559 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.Iteration;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.OperatorAction;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * <p>A static model of the cost of evaluating equations, for deciding whether to evaluate equations from untrusted
+ * sources before any work is done, and for limiting the work done evaluating them.</p>
+ *
+ * <p>The cost of an equation is the total weight of the components evaluated in evaluating it once:</p>
+ *
+ * <ul>
+ *     <li>Literal numbers, variable references, and iteration indices each weigh 1.</li>
+ *     <li>Operations weigh the weight of their operator, which is 1 unless set with
+ *     {@link #withOperatorWeight(OperatorAction, double)}.</li>
+ *     <li>Function calls weigh the weight of their function, for the number of arguments passed, which is 1 unless set
+ *     with {@link #withFunctionWeight(String, IntToDoubleFunction)}.</li>
+ *     <li>Iterations weigh 1, plus 1 for each value their index takes.</li>
+ * </ul>
+ *
+ * <p>Components appearing more than once in an equation, (as they may where functions defined by other equations are
+ * inlined) are weighed each time they appear, as they're evaluated each time, but are only examined once - so
+ * equations that would take exponentially long to evaluate can be estimated quickly.</p>
+ *
+ * <p>The number of values an iteration's index takes is known where its bounds are constant. Where either bound
+ * depends on a variable, or on the index of an enclosing iteration, the index is assumed to take
+ * {@link #withAssumedIterationCount(double) the assumed number of values}, and the estimate isn't
+ * {@link Estimate#isExact() exact}.</p>
+ *
+ * <p>{@link Equation#evaluateWithinBudget(EquationCostModel, double)} evaluates an equation, stopping with a
+ * {@link BudgetExceededException} where the cost of doing so, as measured by the cost model, would exceed a given
+ * budget. The cost of everything other than the repeated evaluation of iterations' bodies is charged before the
+ * equation is evaluated, and iterations charge for their bodies before the first value of their index, so equations
+ * over budget are stopped before doing the work that would put them over.</p>
+ *
+ * <p>The cost of a function's implementation isn't known beyond its weight, so functions whose implementations are
+ * expensive, or depend on the size of their arguments, (such as evaluating other equations, or sorting their arguments)
+ * should be given weights reflecting that.</p>
+ *
+ * <p>Cost models are immutable - methods that change weights return new cost models.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * EquationCostModel model = new EquationCostModel()
+ *         .withOperatorWeight(StandardOperatorActions.POWER, 20)
+ *         .withFunctionWeight("median", argCount -> argCount * Math.log(argCount + 1));
+ *
+ * Equation eq = builder.build(untrustedText);
+ *
+ * if(model.estimate(eq).getCost() > 1_000_000)
+ *     reject();
+ *
+ * double result = eq.evaluateWithinBudget(model, 1_000_000);
+ * }</pre>
+ */
+public final class EquationCostModel
+{
+    //region inner classes
+    /**
+     * Thrown when evaluating an equation would cost more than the budget it was given.
+     */
+    public static final class BudgetExceededException extends RuntimeException
+    {
+        /**
+         * The budget that would have been exceeded.
+         */
+        private final double budget;
+
+        /**
+         * Creates a new BudgetExceededException.
+         * @param budget The budget that would have been exceeded.
+         */
+        public BudgetExceededException(double budget)
+        {
+            super("Evaluating the equation would cost more than its budget of " + budget + ".");
+            this.budget = budget;
+        }
+
+        /**
+         * Gets the budget that would have been exceeded.
+         * @return The budget the equation was being evaluated within.
+         */
+        public double getBudget()
+        { return budget; }
+    }
+
+    /**
+     * An estimate of the cost of evaluating an equation, from {@link #estimate(Equation)}.
+     */
+    public static final class Estimate
+    {
+        /**
+         * The estimated cost.
+         */
+        private final double cost;
+
+        /**
+         * The depth of the equation's components.
+         */
+        private final int depth;
+
+        /**
+         * Whether the number of values each iteration's index takes is known.
+         */
+        private final boolean exact;
+
+        /**
+         * Creates a new estimate.
+         * @param cost The estimated cost.
+         * @param depth The depth of the equation's components.
+         * @param exact Whether the number of values each iteration's index takes is known.
+         */
+        Estimate(double cost, int depth, boolean exact)
+        {
+            this.cost = cost;
+            this.depth = depth;
+            this.exact = exact;
+        }
+
+        /**
+         * Gets the estimated cost of evaluating the equation once.
+         * @return The total weight of the components evaluated in evaluating the equation. This may be infinite
+         *         where the weights are large enough.
+         */
+        public double getCost()
+        { return cost; }
+
+        /**
+         * Gets the depth of the equation's components - the greatest number of components evaluated within one
+         * another, which limits how deeply evaluation recurses. Equations consisting of a single number or variable
+         * have a depth of 1.
+         * @return The depth of the equation's components.
+         */
+        public int getDepth()
+        { return depth; }
+
+        /**
+         * Gets whether the number of values each of the equation's iterations' indices takes is known, such that the
+         * estimated cost is exactly the cost of evaluating the equation.
+         * @return True if no iterations' bounds depend on variables or other iterations' indices. Otherwise, false.
+         */
+        public boolean isExact()
+        { return exact; }
+
+        @Override
+        public String toString()
+        { return "cost " + (exact ? "" : "~") + cost + ", depth " + depth; }
+    }
+
+    /**
+     * The cost of a single component, as worked out by a {@link Pass}.
+     */
+    private static final class ComponentCost
+    {
+        /**
+         * The estimated cost of evaluating the component.
+         */
+        double estimated;
+
+        /**
+         * The cost of evaluating the component, without the repeated evaluation of any iterations' bodies.
+         */
+        double fixed;
+
+        /**
+         * The depth of the component.
+         */
+        int depth;
+
+        /**
+         * Whether the estimated cost is exact.
+         */
+        boolean exact = true;
+    }
+
+    /**
+     * The budget of a single evaluation of an equation within a budget, charged as the equation is evaluated.
+     */
+    static final class Budget
+    {
+        /**
+         * The budget the equation is being evaluated within.
+         */
+        private final double budget;
+
+        /**
+         * The costs of evaluating each iteration's body once, and moving its index on, without the repeated
+         * evaluation of any iterations within it.
+         */
+        private final Map<Iteration, Double> stepCosts;
+
+        /**
+         * The number of elements the equation is being evaluated for, where it's being evaluated element-wise.
+         * Otherwise, 1. Iterations are charged once per element.
+         */
+        private final int elementCount;
+
+        /**
+         * The cost charged so far.
+         */
+        private double spent = 0;
+
+        /**
+         * Creates a new budget.
+         * @param budget The budget the equation is being evaluated within.
+         * @param stepCosts The costs of evaluating each iteration's body once, and moving its index on, without the
+         *                  repeated evaluation of any iterations within it.
+         * @param elementCount The number of elements the equation is being evaluated for.
+         */
+        private Budget(double budget, Map<Iteration, Double> stepCosts, int elementCount)
+        {
+            this.budget = budget;
+            this.stepCosts = stepCosts;
+            this.elementCount = elementCount;
+        }
+
+        /**
+         * Charges the given cost to this budget.
+         * @param cost The cost to charge.
+         * @throws BudgetExceededException If charging the given cost would exceed this budget.
+         */
+        void charge(double cost)
+        {
+            // Written so that NaN costs are over budget.
+            if(!(spent + cost <= budget))
+                throw new BudgetExceededException(budget);
+
+            spent += cost;
+        }
+
+        /**
+         * Charges the cost of evaluating the given iteration's body for the given number of values of its index.
+         * @param iteration The iteration about to be evaluated.
+         * @param count The number of values the iteration's index is about to take.
+         * @throws BudgetExceededException If charging the cost would exceed this budget.
+         */
+        void chargeIteration(Iteration iteration, long count)
+        { charge(stepCosts.get(iteration) * count * elementCount); }
+    }
+
+    /**
+     * A single estimate of the cost of an equation component. This keeps track of the costs of the components already
+     * examined, so components appearing in several parts of an equation are only examined once.
+     */
+    private final class Pass
+    {
+        /**
+         * The costs of the components already examined in this pass, mapped against those components.
+         */
+        private final Map<EquationComponent, ComponentCost> costs = new IdentityHashMap<>();
+
+        /**
+         * The costs of evaluating each iteration's body once, and moving its index on, without the repeated evaluation
+         * of any iterations within it.
+         */
+        private final Map<Iteration, Double> stepCosts = new IdentityHashMap<>();
+
+        /**
+         * Gets the cost of the given equation component.
+         * @param component The equation component.
+         * @return The cost of the given component.
+         */
+        ComponentCost costOf(EquationComponent component)
+        {
+            ComponentCost cost = costs.get(component);
+
+            if(cost != null)
+                return cost;
+
+            cost = new ComponentCost();
+
+            if(component instanceof Operation)
+            {
+                Operation op = (Operation)component;
+                double weight = operatorWeights.getOrDefault(op.getAction(), 1.0);
+                cost.estimated = cost.fixed = weight;
+                addOperands(cost, op.getComponents().toArray(new EquationComponent[0]));
+            }
+            else if(component instanceof FunctionCall)
+            {
+                FunctionCall call = (FunctionCall)component;
+                IntToDoubleFunction weight = functionWeights.get(call.getFunctionName());
+                EquationComponent[] args = call.getArguments();
+                cost.estimated = cost.fixed = weight == null ? 1 : weight.applyAsDouble(args.length);
+                addOperands(cost, args);
+            }
+            else if(component instanceof Iteration)
+            {
+                Iteration iteration = (Iteration)component;
+                ComponentCost from = costOf(iteration.getFrom());
+                ComponentCost to = costOf(iteration.getTo());
+                ComponentCost body = costOf(iteration.getBody());
+                double count = countOf(iteration.getFrom(), from, iteration.getTo(), to);
+
+                stepCosts.put(iteration, 1 + body.fixed);
+                cost.fixed = 1 + from.fixed + to.fixed;
+                cost.estimated = 1 + from.estimated + to.estimated;
+                cost.depth = 1 + Math.max(Math.max(from.depth, to.depth), body.depth);
+                cost.exact = from.exact && to.exact && body.exact && !Double.isNaN(count);
+
+                if(Double.isNaN(count))
+                    count = assumedIterationCount;
+
+                // Written so that iterations that aren't evaluated don't multiply infinite body costs by 0.
+                if(count > 0)
+                    cost.estimated += count * (1 + body.estimated);
+            }
+            else
+            {
+                cost.estimated = cost.fixed = 1;
+                cost.depth = 1;
+            }
+
+            costs.put(component, cost);
+            return cost;
+        }
+
+        /**
+         * Adds the costs of the given operands or arguments to the cost of the component they belong to.
+         * @param cost The cost of the component, which is added to.
+         * @param operands The operands or arguments of the component.
+         */
+        private void addOperands(ComponentCost cost, EquationComponent[] operands)
+        {
+            int greatestDepth = 0;
+
+            for(EquationComponent operand : operands)
+            {
+                ComponentCost operandCost = costOf(operand);
+                cost.estimated += operandCost.estimated;
+                cost.fixed += operandCost.fixed;
+                cost.exact &= operandCost.exact;
+
+                if(operandCost.depth > greatestDepth)
+                    greatestDepth = operandCost.depth;
+            }
+
+            cost.depth = 1 + greatestDepth;
+        }
+
+        /**
+         * Gets the number of values an iteration's index takes, where its bounds are constant.
+         * @param from The first value of the index.
+         * @param fromCost The cost of the first value.
+         * @param to The greatest value the index may take.
+         * @param toCost The cost of the greatest value.
+         * @return The number of values the index takes, or NaN if this isn't known.
+         */
+        private double countOf(EquationComponent from, ComponentCost fromCost,
+                               EquationComponent to, ComponentCost toCost)
+        {
+            // Bounds not referencing the equation are constant, and may be evaluated without one - but evaluating
+            // them isn't free, so only cheap ones are.
+            if(from.referencesEquation() || to.referencesEquation()
+            || fromCost.estimated + toCost.estimated > MAX_EVALUATED_BOUNDS_COST)
+                return Double.NaN;
+
+            return Iteration.countOf(from.evaluate(null), to.evaluate(null));
+        }
+    }
+    //endregion
+
+    //region constants
+    /**
+     * The default number of values the indices of iterations are assumed to take, where this isn't known.
+     */
+    public static final double DEFAULT_ASSUMED_ITERATION_COUNT = 1000;
+
+    /**
+     * The greatest total cost of an iteration's constant bounds that will be evaluated to find the number of values
+     * its index takes.
+     */
+    static final double MAX_EVALUATED_BOUNDS_COST = 10_000;
+    //endregion
+
+    //region variables
+    /**
+     * The weights of operators, mapped against their implementations.
+     */
+    private final Map<OperatorAction, Double> operatorWeights;
+
+    /**
+     * The weights of functions for the number of arguments passed, mapped against the functions' names.
+     */
+    private final Map<String, IntToDoubleFunction> functionWeights;
+
+    /**
+     * The number of values the indices of iterations are assumed to take, where this isn't known.
+     */
+    private final double assumedIterationCount;
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new cost model, where every component weighs 1, and the indices of iterations are assumed to take
+     * {@link #DEFAULT_ASSUMED_ITERATION_COUNT} values where this isn't known.
+     */
+    public EquationCostModel()
+    { this(Collections.emptyMap(), Collections.emptyMap(), DEFAULT_ASSUMED_ITERATION_COUNT); }
+
+    /**
+     * Creates a new cost model.
+     * @param operatorWeights The weights of operators, mapped against their implementations.
+     * @param functionWeights The weights of functions for the number of arguments passed, mapped against the
+     *                        functions' names.
+     * @param assumedIterationCount The number of values the indices of iterations are assumed to take, where this
+     *                              isn't known.
+     */
+    private EquationCostModel(Map<OperatorAction, Double> operatorWeights,
+                              Map<String, IntToDoubleFunction> functionWeights,
+                              double assumedIterationCount)
+    {
+        this.operatorWeights = operatorWeights;
+        this.functionWeights = functionWeights;
+        this.assumedIterationCount = assumedIterationCount;
+    }
+    //endregion
+
+    //region methods
+    //region configure
+    /**
+     * Gets a cost model the same as this one, where operations using the given operator implementation have the given
+     * weight.
+     * @param action The operator implementation, as used by {@link Operation operations} of the operator.
+     * @param weight The weight of the operator.
+     * @return A cost model the same as this one, with the given operator weight.
+     * @throws IllegalArgumentException If the weight is negative or NaN.
+     */
+    public EquationCostModel withOperatorWeight(OperatorAction action, double weight)
+    {
+        if(!(weight >= 0))
+            throw new IllegalArgumentException("Weights must be non-negative numbers. Weight given: " + weight);
+
+        Map<OperatorAction, Double> newWeights = new IdentityHashMap<>(operatorWeights);
+        newWeights.put(action, weight);
+        return new EquationCostModel(newWeights, functionWeights, assumedIterationCount);
+    }
+
+    /**
+     * Gets a cost model the same as this one, where calls to the function of the given name have the given weight,
+     * regardless of the number of arguments passed.
+     * @param functionName The name of the function.
+     * @param weight The weight of the function.
+     * @return A cost model the same as this one, with the given function weight.
+     * @throws IllegalArgumentException If the weight is negative or NaN.
+     */
+    public EquationCostModel withFunctionWeight(String functionName, double weight)
+    {
+        if(!(weight >= 0))
+            throw new IllegalArgumentException("Weights must be non-negative numbers. Weight given: " + weight);
+
+        return withFunctionWeight(functionName, argCount -> weight);
+    }
+
+    /**
+     * Gets a cost model the same as this one, where calls to the function of the given name have weights depending on
+     * the number of arguments passed. e.g. a function sorting its arguments might weigh
+     * {@code argCount -> argCount * Math.log(argCount + 1)}.
+     * @param functionName The name of the function.
+     * @param weightForArgCount The weight of the function, given the number of arguments passed to it. This should
+     *                          return non-negative numbers.
+     * @return A cost model the same as this one, with the given function weight.
+     */
+    public EquationCostModel withFunctionWeight(String functionName, IntToDoubleFunction weightForArgCount)
+    {
+        Map<String, IntToDoubleFunction> newWeights = new HashMap<>(functionWeights);
+        newWeights.put(functionName, weightForArgCount);
+        return new EquationCostModel(operatorWeights, newWeights, assumedIterationCount);
+    }
+
+    /**
+     * Gets a cost model the same as this one, where the indices of iterations are assumed to take the given number of
+     * values where this isn't known.
+     * @param count The number of values assumed. This may be infinite, to treat every equation with such iterations
+     *              as having an infinite cost.
+     * @return A cost model the same as this one, with the given assumed iteration count.
+     * @throws IllegalArgumentException If the count is negative or NaN.
+     */
+    public EquationCostModel withAssumedIterationCount(double count)
+    {
+        if(!(count >= 0))
+            throw new IllegalArgumentException("Iteration counts must be non-negative numbers. Count given: " + count);
+
+        return new EquationCostModel(operatorWeights, functionWeights, count);
+    }
+    //endregion
+
+    //region getters
+    /**
+     * Gets the number of values the indices of iterations are assumed to take, where this isn't known.
+     * @return The assumed iteration count.
+     */
+    public double getAssumedIterationCount()
+    { return assumedIterationCount; }
+    //endregion
+
+    //region estimate
+    /**
+     * Estimates the cost of evaluating the given equation once.
+     * @param equation The equation to estimate the cost of.
+     * @return An estimate of the cost of evaluating the given equation.
+     */
+    public Estimate estimate(Equation equation)
+    { return estimate(equation.topLevelComponent); }
+
+    /**
+     * Estimates the cost of evaluating the given equation component once.
+     * @param component The equation component to estimate the cost of.
+     * @return An estimate of the cost of evaluating the given component.
+     */
+    public Estimate estimate(EquationComponent component)
+    {
+        ComponentCost cost = new Pass().costOf(component);
+        return new Estimate(cost.estimated, cost.depth, cost.exact);
+    }
+
+    /**
+     * Creates the budget for evaluating the given equation component once, and charges it for everything other than
+     * the repeated evaluation of iterations' bodies.
+     * @param component The equation component about to be evaluated.
+     * @param budget The budget to evaluate the component within.
+     * @return The budget, to be charged by iterations as they're evaluated.
+     * @throws BudgetExceededException If the component's cost, not counting the repeated evaluation of iterations'
+     *                                 bodies, exceeds the budget.
+     */
+    Budget newBudget(EquationComponent component, double budget)
+    { return newBudget(component, budget, 1); }
+
+    /**
+     * Creates the budget for evaluating the given equation component element-wise, and charges it for everything other
+     * than the repeated evaluation of iterations' bodies. Everything is charged once per element, as though the
+     * component were evaluated once for each.
+     * @param component The equation component about to be evaluated.
+     * @param budget The budget to evaluate the component within.
+     * @param elementCount The number of elements the component is about to be evaluated for.
+     * @return The budget, to be charged by iterations as they're evaluated.
+     * @throws BudgetExceededException If the component's cost, not counting the repeated evaluation of iterations'
+     *                                 bodies, exceeds the budget.
+     */
+    Budget newBudget(EquationComponent component, double budget, int elementCount)
+    {
+        Pass pass = new Pass();
+        Budget result = new Budget(budget, pass.stepCosts, elementCount);
+        result.charge(pass.costOf(component).fixed * elementCount);
+        return result;
+    }
+    //endregion
+    //endregion
+}
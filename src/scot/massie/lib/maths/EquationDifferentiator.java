@@ -0,0 +1,358 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.Iteration;
+import scot.massie.lib.maths.Equation.IterationIndex;
+import scot.massie.lib.maths.Equation.LiteralNumber;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.OperatorAction;
+import scot.massie.lib.maths.Equation.StandardOperatorActions;
+import scot.massie.lib.maths.Equation.VariableReference;
+import scot.massie.lib.maths.EquationFunctions.StandardFunction;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>Symbolically differentiates equation components with respect to a single variable.</p>
+ *
+ * <p>Only the {@link StandardOperatorActions standard} arithmetic operators, the smooth {@link EquationFunctions
+ * standard functions} (sin, cos, tan, sqrt, cbrt, log, and log10), and sums over ranges not depending on the variable
+ * are differentiated. Components using anything else that depends on the variable, such as custom operators and
+ * functions, or functions that aren't smooth, such as floor and max, have no derivative here.</p>
+ *
+ * <p>Derivatives are built from the same components as the equation, sharing the parts of it they reuse, and from
+ * operations whose actions call {@link Math} directly, so they don't depend on functions available by name. They
+ * should be {@link EquationSimplifier simplified} before being evaluated many times.</p>
+ */
+final class EquationDifferentiator
+{
+    //region constants
+    /**
+     * The cosine of x.
+     */
+    private static final OperatorAction COS = o -> Math.cos(o[0]);
+
+    /**
+     * The sine of x.
+     */
+    private static final OperatorAction SIN = o -> Math.sin(o[0]);
+
+    /**
+     * The natural logarithm of x.
+     */
+    private static final OperatorAction LOG = o -> Math.log(o[0]);
+
+    /**
+     * The square root of x.
+     */
+    private static final OperatorAction SQRT = o -> Math.sqrt(o[0]);
+
+    /**
+     * The cube root of x.
+     */
+    private static final OperatorAction CBRT = o -> Math.cbrt(o[0]);
+    //endregion
+
+    //region variables
+    /**
+     * The name of the variable components are differentiated with respect to.
+     */
+    private final String variableName;
+
+    /**
+     * The functions available to the equation being differentiated, to recognise standard functions by.
+     */
+    private final Map<String, ToDoubleFunction<double[]>> functions;
+
+    /**
+     * Whether each component differentiated so far depends on the variable.
+     */
+    private final Map<EquationComponent, Boolean> dependencies = new IdentityHashMap<>();
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new differentiator.
+     * @param variableName The name of the variable to differentiate with respect to.
+     * @param functions The functions available to the equation being differentiated.
+     */
+    EquationDifferentiator(String variableName, Map<String, ToDoubleFunction<double[]>> functions)
+    {
+        this.variableName = variableName;
+        this.functions = functions;
+    }
+    //endregion
+
+    //region methods
+    /**
+     * Gets the derivative of the given component with respect to this differentiator's variable.
+     * @param component The component to differentiate.
+     * @return The derivative of the given component, or null if it can't be differentiated.
+     */
+    EquationComponent differentiate(EquationComponent component)
+    {
+        if(!dependsOnVariable(component))
+            return new LiteralNumber(0);
+
+        if(component instanceof VariableReference)
+            return new LiteralNumber(1);
+
+        if(component instanceof Operation)
+            return differentiateOperation((Operation)component);
+
+        if(component instanceof FunctionCall)
+            return differentiateFunctionCall((FunctionCall)component);
+
+        if(component instanceof Iteration)
+        {
+            Iteration iteration = (Iteration)component;
+
+            if(iteration.getKind() != Iteration.SUM
+            || dependsOnVariable(iteration.getFrom())
+            || dependsOnVariable(iteration.getTo()))
+                return null;
+
+            EquationComponent body = differentiate(iteration.getBody());
+
+            return body == null ? null : new Iteration(Iteration.SUM,
+                                                       iteration.getIndex(),
+                                                       iteration.getFrom(),
+                                                       iteration.getTo(),
+                                                       body);
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the derivative of the given operation.
+     * @param operation The operation to differentiate, which depends on the variable.
+     * @return The derivative of the given operation, or null if it can't be differentiated.
+     */
+    private EquationComponent differentiateOperation(Operation operation)
+    {
+        OperatorAction action = operation.getAction();
+        List<EquationComponent> operands = operation.getComponents();
+        EquationComponent u = operands.get(0);
+
+        if(operands.size() == 1)
+        {
+            EquationComponent du = differentiate(u);
+
+            if(du == null)
+                return null;
+
+            if(action == StandardOperatorActions.NEGATE)
+                return negate(du);
+
+            if(action == StandardOperatorActions.UNARY_PLUS)
+                return du;
+
+            if(action == StandardOperatorActions.PERCENT)
+                return divide(du, new LiteralNumber(100));
+
+            if(action == StandardOperatorActions.SQUARE_ROOT)
+                return divide(du, multiply(new LiteralNumber(2), operation));
+
+            return null;
+        }
+
+        if(operands.size() != 2)
+            return null;
+
+        EquationComponent v = operands.get(1);
+
+        // l√r is r^(1/l).
+        if(action == StandardOperatorActions.ROOT)
+            return differentiatePower(v, divide(new LiteralNumber(1), u), operation);
+
+        if(action == StandardOperatorActions.POWER)
+            return differentiatePower(u, v, operation);
+
+        EquationComponent du = differentiate(u);
+        EquationComponent dv = differentiate(v);
+
+        if(du == null || dv == null)
+            return null;
+
+        if(action == StandardOperatorActions.ADD)
+            return new Operation(du, dv, StandardOperatorActions.ADD);
+
+        if(action == StandardOperatorActions.SUBTRACT)
+            return new Operation(du, dv, StandardOperatorActions.SUBTRACT);
+
+        if(action == StandardOperatorActions.MULTIPLY)
+            return new Operation(multiply(du, v), multiply(u, dv), StandardOperatorActions.ADD);
+
+        // (u'v - uv') / v^2
+        if(action == StandardOperatorActions.DIVIDE)
+            return divide(new Operation(multiply(du, v), multiply(u, dv), StandardOperatorActions.SUBTRACT),
+                          multiply(v, v));
+
+        // u % v is u minus a multiple of v that only changes where u % v is discontinuous.
+        if(action == StandardOperatorActions.MODULO && !dependsOnVariable(v))
+            return du;
+
+        return null;
+    }
+
+    /**
+     * Gets the derivative of one component raised to the power of another.
+     * @param base The base.
+     * @param exponent The exponent.
+     * @param power The component evaluating to the base raised to the power of the exponent.
+     * @return The derivative of the power, or null if it can't be differentiated.
+     */
+    private EquationComponent differentiatePower(EquationComponent base, EquationComponent exponent,
+                                                 EquationComponent power)
+    {
+        EquationComponent dBase = differentiate(base);
+        EquationComponent dExponent = differentiate(exponent);
+
+        if(dBase == null || dExponent == null)
+            return null;
+
+        // v * u^(v - 1) * u'
+        if(!dependsOnVariable(exponent))
+        {
+            EquationComponent reduced = new Operation(exponent, new LiteralNumber(1), StandardOperatorActions.SUBTRACT);
+            return multiply(multiply(exponent, new Operation(base, reduced, StandardOperatorActions.POWER)), dBase);
+        }
+
+        // u^v * (v' * ln(u) + v * u' / u)
+        EquationComponent logBase = new Operation(base, LOG);
+
+        return multiply(power, new Operation(multiply(dExponent, logBase),
+                                             divide(multiply(exponent, dBase), base),
+                                             StandardOperatorActions.ADD));
+    }
+
+    /**
+     * Gets the derivative of the given function call.
+     * @param call The function call to differentiate, which depends on the variable.
+     * @return The derivative of the given function call, or null if it can't be differentiated.
+     */
+    private EquationComponent differentiateFunctionCall(FunctionCall call)
+    {
+        ToDoubleFunction<double[]> f = functions.get(call.getFunctionName());
+        EquationComponent[] arguments = call.getArguments();
+
+        if(!(f instanceof StandardFunction) || arguments.length == 0)
+            return null;
+
+        StandardFunction standard = ((StandardFunction)f).getStandard();
+        EquationComponent u = arguments[0];
+        EquationComponent du = differentiate(u);
+
+        if(du == null)
+            return null;
+
+        if(standard == EquationFunctions.SIN)
+            return multiply(new Operation(u, COS), du);
+
+        if(standard == EquationFunctions.COS)
+            return negate(multiply(new Operation(u, SIN), du));
+
+        if(standard == EquationFunctions.TAN)
+        {
+            EquationComponent cos = new Operation(u, COS);
+            return divide(du, multiply(cos, cos));
+        }
+
+        if(standard == EquationFunctions.SQRT)
+            return divide(du, multiply(new LiteralNumber(2), new Operation(u, SQRT)));
+
+        if(standard == EquationFunctions.CBRT)
+        {
+            EquationComponent cbrt = new Operation(u, CBRT);
+            return divide(du, multiply(new LiteralNumber(3), multiply(cbrt, cbrt)));
+        }
+
+        if(standard == EquationFunctions.LOG)
+            return divide(du, u);
+
+        if(standard == EquationFunctions.LOG10)
+            return divide(du, multiply(u, new LiteralNumber(Math.log(10))));
+
+        return null;
+    }
+
+    /**
+     * Gets whether the given component's value depends on this differentiator's variable.
+     * @param component The component to check.
+     * @return True if the given component references the variable. Otherwise, false.
+     */
+    boolean dependsOnVariable(EquationComponent component)
+    {
+        Boolean known = dependencies.get(component);
+
+        if(known != null)
+            return known;
+
+        boolean result = false;
+
+        if(component instanceof VariableReference)
+            result = ((VariableReference)component).getName().equals(variableName);
+        else if(component instanceof Operation)
+        {
+            for(EquationComponent operand : ((Operation)component).getComponents())
+                if(dependsOnVariable(operand))
+                {
+                    result = true;
+                    break;
+                }
+        }
+        else if(component instanceof FunctionCall)
+        {
+            for(EquationComponent argument : ((FunctionCall)component).getArguments())
+                if(dependsOnVariable(argument))
+                {
+                    result = true;
+                    break;
+                }
+        }
+        else if(component instanceof Iteration)
+        {
+            Iteration iteration = (Iteration)component;
+            result = dependsOnVariable(iteration.getFrom())
+                  || dependsOnVariable(iteration.getTo())
+                  || dependsOnVariable(iteration.getBody());
+        }
+        else if(!(component instanceof LiteralNumber) && !(component instanceof IterationIndex))
+            result = true;
+
+        dependencies.put(component, result);
+        return result;
+    }
+
+    /**
+     * Creates an operation multiplying one component by another.
+     * @param a The left operand.
+     * @param b The right operand.
+     * @return A new operation.
+     */
+    private static EquationComponent multiply(EquationComponent a, EquationComponent b)
+    { return new Operation(a, b, StandardOperatorActions.MULTIPLY); }
+
+    /**
+     * Creates an operation dividing one component by another.
+     * @param a The dividend.
+     * @param b The divisor.
+     * @return A new operation.
+     */
+    private static EquationComponent divide(EquationComponent a, EquationComponent b)
+    { return new Operation(a, b, StandardOperatorActions.DIVIDE); }
+
+    /**
+     * Creates an operation negating a component.
+     * @param a The operand.
+     * @return A new operation.
+     */
+    private static EquationComponent negate(EquationComponent a)
+    { return new Operation(a, StandardOperatorActions.NEGATE); }
+    //endregion
+}
@@ -0,0 +1,621 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.MissingFunctionArgumentsException;
+
+import java.math.BigInteger;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>Implementations of the numeric functions provided by default to equations made by {@link Equation.Builder}.</p>
+ *
+ * <p>Functions taking a variable number of arguments take them as an array, as passed by an equation to a function
+ * implementation, and don't modify it.</p>
+ *
+ * <p>Common functions are also provided as {@link StandardFunction standard function} objects, which the builder
+ * registers as the implementations of its default functions. These can be recognised by identity, in the same way as
+ * {@link Equation.StandardOperatorActions}, allowing e.g. {@link BatchEvaluator} to evaluate them over many values at
+ * once.</p>
+ */
+public final class EquationFunctions
+{
+    private EquationFunctions()
+    {}
+
+    //region inner classes
+    /**
+     * A function implementation, as passed to {@link Equation.Builder#withFunction(String, ToDoubleFunction)}, that can
+     * be recognised as one of the standard functions.
+     */
+    public static final class StandardFunction implements ToDoubleFunction<double[]>
+    {
+        /**
+         * The name of the function, as reported where it's called without enough arguments.
+         */
+        private final String name;
+
+        /**
+         * The number of arguments the function requires.
+         */
+        private final int requiredArgCount;
+
+        /**
+         * The function's implementation.
+         */
+        private final ToDoubleFunction<double[]> implementation;
+
+        /**
+         * Whether the function combines all of its arguments into one result, rather than taking a fixed number of
+         * arguments.
+         */
+        private final boolean isReduction;
+
+        /**
+         * The standard function this is, which is this, or the standard function this is a renamed copy of.
+         */
+        private final StandardFunction standard;
+
+        /**
+         * Creates a new standard function.
+         * @param name The name of the function.
+         * @param requiredArgCount The number of arguments the function requires.
+         * @param isReduction Whether the function combines all of its arguments into one result.
+         * @param implementation The function's implementation.
+         */
+        private StandardFunction(String name,
+                                 int requiredArgCount,
+                                 boolean isReduction,
+                                 ToDoubleFunction<double[]> implementation)
+        {
+            this.name = name;
+            this.requiredArgCount = requiredArgCount;
+            this.isReduction = isReduction;
+            this.implementation = implementation;
+            this.standard = this;
+        }
+
+        /**
+         * Creates a renamed copy of a standard function.
+         * @param source The standard function to copy.
+         * @param name The name of the copy.
+         */
+        private StandardFunction(StandardFunction source, String name)
+        {
+            this.name = name;
+            this.requiredArgCount = source.requiredArgCount;
+            this.isReduction = source.isReduction;
+            this.implementation = source.implementation;
+            this.standard = source.standard;
+        }
+
+        /**
+         * Gets a copy of this function under another name, for registering the same function under several names.
+         * The copy is recognised as the same standard function.
+         * @param name The name of the copy.
+         * @return A copy of this function, reporting the given name where it's called without enough arguments.
+         */
+        public StandardFunction named(String name)
+        { return new StandardFunction(this, name); }
+
+        /**
+         * Gets the standard function this is. This is one of the constants in {@link EquationFunctions}.
+         * @return This, or the standard function this is a renamed copy of.
+         */
+        public StandardFunction getStandard()
+        { return standard; }
+
+        /**
+         * <p>Gets whether this function is a reduction - that is, whether it combines any number of arguments into one
+         * result, as {@link #MIN min}, {@link #AVG avg}, and {@link #SUM sum} do.</p>
+         *
+         * <p>Where an equation is {@link Equation#evaluateElementWise() evaluated element-wise}, reductions collapse
+         * their array arguments to a single number, where other functions are applied to each element.</p>
+         * @return True if this function is a reduction. Otherwise, false.
+         */
+        public boolean isReduction()
+        { return isReduction; }
+
+        @Override
+        public double applyAsDouble(double[] args)
+        {
+            if(args.length < requiredArgCount)
+                throw new MissingFunctionArgumentsException(name, requiredArgCount, args.length);
+
+            return implementation.applyAsDouble(args);
+        }
+
+        @Override
+        public String toString()
+        { return name; }
+    }
+    //endregion
+
+    //region constants
+    /**
+     * The square root of 5.
+     */
+    private static final double SQRT_5 = Math.sqrt(5);
+
+    /**
+     * The largest n for which the nth number of the fibonacci sequence is finite as a double.
+     */
+    static final int LARGEST_FINITE_FIBONACCI_INDEX = 1476;
+
+    /**
+     * The greatest number of numbers to get the median of by insertion sort rather than by quickselect. Below this,
+     * insertion sort is faster.
+     */
+    static final int INSERTION_SORT_MEDIAN_THRESHOLD = 24;
+
+    /**
+     * The cosine function.
+     */
+    public static final StandardFunction COS = mono("cos", Math::cos);
+
+    /**
+     * The sine function.
+     */
+    public static final StandardFunction SIN = mono("sin", Math::sin);
+
+    /**
+     * The tangent function.
+     */
+    public static final StandardFunction TAN = mono("tan", Math::tan);
+
+    /**
+     * The square root function.
+     */
+    public static final StandardFunction SQRT = mono("sqrt", Math::sqrt);
+
+    /**
+     * The cube root function.
+     */
+    public static final StandardFunction CBRT = mono("cbrt", Math::cbrt);
+
+    /**
+     * The natural logarithm function.
+     */
+    public static final StandardFunction LOG = mono("log", Math::log);
+
+    /**
+     * The base 10 logarithm function.
+     */
+    public static final StandardFunction LOG10 = mono("log10", Math::log10);
+
+    /**
+     * The function rounding numbers down.
+     */
+    public static final StandardFunction FLOOR = mono("floor", Math::floor);
+
+    /**
+     * The function rounding numbers up.
+     */
+    public static final StandardFunction CEIL = mono("ceil", Math::ceil);
+
+    /**
+     * The function getting the least of its arguments. NaN arguments after the first are ignored.
+     */
+    public static final StandardFunction MIN = reduction("min", 1, EquationFunctions::min);
+
+    /**
+     * The function getting the greatest of its arguments. NaN arguments after the first are ignored.
+     */
+    public static final StandardFunction MAX = reduction("max", 1, EquationFunctions::max);
+
+    /**
+     * The function getting numbers of the fibonacci sequence, as by {@link #fib(double)}.
+     */
+    public static final StandardFunction FIB = mono("fib", EquationFunctions::fib);
+
+    /**
+     * The function rounding numbers towards zero, as by {@link #truncate(double)}.
+     */
+    public static final StandardFunction TRUNCATE = mono("truncate", EquationFunctions::truncate);
+
+    /**
+     * The function rounding numbers to the nearest whole number, with halves rounded up, as by
+     * {@link Math#round(double)}.
+     */
+    public static final StandardFunction ROUND = mono("round", Math::round);
+
+    /**
+     * The function getting the mean of its arguments, as by {@link #avg(double[])}.
+     */
+    public static final StandardFunction AVG = reduction("avg", 1, EquationFunctions::avg);
+
+    /**
+     * The function getting the median of its arguments, as by {@link #median(double[])}.
+     */
+    public static final StandardFunction MEDIAN = reduction("median", 1, EquationFunctions::median);
+
+    /**
+     * The function getting the population variance of its arguments, as by {@link #variance(double[])}.
+     */
+    public static final StandardFunction VARIANCE = reduction("variance", 1, EquationFunctions::variance);
+
+    /**
+     * The function getting the population standard deviation of its arguments, as by {@link #stddev(double[])}.
+     */
+    public static final StandardFunction STDDEV = reduction("stddev", 1, EquationFunctions::stddev);
+
+    /**
+     * The function getting the sum of its arguments, as by {@link #sum(double[])}. Where registered as "sum", as it is
+     * by default, the "sum" iteration takes precedence where given four arguments, the first of which is a name that
+     * isn't a variable, as in "sum(i, 1, n, i^2)".
+     */
+    public static final StandardFunction SUM = reduction("sum", 0, EquationFunctions::sum);
+
+    /**
+     * The function getting the product of its arguments, as by {@link #prod(double[])}. Where registered as "prod", as
+     * it is by default, the "prod" iteration takes precedence where given four arguments, the first of which is a name
+     * that isn't a variable, as in "prod(i, 1, n, i)".
+     */
+    public static final StandardFunction PROD = reduction("prod", 0, EquationFunctions::prod);
+
+    /**
+     * The numbers of the fibonacci sequence, from the 0th up to and including the
+     * {@link #LARGEST_FINITE_FIBONACCI_INDEX largest finite one}, each rounded to the nearest double. All numbers up
+     * to the 78th are exact.
+     */
+    private static final double[] FIBONACCI_NUMBERS = new double[LARGEST_FINITE_FIBONACCI_INDEX + 1];
+
+    static
+    {
+        BigInteger previous = BigInteger.ONE;
+        BigInteger current = BigInteger.ZERO;
+
+        for(int i = 0; i < FIBONACCI_NUMBERS.length; i++)
+        {
+            FIBONACCI_NUMBERS[i] = current.doubleValue();
+            BigInteger next = previous.add(current);
+            previous = current;
+            current = next;
+        }
+    }
+    //endregion
+
+    //region single-argument functions
+    /**
+     * Creates a standard function taking one argument. Additional arguments are ignored.
+     * @param name The name of the function.
+     * @param f The function's implementation.
+     * @return A new standard function.
+     */
+    private static StandardFunction mono(String name, DoubleUnaryOperator f)
+    { return new StandardFunction(name, 1, false, args -> f.applyAsDouble(args[0])); }
+
+    /**
+     * <p>Gets the nth number of the fibonacci sequence.</p>
+     *
+     * <p>For integers, this is exact wherever the result can be exactly represented as a double, and otherwise the
+     * nearest double to the result. Negative integers follow the sequence backwards, where fib(-n) is
+     * (-1)<sup>n+1</sup> fib(n). For other numbers, this is the continuous extension of Binet's formula,
+     * (φ<sup>n</sup> - cos(πn)φ<sup>-n</sup>) / √5.</p>
+     * @param n The position in the fibonacci sequence.
+     * @return The nth number of the fibonacci sequence.
+     */
+    public static double fib(double n)
+    {
+        if(n % 1 != 0)
+        {
+            if(Double.isNaN(n) || Double.isInfinite(n))
+                return n == Double.POSITIVE_INFINITY ? n : Double.NaN;
+
+            double phiToTheN = Math.pow(Equation.Builder.PHI, n);
+            return (phiToTheN - Math.cos(Math.PI * n) / phiToTheN) / SQRT_5;
+        }
+
+        if(n >= 0)
+            return n <= LARGEST_FINITE_FIBONACCI_INDEX ? FIBONACCI_NUMBERS[(int)n] : Double.POSITIVE_INFINITY;
+
+        if(n < -LARGEST_FINITE_FIBONACCI_INDEX)
+            return n % 2 == 0 ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+
+        int index = (int)-n;
+        double result = FIBONACCI_NUMBERS[index];
+        return index % 2 == 0 ? -result : result;
+    }
+
+    /**
+     * Rounds a number towards zero.
+     * @param x The number to round.
+     * @return The given number without its fractional part. This may be larger than the largest int or long.
+     */
+    public static double truncate(double x)
+    { return x < 0 ? Math.ceil(x) : Math.floor(x); }
+    //endregion
+
+    //region multi-argument functions
+    /**
+     * Creates a standard function combining any number of arguments into one result.
+     * @param name The name of the function.
+     * @param requiredArgCount The number of arguments the function requires.
+     * @param f The function's implementation.
+     * @return A new standard function.
+     */
+    private static StandardFunction reduction(String name, int requiredArgCount, ToDoubleFunction<double[]> f)
+    { return new StandardFunction(name, requiredArgCount, true, f); }
+
+    /**
+     * Gets the least of the given numbers. NaN numbers after the first are ignored.
+     * @param args The numbers to get the least of. There must be at least one.
+     * @return The least of the given numbers.
+     */
+    public static double min(double[] args)
+    {
+        double min = args[0];
+
+        for(int i = 1; i < args.length; i++)
+            if(args[i] < min)
+                min = args[i];
+
+        return min;
+    }
+
+    /**
+     * Gets the greatest of the given numbers. NaN numbers after the first are ignored.
+     * @param args The numbers to get the greatest of. There must be at least one.
+     * @return The greatest of the given numbers.
+     */
+    public static double max(double[] args)
+    {
+        double max = args[0];
+
+        for(int i = 1; i < args.length; i++)
+            if(args[i] > max)
+                max = args[i];
+
+        return max;
+    }
+
+    /**
+     * Gets the sum of the given numbers, added in order.
+     * @param args The numbers to sum. The sum of no numbers is 0.
+     * @return The sum of the given numbers.
+     */
+    public static double sum(double[] args)
+    {
+        double sum = 0;
+
+        for(double arg : args)
+            sum += arg;
+
+        return sum;
+    }
+
+    /**
+     * Gets the product of the given numbers, multiplied in order.
+     * @param args The numbers to multiply. The product of no numbers is 1.
+     * @return The product of the given numbers.
+     */
+    public static double prod(double[] args)
+    {
+        double product = 1;
+
+        for(double arg : args)
+            product *= arg;
+
+        return product;
+    }
+
+    /**
+     * <p>Gets the mean of the given numbers, in a single pass.</p>
+     *
+     * <p>This sums the numbers, and only where the sum overflows while all of the numbers are finite, falls back to a
+     * running mean, which doesn't overflow but divides once per number.</p>
+     * @param args The numbers to get the mean of. There must be at least one.
+     * @return The mean of the given numbers.
+     */
+    public static double avg(double[] args)
+    {
+        double sum = 0;
+
+        for(double arg : args)
+            sum += arg;
+
+        if(Double.isFinite(sum) || !allFinite(args))
+            return sum / args.length;
+
+        double mean = args[0];
+
+        for(int i = 1; i < args.length; i++)
+            mean += (args[i] - mean) / (i + 1);
+
+        return mean;
+    }
+
+    /**
+     * <p>Gets the population variance of the given numbers, in a single pass.</p>
+     *
+     * <p>This sums the numbers and their squares, each shifted by the first number so that a large common offset
+     * doesn't cost precision. Only where that overflows while all of the numbers are finite does this fall back to
+     * Welford's algorithm, which doesn't overflow but divides once per number.</p>
+     * @param args The numbers to get the variance of. There must be at least one.
+     * @return The population variance of the given numbers.
+     */
+    public static double variance(double[] args)
+    {
+        double shift = args[0];
+        double sum = 0;
+        double sumOfSquares = 0;
+
+        for(double arg : args)
+        {
+            double shifted = arg - shift;
+            sum += shifted;
+            sumOfSquares += shifted * shifted;
+        }
+
+        if((Double.isFinite(sumOfSquares) && Double.isFinite(sum)) || !allFinite(args))
+            return Math.max(0, (sumOfSquares - sum * sum / args.length) / args.length);
+
+        double mean = args[0];
+        double sumOfSquaredDifferences = 0;
+
+        for(int i = 1; i < args.length; i++)
+        {
+            double difference = args[i] - mean;
+            mean += difference / (i + 1);
+            sumOfSquaredDifferences += difference * (args[i] - mean);
+        }
+
+        return sumOfSquaredDifferences / args.length;
+    }
+
+    /**
+     * Gets the population standard deviation of the given numbers, in a single pass.
+     * @param args The numbers to get the standard deviation of. There must be at least one.
+     * @return The population standard deviation of the given numbers.
+     * @see #variance(double[])
+     */
+    public static double stddev(double[] args)
+    { return Math.sqrt(variance(args)); }
+
+    /**
+     * <p>Gets the median of the given numbers, without modifying the given array.</p>
+     *
+     * <p>This finds the median by quickselect on a copy of the given numbers, in linear time on average, rather than by
+     * sorting them. Small numbers of numbers are insertion sorted instead. Where there are an even number of numbers,
+     * the median is the mean of the middle two.</p>
+     * @param args The numbers to get the median of. There must be at least one.
+     * @return The median of the given numbers, or NaN if any of them are NaN.
+     */
+    public static double median(double[] args)
+    {
+        int length = args.length;
+
+        if(length <= 2)
+            return length == 1 ? args[0] : (args[0] + args[1]) / 2;
+
+        double[] values = args.clone();
+
+        for(double value : values)
+            if(value != value)
+                return Double.NaN;
+
+        int middle = length / 2;
+
+        if(length <= INSERTION_SORT_MEDIAN_THRESHOLD)
+        {
+            insertionSort(values);
+            return length % 2 != 0 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+        }
+
+        double upper = select(values, middle);
+
+        if(length % 2 != 0)
+            return upper;
+
+        // After selecting, everything before the middle is no greater than it.
+        double lower = values[0];
+
+        for(int i = 1; i < middle; i++)
+            if(values[i] > lower)
+                lower = values[i];
+
+        return (lower + upper) / 2;
+    }
+
+    /**
+     * Partially reorders the given numbers so that the number at the given index is the one that would be there if
+     * they were sorted, everything before it is no greater, and everything after it is no lesser.
+     * @param values The numbers to reorder. These must not include NaN.
+     * @param k The index of the number to select.
+     * @return The kth smallest of the given numbers, counting from 0.
+     */
+    static double select(double[] values, int k)
+    {
+        int left = 0;
+        int right = values.length - 1;
+
+        while(left < right)
+        {
+            // Median-of-three pivot, which also places sentinels at either end of the range.
+            int mid = (left + right) >>> 1;
+
+            if(values[mid] < values[left])
+                swap(values, mid, left);
+
+            if(values[right] < values[left])
+                swap(values, right, left);
+
+            if(values[right] < values[mid])
+                swap(values, right, mid);
+
+            double pivot = values[mid];
+            int i = left;
+            int j = right;
+
+            while(i <= j)
+            {
+                while(values[i] < pivot)
+                    i++;
+
+                while(values[j] > pivot)
+                    j--;
+
+                if(i <= j)
+                {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if(k <= j)
+                right = j;
+            else if(k >= i)
+                left = i;
+            else
+                break;
+        }
+
+        return values[k];
+    }
+
+    /**
+     * Sorts the given numbers in place, by insertion sort.
+     * @param values The numbers to sort. These must not include NaN.
+     */
+    private static void insertionSort(double[] values)
+    {
+        for(int i = 1; i < values.length; i++)
+        {
+            double value = values[i];
+            int j = i - 1;
+
+            for(; j >= 0 && values[j] > value; j--)
+                values[j + 1] = values[j];
+
+            values[j + 1] = value;
+        }
+    }
+
+    /**
+     * Gets whether all of the given numbers are finite.
+     * @param values The numbers to check.
+     * @return True if none of the given numbers are infinite or NaN. Otherwise, false.
+     */
+    private static boolean allFinite(double[] values)
+    {
+        for(double value : values)
+            if(!Double.isFinite(value))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Swaps two numbers in an array.
+     * @param values The array of numbers.
+     * @param i The index of one of the numbers to swap.
+     * @param j The index of the other number to swap.
+     */
+    private static void swap(double[] values, int i, int j)
+    {
+        double temp = values[i];
+        values[i] = values[j];
+        values[j] = temp;
+    }
+    //endregion
+}
@@ -0,0 +1,500 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.InfixOperator;
+import scot.massie.lib.maths.Equation.Iteration;
+import scot.massie.lib.maths.Equation.IterationIndex;
+import scot.massie.lib.maths.Equation.LiteralNumber;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.Operator;
+import scot.massie.lib.maths.Equation.OperatorAction;
+import scot.massie.lib.maths.Equation.PostfixOperator;
+import scot.massie.lib.maths.Equation.StandardOperatorActions;
+import scot.massie.lib.maths.Equation.Token;
+import scot.massie.lib.maths.Equation.VariableReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Prints equations in a canonical text form, and gives them a 64-bit structural hash, so that equations written
+ * differently but parsed the same may be recognised as the same - e.g. as keys of caches of parsed equations or their
+ * results.</p>
+ *
+ * <p>The canonical form doesn't depend on the whitespace or brackets of the text an equation was parsed from, only on
+ * the structure it was parsed into: "a+b", "a + b", and "(a) + (b)" are all printed as "a + b". Every operation other
+ * than the outermost is bracketed, operators are written with the tokens of the operators in the given builder that
+ * perform them, separated from their operands by single spaces, and numbers are written in the shortest form that
+ * reads back as the same number. The canonical form of an equation is parsed by the builder it was printed against
+ * into an equation with the same structure.</p>
+ *
+ * <p>Where sorting is {@link #withSortedCommutativeOperands() enabled}, the operands of operators marked as
+ * commutative are printed in order of their canonical forms, so "b + a" and "a + b" are also printed the same. Only
+ * {@link StandardOperatorActions#ADD addition} and {@link StandardOperatorActions#MULTIPLY multiplication} are marked
+ * as commutative by default, as they give exactly the same result either way around in floating-point arithmetic.
+ * Operations aren't regrouped, as floating-point arithmetic isn't associative.</p>
+ *
+ * <p>The structural hash is computed from the structure directly, rather than from the canonical form, so it's cheap
+ * to compute even for equations sharing components, whose canonical forms may be very long. Equations with the same
+ * canonical form always have the same hash, which is stable across runs.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * Equation.Builder builder = new Equation.Builder().withVariable("a", 1).withVariable("b", 2);
+ * EquationPrinter printer = new EquationPrinter(builder).withSortedCommutativeOperands();
+ * printer.print(builder.build("(b)+a*2"));           // "(2 * a) + b"
+ * printer.print(builder.build("-a + 2"));           // "(- a) + 2"
+ * printer.hash(builder.build("b + (2 * a)"))
+ *     == printer.hash(builder.build("(a * 2) + b")); // True.
+ * }</pre>
+ */
+public final class EquationPrinter
+{
+    //region constants
+    /**
+     * Distinguishes the hashes of different kinds of component with the same contents.
+     */
+    private static final long HASH_LITERAL = 0x4c49544552414cL,
+                              HASH_VARIABLE = 0x5641524941424cL,
+                              HASH_INDEX = 0x494e444558L,
+                              HASH_OPERATION = 0x4f5045524154L,
+                              HASH_FUNCTION = 0x46554e43L,
+                              HASH_ITERATION = 0x4954455241L;
+    //endregion
+
+    //region variables
+    /**
+     * The operators performing each operator action, in the order they're preferred to print operations with.
+     */
+    private final Map<OperatorAction, List<Operator>> operators;
+
+    /**
+     * The operator actions whose operands may be printed in any order.
+     */
+    private final Set<OperatorAction> commutativeActions;
+
+    /**
+     * Whether the operands of commutative operators are printed in order of their canonical forms.
+     */
+    private final boolean sortsCommutativeOperands;
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new printer of equations parsed by the given builder, which doesn't sort operands. The builder's
+     * current operators are used.
+     * @param builder The builder whose operators operations are printed with.
+     */
+    public EquationPrinter(Equation.Builder builder)
+    {
+        this.operators = new IdentityHashMap<>();
+        this.commutativeActions = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.sortsCommutativeOperands = false;
+
+        commutativeActions.add(StandardOperatorActions.ADD);
+        commutativeActions.add(StandardOperatorActions.MULTIPLY);
+
+        for(Operator operator : builder.getOperators())
+            operators.computeIfAbsent(operator.action, a -> new ArrayList<>()).add(operator);
+
+        for(List<Operator> operatorsOfAction : operators.values())
+            operatorsOfAction.sort(EquationPrinter::compareOperators);
+    }
+
+    /**
+     * Creates a modified copy of a printer.
+     * @param source The printer to copy.
+     * @param commutativeActions The operator actions whose operands may be printed in any order.
+     * @param sortsCommutativeOperands Whether the operands of commutative operators are sorted.
+     */
+    private EquationPrinter(EquationPrinter source,
+                            Set<OperatorAction> commutativeActions,
+                            boolean sortsCommutativeOperands)
+    {
+        this.operators = source.operators;
+        this.commutativeActions = commutativeActions;
+        this.sortsCommutativeOperands = sortsCommutativeOperands;
+    }
+
+    /**
+     * Orders operators, so that the same operator is chosen to print operations with whichever order they were
+     * registered in. Prefix operators come before postfix operators, then operators with fewer tokens come first,
+     * then operators whose tokens come first in order of their text.
+     * @param a The first operator.
+     * @param b The second operator.
+     * @return A negative number if the first operator comes first, a positive number if the second does, or zero.
+     */
+    private static int compareOperators(Operator a, Operator b)
+    {
+        if(fixityOf(a) != fixityOf(b))
+            return Integer.compare(fixityOf(a), fixityOf(b));
+
+        if(a.tokens.size() != b.tokens.size())
+            return Integer.compare(a.tokens.size(), b.tokens.size());
+
+        for(int i = 0; i < a.tokens.size(); i++)
+        {
+            int comparison = a.tokens.get(i).toString().compareTo(b.tokens.get(i).toString());
+
+            if(comparison != 0)
+                return comparison;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Gets a number identifying whether the given operator is infix, prefix, or postfix.
+     * @param operator The operator.
+     * @return 0 if the operator is infix, 1 if it's prefix, or 2 if it's postfix.
+     */
+    static int fixityOf(Operator operator)
+    { return operator instanceof InfixOperator ? 0 : operator instanceof PostfixOperator ? 2 : 1; }
+    //endregion
+
+    //region methods
+    //region with
+    /**
+     * Gets a copy of this printer that prints the operands of commutative operators in order of their canonical forms.
+     * @return A new printer.
+     */
+    public EquationPrinter withSortedCommutativeOperands()
+    { return new EquationPrinter(this, commutativeActions, true); }
+
+    /**
+     * Gets a copy of this printer that also considers the given operator action to be commutative, so that where
+     * sorting is enabled, the operands of operations performing it are printed in order of their canonical forms. The
+     * result of the action should be exactly the same for its operands in any order.
+     * @param action The commutative operator action.
+     * @return A new printer.
+     */
+    public EquationPrinter withCommutativeOperator(OperatorAction action)
+    {
+        Set<OperatorAction> newCommutativeActions = Collections.newSetFromMap(new IdentityHashMap<>());
+        newCommutativeActions.addAll(commutativeActions);
+        newCommutativeActions.add(action);
+        return new EquationPrinter(this, newCommutativeActions, sortsCommutativeOperands);
+    }
+    //endregion
+
+    //region print
+    /**
+     * Prints the given equation in canonical form.
+     * @param equation The equation to print.
+     * @return The canonical form of the equation.
+     * @throws IllegalArgumentException If the equation contains an operation whose action isn't performed by any of
+     *                                  this printer's operators.
+     */
+    public String print(Equation equation)
+    { return print(equation.topLevelComponent); }
+
+    /**
+     * Prints the given equation component in canonical form.
+     * @param component The component to print.
+     * @return The canonical form of the component.
+     * @throws IllegalArgumentException If the component contains an operation whose action isn't performed by any of
+     *                                   this printer's operators.
+     */
+    public String print(EquationComponent component)
+    { return new Printing().print(component, false); }
+
+    /**
+     * A single printing of a component, remembering what each component it contains was printed as.
+     */
+    private final class Printing
+    {
+        /**
+         * What each component printed so far was printed as, unbracketed.
+         */
+        private final Map<EquationComponent, String> printed = new IdentityHashMap<>();
+
+        /**
+         * Prints the given component.
+         * @param component The component to print.
+         * @param bracketed Whether the component should be bracketed if it's an operation.
+         * @return The canonical form of the component.
+         */
+        String print(EquationComponent component, boolean bracketed)
+        {
+            String result = printed.get(component);
+
+            if(result == null)
+            {
+                result = printUnbracketed(component);
+                printed.put(component, result);
+            }
+
+            return bracketed && component instanceof Operation ? "(" + result + ")" : result;
+        }
+
+        /**
+         * Prints the given component, without brackets around it.
+         * @param component The component to print.
+         * @return The canonical form of the component.
+         */
+        private String printUnbracketed(EquationComponent component)
+        {
+            if(component instanceof LiteralNumber)
+                return printNumber(((LiteralNumber)component).getValue());
+
+            if(component instanceof VariableReference)
+                return ((VariableReference)component).getName();
+
+            if(component instanceof IterationIndex)
+                return ((IterationIndex)component).getName();
+
+            if(component instanceof FunctionCall)
+            {
+                FunctionCall call = (FunctionCall)component;
+                StringBuilder sb = new StringBuilder(call.getFunctionName()).append('(');
+                EquationComponent[] arguments = call.getArguments();
+
+                for(int i = 0; i < arguments.length; i++)
+                    sb.append(i == 0 ? "" : ", ").append(print(arguments[i], false));
+
+                return sb.append(')').toString();
+            }
+
+            if(component instanceof Iteration)
+            {
+                Iteration iteration = (Iteration)component;
+                return iterationName(iteration.getKind()) + "(" + iteration.getIndex().getName()
+                       + ", " + print(iteration.getFrom(), false)
+                       + ", " + print(iteration.getTo(), false)
+                       + ", " + print(iteration.getBody(), false) + ")";
+            }
+
+            if(component instanceof Operation)
+                return printOperation((Operation)component);
+
+            throw new IllegalArgumentException("Unrecognised equation component: " + component.getClass().getName());
+        }
+
+        /**
+         * Prints the given operation, without brackets around it.
+         * @param operation The operation to print.
+         * @return The canonical form of the operation.
+         */
+        private String printOperation(Operation operation)
+        {
+            Operator operator = operatorOf(operation);
+            List<EquationComponent> operands = operation.getComponents();
+            List<String> printedOperands = new ArrayList<>(operands.size());
+
+            for(EquationComponent operand : operands)
+                printedOperands.add(print(operand, true));
+
+            if(sortsCommutativeOperands && commutativeActions.contains(operation.getAction()))
+                Collections.sort(printedOperands);
+
+            if(!(operator instanceof InfixOperator))
+            {
+                return operator instanceof PostfixOperator ? printedOperands.get(0) + " " + operator.tokens.get(0)
+                                                           : operator.tokens.get(0) + " " + printedOperands.get(0);
+            }
+
+            StringBuilder sb = new StringBuilder(printedOperands.get(0));
+
+            for(int i = 1; i < printedOperands.size(); i++)
+                sb.append(' ').append(operator.tokens.get(i - 1)).append(' ').append(printedOperands.get(i));
+
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Prints a number in the shortest form that reads back as the same number. Whole numbers of magnitude less than
+     * 10<sup>15</sup> are printed without a decimal point.
+     * @param value The number to print.
+     * @return The printed number.
+     */
+    static String printNumber(double value)
+    {
+        if(value == Math.rint(value) && Math.abs(value) < 1e15 && Double.doubleToRawLongBits(value) != Long.MIN_VALUE)
+            return Long.toString((long)value);
+
+        return Double.toString(value);
+    }
+
+    /**
+     * Gets the name an iteration of the given kind is written with.
+     * @param kind The kind of iteration.
+     * @return The name iterations of the given kind are written with.
+     */
+    static String iterationName(int kind)
+    {
+        switch(kind)
+        {
+            case Iteration.SUM:     return "sum";
+            case Iteration.PRODUCT: return "prod";
+            case Iteration.MIN:     return "min over";
+            default:                return "max over";
+        }
+    }
+
+    /**
+     * Gets the operator the given operation is printed with.
+     * @param operation The operation.
+     * @return The preferred operator performing the operation's action with the same number of operands.
+     * @throws IllegalArgumentException If none of this printer's operators perform the operation's action with the
+     *                                  operation's number of operands.
+     */
+    Operator operatorOf(Operation operation)
+    {
+        int operandCount = operation.getComponents().size();
+
+        for(Operator operator : operators.getOrDefault(operation.getAction(), Collections.emptyList()))
+        {
+            int operatorOperandCount = operator instanceof InfixOperator ? operator.tokens.size() + 1 : 1;
+
+            if(operatorOperandCount == operandCount)
+                return operator;
+        }
+
+        throw new IllegalArgumentException("No operator performs the operator action \"" + operation.getAction()
+                                           + "\" with " + operandCount + " operands.");
+    }
+    //endregion
+
+    //region hash
+    /**
+     * Gets the structural hash of the given equation.
+     * @param equation The equation to hash.
+     * @return The equation's structural hash. This is the same for any two equations with the same canonical form.
+     * @throws IllegalArgumentException If the equation contains an operation whose action isn't performed by any of
+     *                                  this printer's operators.
+     */
+    public long hash(Equation equation)
+    { return hash(equation.topLevelComponent); }
+
+    /**
+     * Gets the structural hash of the given equation component.
+     * @param component The component to hash.
+     * @return The component's structural hash. This is the same for any two components with the same canonical form.
+     * @throws IllegalArgumentException If the component contains an operation whose action isn't performed by any of
+     *                                  this printer's operators.
+     */
+    public long hash(EquationComponent component)
+    { return hash(component, new IdentityHashMap<>()); }
+
+    /**
+     * Gets the structural hash of the given equation component.
+     * @param component The component to hash.
+     * @param hashes The hashes of the components already hashed.
+     * @return The component's structural hash.
+     */
+    private long hash(EquationComponent component, Map<EquationComponent, Long> hashes)
+    {
+        Long known = hashes.get(component);
+
+        if(known != null)
+            return known;
+
+        long result;
+
+        if(component instanceof LiteralNumber)
+            result = combine(HASH_LITERAL, Double.doubleToLongBits(((LiteralNumber)component).getValue()));
+        else if(component instanceof VariableReference)
+            result = combine(HASH_VARIABLE, hashText(((VariableReference)component).getName()));
+        else if(component instanceof IterationIndex)
+            result = combine(HASH_INDEX, hashText(((IterationIndex)component).getName()));
+        else if(component instanceof FunctionCall)
+        {
+            FunctionCall call = (FunctionCall)component;
+            EquationComponent[] arguments = call.getArguments();
+            result = combine(combine(HASH_FUNCTION, hashText(call.getFunctionName())), arguments.length);
+
+            for(EquationComponent argument : arguments)
+                result = combine(result, hash(argument, hashes));
+        }
+        else if(component instanceof Iteration)
+        {
+            Iteration iteration = (Iteration)component;
+            result = combine(combine(HASH_ITERATION, iteration.getKind()), hashText(iteration.getIndex().getName()));
+            result = combine(result, hash(iteration.getFrom(), hashes));
+            result = combine(result, hash(iteration.getTo(), hashes));
+            result = combine(result, hash(iteration.getBody(), hashes));
+        }
+        else if(component instanceof Operation)
+        {
+            Operation operation = (Operation)component;
+            Operator operator = operatorOf(operation);
+            List<EquationComponent> operands = operation.getComponents();
+            long[] operandHashes = new long[operands.size()];
+
+            for(int i = 0; i < operandHashes.length; i++)
+                operandHashes[i] = hash(operands.get(i), hashes);
+
+            // Sorting by hash rather than by canonical form still gives the same hash for any order of the operands.
+            if(sortsCommutativeOperands && commutativeActions.contains(operation.getAction()))
+                Arrays.sort(operandHashes);
+
+            result = combine(HASH_OPERATION, fixityOf(operator));
+
+            for(Token token : operator.tokens)
+                result = combine(result, hashText(token.toString()));
+
+            result = combine(result, operandHashes.length);
+
+            for(long operandHash : operandHashes)
+                result = combine(result, operandHash);
+        }
+        else
+            throw new IllegalArgumentException("Unrecognised equation component: " + component.getClass().getName());
+
+        hashes.put(component, result);
+        return result;
+    }
+
+    /**
+     * Hashes the given text, by the 64-bit FNV-1a hash of its characters.
+     * @param text The text to hash.
+     * @return The hash of the text.
+     */
+    static long hashText(String text)
+    {
+        long hash = 0xcbf29ce484222325L;
+
+        for(int i = 0; i < text.length(); i++)
+        {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Combines a hash with another value, such that the result depends on the order values are combined in.
+     * @param hash The hash so far.
+     * @param value The value to combine into it.
+     * @return The combined hash.
+     */
+    static long combine(long hash, long value)
+    { return mix(hash * 0x9e3779b97f4a7c15L + value); }
+
+    /**
+     * Mixes the bits of a value, by the finaliser of MurmurHash3, so that every bit of the result depends on every
+     * bit of the value.
+     * @param value The value to mix.
+     * @return The mixed value.
+     */
+    private static long mix(long value)
+    {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+    //endregion
+    //endregion
+}
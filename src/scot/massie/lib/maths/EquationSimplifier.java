@@ -0,0 +1,763 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.Iteration;
+import scot.massie.lib.maths.Equation.IterationIndex;
+import scot.massie.lib.maths.Equation.LiteralNumber;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.OperatorAction;
+import scot.massie.lib.maths.Equation.StandardOperatorActions;
+import scot.massie.lib.maths.Equation.VariableReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>A rule-based rewriter of equations, which replaces operations with simpler equivalents. e.g. "x * 1" with "x",
+ * "--x" with "x", and "x ^ 2" with "x * x".</p>
+ *
+ * <p>Equations are simplified from the bottom up: the operands of an operation are simplified before the operation
+ * itself. Each component is then offered to each rule in order, and where a rule rewrites it, the result is simplified
+ * again, until no rule applies.</p>
+ *
+ * <p>By default, only rewrites that give exactly the same result in floating-point arithmetic, for every possible value
+ * of the variables involved, are made. This includes the handling of NaN, infinities, and negative zero - so, for
+ * instance, "x - 0" is rewritten to "x", but "x + 0" isn't, as -0 + 0 is +0. Simplifiers may be created that also make
+ * rewrites that are only algebraically equivalent, such as "x * 0" to "0", or "(a * b) / b" to "a".</p>
+ *
+ * <p>The default rules only recognise operators using the implementations in {@link StandardOperatorActions}, which
+ * {@link Equation.Builder} uses for its default operators. Operators redefined with custom implementations are left
+ * alone.</p>
+ *
+ * <p>Function calls are considered to have no side effects, but not to always return the same result for the same
+ * arguments. Function calls may be removed where their result doesn't matter, but aren't compared to one another.</p>
+ *
+ * <p>Simplifiers are immutable - methods that add rules or change options return new simplifiers.</p>
+ */
+public final class EquationSimplifier
+{
+    //region inner classes
+
+    /**
+     * A single rewrite rule, which may replace an equation component with a simpler equivalent.
+     */
+    @FunctionalInterface
+    public interface Rule
+    {
+        /**
+         * Attempts to rewrite the given equation component. The operands of the component have already been
+         * simplified.
+         * @param component The equation component to rewrite.
+         * @param simplifier The simplifier applying this rule. Rules whose rewrites aren't exact in floating-point
+         *                   arithmetic should only apply where {@link #allowsAlgebraicRewrites()} is true.
+         * @return The equation component to replace the given one with, or null if this rule doesn't apply.
+         */
+        EquationComponent rewrite(EquationComponent component, EquationSimplifier simplifier);
+    }
+    //endregion
+
+    //region constants
+    /**
+     * The greatest number of times the result of simplifying a single component may be rewritten, to prevent rules
+     * that undo one another from running forever.
+     */
+    static final int MAX_REWRITES_PER_COMPONENT = 64;
+
+    /**
+     * The default rules, in the order they're applied. Rules that aren't exact in floating-point arithmetic only apply
+     * where the simplifier allows algebraic rewrites.
+     */
+    private static final List<Rule> DEFAULT_RULES = Collections.unmodifiableList(Arrays.asList(
+            EquationSimplifier::foldConstants,
+            EquationSimplifier::removeIdentities,
+            EquationSimplifier::foldNegations,
+            EquationSimplifier::reducePowers,
+            EquationSimplifier::reduceDivisions,
+            EquationSimplifier::removeAlgebraicIdentities,
+            EquationSimplifier::cancelOperations));
+    //endregion
+
+    //region variables
+    /**
+     * The rules this simplifier applies, in the order they're applied.
+     */
+    private final List<Rule> rules;
+
+    /**
+     * Whether this simplifier makes rewrites that are algebraically equivalent, but may not give exactly the same
+     * results in floating-point arithmetic.
+     */
+    private final boolean allowsAlgebraicRewrites;
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new simplifier with the default rules, only making rewrites that are exact in floating-point
+     * arithmetic.
+     */
+    public EquationSimplifier()
+    { this(DEFAULT_RULES, false); }
+
+    /**
+     * Creates a new simplifier with the given rules.
+     * @param rules The rules the simplifier applies, in order.
+     * @param allowsAlgebraicRewrites Whether the simplifier makes rewrites that are only algebraically equivalent.
+     */
+    private EquationSimplifier(List<Rule> rules, boolean allowsAlgebraicRewrites)
+    {
+        this.rules = rules;
+        this.allowsAlgebraicRewrites = allowsAlgebraicRewrites;
+    }
+    //endregion
+
+    //region methods
+    //region configure
+    /**
+     * Gets a simplifier with the same rules as this one, that also makes rewrites that are algebraically equivalent but
+     * may not give exactly the same results in floating-point arithmetic.
+     * @param allow Whether the returned simplifier should make rewrites that are only algebraically equivalent.
+     * @return A simplifier with the same rules as this one, and the given option.
+     */
+    public EquationSimplifier allowingAlgebraicRewrites(boolean allow)
+    { return new EquationSimplifier(rules, allow); }
+
+    /**
+     * Gets a simplifier with the same rules and options as this one, plus the given rule. The given rule is applied
+     * after the existing rules.
+     * @param rule The rule to add.
+     * @return A simplifier with the same rules as this one, plus the given rule.
+     */
+    public EquationSimplifier withRule(Rule rule)
+    {
+        List<Rule> newRules = new ArrayList<>(rules);
+        newRules.add(rule);
+        return new EquationSimplifier(Collections.unmodifiableList(newRules), allowsAlgebraicRewrites);
+    }
+
+    /**
+     * Gets a simplifier with the same options as this one, but only the given rules.
+     * @param rules The rules the returned simplifier should apply, in order.
+     * @return A simplifier with the same options as this one, applying only the given rules.
+     */
+    public EquationSimplifier withOnlyRules(List<? extends Rule> rules)
+    { return new EquationSimplifier(Collections.unmodifiableList(new ArrayList<>(rules)), allowsAlgebraicRewrites); }
+    //endregion
+
+    //region getters
+    /**
+     * Gets whether this simplifier makes rewrites that are only algebraically equivalent.
+     * @return True if this simplifier makes rewrites that may not give exactly the same results in floating-point
+     *         arithmetic. Otherwise, false.
+     */
+    public boolean allowsAlgebraicRewrites()
+    { return allowsAlgebraicRewrites; }
+
+    /**
+     * Gets the rules this simplifier applies.
+     * @return The rules this simplifier applies, in the order it applies them.
+     */
+    public List<Rule> getRules()
+    { return rules; }
+
+    /**
+     * Gets the rules simplifiers apply by default.
+     * @return The default rules, in the order they're applied.
+     */
+    public static List<Rule> getDefaultRules()
+    { return DEFAULT_RULES; }
+    //endregion
+
+    //region simplify
+    /**
+     * Gets a copy of the given equation with its operations simplified. This is the same as
+     * {@link Equation#simplified(EquationSimplifier)}.
+     * @param equation The equation to simplify.
+     * @return A simplified copy of the given equation.
+     */
+    public Equation simplify(Equation equation)
+    { return equation.simplified(this); }
+
+    /**
+     * Simplifies the given equation component.
+     * @param component The equation component to simplify.
+     * @return A simplified equivalent of the given equation component. This may be the given component, where it
+     *         can't be simplified.
+     */
+    public EquationComponent simplify(EquationComponent component)
+    { return new Pass().simplify(component); }
+
+    /**
+     * A single simplification of an equation component. This keeps track of the components already simplified, so
+     * components shared between several parts of an equation are only simplified once, and of the components being
+     * simplified, so that rules rewriting a component into something containing itself don't recurse forever.
+     */
+    private final class Pass
+    {
+        /**
+         * The results of simplifying components already simplified in this pass, mapped against those components.
+         */
+        private final Map<EquationComponent, EquationComponent> simplified = new IdentityHashMap<>();
+
+        /**
+         * The components currently being simplified in this pass.
+         */
+        private final Set<EquationComponent> inProgress = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        /**
+         * Simplifies the given equation component.
+         * @param component The equation component to simplify.
+         * @return A simplified equivalent of the given equation component.
+         */
+        EquationComponent simplify(EquationComponent component)
+        {
+            EquationComponent result = simplified.get(component);
+
+            if(result != null)
+                return result;
+
+            if(!inProgress.add(component))
+                return component;
+
+            EquationComponent current = simplifyOperands(component);
+
+            for(int i = 0; i < MAX_REWRITES_PER_COMPONENT; i++)
+            {
+                EquationComponent rewritten = applyRules(current);
+
+                if(rewritten == null)
+                    break;
+
+                current = simplifyOperands(rewritten);
+            }
+
+            inProgress.remove(component);
+            simplified.put(component, current);
+            return current;
+        }
+
+        /**
+         * Simplifies the operands or arguments of the given equation component.
+         * @param component The equation component to simplify the operands of.
+         * @return The given component if its operands couldn't be simplified. Otherwise, a copy of it with simplified
+         *         operands.
+         */
+        private EquationComponent simplifyOperands(EquationComponent component)
+        {
+            if(component instanceof Operation)
+            {
+                Operation op = (Operation)component;
+                List<EquationComponent> operands = op.getComponents();
+                boolean changed = false;
+
+                for(int i = 0; i < operands.size(); i++)
+                {
+                    EquationComponent operand = operands.get(i);
+                    EquationComponent simplifiedOperand = simplify(operand);
+
+                    if(simplifiedOperand != operand)
+                    {
+                        operands.set(i, simplifiedOperand);
+                        changed = true;
+                    }
+                }
+
+                return changed ? new Operation(operands, op.getAction()) : op;
+            }
+
+            if(component instanceof FunctionCall)
+            {
+                FunctionCall call = (FunctionCall)component;
+                EquationComponent[] args = call.getArguments();
+                EquationComponent[] newArgs = null;
+
+                for(int i = 0; i < args.length; i++)
+                {
+                    EquationComponent simplifiedArg = simplify(args[i]);
+
+                    if(simplifiedArg != args[i])
+                    {
+                        if(newArgs == null)
+                            newArgs = args.clone();
+
+                        newArgs[i] = simplifiedArg;
+                    }
+                }
+
+                return newArgs == null ? call : new FunctionCall(call.getFunctionName(), newArgs);
+            }
+
+            if(component instanceof Iteration)
+            {
+                Iteration iteration = (Iteration)component;
+                EquationComponent from = simplify(iteration.getFrom());
+                EquationComponent to = simplify(iteration.getTo());
+                EquationComponent body = simplify(iteration.getBody());
+
+                if(from == iteration.getFrom() && to == iteration.getTo() && body == iteration.getBody())
+                    return iteration;
+
+                return new Iteration(iteration.getKind(), iteration.getIndex(), from, to, body);
+            }
+
+            return component;
+        }
+    }
+
+    /**
+     * Offers the given equation component to each of this simplifier's rules in order, until one rewrites it.
+     * @param component The equation component to rewrite.
+     * @return The result of the first rule to rewrite the given component, or null if none did.
+     */
+    private EquationComponent applyRules(EquationComponent component)
+    {
+        for(Rule rule : rules)
+        {
+            EquationComponent rewritten = rule.rewrite(component, this);
+
+            if(rewritten != null && rewritten != component)
+                return rewritten;
+        }
+
+        return null;
+    }
+    //endregion
+
+    //region default rules
+    /**
+     * Replaces operations on literal numbers with the result. Only operations using
+     * {@link StandardOperatorActions standard implementations} are folded, unless algebraic rewrites are allowed, as
+     * custom implementations may not always give the same result.
+     * @param component The component to rewrite.
+     * @param simplifier The simplifier applying this rule.
+     * @return A literal number, or null if the rule doesn't apply.
+     */
+    static EquationComponent foldConstants(EquationComponent component, EquationSimplifier simplifier)
+    {
+        if(!(component instanceof Operation))
+            return null;
+
+        Operation op = (Operation)component;
+        OperatorAction action = op.getAction();
+
+        if(!simplifier.allowsAlgebraicRewrites
+        && !(action instanceof StandardOperatorActions.Unary)
+        && !(action instanceof StandardOperatorActions.Binary))
+        {
+            return null;
+        }
+
+        List<EquationComponent> operands = op.getComponents();
+        double[] values = new double[operands.size()];
+
+        for(int i = 0; i < values.length; i++)
+        {
+            if(!(operands.get(i) instanceof LiteralNumber))
+                return null;
+
+            values[i] = ((LiteralNumber)operands.get(i)).getValue();
+        }
+
+        return new LiteralNumber(action.performOperation(values));
+    }
+
+    /**
+     * Removes operations that leave their operand unchanged: "x * 1", "1 * x", "x / 1", "x - 0", "x + -0", "-0 + x",
+     * "x ^ 1", and "+x" all become "x". "x ^ 0" becomes 1, where x contains no function calls.
+     * @param component The component to rewrite.
+     * @param simplifier The simplifier applying this rule.
+     * @return The rewritten component, or null if the rule doesn't apply.
+     */
+    static EquationComponent removeIdentities(EquationComponent component, EquationSimplifier simplifier)
+    {
+        if(isOperation(component, StandardOperatorActions.UNARY_PLUS))
+            return operand(component, 0);
+
+        if(!isBinaryOperation(component))
+            return null;
+
+        OperatorAction action = ((Operation)component).getAction();
+        EquationComponent l = operand(component, 0);
+        EquationComponent r = operand(component, 1);
+
+        if(action == StandardOperatorActions.MULTIPLY)
+        {
+            if(isLiteral(r, 1.0))
+                return l;
+
+            if(isLiteral(l, 1.0))
+                return r;
+        }
+        else if(action == StandardOperatorActions.DIVIDE)
+        {
+            if(isLiteral(r, 1.0))
+                return l;
+        }
+        else if(action == StandardOperatorActions.SUBTRACT)
+        {
+            if(isLiteral(r, 0.0))
+                return l;
+        }
+        else if(action == StandardOperatorActions.ADD)
+        {
+            if(isLiteral(r, -0.0))
+                return l;
+
+            if(isLiteral(l, -0.0))
+                return r;
+        }
+        else if(action == StandardOperatorActions.POWER)
+        {
+            if(isLiteral(r, 1.0))
+                return l;
+
+            // Math.pow(x, 0) is 1 for every x, including NaN.
+            if((isLiteral(r, 0.0) || isLiteral(r, -0.0)) && !containsFunctionCall(l))
+                return new LiteralNumber(1.0);
+        }
+
+        return null;
+    }
+
+    /**
+     * Folds negations into the operations around them: "--x" becomes "x", "x + -y" and "-y + x" become "x - y",
+     * "x - -y" becomes "x + y", "-x * -y" becomes "x * y", "-x / -y" becomes "x / y", and "x * -1" and "-1 * x" become
+     * "-x".
+     * @param component The component to rewrite.
+     * @param simplifier The simplifier applying this rule.
+     * @return The rewritten component, or null if the rule doesn't apply.
+     */
+    static EquationComponent foldNegations(EquationComponent component, EquationSimplifier simplifier)
+    {
+        if(isOperation(component, StandardOperatorActions.NEGATE))
+        {
+            EquationComponent inner = operand(component, 0);
+            return isOperation(inner, StandardOperatorActions.NEGATE) ? operand(inner, 0) : null;
+        }
+
+        if(!isBinaryOperation(component))
+            return null;
+
+        OperatorAction action = ((Operation)component).getAction();
+        EquationComponent l = operand(component, 0);
+        EquationComponent r = operand(component, 1);
+        boolean lNegated = isOperation(l, StandardOperatorActions.NEGATE);
+        boolean rNegated = isOperation(r, StandardOperatorActions.NEGATE);
+
+        if(action == StandardOperatorActions.ADD)
+        {
+            if(rNegated)
+                return new Operation(l, operand(r, 0), StandardOperatorActions.SUBTRACT);
+
+            if(lNegated)
+                return new Operation(r, operand(l, 0), StandardOperatorActions.SUBTRACT);
+        }
+        else if(action == StandardOperatorActions.SUBTRACT)
+        {
+            if(rNegated)
+                return new Operation(l, operand(r, 0), StandardOperatorActions.ADD);
+        }
+        else if(action == StandardOperatorActions.MULTIPLY || action == StandardOperatorActions.DIVIDE)
+        {
+            if(lNegated && rNegated)
+                return new Operation(operand(l, 0), operand(r, 0), action);
+
+            if(action == StandardOperatorActions.MULTIPLY)
+            {
+                if(isLiteral(r, -1.0))
+                    return new Operation(l, StandardOperatorActions.NEGATE);
+
+                if(isLiteral(l, -1.0))
+                    return new Operation(r, StandardOperatorActions.NEGATE);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Reduces raising to small integer powers to multiplication: "x ^ 2" becomes "x * x" where x is a variable or
+     * literal number. Where algebraic rewrites are allowed, "x ^ 3" and "x ^ 4" are reduced in the same way, and
+     * "x ^ -1" becomes "1 / x".
+     * @param component The component to rewrite.
+     * @param simplifier The simplifier applying this rule.
+     * @return The rewritten component, or null if the rule doesn't apply.
+     */
+    static EquationComponent reducePowers(EquationComponent component, EquationSimplifier simplifier)
+    {
+        if(!isOperation(component, StandardOperatorActions.POWER))
+            return null;
+
+        EquationComponent base = operand(component, 0);
+        EquationComponent exponent = operand(component, 1);
+
+        if(!(exponent instanceof LiteralNumber))
+            return null;
+
+        double power = ((LiteralNumber)exponent).getValue();
+        boolean baseIsLeaf = (base instanceof VariableReference) || (base instanceof LiteralNumber);
+
+        // The result of Math.pow(x, 2) is that of x * x, which is how HotSpot implements it.
+        if(power == 2.0 && baseIsLeaf)
+            return new Operation(base, base, StandardOperatorActions.MULTIPLY);
+
+        if(!simplifier.allowsAlgebraicRewrites)
+            return null;
+
+        if(power == -1.0)
+            return new Operation(new LiteralNumber(1.0), base, StandardOperatorActions.DIVIDE);
+
+        if(baseIsLeaf && (power == 3.0 || power == 4.0))
+        {
+            EquationComponent result = new Operation(base, base, StandardOperatorActions.MULTIPLY);
+
+            for(int i = 2; i < power; i++)
+                result = new Operation(result, base, StandardOperatorActions.MULTIPLY);
+
+            return result;
+        }
+
+        return null;
+    }
+
+    /**
+     * Reduces division by a power of two to multiplication by its reciprocal, which is exactly representable: "x / 4"
+     * becomes "x * 0.25".
+     * @param component The component to rewrite.
+     * @param simplifier The simplifier applying this rule.
+     * @return The rewritten component, or null if the rule doesn't apply.
+     */
+    static EquationComponent reduceDivisions(EquationComponent component, EquationSimplifier simplifier)
+    {
+        if(!isOperation(component, StandardOperatorActions.DIVIDE))
+            return null;
+
+        EquationComponent divisor = operand(component, 1);
+
+        if(!(divisor instanceof LiteralNumber))
+            return null;
+
+        double d = ((LiteralNumber)divisor).getValue();
+
+        if(d == 0 || !Double.isFinite(d) || Math.abs(d) != Math.scalb(1.0, Math.getExponent(d)))
+            return null;
+
+        double reciprocal = 1.0 / d;
+
+        if(!Double.isFinite(reciprocal) || reciprocal * d != 1.0)
+            return null;
+
+        return new Operation(operand(component, 0), new LiteralNumber(reciprocal), StandardOperatorActions.MULTIPLY);
+    }
+
+    /**
+     * Where algebraic rewrites are allowed, removes identities that don't hold for every floating-point value: "x + 0"
+     * and "0 + x" become "x", "x * 0" and "0 * x" become "0", and "0 - x" becomes "-x".
+     * @param component The component to rewrite.
+     * @param simplifier The simplifier applying this rule.
+     * @return The rewritten component, or null if the rule doesn't apply.
+     */
+    static EquationComponent removeAlgebraicIdentities(EquationComponent component, EquationSimplifier simplifier)
+    {
+        if(!simplifier.allowsAlgebraicRewrites || !isBinaryOperation(component))
+            return null;
+
+        OperatorAction action = ((Operation)component).getAction();
+        EquationComponent l = operand(component, 0);
+        EquationComponent r = operand(component, 1);
+
+        if(action == StandardOperatorActions.ADD)
+        {
+            if(isLiteralZero(r))
+                return l;
+
+            if(isLiteralZero(l))
+                return r;
+        }
+        else if(action == StandardOperatorActions.MULTIPLY)
+        {
+            if(isLiteralZero(l) || isLiteralZero(r))
+                return new LiteralNumber(0.0);
+        }
+        else if(action == StandardOperatorActions.SUBTRACT)
+        {
+            if(isLiteralZero(l))
+                return new Operation(r, StandardOperatorActions.NEGATE);
+        }
+
+        return null;
+    }
+
+    /**
+     * Where algebraic rewrites are allowed, cancels out operations that undo one another: "x - x" becomes "0",
+     * "x / x" becomes "1", "(a * b) / b" and "(b * a) / b" become "a", and "(a / b) * b" and "b * (a / b)" become "a".
+     * Operands are only considered the same where they contain no function calls.
+     * @param component The component to rewrite.
+     * @param simplifier The simplifier applying this rule.
+     * @return The rewritten component, or null if the rule doesn't apply.
+     */
+    static EquationComponent cancelOperations(EquationComponent component, EquationSimplifier simplifier)
+    {
+        if(!simplifier.allowsAlgebraicRewrites || !isBinaryOperation(component))
+            return null;
+
+        OperatorAction action = ((Operation)component).getAction();
+        EquationComponent l = operand(component, 0);
+        EquationComponent r = operand(component, 1);
+
+        if(action == StandardOperatorActions.SUBTRACT && isSame(l, r))
+            return new LiteralNumber(0.0);
+
+        if(action == StandardOperatorActions.DIVIDE)
+        {
+            if(isSame(l, r))
+                return new LiteralNumber(1.0);
+
+            if(isOperation(l, StandardOperatorActions.MULTIPLY))
+            {
+                if(isSame(operand(l, 1), r))
+                    return operand(l, 0);
+
+                if(isSame(operand(l, 0), r))
+                    return operand(l, 1);
+            }
+        }
+        else if(action == StandardOperatorActions.MULTIPLY)
+        {
+            if(isOperation(l, StandardOperatorActions.DIVIDE) && isSame(operand(l, 1), r))
+                return operand(l, 0);
+
+            if(isOperation(r, StandardOperatorActions.DIVIDE) && isSame(operand(r, 1), l))
+                return operand(r, 0);
+        }
+
+        return null;
+    }
+    //endregion
+
+    //region helpers
+    /**
+     * Gets whether the given component is an operation using the given implementation.
+     * @param component The component to check.
+     * @param action The operator implementation.
+     * @return True if the given component is an operation using the given operator implementation. Otherwise, false.
+     */
+    public static boolean isOperation(EquationComponent component, OperatorAction action)
+    { return component instanceof Operation && ((Operation)component).getAction() == action; }
+
+    /**
+     * Gets whether the given component is an operation with two operands.
+     * @param component The component to check.
+     * @return True if the given component is an operation with exactly two operands. Otherwise, false.
+     */
+    static boolean isBinaryOperation(EquationComponent component)
+    { return component instanceof Operation && ((Operation)component).getComponents().size() == 2; }
+
+    /**
+     * Gets an operand of the given operation.
+     * @param operation The operation to get an operand of.
+     * @param index The index of the operand.
+     * @return The operand of the given operation at the given index.
+     */
+    static EquationComponent operand(EquationComponent operation, int index)
+    { return ((Operation)operation).getComponents().get(index); }
+
+    /**
+     * Gets whether the given component is a literal number of exactly the given value. Positive and negative zero are
+     * considered different.
+     * @param component The component to check.
+     * @param value The value the component may be a literal of.
+     * @return True if the given component is a literal number with the same bits as the given value. Otherwise, false.
+     */
+    public static boolean isLiteral(EquationComponent component, double value)
+    {
+        return component instanceof LiteralNumber
+               && Double.doubleToLongBits(((LiteralNumber)component).getValue()) == Double.doubleToLongBits(value);
+    }
+
+    /**
+     * Gets whether the given component is a literal number of zero, positive or negative.
+     * @param component The component to check.
+     * @return True if the given component is a literal number equal to zero. Otherwise, false.
+     */
+    static boolean isLiteralZero(EquationComponent component)
+    { return component instanceof LiteralNumber && ((LiteralNumber)component).getValue() == 0; }
+
+    /**
+     * Gets whether the given component calls any functions, directly or in any of its operands.
+     * @param component The component to check.
+     * @return True if the given component, or any component under it, is a function call. Otherwise, false.
+     */
+    public static boolean containsFunctionCall(EquationComponent component)
+    {
+        if(component instanceof FunctionCall)
+            return true;
+
+        if(component instanceof Operation)
+            for(EquationComponent operand : ((Operation)component).getComponents())
+                if(containsFunctionCall(operand))
+                    return true;
+
+        if(component instanceof Iteration)
+        {
+            Iteration iteration = (Iteration)component;
+
+            return containsFunctionCall(iteration.getFrom())
+                || containsFunctionCall(iteration.getTo())
+                || containsFunctionCall(iteration.getBody());
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets whether the two given components always evaluate to the same value, by being structurally identical and
+     * containing no function calls.
+     * @param a The first component.
+     * @param b The second component.
+     * @return True if the given components are structurally identical and contain no function calls. Otherwise,
+     *         false.
+     */
+    public static boolean isSame(EquationComponent a, EquationComponent b)
+    {
+        if(a instanceof LiteralNumber)
+            return isLiteral(b, ((LiteralNumber)a).getValue());
+
+        if(a instanceof VariableReference)
+            return b instanceof VariableReference
+                   && ((VariableReference)a).getName().equals(((VariableReference)b).getName());
+
+        if(a instanceof IterationIndex)
+            return a == b;
+
+        if(a instanceof Operation && b instanceof Operation)
+        {
+            Operation opA = (Operation)a;
+            Operation opB = (Operation)b;
+
+            if(opA.getAction() != opB.getAction())
+                return false;
+
+            List<EquationComponent> operandsA = opA.getComponents();
+            List<EquationComponent> operandsB = opB.getComponents();
+
+            if(operandsA.size() != operandsB.size())
+                return false;
+
+            for(int i = 0; i < operandsA.size(); i++)
+                if(!isSame(operandsA.get(i), operandsB.get(i)))
+                    return false;
+
+            return true;
+        }
+
+        return false;
+    }
+    //endregion
+    //endregion
+}
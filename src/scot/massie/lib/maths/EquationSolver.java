@@ -0,0 +1,573 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Solves equations for one of their variables, finding where they evaluate to given targets, or where they're
+ * least.</p>
+ *
+ * <p>Three methods are provided:</p>
+ * <ul>
+ *     <li>{@link #solve(double, double, double) Brent's method}, which finds a root within a range where the equation
+ *     crosses the target. This always converges, and is usually as fast as the secant method.</li>
+ *     <li>{@link #solveNewton(double, double) Newton's method}, which starts from a guess and follows the equation's
+ *     slope. This converges quickly near simple roots, but may not converge at all from poor guesses. Where the
+ *     equation can be differentiated symbolically (see {@link #hasSymbolicDerivative()}), the slope is evaluated
+ *     exactly; otherwise, it's estimated by central differences.</li>
+ *     <li>{@link #minimise(double, double) Golden-section search}, which finds a minimum within a range where the
+ *     equation has a single minimum.</li>
+ * </ul>
+ *
+ * <p>The solver evaluates its own copy of the equation, taken when it's created, so changes made to the equation
+ * afterwards aren't reflected in it. The variable solved for is set through a {@link Equation.VariableHandle} rather
+ * than looked up by name for each evaluation. Other variables keep the values they had in the equation at the time
+ * the solver was created.</p>
+ *
+ * <p>{@link #solveAll(double[], double, double)} solves for many targets at once, spread across all available
+ * processors, each of which evaluates its own copy of the equation. Functions used by the equation must be safe to
+ * call from several threads at once for this.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * Equation eq = new Equation.Builder().withVariable("x", 0).build("x^3 - 2 * x");
+ * EquationSolver solver = eq.solver("x");
+ * double root = solver.solve(1, 0, 2);             // x where x^3 - 2 * x == 1, between 0 and 2.
+ * double newtonRoot = solver.solveNewton(1, 1.5);  // The same, from a guess of 1.5.
+ * double least = solver.minimise(0, 2);            // 0.8164..., where x^3 - 2 * x is least.
+ * double[] roots = solver.solveAll(new double[] { 0, 1, 2 }, 1, 2);
+ * }</pre>
+ */
+public final class EquationSolver
+{
+    //region inner classes
+    /**
+     * Thrown where a solution can't be found - where the range given doesn't bracket the target, or the method used
+     * doesn't converge within the solver's maximum number of iterations.
+     */
+    public static final class NoSolutionException extends RuntimeException
+    {
+        /**
+         * Creates a new exception.
+         * @param message The reason no solution was found.
+         */
+        NoSolutionException(String message)
+        { super(message); }
+    }
+
+    /**
+     * A copy of the equation being solved, with handles to the variable solved for, for use by a single thread.
+     */
+    private final class Evaluator
+    {
+        /**
+         * The copy of the equation.
+         */
+        private final Equation equationCopy;
+
+        /**
+         * The handle to the variable solved for, in {@link #equationCopy}.
+         */
+        private final Equation.VariableHandle variable;
+
+        /**
+         * The copy of the equation's derivative, or null where it has none.
+         */
+        private final Equation derivativeCopy;
+
+        /**
+         * The handle to the variable solved for, in {@link #derivativeCopy}. Null where there's no derivative.
+         */
+        private final Equation.VariableHandle derivativeVariable;
+
+        /**
+         * Creates a new evaluator, with its own copies of the equation and its derivative.
+         */
+        Evaluator()
+        {
+            this.equationCopy = new Equation(equation);
+            this.variable = equationCopy.variableHandle(variableName);
+            this.derivativeCopy = derivative == null ? null : new Equation(derivative);
+            this.derivativeVariable = derivative == null ? null : derivativeCopy.variableHandle(variableName);
+        }
+
+        /**
+         * Evaluates the equation.
+         * @param x The value of the variable solved for.
+         * @return The result of the equation, where the variable has the given value.
+         */
+        double valueAt(double x)
+        {
+            variable.set(x);
+            return equationCopy.evaluate();
+        }
+
+        /**
+         * Evaluates the slope of the equation.
+         * @param x The value of the variable solved for.
+         * @return The derivative of the equation with respect to the variable, where the variable has the given value.
+         *         Where the equation has no symbolic derivative, this is estimated by central differences.
+         */
+        double slopeAt(double x)
+        {
+            if(derivativeCopy != null)
+            {
+                derivativeVariable.set(x);
+                return derivativeCopy.evaluate();
+            }
+
+            double step = CENTRAL_DIFFERENCE_STEP * Math.max(Math.abs(x), 1);
+            return (valueAt(x + step) - valueAt(x - step)) / (2 * step);
+        }
+    }
+    //endregion
+
+    //region constants
+    /**
+     * The tolerance solvers are created with by default.
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-12;
+
+    /**
+     * The greatest number of iterations solvers are created with by default.
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 200;
+
+    /**
+     * The step relative to the variable's magnitude that slopes are estimated over by central differences, where
+     * there's no symbolic derivative. The cube root of the machine epsilon balances truncation and rounding error.
+     */
+    static final double CENTRAL_DIFFERENCE_STEP = Math.cbrt(Math.ulp(1.0));
+
+    /**
+     * The reciprocal of the golden ratio, (√5 - 1) / 2.
+     */
+    private static final double INVERSE_GOLDEN_RATIO = (Math.sqrt(5) - 1) / 2;
+    //endregion
+
+    //region variables
+    /**
+     * The equation being solved. Copies of this are made for each thread solving it.
+     */
+    private final Equation equation;
+
+    /**
+     * The symbolic derivative of the equation with respect to the variable solved for, or null where it has none.
+     */
+    private final Equation derivative;
+
+    /**
+     * The name of the variable solved for.
+     */
+    private final String variableName;
+
+    /**
+     * The tolerance of solutions, relative to their magnitude where that's greater than 1, and otherwise absolute.
+     */
+    private final double tolerance;
+
+    /**
+     * The greatest number of iterations any method may take before giving up.
+     */
+    private final int maxIterations;
+
+    /**
+     * The copy of the equation used by single solves, which are locked on it.
+     */
+    private final Evaluator evaluator;
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new solver.
+     * @param equation The equation to solve. This should be a copy, as it's evaluated by the solver.
+     * @param variableName The name of the variable to solve for.
+     * @throws IllegalArgumentException If the equation doesn't have a variable available to it by the given name.
+     */
+    EquationSolver(Equation equation, String variableName)
+    { this(equation, derivativeOf(equation, variableName), variableName, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS); }
+
+    /**
+     * Creates a new solver.
+     * @param equation The equation to solve.
+     * @param derivative The derivative of the equation with respect to the variable solved for, or null.
+     * @param variableName The name of the variable to solve for.
+     * @param tolerance The tolerance of solutions.
+     * @param maxIterations The greatest number of iterations any method may take.
+     */
+    private EquationSolver(Equation equation,
+                           Equation derivative,
+                           String variableName,
+                           double tolerance,
+                           int maxIterations)
+    {
+        this.equation = equation;
+        this.derivative = derivative;
+        this.variableName = variableName;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        this.evaluator = new Evaluator();
+    }
+
+    /**
+     * Gets the symbolic derivative of an equation.
+     * @param equation The equation to differentiate.
+     * @param variableName The name of the variable to differentiate with respect to.
+     * @return The simplified derivative of the equation, or null where it can't be differentiated.
+     * @throws IllegalArgumentException If the equation doesn't have a variable available to it by the given name.
+     */
+    private static Equation derivativeOf(Equation equation, String variableName)
+    {
+        EquationComponent derivative;
+
+        synchronized(equation.syncLock)
+        {
+            if(!equation.variableSlots.containsKey(variableName))
+                throw new IllegalArgumentException("The equation has no variable \"" + variableName + "\".");
+
+            derivative = new EquationDifferentiator(variableName, equation.functions)
+                                 .differentiate(equation.topLevelComponent);
+        }
+
+        return derivative == null ? null : new Equation(equation, new EquationSimplifier().simplify(derivative));
+    }
+    //endregion
+
+    //region methods
+    //region getters
+    /**
+     * Gets the name of the variable this solver solves for.
+     * @return The name of the variable.
+     */
+    public String getVariableName()
+    { return variableName; }
+
+    /**
+     * Gets the tolerance of this solver's solutions.
+     * @return The tolerance, relative to the magnitude of solutions where that's greater than 1, and otherwise
+     *         absolute.
+     */
+    public double getTolerance()
+    { return tolerance; }
+
+    /**
+     * Gets the greatest number of iterations any of this solver's methods may take before giving up.
+     * @return The greatest number of iterations.
+     */
+    public int getMaxIterations()
+    { return maxIterations; }
+
+    /**
+     * Gets whether the equation could be differentiated symbolically, so that {@link #solveNewton(double, double)}
+     * evaluates its slope exactly rather than estimating it. See {@link EquationDifferentiator} for what can be
+     * differentiated.
+     * @return True if the equation has a symbolic derivative. Otherwise, false.
+     */
+    public boolean hasSymbolicDerivative()
+    { return derivative != null; }
+    //endregion
+
+    //region with
+    /**
+     * Gets a copy of this solver with a different tolerance.
+     * @param tolerance The tolerance of solutions, relative to their magnitude where that's greater than 1, and
+     *                  otherwise absolute.
+     * @return A new solver.
+     * @throws IllegalArgumentException If the tolerance isn't positive.
+     */
+    public EquationSolver withTolerance(double tolerance)
+    {
+        if(!(tolerance > 0))
+            throw new IllegalArgumentException("The tolerance must be positive, not " + tolerance + ".");
+
+        return new EquationSolver(equation, derivative, variableName, tolerance, maxIterations);
+    }
+
+    /**
+     * Gets a copy of this solver with a different greatest number of iterations.
+     * @param maxIterations The greatest number of iterations any method may take before giving up.
+     * @return A new solver.
+     * @throws IllegalArgumentException If the greatest number of iterations is less than 1.
+     */
+    public EquationSolver withMaxIterations(int maxIterations)
+    {
+        if(maxIterations < 1)
+            throw new IllegalArgumentException("There must be at least 1 iteration, not " + maxIterations + ".");
+
+        return new EquationSolver(equation, derivative, variableName, tolerance, maxIterations);
+    }
+    //endregion
+
+    //region solve
+    /**
+     * Finds a value of the variable, within the given range, at which the equation evaluates to the given target,
+     * using Brent's method.
+     * @param target The value the equation should evaluate to.
+     * @param lower One end of the range to search.
+     * @param upper The other end of the range to search.
+     * @return A value of the variable at which the equation evaluates to the target, within this solver's tolerance.
+     * @throws NoSolutionException If the equation doesn't cross the target between the ends of the range, or the
+     *                             method doesn't converge within this solver's maximum number of iterations.
+     */
+    public double solve(double target, double lower, double upper)
+    {
+        synchronized(evaluator.equationCopy.syncLock)
+        { return brent(evaluator, target, lower, upper); }
+    }
+
+    /**
+     * Finds a value of the variable at which the equation evaluates to the given target, using Newton's method, from
+     * the given initial guess.
+     * @param target The value the equation should evaluate to.
+     * @param initialGuess The value of the variable to start from.
+     * @return A value of the variable at which the equation evaluates to the target, within this solver's tolerance.
+     * @throws NoSolutionException If the equation's slope becomes zero or isn't finite, or the method doesn't
+     *                             converge within this solver's maximum number of iterations.
+     */
+    public double solveNewton(double target, double initialGuess)
+    {
+        synchronized(evaluator.equationCopy.syncLock)
+        { return newton(evaluator, target, initialGuess); }
+    }
+
+    /**
+     * Finds the value of the variable, within the given range, at which the equation is least, using golden-section
+     * search. Where the equation has more than one local minimum within the range, this finds one of them.
+     * @param lower One end of the range to search.
+     * @param upper The other end of the range to search.
+     * @return The value of the variable at which the equation is least, within this solver's tolerance.
+     */
+    public double minimise(double lower, double upper)
+    {
+        synchronized(evaluator.equationCopy.syncLock)
+        { return goldenSection(evaluator, Math.min(lower, upper), Math.max(lower, upper)); }
+    }
+
+    /**
+     * Finds, for each of the given targets, a value of the variable within the given range at which the equation
+     * evaluates to that target, using Brent's method. Targets are solved for in parallel, across all available
+     * processors.
+     * @param targets The values the equation should evaluate to.
+     * @param lower One end of the range to search.
+     * @param upper The other end of the range to search.
+     * @return For each target, in the same order, a value of the variable at which the equation evaluates to it, or
+     *         NaN where no solution was found.
+     */
+    public double[] solveAll(double[] targets, double lower, double upper)
+    {
+        double[] results = new double[targets.length];
+
+        if(targets.length == 0)
+            return results;
+
+        AtomicInteger nextTarget = new AtomicInteger();
+        int threadCount = Math.min(Runtime.getRuntime().availableProcessors(), targets.length);
+
+        IntStream.range(0, threadCount).parallel().forEach(threadIndex ->
+        {
+            Evaluator threadEvaluator = new Evaluator();
+
+            synchronized(threadEvaluator.equationCopy.syncLock)
+            {
+                for(int i = nextTarget.getAndIncrement(); i < targets.length; i = nextTarget.getAndIncrement())
+                {
+                    try
+                    { results[i] = brent(threadEvaluator, targets[i], lower, upper); }
+                    catch(NoSolutionException e)
+                    { results[i] = Double.NaN; }
+                }
+            }
+        });
+
+        return results;
+    }
+    //endregion
+
+    //region algorithms
+    /**
+     * Gets the greatest distance from the given value of the variable within which solutions are accepted.
+     * @param x The value of the variable.
+     * @return The tolerance, scaled by the magnitude of the given value where that's greater than 1.
+     */
+    private double toleranceAt(double x)
+    { return tolerance * Math.max(Math.abs(x), 1); }
+
+    /**
+     * Finds a root of the equation minus the target within the given range, using Brent's method.
+     * @param e The evaluator of the equation to use.
+     * @param target The value the equation should evaluate to.
+     * @param lower One end of the range to search.
+     * @param upper The other end of the range to search.
+     * @return A value of the variable at which the equation evaluates to the target.
+     * @throws NoSolutionException If the range doesn't bracket the target, or the method doesn't converge.
+     */
+    private double brent(Evaluator e, double target, double lower, double upper)
+    {
+        double a = lower, b = upper;
+        double fa = e.valueAt(a) - target, fb = e.valueAt(b) - target;
+
+        if(fa == 0)
+            return a;
+
+        if(fb == 0)
+            return b;
+
+        if(!(fa * fb < 0))
+            throw new NoSolutionException("The equation doesn't cross " + target + " between " + lower + " and "
+                                          + upper + ".");
+
+        double c = a, fc = fa;
+        double d = b - a, step = d;
+
+        for(int i = 0; i < maxIterations; i++)
+        {
+            // b is the best estimate so far, and the root is between b and c.
+            if(fb * fc > 0)
+            {
+                c = a;
+                fc = fa;
+                d = step = b - a;
+            }
+
+            if(Math.abs(fc) < Math.abs(fb))
+            {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+
+            double tol = toleranceAt(b) / 2;
+            double midpoint = (c - b) / 2;
+
+            if(Math.abs(midpoint) <= tol || fb == 0)
+                return b;
+
+            if(Math.abs(step) >= tol && Math.abs(fa) > Math.abs(fb))
+            {
+                // Inverse quadratic interpolation, or the secant method where only two points are distinct.
+                double p, q;
+                double s = fb / fa;
+
+                if(a == c)
+                {
+                    p = 2 * midpoint * s;
+                    q = 1 - s;
+                }
+                else
+                {
+                    double r = fb / fc;
+                    double t = fa / fc;
+                    p = s * (2 * midpoint * t * (t - r) - (b - a) * (r - 1));
+                    q = (t - 1) * (r - 1) * (s - 1);
+                }
+
+                if(p > 0)
+                    q = -q;
+                else
+                    p = -p;
+
+                if(2 * p < Math.min(3 * midpoint * q - Math.abs(tol * q), Math.abs(step * q)))
+                {
+                    step = d;
+                    d = p / q;
+                }
+                else
+                    d = step = midpoint;
+            }
+            else
+                d = step = midpoint;
+
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > tol ? d : Math.copySign(tol, midpoint);
+            fb = e.valueAt(b) - target;
+
+            if(Double.isNaN(fb))
+                throw new NoSolutionException("The equation is NaN at " + b + ".");
+        }
+
+        throw new NoSolutionException("Brent's method didn't converge within " + maxIterations + " iterations.");
+    }
+
+    /**
+     * Finds a root of the equation minus the target from the given initial guess, using Newton's method.
+     * @param e The evaluator of the equation to use.
+     * @param target The value the equation should evaluate to.
+     * @param initialGuess The value of the variable to start from.
+     * @return A value of the variable at which the equation evaluates to the target.
+     * @throws NoSolutionException If the slope becomes zero or isn't finite, or the method doesn't converge.
+     */
+    private double newton(Evaluator e, double target, double initialGuess)
+    {
+        double x = initialGuess;
+
+        for(int i = 0; i < maxIterations; i++)
+        {
+            double fx = e.valueAt(x) - target;
+
+            if(fx == 0)
+                return x;
+
+            double slope = e.slopeAt(x);
+
+            if(slope == 0 || !Double.isFinite(slope) || Double.isNaN(fx))
+                throw new NoSolutionException("Newton's method reached a point, " + x + ", at which it can't "
+                                              + "continue.");
+
+            double next = x - fx / slope;
+
+            if(Math.abs(next - x) <= toleranceAt(next))
+                return next;
+
+            x = next;
+        }
+
+        throw new NoSolutionException("Newton's method didn't converge within " + maxIterations + " iterations.");
+    }
+
+    /**
+     * Finds a minimum of the equation within the given range, using golden-section search.
+     * @param e The evaluator of the equation to use.
+     * @param lower The lower end of the range to search.
+     * @param upper The upper end of the range to search.
+     * @return The value of the variable at which the equation is least.
+     */
+    private double goldenSection(Evaluator e, double lower, double upper)
+    {
+        double a = lower, b = upper;
+        double c = b - INVERSE_GOLDEN_RATIO * (b - a);
+        double d = a + INVERSE_GOLDEN_RATIO * (b - a);
+        double fc = e.valueAt(c), fd = e.valueAt(d);
+
+        // Each iteration shrinks the range by the golden ratio, reusing one of the two points evaluated in it.
+        for(int i = 0; i < maxIterations && b - a > toleranceAt((a + b) / 2); i++)
+        {
+            if(fc <= fd)
+            {
+                b = d;
+                d = c;
+                fd = fc;
+                c = b - INVERSE_GOLDEN_RATIO * (b - a);
+                fc = e.valueAt(c);
+            }
+            else
+            {
+                a = c;
+                c = d;
+                fc = fd;
+                d = a + INVERSE_GOLDEN_RATIO * (b - a);
+                fd = e.valueAt(d);
+            }
+        }
+
+        return (a + b) / 2;
+    }
+    //endregion
+    //endregion
+}
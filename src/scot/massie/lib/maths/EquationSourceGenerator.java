@@ -0,0 +1,820 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.Iteration;
+import scot.massie.lib.maths.Equation.IterationIndex;
+import scot.massie.lib.maths.Equation.LiteralNumber;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.OperatorAction;
+import scot.massie.lib.maths.Equation.StandardOperatorActions;
+import scot.massie.lib.maths.Equation.VariableReference;
+import scot.massie.lib.maths.EquationFunctions.StandardFunction;
+
+import javax.lang.model.SourceVersion;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>Generates plain Java source code evaluating a set of named formulas, for formulas fixed ahead of time, so that
+ * neither parsing nor {@link Equation.Builder} is needed at runtime.</p>
+ *
+ * <p>Each formula becomes a public static method of the generated class, taking one double parameter per variable the
+ * formula references, (in the order they're first referenced in the formula, unless the parameters are given
+ * explicitly) and returning a double. The generated methods are straight-line arithmetic on primitives, (with loops
+ * for {@link Iteration iterations}) calling only {@link Math} and {@link EquationFunctions}, and so need no
+ * initialisation and may be fully inlined. They give exactly the same results as {@link Equation#evaluate()} would for
+ * the same formula and variable values.</p>
+ *
+ * <p>Formulas are parsed by the builder given, and may use any of its operators, functions, and variables, but source
+ * can only be generated for the {@link StandardOperatorActions standard operators} and the
+ * {@link StandardFunction standard functions}, as other implementations are only known as Java objects. Variables
+ * named with {@link #withInlinedVariables(String...)} are written into the generated source as their values in the
+ * builder, rather than becoming parameters.</p>
+ *
+ * <p>For use from a build step, {@link #main(String[])} generates a class from formulas given as command line
+ * arguments, using the default builder.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * Equation.Builder builder = new Equation.Builder().withVariable("r", 0).withVariable("a", 0).withVariable("b", 0);
+ *
+ * String source = new EquationSourceGenerator(builder)
+ *         .withInlinedVariables("pi")
+ *         .withFormula("circleArea", "pi * r^2")
+ *         .withFormula("hypotenuse", "sqrt(a^2 + b^2)")
+ *         .generate("com.example.Formulas");
+ *
+ * // Generates a class com.example.Formulas, with the methods:
+ * //     public static double circleArea(double r)
+ * //     public static double hypotenuse(double a, double b)
+ * }</pre>
+ */
+public final class EquationSourceGenerator
+{
+    //region inner classes
+    /**
+     * The source of a single generated method, written one formula component at a time.
+     */
+    private final class MethodWriter
+    {
+        /**
+         * The statements of the method's body written so far, each already indented and on its own line.
+         */
+        final StringBuilder statements = new StringBuilder();
+
+        /**
+         * The names of the method's parameters in the generated source, against the names of the variables they're
+         * for, in parameter order.
+         */
+        final Map<String, String> parameterNames = new LinkedHashMap<>();
+
+        /**
+         * The names of the local variables holding the indices of the iterations currently being written, against
+         * those iterations' indices.
+         */
+        final Map<IterationIndex, String> indexNames = new IdentityHashMap<>();
+
+        /**
+         * The names used in the method so far, which new names must not clash with.
+         */
+        final Set<String> usedNames = new HashSet<>(RESERVED_NAMES);
+
+        /**
+         * The number of levels the statements currently being written are indented by.
+         */
+        int indentation = 2;
+
+        /**
+         * The number of local variables declared so far, used to name new ones.
+         */
+        int localCount = 0;
+
+        /**
+         * Finds the variables referenced by the given component, in the order they're first referenced, and assigns
+         * parameter names to those that aren't inlined.
+         * @param component The component to find the variables of.
+         */
+        void addParameters(EquationComponent component)
+        {
+            if(component instanceof VariableReference)
+            {
+                String name = ((VariableReference)component).getName();
+
+                if(!inlinedVariables.containsKey(name))
+                    addParameter(name);
+            }
+            else if(component instanceof Operation)
+            {
+                for(EquationComponent operand : ((Operation)component).getComponents())
+                    addParameters(operand);
+            }
+            else if(component instanceof FunctionCall)
+            {
+                for(EquationComponent argument : ((FunctionCall)component).getArguments())
+                    addParameters(argument);
+            }
+            else if(component instanceof Iteration)
+            {
+                Iteration iteration = (Iteration)component;
+                addParameters(iteration.getFrom());
+                addParameters(iteration.getTo());
+                addParameters(iteration.getBody());
+            }
+        }
+
+        /**
+         * Adds a parameter for the given variable, if there isn't one already.
+         * @param variableName The name of the variable.
+         */
+        void addParameter(String variableName)
+        {
+            if(!parameterNames.containsKey(variableName))
+                parameterNames.put(variableName, newName(SourceVersion.isName(variableName) ? variableName : "v"));
+        }
+
+        /**
+         * Gets a name not yet used in the method.
+         * @param base The name to use if it's not already used, or to number if it is.
+         * @return A new name.
+         */
+        String newName(String base)
+        {
+            String name = base;
+
+            for(int i = 1; usedNames.contains(name); i++)
+                name = base + i;
+
+            usedNames.add(name);
+            return name;
+        }
+
+        /**
+         * Gets the name of a new local variable.
+         * @return A new local variable name.
+         */
+        String newLocal()
+        { return newName("t" + localCount++); }
+
+        /**
+         * Adds a statement to the method's body, at the current indentation.
+         * @param statement The statement.
+         */
+        void statement(String statement)
+        {
+            for(int i = 0; !statement.isEmpty() && i < indentation; i++)
+                statements.append(INDENT);
+
+            statements.append(statement).append('\n');
+        }
+
+        /**
+         * Writes the given component, writing any statements it needs to the method's body first.
+         * @param component The component to write.
+         * @return A Java expression giving the result of the component.
+         * @throws IllegalArgumentException If the component uses an operator or function that source can't be
+         *                                  generated for.
+         */
+        String write(EquationComponent component)
+        {
+            if(component instanceof LiteralNumber)
+                return literal(((LiteralNumber)component).getValue());
+
+            if(component instanceof VariableReference)
+            {
+                String name = ((VariableReference)component).getName();
+                String parameterName = parameterNames.get(name);
+                return parameterName != null ? parameterName : literal(inlinedVariables.get(name));
+            }
+
+            if(component instanceof IterationIndex)
+                return indexNames.get(component);
+
+            if(component instanceof Operation)
+                return writeOperation((Operation)component);
+
+            if(component instanceof FunctionCall)
+                return writeFunctionCall((FunctionCall)component);
+
+            if(component instanceof Iteration)
+                return writeIteration((Iteration)component);
+
+            throw new IllegalArgumentException("Source can't be generated for equation components of type "
+                                               + component.getClass().getName() + ".");
+        }
+
+        /**
+         * Writes the given operation.
+         * @param operation The operation to write.
+         * @return A Java expression giving the result of the operation.
+         * @throws IllegalArgumentException If the operation's action isn't a standard operator action.
+         */
+        String writeOperation(Operation operation)
+        {
+            OperatorAction action = operation.getAction();
+            List<EquationComponent> operandComponents = operation.getComponents();
+            String[] operands = new String[operandComponents.size()];
+
+            for(int i = 0; i < operands.length; i++)
+                operands[i] = write(operandComponents.get(i));
+
+            if(operands.length == 2)
+            {
+                if(action == StandardOperatorActions.ADD)
+                    return "(" + operands[0] + " + " + operands[1] + ")";
+
+                if(action == StandardOperatorActions.SUBTRACT)
+                    return "(" + operands[0] + " - " + operands[1] + ")";
+
+                if(action == StandardOperatorActions.MULTIPLY)
+                    return "(" + operands[0] + " * " + operands[1] + ")";
+
+                if(action == StandardOperatorActions.DIVIDE)
+                    return "(" + operands[0] + " / " + operands[1] + ")";
+
+                if(action == StandardOperatorActions.MODULO)
+                    return "(" + operands[0] + " % " + operands[1] + ")";
+
+                if(action == StandardOperatorActions.POWER)
+                    return "Math.pow(" + operands[0] + ", " + operands[1] + ")";
+
+                if(action == StandardOperatorActions.ROOT)
+                    return "Math.pow(" + operands[1] + ", 1.0 / " + operands[0] + ")";
+            }
+            else if(operands.length == 1)
+            {
+                if(action == StandardOperatorActions.NEGATE)
+                    return "(-" + operands[0] + ")";
+
+                if(action == StandardOperatorActions.UNARY_PLUS)
+                    return operands[0];
+
+                if(action == StandardOperatorActions.SQUARE_ROOT)
+                    return "Math.sqrt(" + operands[0] + ")";
+
+                if(action == StandardOperatorActions.PERCENT)
+                    return "(" + operands[0] + " / 100)";
+            }
+
+            throw new IllegalArgumentException("Source can only be generated for standard operators, not " + action
+                                               + ".");
+        }
+
+        /**
+         * Writes the given function call.
+         * @param call The function call to write.
+         * @return A Java expression giving the result of the function call.
+         * @throws IllegalArgumentException If the function called isn't a standard function, or is called without
+         *                                  enough arguments.
+         */
+        String writeFunctionCall(FunctionCall call)
+        {
+            String name = call.getFunctionName();
+            ToDoubleFunction<double[]> f = functions.get(name);
+
+            if(!(f instanceof StandardFunction))
+                throw new IllegalArgumentException("Source can only be generated for standard functions, not \""
+                                                   + name + "\".");
+
+            EquationComponent[] argumentComponents = call.getArguments();
+
+            if(argumentComponents.length == 0)
+                throw new IllegalArgumentException("The function \"" + name + "\" is called without any arguments.");
+
+            StandardFunction standard = ((StandardFunction)f).getStandard();
+            String mathMethod = MATH_METHODS.get(standard);
+
+            // Functions taking one argument ignore any others, which can't have side effects, so aren't written.
+            if(mathMethod != null)
+                return mathMethod + "(" + write(argumentComponents[0]) + ")";
+
+            if(standard == EquationFunctions.ROUND)
+                return "(double)Math.round(" + write(argumentComponents[0]) + ")";
+
+            if(standard == EquationFunctions.FIB)
+                return "EquationFunctions.fib(" + write(argumentComponents[0]) + ")";
+
+            if(standard == EquationFunctions.TRUNCATE)
+                return "EquationFunctions.truncate(" + write(argumentComponents[0]) + ")";
+
+            String[] arguments = new String[argumentComponents.length];
+
+            for(int i = 0; i < arguments.length; i++)
+                arguments[i] = write(argumentComponents[i]);
+
+            if(standard == EquationFunctions.MIN || standard == EquationFunctions.MAX)
+            {
+                String helper = standard == EquationFunctions.MIN ? "$min" : "$max";
+                String result = arguments[0];
+                helpersUsed.add(helper);
+
+                // min(a, b, c) is $min($min(a, b), c), which compares in the same order as EquationFunctions.min.
+                for(int i = 1; i < arguments.length; i++)
+                    result = helper + "(" + result + ", " + arguments[i] + ")";
+
+                return result;
+            }
+
+            String arrayMethod = ARRAY_METHODS.get(standard);
+
+            if(arrayMethod == null)
+                throw new IllegalArgumentException("Source can't be generated for the function \"" + name + "\".");
+
+            return arrayMethod + "(new double[] { " + String.join(", ", arguments) + " })";
+        }
+
+        /**
+         * Writes the given iteration as a loop, following {@link Iteration#evaluate(Equation)}.
+         * @param iteration The iteration to write.
+         * @return A Java expression giving the result of the iteration.
+         */
+        String writeIteration(Iteration iteration)
+        {
+            String first = newLocal();
+            String last = newLocal();
+            String result = newLocal();
+            String span = newLocal();
+            String count = newLocal();
+            String i = newLocal();
+            String index = newName(SourceVersion.isName(iteration.getIndex().getName())
+                                           ? iteration.getIndex().getName()
+                                           : "index");
+
+            String emptyResult = iteration.getKind() == Iteration.SUM     ? "0.0"
+                               : iteration.getKind() == Iteration.PRODUCT ? "1.0"
+                               :                                            "Double.NaN";
+
+            statement("double " + first + " = " + write(iteration.getFrom()) + ";");
+            statement("double " + last + " = " + write(iteration.getTo()) + ";");
+            statement("double " + span + " = Math.floor(" + last + " - " + first + ");");
+            statement("double " + result + ";");
+            statement("");
+            statement("if(Double.isNaN(" + first + ") || Double.isNaN(" + last + "))");
+            statement(INDENT + result + " = Double.NaN;");
+            statement("else if(" + last + " < " + first + ")");
+            statement(INDENT + result + " = " + emptyResult + ";");
+            statement("else if(Double.isInfinite(" + first + ") || Double.isInfinite(" + last + ") || " + span
+                      + " + 1 >= " + literal(Iteration.MAX_COUNT) + ")");
+            statement(INDENT + result + " = Double.NaN;");
+            statement("else");
+            statement("{");
+            indentation++;
+            statement("long " + count + " = (long)" + span + " + 1;");
+            statement(result + " = 0.0;");
+            statement("");
+            statement("for(long " + i + " = 0; " + i + " < " + count + "; " + i + "++)");
+            statement("{");
+            indentation++;
+            statement("double " + index + " = " + i + " == 0 ? " + first + " : " + first + " + " + i + ";");
+            indexNames.put(iteration.getIndex(), index);
+            String value = write(iteration.getBody());
+            indexNames.remove(iteration.getIndex());
+
+            String valueLocal = newLocal();
+            statement("double " + valueLocal + " = " + value + ";");
+
+            // The first value is taken as-is, as in Iteration.evaluate, rather than combined with an initial value.
+            switch(iteration.getKind())
+            {
+                case Iteration.SUM:
+                    statement(result + " = " + i + " == 0 ? " + valueLocal + " : " + result + " + " + valueLocal
+                              + ";");
+                    break;
+
+                case Iteration.PRODUCT:
+                    statement(result + " = " + i + " == 0 ? " + valueLocal + " : " + result + " * " + valueLocal
+                              + ";");
+                    break;
+
+                default:
+                {
+                    String comparison = iteration.getKind() == Iteration.MIN ? " < " : " > ";
+                    statement("if(" + i + " == 0 || " + valueLocal + comparison + result + ")");
+                    statement(INDENT + result + " = " + valueLocal + ";");
+                }
+            }
+
+            indentation--;
+            statement("}");
+            indentation--;
+            statement("}");
+            statement("");
+            return result;
+        }
+    }
+    //endregion
+
+    //region constants
+    /**
+     * One level of indentation in the generated source.
+     */
+    private static final String INDENT = "    ";
+
+    /**
+     * The methods of {@link Math} implementing standard functions taking a single argument.
+     */
+    private static final Map<StandardFunction, String> MATH_METHODS = new HashMap<>();
+
+    /**
+     * The methods of {@link EquationFunctions} implementing standard functions taking an array of arguments, other
+     * than min and max.
+     */
+    private static final Map<StandardFunction, String> ARRAY_METHODS = new HashMap<>();
+
+    /**
+     * The classes the generated source refers to by their simple names, which parameters and local variables mustn't
+     * be named, as they'd shadow them.
+     */
+    private static final Set<String> RESERVED_NAMES = Set.of("Math", "Double", "EquationFunctions");
+
+    static
+    {
+        MATH_METHODS.put(EquationFunctions.COS,   "Math.cos");
+        MATH_METHODS.put(EquationFunctions.SIN,   "Math.sin");
+        MATH_METHODS.put(EquationFunctions.TAN,   "Math.tan");
+        MATH_METHODS.put(EquationFunctions.SQRT,  "Math.sqrt");
+        MATH_METHODS.put(EquationFunctions.CBRT,  "Math.cbrt");
+        MATH_METHODS.put(EquationFunctions.LOG,   "Math.log");
+        MATH_METHODS.put(EquationFunctions.LOG10, "Math.log10");
+        MATH_METHODS.put(EquationFunctions.FLOOR, "Math.floor");
+        MATH_METHODS.put(EquationFunctions.CEIL,  "Math.ceil");
+
+        ARRAY_METHODS.put(EquationFunctions.AVG,      "EquationFunctions.avg");
+        ARRAY_METHODS.put(EquationFunctions.MEDIAN,   "EquationFunctions.median");
+        ARRAY_METHODS.put(EquationFunctions.VARIANCE, "EquationFunctions.variance");
+        ARRAY_METHODS.put(EquationFunctions.STDDEV,   "EquationFunctions.stddev");
+        ARRAY_METHODS.put(EquationFunctions.SUM,      "EquationFunctions.sum");
+        ARRAY_METHODS.put(EquationFunctions.PROD,     "EquationFunctions.prod");
+    }
+    //endregion
+
+    //region variables
+    /**
+     * The builder formulas are parsed by.
+     */
+    private final Equation.Builder builder;
+
+    /**
+     * The formulas to generate methods for, against the names of the methods.
+     */
+    private final Map<String, String> formulas = new LinkedHashMap<>();
+
+    /**
+     * The parameters of methods whose parameters were given explicitly, in order, against the names of the methods.
+     */
+    private final Map<String, List<String>> explicitParameters = new HashMap<>();
+
+    /**
+     * The variables to write into the generated source as values rather than parameters, against their values.
+     */
+    private final Map<String, Double> inlinedVariables = new HashMap<>();
+
+    /**
+     * The functions available to formulas, as provided by the builder at the time of generating.
+     */
+    private Map<String, ToDoubleFunction<double[]>> functions;
+
+    /**
+     * The helper methods ("$min" and "$max") used by the source being generated, which are added to the generated
+     * class. These are named with "$", as is conventional for generated code, so they can't clash with formulas.
+     */
+    private final Set<String> helpersUsed = new LinkedHashSet<>();
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new source generator, for formulas parsed by the given builder.
+     * @param builder The builder to parse formulas with. The builder's operators, functions, and variables at the time
+     *                of generating are used.
+     */
+    public EquationSourceGenerator(Equation.Builder builder)
+    { this.builder = builder; }
+    //endregion
+
+    //region methods
+    //region configuration
+    /**
+     * Adds a formula to generate a method for.
+     * @param methodName The name of the method to generate. This must be a valid Java method name.
+     * @param formula The formula, as it would be passed to {@link Equation.Builder#build(String)}.
+     * @return This.
+     * @throws IllegalArgumentException If the given method name isn't a valid Java method name, or a formula has
+     *                                  already been added under it.
+     */
+    public EquationSourceGenerator withFormula(String methodName, String formula)
+    {
+        addFormula(methodName, formula);
+        explicitParameters.remove(methodName);
+        return this;
+    }
+
+    /**
+     * Adds a formula to generate a method for, with the given parameters.
+     * @param methodName The name of the method to generate. This must be a valid Java method name.
+     * @param parameterNames The names of the variables that are the method's parameters, in order. Variables the
+     *                       formula references must either be among these, or be inlined.
+     * @param formula The formula, as it would be passed to {@link Equation.Builder#build(String)}.
+     * @return This.
+     * @throws IllegalArgumentException If the given method name isn't a valid Java method name, or a formula has
+     *                                  already been added under it, or the same parameter is given more than once.
+     */
+    public EquationSourceGenerator withFormula(String methodName, List<String> parameterNames, String formula)
+    {
+        if(new HashSet<>(parameterNames).size() != parameterNames.size())
+            throw new IllegalArgumentException("The parameters of " + methodName + " aren't unique: "
+                                               + parameterNames);
+
+        addFormula(methodName, formula);
+        explicitParameters.put(methodName, new ArrayList<>(parameterNames));
+        return this;
+    }
+
+    /**
+     * Adds a formula to generate a method for.
+     * @param methodName The name of the method to generate.
+     * @param formula The formula.
+     * @throws IllegalArgumentException If the given method name isn't a valid Java method name, or a formula has
+     *                                  already been added under it.
+     */
+    private void addFormula(String methodName, String formula)
+    {
+        if(!SourceVersion.isName(methodName))
+            throw new IllegalArgumentException("Not a valid Java method name: " + methodName);
+
+        if(formulas.containsKey(methodName))
+            throw new IllegalArgumentException("A formula has already been added under the name " + methodName);
+
+        formulas.put(methodName, formula);
+    }
+
+    /**
+     * Adds formulas to generate methods for.
+     * @param namedFormulas The formulas, against the names of the methods to generate for them. Methods are generated
+     *                      in the iteration order of this map.
+     * @return This.
+     * @throws IllegalArgumentException If any of the given method names isn't a valid Java method name, or a formula
+     *                                  has already been added under it.
+     */
+    public EquationSourceGenerator withFormulas(Map<String, String> namedFormulas)
+    {
+        for(Map.Entry<String, String> e : namedFormulas.entrySet())
+            withFormula(e.getKey(), e.getValue());
+
+        return this;
+    }
+
+    /**
+     * Makes the given variables be written into the generated source as their values in the builder at the time of
+     * generating, rather than becoming parameters of the generated methods. This is intended for constants, such as
+     * "pi".
+     * @param variableNames The names of the variables.
+     * @return This.
+     */
+    public EquationSourceGenerator withInlinedVariables(String... variableNames)
+    {
+        for(String name : variableNames)
+            inlinedVariables.put(name, null);
+
+        return this;
+    }
+    //endregion
+
+    //region generation
+    /**
+     * Generates the source of a class with a method for each formula added.
+     * @param qualifiedClassName The fully qualified name of the class to generate. The class is in the default package
+     *                           if the name has no package.
+     * @return The Java source of the class.
+     * @throws IllegalArgumentException If the given class name isn't a valid Java class name, no formulas have been
+     *                                  added, an inlined variable isn't available in the builder, or a formula uses
+     *                                  an operator or function source can't be generated for.
+     * @throws Equation.Builder.EquationParseException If any formula isn't a valid equation.
+     */
+    public String generate(String qualifiedClassName)
+    {
+        if(!SourceVersion.isName(qualifiedClassName))
+            throw new IllegalArgumentException("Not a valid Java class name: " + qualifiedClassName);
+
+        if(formulas.isEmpty())
+            throw new IllegalArgumentException("Cannot generate a class with no formulas.");
+
+        Map<String, Double> variables = builder.getVariables();
+
+        for(Map.Entry<String, Double> e : inlinedVariables.entrySet())
+        {
+            Double value = variables.get(e.getKey());
+
+            if(value == null)
+                throw new IllegalArgumentException("The builder has no variable \"" + e.getKey() + "\" to inline.");
+
+            e.setValue(value);
+        }
+
+        functions = builder.getFunctions();
+        helpersUsed.clear();
+
+        int lastDot = qualifiedClassName.lastIndexOf('.');
+        String packageName = lastDot < 0 ? null : qualifiedClassName.substring(0, lastDot);
+        String simpleName = qualifiedClassName.substring(lastDot + 1);
+        StringBuilder methods = new StringBuilder();
+
+        for(Map.Entry<String, String> e : formulas.entrySet())
+            methods.append('\n').append(generateMethod(e.getKey(), e.getValue()));
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated by ").append(EquationSourceGenerator.class.getName()).append(". Do not edit.\n");
+
+        if(packageName != null)
+            source.append("package ").append(packageName).append(";\n\n");
+
+        if(!EquationFunctions.class.getPackage().getName().equals(packageName))
+            source.append("import ").append(EquationFunctions.class.getName()).append(";\n\n");
+
+        source.append("/**\n * Formulas evaluated as by {@code Equation.evaluate()}.\n */\n");
+        source.append("@SuppressWarnings(\"all\")\n");
+        source.append("public final class ").append(simpleName).append("\n{\n");
+        source.append(INDENT).append("private ").append(simpleName).append("()\n").append(INDENT).append("{}\n");
+        source.append(methods);
+
+        for(String helper : helpersUsed)
+        {
+            String comparison = helper.equals("$min") ? " < " : " > ";
+
+            source.append('\n')
+                  .append(INDENT).append("private static double ").append(helper).append("(double l, double r)\n")
+                  .append(INDENT).append("{ return r").append(comparison).append("l ? r : l; }\n");
+        }
+
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Generates the source of a single method.
+     * @param methodName The name of the method.
+     * @param formula The formula the method evaluates.
+     * @return The Java source of the method, including its documentation, indented to be inside a class.
+     */
+    private String generateMethod(String methodName, String formula)
+    {
+        EquationComponent component = builder.parse(formula);
+        MethodWriter writer = new MethodWriter();
+        List<String> givenParameters = explicitParameters.get(methodName);
+
+        if(givenParameters != null)
+            for(String parameterName : givenParameters)
+                writer.addParameter(parameterName);
+
+        writer.addParameters(component);
+
+        if(givenParameters != null && writer.parameterNames.size() != givenParameters.size())
+            throw new IllegalArgumentException("The formula for " + methodName + " references variables that are "
+                                               + "neither parameters nor inlined: " + formula);
+
+        String result = writer.write(component);
+
+        List<String> parameters = new ArrayList<>();
+        StringBuilder method = new StringBuilder();
+        method.append(INDENT).append("/**\n")
+              .append(INDENT).append(" * ").append(escapeForComment(formula.trim())).append('\n');
+
+        for(Map.Entry<String, String> e : writer.parameterNames.entrySet())
+        {
+            parameters.add("double " + e.getValue());
+            method.append(INDENT).append(" * @param ").append(e.getValue())
+                  .append(" The variable \"").append(escapeForComment(e.getKey())).append("\".\n");
+        }
+
+        method.append(INDENT).append(" */\n")
+              .append(INDENT).append("public static double ").append(methodName)
+              .append("(").append(String.join(", ", parameters)).append(")\n")
+              .append(INDENT).append("{\n")
+              .append(writer.statements)
+              .append(INDENT).append(INDENT).append("return ").append(result).append(";\n")
+              .append(INDENT).append("}\n");
+
+        return method.toString();
+    }
+
+    /**
+     * Generates the source of a class with a method for each formula added, as by {@link #generate(String)}, and
+     * writes it to the appropriate file under the given source directory, creating any directories needed.
+     * @param sourceRoot The root source directory, under which files are arranged into directories by package.
+     * @param qualifiedClassName The fully qualified name of the class to generate.
+     * @return The path of the file written.
+     * @throws IOException If the file couldn't be written.
+     */
+    public Path writeTo(Path sourceRoot, String qualifiedClassName) throws IOException
+    {
+        String source = generate(qualifiedClassName);
+        Path file = sourceRoot.resolve(qualifiedClassName.replace('.', '/') + ".java");
+
+        if(file.getParent() != null)
+            Files.createDirectories(file.getParent());
+
+        Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Gets the Java source of a double literal, which evaluates to exactly the given value.
+     * @param value The value.
+     * @return The given value, as Java source.
+     */
+    static String literal(double value)
+    {
+        if(Double.isNaN(value))
+            return "Double.NaN";
+
+        if(Double.isInfinite(value))
+            return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+
+        // Double.toString gives enough digits to uniquely distinguish the value, so parses back to exactly it.
+        String text = Double.toString(value);
+        return text.startsWith("-") ? "(" + text + ")" : text;
+    }
+
+    /**
+     * Makes the given text safe to put in a Java comment.
+     * @param text The text.
+     * @return The given text, with anything that would end the comment or be read as a unicode escape broken up.
+     */
+    private static String escapeForComment(String text)
+    { return text.replace("*/", "*&#47;").replace("\\u", "\\\\u").replace("\n", " ").replace("\r", " "); }
+    //endregion
+
+    //region build step
+    /**
+     * <p>Generates a class from formulas given as arguments, using a builder with the default operators, functions,
+     * and variables. The default variables, which are all constants, are inlined.</p>
+     *
+     * <p>Formulas are given in the same form as to {@link Equation.Builder#withFunctionDefinition(String)}, e.g.
+     * "hypotenuse(a, b) = sqrt(a^2 + b^2)", where the parameters become the parameters of the generated method.</p>
+     *
+     * <p>Usage: {@code EquationSourceGenerator <source root> <qualified class name> <name(parameters) = formula>...}
+     * </p>
+     * @param args The source root to write the class under, the fully qualified name of the class, then each formula,
+     *             preceded by the name of its method and its parameters.
+     * @throws IOException If the class couldn't be written.
+     * @throws IllegalArgumentException If a formula isn't of the form "name(parameters) = formula".
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 3)
+        {
+            System.err.println("Usage: EquationSourceGenerator <source root> <qualified class name> "
+                               + "<name(parameters) = formula>...");
+            System.exit(2);
+            return;
+        }
+
+        Equation.Builder builder = new Equation.Builder();
+        EquationSourceGenerator generator = new EquationSourceGenerator(builder);
+        generator.withInlinedVariables(builder.getVariables().keySet().toArray(new String[0]));
+
+        for(int i = 2; i < args.length; i++)
+        {
+            int equalsIndex = args[i].indexOf('=');
+            String signature = equalsIndex < 0 ? "" : args[i].substring(0, equalsIndex).trim();
+            int openBracketIndex = signature.indexOf('(');
+
+            if(openBracketIndex <= 0 || !signature.endsWith(")"))
+                throw new IllegalArgumentException("Formulas must be of the form \"name(parameters) = formula\": "
+                                                   + args[i]);
+
+            String parameterList = signature.substring(openBracketIndex + 1, signature.length() - 1).trim();
+            List<String> parameterNames = new ArrayList<>();
+
+            if(!parameterList.isEmpty())
+                for(String parameter : parameterList.split(","))
+                    parameterNames.add(parameter.trim());
+
+            // Parameters are added to the builder as variables so the formula can reference them, rather than being
+            // inlined as the default variables are.
+            for(String parameterName : parameterNames)
+                builder.withVariable(parameterName, 0);
+
+            generator.withFormula(signature.substring(0, openBracketIndex).trim(),
+                                  parameterNames,
+                                  args[i].substring(equalsIndex + 1));
+        }
+
+        generator.writeTo(Paths.get(args[0]), args[1]);
+    }
+    //endregion
+    //endregion
+}
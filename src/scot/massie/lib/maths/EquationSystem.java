@@ -0,0 +1,543 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.Iteration;
+import scot.massie.lib.maths.Equation.IterationIndex;
+import scot.massie.lib.maths.Equation.LiteralNumber;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.OperatorAction;
+import scot.massie.lib.maths.Equation.VariableReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>A set of named equations built by the same {@link Equation.Builder}, compiled together into a single program that
+ * evaluates all of them at once.</p>
+ *
+ * <p>Subexpressions that appear more than once, whether within one equation or across several, are only evaluated once
+ * per evaluation of the system. Function calls are included in this, so functions are expected to return the same
+ * result when called again with the same arguments during a single evaluation.</p>
+ *
+ * <p>All equations in a system share the same table of variables, so setting a variable on the system affects every
+ * equation in it.</p>
+ *
+ * <p>Equations in a system may not contain iterations, such as {@code sum(i, 1, n, i)}.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * Map<String, String> formulas = new LinkedHashMap<>();
+ * formulas.put("net",   "price * qty");
+ * formulas.put("gross", "price * qty * (1 + tax)");
+ *
+ * EquationSystem system = new Equation.Builder().withVariable("price", 0)
+ *                                               .withVariable("qty", 0)
+ *                                               .withVariable("tax", 0.2)
+ *                                               .buildSystem(formulas);
+ *
+ * system.setVariable("price", 5);
+ * system.setVariable("qty", 3);
+ * system.evaluate(); // == [15, 18]
+ * }</pre>
+ */
+public class EquationSystem
+{
+    //region inner classes
+
+    /**
+     * The structural identity of a node in the compiled program. Two equation components that would compile to nodes
+     * with equal keys always produce the same result, and so are compiled into a single shared node.
+     */
+    private static final class NodeKey
+    {
+        /**
+         * The kind of node this is the key of. One of {@link #NODE_LITERAL}, {@link #NODE_VARIABLE},
+         * {@link #NODE_OPERATION}, or {@link #NODE_FUNCTION}.
+         */
+        private final int kind;
+
+        /**
+         * What the node refers to. For literals, the bits of the number. For variables and functions, the name. For
+         * operations, the operator implementation, which is compared by identity.
+         */
+        private final Object subject;
+
+        /**
+         * The indices of the nodes this node takes as its operands or arguments, in order.
+         */
+        private final int[] operands;
+
+        /**
+         * Creates a new node key.
+         * @param kind The kind of node.
+         * @param subject What the node refers to.
+         * @param operands The indices of the node's operands.
+         */
+        NodeKey(int kind, Object subject, int[] operands)
+        {
+            this.kind = kind;
+            this.subject = subject;
+            this.operands = operands;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if(this == o)
+                return true;
+
+            if(o == null || getClass() != o.getClass())
+                return false;
+
+            NodeKey other = (NodeKey)o;
+
+            return kind == other.kind
+                && (kind == NODE_OPERATION ? subject == other.subject : subject.equals(other.subject))
+                && Arrays.equals(operands, other.operands);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int subjectHash = kind == NODE_OPERATION ? System.identityHashCode(subject) : subject.hashCode();
+            return 31 * Objects.hash(kind, subjectHash) + Arrays.hashCode(operands);
+        }
+    }
+
+    /**
+     * Flattens equation component trees into a single list of nodes in evaluation order, sharing nodes between
+     * structurally identical subexpressions.
+     */
+    private static final class Compiler
+    {
+        /**
+         * The indices of nodes already compiled, against their structural identities.
+         */
+        final Map<NodeKey, Integer> nodeIndices = new HashMap<>();
+
+        /**
+         * The nodes compiled so far, in evaluation order.
+         */
+        final List<NodeKey> nodes = new ArrayList<>();
+
+        /**
+         * The names of the variables referenced by nodes, in the order they were first referenced.
+         */
+        final List<String> variableNames = new ArrayList<>();
+
+        /**
+         * Compiles an equation component and all components it references into nodes, if they're not already
+         * compiled.
+         * @param component The component to compile.
+         * @return The index of the node the given component compiled to.
+         * @throws IllegalArgumentException If the given component is or contains an iteration.
+         */
+        int compile(EquationComponent component)
+        {
+            NodeKey key;
+
+            if(component instanceof LiteralNumber)
+            {
+                long bits = Double.doubleToLongBits(((LiteralNumber)component).getValue());
+                key = new NodeKey(NODE_LITERAL, bits, NO_OPERANDS);
+            }
+            else if(component instanceof VariableReference)
+                key = new NodeKey(NODE_VARIABLE, ((VariableReference)component).getName(), NO_OPERANDS);
+            else if(component instanceof Operation)
+            {
+                Operation op = (Operation)component;
+                List<EquationComponent> operands = op.getComponents();
+                int[] operandIndices = new int[operands.size()];
+
+                for(int i = 0; i < operandIndices.length; i++)
+                    operandIndices[i] = compile(operands.get(i));
+
+                key = new NodeKey(NODE_OPERATION, op.getAction(), operandIndices);
+            }
+            else if(component instanceof FunctionCall)
+            {
+                FunctionCall call = (FunctionCall)component;
+                EquationComponent[] args = call.getArguments();
+                int[] argIndices = new int[args.length];
+
+                for(int i = 0; i < argIndices.length; i++)
+                    argIndices[i] = compile(args[i]);
+
+                key = new NodeKey(NODE_FUNCTION, call.getFunctionName(), argIndices);
+            }
+            else if(component instanceof Iteration || component instanceof IterationIndex)
+                throw new IllegalArgumentException("Equation systems can't contain iterations.");
+            else
+            {
+                throw new UnsupportedOperationException("Unrecognised equation component type: "
+                                                        + component.getClass().getName());
+            }
+
+            Integer existing = nodeIndices.get(key);
+
+            if(existing != null)
+                return existing;
+
+            if(key.kind == NODE_VARIABLE && !variableNames.contains((String)key.subject))
+                variableNames.add((String)key.subject);
+
+            int index = nodes.size();
+            nodes.add(key);
+            nodeIndices.put(key, index);
+            return index;
+        }
+    }
+    //endregion
+
+    //region constants
+    /**
+     * Node kind of a node that is a fixed number.
+     */
+    static final int NODE_LITERAL = 0;
+
+    /**
+     * Node kind of a node that reads a variable.
+     */
+    static final int NODE_VARIABLE = 1;
+
+    /**
+     * Node kind of a node that performs an operation on the results of other nodes.
+     */
+    static final int NODE_OPERATION = 2;
+
+    /**
+     * Node kind of a node that calls a function with the results of other nodes.
+     */
+    static final int NODE_FUNCTION = 3;
+
+    /**
+     * The operands of a node that doesn't take any.
+     */
+    private static final int[] NO_OPERANDS = new int[0];
+    //endregion
+
+    //region variables
+    /**
+     * The names of the outputs of this system, in order.
+     */
+    private final List<String> outputNames;
+
+    /**
+     * The indices of the outputs of this system in {@link #outputNames}, against the names of the outputs.
+     */
+    private final Map<String, Integer> outputIndices;
+
+    /**
+     * The indices of the nodes producing each output of this system, in output order.
+     */
+    private final int[] outputNodes;
+
+    /**
+     * The kind of each node, in evaluation order.
+     */
+    private final int[] nodeKinds;
+
+    /**
+     * The indices of the nodes each node takes as operands or arguments, in evaluation order. Every node appears after
+     * all of the nodes it takes as operands.
+     */
+    private final int[][] nodeOperands;
+
+    /**
+     * For variable nodes, the index of the variable they read in {@link #variableValues}.
+     */
+    private final int[] nodeVariableSlots;
+
+    /**
+     * For operation nodes, the operator implementation they invoke.
+     */
+    private final OperatorAction[] nodeActions;
+
+    /**
+     * For function nodes, the name of the function they call.
+     */
+    private final String[] nodeFunctionNames;
+
+    /**
+     * For function nodes, the implementation of the function they call.
+     */
+    private final ToDoubleFunction<double[]>[] nodeFunctions;
+
+    /**
+     * For operation and function nodes, the array the results of their operands are placed into before being passed
+     * into the operator or function. These are reüsed across evaluations.
+     */
+    private final double[][] nodeOperandValues;
+
+    /**
+     * The result of each node from the most recent evaluation. Literal nodes are populated once, on creation.
+     */
+    private final double[] nodeValues;
+
+    /**
+     * The indices of variables in {@link #variableValues}, against the names of the variables.
+     */
+    private final Map<String, Integer> variableSlots;
+
+    /**
+     * The values of the variables available to this system, shared by all equations in it.
+     */
+    private final double[] variableValues;
+
+    /**
+     * The functions available to this system, and their implementations.
+     */
+    private final Map<String, ToDoubleFunction<double[]>> functions;
+
+    /**
+     * The object upon which access to this object should be locked.
+     */
+    private final Object syncLock = new Object();
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new equation system, compiling the given equation components into a single program.
+     * @param components The top level components of the equations in the system, mapped against the names of the
+     *                   outputs they produce, in output order.
+     * @param variables The variables available to the system. This should be a copy of the one used by the equation
+     *                  builder at the time of building.
+     * @param functions The functions available to the system. This should be a copy of the one used by the equation
+     *                  builder at the time of building.
+     * @throws IllegalArgumentException If any of the given components are or contain iterations.
+     */
+    EquationSystem(Map<String, EquationComponent> components,
+                   Map<String, Double> variables,
+                   Map<String, ToDoubleFunction<double[]>> functions)
+    {
+        Compiler compiler = new Compiler();
+        this.outputNames = Collections.unmodifiableList(new ArrayList<>(components.keySet()));
+        this.outputIndices = new HashMap<>();
+        this.outputNodes = new int[components.size()];
+        int outputIndex = 0;
+
+        for(Map.Entry<String, EquationComponent> e : components.entrySet())
+        {
+            outputIndices.put(e.getKey(), outputIndex);
+            outputNodes[outputIndex++] = compiler.compile(e.getValue());
+        }
+
+        this.variableSlots = new HashMap<>();
+        List<String> variableNames = new ArrayList<>(compiler.variableNames);
+
+        for(String name : variables.keySet())
+            if(!variableNames.contains(name))
+                variableNames.add(name);
+
+        this.variableValues = new double[variableNames.size()];
+
+        for(int i = 0; i < variableNames.size(); i++)
+        {
+            variableSlots.put(variableNames.get(i), i);
+            variableValues[i] = variables.get(variableNames.get(i));
+        }
+
+        this.functions = functions;
+
+        int nodeCount = compiler.nodes.size();
+
+        @SuppressWarnings("unchecked") // Generic array creation.
+        ToDoubleFunction<double[]>[] functionArray = (ToDoubleFunction<double[]>[])new ToDoubleFunction<?>[nodeCount];
+
+        this.nodeKinds = new int[nodeCount];
+        this.nodeOperands = new int[nodeCount][];
+        this.nodeVariableSlots = new int[nodeCount];
+        this.nodeActions = new OperatorAction[nodeCount];
+        this.nodeFunctionNames = new String[nodeCount];
+        this.nodeFunctions = functionArray;
+        this.nodeOperandValues = new double[nodeCount][];
+        this.nodeValues = new double[nodeCount];
+
+        for(int i = 0; i < nodeCount; i++)
+        {
+            NodeKey node = compiler.nodes.get(i);
+            nodeKinds[i] = node.kind;
+            nodeOperands[i] = node.operands;
+
+            switch(node.kind)
+            {
+                case NODE_LITERAL:
+                    nodeValues[i] = Double.longBitsToDouble((Long)node.subject);
+                    break;
+
+                case NODE_VARIABLE:
+                    nodeVariableSlots[i] = variableSlots.get((String)node.subject);
+                    break;
+
+                case NODE_OPERATION:
+                    nodeActions[i] = (OperatorAction)node.subject;
+                    nodeOperandValues[i] = new double[node.operands.length];
+                    break;
+
+                case NODE_FUNCTION:
+                    nodeFunctionNames[i] = (String)node.subject;
+                    nodeFunctions[i] = functions.get(nodeFunctionNames[i]);
+                    nodeOperandValues[i] = new double[node.operands.length];
+                    break;
+            }
+        }
+    }
+    //endregion
+
+    //region methods
+    //region read state
+
+    /**
+     * Gets the names of the outputs of this system.
+     * @return An unmodifiable list of the names of the outputs of this system, in the order their results appear in
+     *         the results of {@link #evaluate()}.
+     */
+    public List<String> getOutputNames()
+    { return outputNames; }
+
+    /**
+     * Gets the index of the given output in the results of {@link #evaluate()}.
+     * @param outputName The name of the output.
+     * @return The index of the given output, or -1 if this system has no output by the given name.
+     */
+    public int getOutputIndex(String outputName)
+    {
+        Integer index = outputIndices.get(outputName);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * <p>Gets the number of distinct nodes this system was compiled into. Subexpressions shared between or within
+     * equations only count once.</p>
+     *
+     * <p>Note: This function exists purely for the purposes of unit testing.</p>
+     * @return The number of nodes in this system's compiled program.
+     */
+    int getNodeCount()
+    { return nodeKinds.length; }
+    //endregion
+
+    //region evaluate
+
+    /**
+     * Evaluates all equations in this system.
+     * @return A new array containing the result of each equation in this system, in output order.
+     */
+    public double[] evaluate()
+    {
+        double[] results = new double[outputNodes.length];
+        evaluate(results);
+        return results;
+    }
+
+    /**
+     * Evaluates all equations in this system, placing the results into the given array.
+     * @param results The array to place the result of each equation in this system into, in output order.
+     * @throws IllegalArgumentException If the given array is shorter than the number of outputs of this system.
+     */
+    public void evaluate(double[] results)
+    {
+        if(results.length < outputNodes.length)
+            throw new IllegalArgumentException("The results array has room for " + results.length + " results, but "
+                                               + "this system has " + outputNodes.length + " outputs.");
+
+        synchronized(syncLock)
+        {
+            for(int i = 0; i < nodeKinds.length; i++)
+            {
+                switch(nodeKinds[i])
+                {
+                    case NODE_VARIABLE:
+                        nodeValues[i] = variableValues[nodeVariableSlots[i]];
+                        break;
+
+                    case NODE_OPERATION:
+                        nodeValues[i] = nodeActions[i].performOperation(gatherOperands(i));
+                        break;
+
+                    case NODE_FUNCTION:
+                        nodeValues[i] = nodeFunctions[i].applyAsDouble(gatherOperands(i));
+                        break;
+                }
+            }
+
+            for(int i = 0; i < outputNodes.length; i++)
+                results[i] = nodeValues[outputNodes[i]];
+        }
+    }
+
+    /**
+     * Places the results of the given node's operands into that node's operand array.
+     * @param nodeIndex The index of the node.
+     * @return The given node's operand array, populated with the results of its operands.
+     */
+    private double[] gatherOperands(int nodeIndex)
+    {
+        int[] operands = nodeOperands[nodeIndex];
+        double[] operandValues = nodeOperandValues[nodeIndex];
+
+        for(int j = 0; j < operands.length; j++)
+            operandValues[j] = nodeValues[operands[j]];
+
+        return operandValues;
+    }
+    //endregion
+
+    //region mutate state
+
+    /**
+     * <p>Reässigns the value of a variable in this system. If the system does not have a variable available to it by
+     * the given variable name, does nothing.</p>
+     * @param variableName The name of the variable to reässign.
+     * @param newValue The value to assign to the variable.
+     * @return True if the variable was reässigned successfully. False if it was not, as a result of the variable not
+     *         being available to this system.
+     */
+    public boolean setVariable(String variableName, double newValue)
+    {
+        Integer slot = variableSlots.get(variableName);
+
+        if(slot == null)
+            return false;
+
+        synchronized(syncLock)
+        { variableValues[slot] = newValue; }
+
+        return true;
+    }
+
+    /**
+     * <p>Provides a new implementation of a function in this system. If the system does not have a function available
+     * to it by the given function name, does nothing.</p>
+     * @param name The name of the function to redefine.
+     * @param f The new implementation of the function.
+     * @return True if the function was redefined successfully. False if it was not, as a result of the function not
+     *         being available to this system.
+     */
+    public boolean redefineFunction(String name, ToDoubleFunction<double[]> f)
+    {
+        synchronized(syncLock)
+        {
+            if(!functions.containsKey(name))
+                return false;
+
+            functions.put(name, f);
+
+            for(int i = 0; i < nodeFunctionNames.length; i++)
+                if(name.equals(nodeFunctionNames[i]))
+                    nodeFunctions[i] = f;
+        }
+
+        return true;
+    }
+    //endregion
+    //endregion
+}
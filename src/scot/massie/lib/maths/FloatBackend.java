@@ -0,0 +1,369 @@
+package scot.massie.lib.maths;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Implementations of operators and functions in single-precision arithmetic, used to evaluate equations as
+ * {@code float}s rather than {@code double}s, where results are kept in large tables and memory matters more than
+ * precision. See {@link FloatEvaluator}.</p>
+ *
+ * <p>Equations are parsed by their builders as normal, then {@link #compile(Equation) compiled} against a backend,
+ * which replaces each operation with this backend's implementation of the operator with the same tokens and fixity,
+ * and each function call with this backend's function of the same name. The builder's own implementations, which
+ * operate on {@code double}s, aren't used.</p>
+ *
+ * <p>The default operators are the {@link Equation.Builder#withDefaultOperators() default} and
+ * {@link Equation.Builder#withComparativeOperators() comparative} operators, in {@code float} arithmetic. The "?" and
+ * ":" conditional operator is always available, and only evaluates the operand it gives. The default functions are
+ * "min", "max", "sum", "prod", "floor", "ceil", "ceiling", "round", "truncate", "trunc", "sqrt", "cbrt", "sin", "cos",
+ * "tan", "log", and "log10".</p>
+ *
+ * <p>Java only provides the power operator, roots, logarithms, trigonometric functions, floor, and ceil for
+ * {@code double}s, so those are computed as {@code double}s and rounded to the nearest {@code float}. Everything else
+ * is computed in {@code float} arithmetic.</p>
+ *
+ * <p>Backends are immutable - methods that add operators or functions return new backends.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * Equation eq = new Equation.Builder().withVariable("x", 0).build("x^2 / 2");
+ * float[] table = eq.toFloatEvaluator().tabulate("x", new float[] { 1, 2, 3 }); // == [0.5, 2, 4.5]
+ * }</pre>
+ */
+public final class FloatBackend
+{
+    //region inner classes
+    /**
+     * The implementation of an operator with a single operand in a {@link FloatBackend}.
+     */
+    @FunctionalInterface
+    public interface UnaryOperator
+    {
+        /**
+         * Applies the operator.
+         * @param x The operand.
+         * @return The result of the operation.
+         */
+        float apply(float x);
+    }
+
+    /**
+     * The implementation of an operator with two operands in a {@link FloatBackend}.
+     */
+    @FunctionalInterface
+    public interface BinaryOperator
+    {
+        /**
+         * Applies the operator.
+         * @param l The left operand.
+         * @param r The right operand.
+         * @return The result of the operation.
+         */
+        float apply(float l, float r);
+    }
+
+    /**
+     * The implementation of a function in a {@link FloatBackend}.
+     */
+    @FunctionalInterface
+    public interface Function
+    {
+        /**
+         * Calls the function.
+         * @param arguments The values of the function call's arguments. This array is reused between calls, and must
+         *                  not be kept or modified.
+         * @return The result of the function call.
+         */
+        float apply(float[] arguments);
+    }
+    //endregion
+
+    //region constants
+    /**
+     * The backend with only the default operators and functions, used where none is given.
+     */
+    static final FloatBackend DEFAULT = new FloatBackend();
+    //endregion
+
+    //region variables
+    /**
+     * The implementations of binary infix operators, against their tokens.
+     */
+    private final Map<String, BinaryOperator> infixOperators;
+
+    /**
+     * The implementations of prefix operators, against their tokens.
+     */
+    private final Map<String, UnaryOperator> prefixOperators;
+
+    /**
+     * The implementations of postfix operators, against their tokens.
+     */
+    private final Map<String, UnaryOperator> postfixOperators;
+
+    /**
+     * The implementations of functions, against their names.
+     */
+    private final Map<String, Function> functions;
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new backend with the default operators and functions.
+     */
+    public FloatBackend()
+    {
+        this.infixOperators = new HashMap<>();
+        this.prefixOperators = new HashMap<>();
+        this.postfixOperators = new HashMap<>();
+        this.functions = new HashMap<>();
+
+        infixOperators.put("+", (l, r) -> l + r);
+        infixOperators.put("-", (l, r) -> l - r);
+        infixOperators.put("*", (l, r) -> l * r);
+        infixOperators.put("×", (l, r) -> l * r);
+        infixOperators.put("/", (l, r) -> l / r);
+        infixOperators.put("÷", (l, r) -> l / r);
+        infixOperators.put("%", (l, r) -> l % r);
+        infixOperators.put("√", (l, r) -> (float)Math.pow(r, 1.0 / l));
+        infixOperators.put("^", (l, r) -> (float)Math.pow(l, r));
+        prefixOperators.put("-", x -> -x);
+        prefixOperators.put("+", x -> x);
+        prefixOperators.put("√", x -> (float)Math.sqrt(x));
+        postfixOperators.put("%", x -> x / 100);
+
+        prefixOperators.put("!", x -> isTrue(x) ? 0 : 1);
+        infixOperators.put("<", (l, r) -> l < r ? 1 : 0);
+        infixOperators.put(">", (l, r) -> l > r ? 1 : 0);
+        infixOperators.put("<=", (l, r) -> l <= r ? 1 : 0);
+        infixOperators.put("≤", (l, r) -> l <= r ? 1 : 0);
+        infixOperators.put(">=", (l, r) -> l >= r ? 1 : 0);
+        infixOperators.put("≥", (l, r) -> l >= r ? 1 : 0);
+        infixOperators.put("=", (l, r) -> areEqual(l, r) ? 1 : 0);
+
+        for(String notEqual : new String[] { "!=", "≠", "=/=" })
+            infixOperators.put(notEqual, (l, r) -> areEqual(l, r) ? 0 : 1);
+
+        for(String and : new String[] { "&&", "∧", "⋀", "⋏" })
+            infixOperators.put(and, (l, r) -> isTrue(l) && isTrue(r) ? 1 : 0);
+
+        for(String or : new String[] { "||", "∨", "⋁", "⋎" })
+            infixOperators.put(or, (l, r) -> isTrue(l) || isTrue(r) ? 1 : 0);
+
+        functions.put("min", FloatBackend::min);
+        functions.put("max", FloatBackend::max);
+        functions.put("sum", FloatBackend::sum);
+        functions.put("prod", FloatBackend::prod);
+        functions.put("floor", a -> (float)Math.floor(a[0]));
+        functions.put("ceil", a -> (float)Math.ceil(a[0]));
+        functions.put("ceiling", a -> (float)Math.ceil(a[0]));
+        functions.put("round", a -> Math.abs(a[0]) < 0x1p23f ? Math.round(a[0]) : a[0]);
+        functions.put("truncate", a -> (float)(a[0] < 0 ? Math.ceil(a[0]) : Math.floor(a[0])));
+        functions.put("trunc", a -> (float)(a[0] < 0 ? Math.ceil(a[0]) : Math.floor(a[0])));
+        functions.put("sqrt", a -> (float)Math.sqrt(a[0]));
+        functions.put("cbrt", a -> (float)Math.cbrt(a[0]));
+        functions.put("sin", a -> (float)Math.sin(a[0]));
+        functions.put("cos", a -> (float)Math.cos(a[0]));
+        functions.put("tan", a -> (float)Math.tan(a[0]));
+        functions.put("log", a -> (float)Math.log(a[0]));
+        functions.put("log10", a -> (float)Math.log10(a[0]));
+    }
+
+    /**
+     * Creates a copy of a backend, to be modified before it's returned.
+     * @param source The backend to copy.
+     */
+    private FloatBackend(FloatBackend source)
+    {
+        this.infixOperators = new HashMap<>(source.infixOperators);
+        this.prefixOperators = new HashMap<>(source.prefixOperators);
+        this.postfixOperators = new HashMap<>(source.postfixOperators);
+        this.functions = new HashMap<>(source.functions);
+    }
+    //endregion
+
+    //region methods
+    //region with
+    /**
+     * Gets a copy of this backend with the given implementation of the binary infix operator with the given token.
+     * @param token The token of the operator.
+     * @param operator The implementation of the operator, given its left and right operands.
+     * @return A new backend.
+     */
+    public FloatBackend withOperator(String token, BinaryOperator operator)
+    {
+        FloatBackend result = new FloatBackend(this);
+        result.infixOperators.put(token, operator);
+        return result;
+    }
+
+    /**
+     * Gets a copy of this backend with the given implementation of the prefix operator with the given token.
+     * @param token The token of the operator.
+     * @param operator The implementation of the operator.
+     * @return A new backend.
+     */
+    public FloatBackend withPrefixOperator(String token, UnaryOperator operator)
+    {
+        FloatBackend result = new FloatBackend(this);
+        result.prefixOperators.put(token, operator);
+        return result;
+    }
+
+    /**
+     * Gets a copy of this backend with the given implementation of the postfix operator with the given token.
+     * @param token The token of the operator.
+     * @param operator The implementation of the operator.
+     * @return A new backend.
+     */
+    public FloatBackend withPostfixOperator(String token, UnaryOperator operator)
+    {
+        FloatBackend result = new FloatBackend(this);
+        result.postfixOperators.put(token, operator);
+        return result;
+    }
+
+    /**
+     * Gets a copy of this backend with the given implementation of the function with the given name.
+     * @param name The name of the function.
+     * @param function The implementation of the function.
+     * @return A new backend.
+     */
+    public FloatBackend withFunction(String name, Function function)
+    {
+        FloatBackend result = new FloatBackend(this);
+        result.functions.put(name, function);
+        return result;
+    }
+    //endregion
+
+    //region accessors
+    /**
+     * Gets the implementations of this backend's binary infix operators.
+     * @return An unmodifiable map of the implementations of binary infix operators, against their tokens.
+     */
+    Map<String, BinaryOperator> getInfixOperators()
+    { return Collections.unmodifiableMap(infixOperators); }
+
+    /**
+     * Gets the implementations of this backend's prefix operators.
+     * @return An unmodifiable map of the implementations of prefix operators, against their tokens.
+     */
+    Map<String, UnaryOperator> getPrefixOperators()
+    { return Collections.unmodifiableMap(prefixOperators); }
+
+    /**
+     * Gets the implementations of this backend's postfix operators.
+     * @return An unmodifiable map of the implementations of postfix operators, against their tokens.
+     */
+    Map<String, UnaryOperator> getPostfixOperators()
+    { return Collections.unmodifiableMap(postfixOperators); }
+
+    /**
+     * Gets the implementations of this backend's functions.
+     * @return An unmodifiable map of the implementations of functions, against their names.
+     */
+    Map<String, Function> getFunctions()
+    { return Collections.unmodifiableMap(functions); }
+    //endregion
+
+    /**
+     * Compiles the given equation into an evaluator using this backend's operators and functions. The equation's
+     * variables start with their current values in the equation, rounded to the nearest {@code float}.
+     * @param equation The equation to compile.
+     * @return A new evaluator of the given equation.
+     * @throws IllegalArgumentException If the equation contains an operator or function this backend has no
+     *                                  implementation of.
+     */
+    public FloatEvaluator compile(Equation equation)
+    { return new FloatEvaluator(equation, this); }
+
+    //region implementations
+    /**
+     * Gets whether the given number is considered true by conditional and logical operators.
+     * @param x The number.
+     * @return True if the given number is at least 0.5. Otherwise, false.
+     */
+    static boolean isTrue(float x)
+    { return x >= 0.5f; }
+
+    /**
+     * Gets whether two numbers are equal, to within the precision of the first, as the "=" operator of equations
+     * considers them.
+     * @param l The first number.
+     * @param r The second number.
+     * @return True if the numbers are within 2 units in the last place of the first of one another. Otherwise, false.
+     */
+    static boolean areEqual(float l, float r)
+    {
+        float delta = Math.ulp(l) * 2;
+        return (r > l - delta) && (r < l + delta);
+    }
+
+    /**
+     * Gets the least of the given numbers. NaN numbers after the first are ignored.
+     * @param a The numbers. There must be at least one.
+     * @return The least of the given numbers.
+     */
+    static float min(float[] a)
+    {
+        float result = a[0];
+
+        for(int i = 1; i < a.length; i++)
+            if(a[i] < result)
+                result = a[i];
+
+        return result;
+    }
+
+    /**
+     * Gets the greatest of the given numbers. NaN numbers after the first are ignored.
+     * @param a The numbers. There must be at least one.
+     * @return The greatest of the given numbers.
+     */
+    static float max(float[] a)
+    {
+        float result = a[0];
+
+        for(int i = 1; i < a.length; i++)
+            if(a[i] > result)
+                result = a[i];
+
+        return result;
+    }
+
+    /**
+     * Gets the sum of the given numbers, added in order.
+     * @param a The numbers.
+     * @return The sum of the given numbers, or 0 if none were given.
+     */
+    static float sum(float[] a)
+    {
+        float result = 0;
+
+        for(float x : a)
+            result += x;
+
+        return result;
+    }
+
+    /**
+     * Gets the product of the given numbers, multiplied in order.
+     * @param a The numbers.
+     * @return The product of the given numbers, or 1 if none were given.
+     */
+    static float prod(float[] a)
+    {
+        float result = 1;
+
+        for(float x : a)
+            result *= x;
+
+        return result;
+    }
+    //endregion
+    //endregion
+}
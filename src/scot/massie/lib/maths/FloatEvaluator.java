@@ -0,0 +1,677 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.InfixOperator;
+import scot.massie.lib.maths.Equation.Iteration;
+import scot.massie.lib.maths.Equation.IterationIndex;
+import scot.massie.lib.maths.Equation.LiteralNumber;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.Operator;
+import scot.massie.lib.maths.Equation.PostfixOperator;
+import scot.massie.lib.maths.Equation.VariableReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Evaluates an equation in single-precision arithmetic, using the operators and functions of a
+ * {@link FloatBackend}. Evaluators are created by {@link FloatBackend#compile(Equation)}, or
+ * {@link Equation#toFloatEvaluator()}.</p>
+ *
+ * <p>The equation is compiled into a tree of nodes operating directly on {@code float}s, so evaluating it doesn't box
+ * numbers, and only converts them to and from {@code double}s where the backend's operators and functions do. Numbers
+ * in the equation are rounded to the nearest {@code float} once, when it's compiled. Iterations behave as they do in
+ * equations, with their indices and results as {@code float}s, and {@link #tabulate(String, float[])} fills compact
+ * tables of results.</p>
+ *
+ * <p>Evaluators have their own variables, separate from those of the equation they were compiled from, which start with
+ * the values the equation's variables had when the evaluator was created.</p>
+ */
+public final class FloatEvaluator
+{
+    //region inner classes
+    /**
+     * A compiled equation component.
+     */
+    private abstract static class Node
+    {
+        /**
+         * Evaluates this node.
+         * @return The result of this node.
+         */
+        abstract float evaluate();
+    }
+
+    /**
+     * A number.
+     */
+    private static final class Literal extends Node
+    {
+        /**
+         * The number.
+         */
+        private final float value;
+
+        /**
+         * Creates a new literal node.
+         * @param value The number.
+         */
+        Literal(float value)
+        { this.value = value; }
+
+        @Override
+        float evaluate()
+        { return value; }
+    }
+
+    /**
+     * A variable or iteration index, whose value is held in the evaluator's {@link #values}.
+     */
+    private final class Slot extends Node
+    {
+        /**
+         * The position of the value in {@link #values}.
+         */
+        private final int slot;
+
+        /**
+         * Creates a new slot node.
+         * @param slot The position of the value in {@link #values}.
+         */
+        Slot(int slot)
+        { this.slot = slot; }
+
+        @Override
+        float evaluate()
+        { return values[slot]; }
+    }
+
+    /**
+     * An operation with a single operand.
+     */
+    private static final class Unary extends Node
+    {
+        /**
+         * The implementation of the operator.
+         */
+        private final FloatBackend.UnaryOperator operator;
+
+        /**
+         * The operand.
+         */
+        private final Node operand;
+
+        /**
+         * Creates a new unary operation node.
+         * @param operator The implementation of the operator.
+         * @param operand The operand.
+         */
+        Unary(FloatBackend.UnaryOperator operator, Node operand)
+        {
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        @Override
+        float evaluate()
+        { return operator.apply(operand.evaluate()); }
+    }
+
+    /**
+     * An operation with two operands.
+     */
+    private static final class Binary extends Node
+    {
+        /**
+         * The implementation of the operator.
+         */
+        private final FloatBackend.BinaryOperator operator;
+
+        /**
+         * The left operand.
+         */
+        private final Node left;
+
+        /**
+         * The right operand.
+         */
+        private final Node right;
+
+        /**
+         * Creates a new binary operation node.
+         * @param operator The implementation of the operator.
+         * @param left The left operand.
+         * @param right The right operand.
+         */
+        Binary(FloatBackend.BinaryOperator operator, Node left, Node right)
+        {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        float evaluate()
+        { return operator.apply(left.evaluate(), right.evaluate()); }
+    }
+
+    /**
+     * The conditional operator, which only evaluates the operand it gives.
+     */
+    private static final class Conditional extends Node
+    {
+        /**
+         * The condition.
+         */
+        private final Node condition;
+
+        /**
+         * The operand given where the condition is true.
+         */
+        private final Node ifTrue;
+
+        /**
+         * The operand given where the condition is false.
+         */
+        private final Node ifFalse;
+
+        /**
+         * Creates a new conditional node.
+         * @param condition The condition.
+         * @param ifTrue The operand given where the condition is true.
+         * @param ifFalse The operand given where the condition is false.
+         */
+        Conditional(Node condition, Node ifTrue, Node ifFalse)
+        {
+            this.condition = condition;
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+
+        @Override
+        float evaluate()
+        { return FloatBackend.isTrue(condition.evaluate()) ? ifTrue.evaluate() : ifFalse.evaluate(); }
+    }
+
+    /**
+     * A function call.
+     */
+    private static final class Call extends Node
+    {
+        /**
+         * The implementation of the function.
+         */
+        private final FloatBackend.Function function;
+
+        /**
+         * The arguments.
+         */
+        private final Node[] arguments;
+
+        /**
+         * The values of the arguments, reused between calls.
+         */
+        private final float[] argumentValues;
+
+        /**
+         * Creates a new function call node.
+         * @param function The implementation of the function.
+         * @param arguments The arguments.
+         */
+        Call(FloatBackend.Function function, Node[] arguments)
+        {
+            this.function = function;
+            this.arguments = arguments;
+            this.argumentValues = new float[arguments.length];
+        }
+
+        @Override
+        float evaluate()
+        {
+            for(int i = 0; i < arguments.length; i++)
+                argumentValues[i] = arguments[i].evaluate();
+
+            return function.apply(argumentValues);
+        }
+    }
+
+    /**
+     * An iteration, whose index is held in the evaluator's {@link #values}.
+     */
+    private final class Loop extends Node
+    {
+        /**
+         * The kind of iteration, as in {@link Iteration#getKind()}.
+         */
+        private final int kind;
+
+        /**
+         * The position of the index in {@link #values}.
+         */
+        private final int slot;
+
+        /**
+         * The first value of the index.
+         */
+        private final Node from;
+
+        /**
+         * The last value of the index.
+         */
+        private final Node to;
+
+        /**
+         * The body, evaluated for each value of the index.
+         */
+        private final Node body;
+
+        /**
+         * Creates a new iteration node.
+         * @param kind The kind of iteration.
+         * @param slot The position of the index in {@link #values}.
+         * @param from The first value of the index.
+         * @param to The last value of the index.
+         * @param body The body.
+         */
+        Loop(int kind, int slot, Node from, Node to, Node body)
+        {
+            this.kind = kind;
+            this.slot = slot;
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        float evaluate()
+        {
+            float first = from.evaluate();
+            float last = to.evaluate();
+
+            if(Float.isNaN(first) || Float.isNaN(last))
+                return Float.NaN;
+
+            if(last < first)
+                return kind == Iteration.SUM ? 0 : kind == Iteration.PRODUCT ? 1 : Float.NaN;
+
+            // The span isn't negative, so converting it to a long rounds it down.
+            float span = last - first;
+
+            if(Float.isInfinite(span) || span + 1 >= 0x1p63f)
+                return Float.NaN;
+
+            // The index is calculated from a count rather than accumulated, as in Iteration#evaluate(Equation).
+            long count = (long)span + 1;
+            values[slot] = first;
+            float result = body.evaluate();
+
+            for(long i = 1; i < count; i++)
+            {
+                values[slot] = first + i;
+                float value = body.evaluate();
+
+                switch(kind)
+                {
+                    case Iteration.SUM:     result += value; break;
+                    case Iteration.PRODUCT: result *= value; break;
+                    case Iteration.MIN:     if(value < result) result = value; break;
+                    default:                if(value > result) result = value; break;
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Compiles an equation's components into nodes.
+     */
+    private final class Compiler
+    {
+        /**
+         * The backend whose operators and functions are used.
+         */
+        private final FloatBackend backend;
+
+        /**
+         * A printer of the operators of the equation's builder, used to find the operators performing operations.
+         */
+        private final EquationPrinter printer;
+
+        /**
+         * The equation being compiled.
+         */
+        private final Equation equation;
+
+        /**
+         * The initial values of the slots, in order.
+         */
+        final List<Float> initialValues = new ArrayList<>();
+
+        /**
+         * The slots of the iteration indices in scope.
+         */
+        private final Map<IterationIndex, Integer> indexSlots = new IdentityHashMap<>();
+
+        /**
+         * The nodes already compiled from components, where components appear more than once.
+         */
+        private final Map<EquationComponent, Node> compiled = new IdentityHashMap<>();
+
+        /**
+         * Creates a new compiler.
+         * @param equation The equation being compiled.
+         * @param backend The backend whose operators and functions are used.
+         */
+        Compiler(Equation equation, FloatBackend backend)
+        {
+            this.equation = equation;
+            this.backend = backend;
+            this.printer = new EquationPrinter(equation.sourceBuilder);
+        }
+
+        /**
+         * Compiles the given component.
+         * @param component The component to compile.
+         * @return The node giving the component's value.
+         * @throws IllegalArgumentException If the component can't be compiled.
+         */
+        Node compile(EquationComponent component)
+        {
+            Node result = compiled.get(component);
+
+            if(result == null)
+            {
+                result = compileUncached(component);
+
+                // Index references are only the same node within the same iteration.
+                if(!(component instanceof IterationIndex))
+                    compiled.put(component, result);
+            }
+
+            return result;
+        }
+
+        /**
+         * Compiles the given component, which hasn't already been compiled.
+         * @param component The component to compile.
+         * @return The node giving the component's value.
+         * @throws IllegalArgumentException If the component can't be compiled.
+         */
+        private Node compileUncached(EquationComponent component)
+        {
+            if(component instanceof LiteralNumber)
+                return new Literal((float)((LiteralNumber)component).getValue());
+
+            if(component instanceof VariableReference)
+            {
+                String name = ((VariableReference)component).getName();
+                Integer slot = slots.get(name);
+
+                if(slot == null)
+                {
+                    Equation.VariableSlot variable = equation.variableSlots.get(name);
+
+                    if(variable == null)
+                        throw new IllegalArgumentException("The equation has no variable \"" + name + "\".");
+
+                    slot = addSlot((float)variable.value);
+                    slots.put(name, slot);
+                }
+
+                return new Slot(slot);
+            }
+
+            if(component instanceof IterationIndex)
+            {
+                Integer slot = indexSlots.get(component);
+
+                if(slot == null)
+                    throw new IllegalArgumentException("The index \"" + ((IterationIndex)component).getName()
+                                                       + "\" is outside of its iteration.");
+
+                return new Slot(slot);
+            }
+
+            if(component instanceof Iteration)
+            {
+                Iteration iteration = (Iteration)component;
+                int slot = addSlot(0);
+                Node from = compile(iteration.getFrom());
+                Node to = compile(iteration.getTo());
+                // Inlined function definitions share their indices between calls, which may be nested.
+                Integer outerSlot = indexSlots.put(iteration.getIndex(), slot);
+                Node body = compile(iteration.getBody());
+
+                if(outerSlot == null)
+                    indexSlots.remove(iteration.getIndex());
+                else
+                    indexSlots.put(iteration.getIndex(), outerSlot);
+                return new Loop(iteration.getKind(), slot, from, to, body);
+            }
+
+            if(component instanceof FunctionCall)
+            {
+                FunctionCall call = (FunctionCall)component;
+                FloatBackend.Function function = backend.getFunctions().get(call.getFunctionName());
+
+                if(function == null)
+                    throw new IllegalArgumentException("The backend has no function \"" + call.getFunctionName()
+                                                       + "\".");
+
+                EquationComponent[] arguments = call.getArguments();
+                Node[] compiledArguments = new Node[arguments.length];
+
+                for(int i = 0; i < arguments.length; i++)
+                    compiledArguments[i] = compile(arguments[i]);
+
+                return new Call(function, compiledArguments);
+            }
+
+            if(component instanceof Operation)
+                return compileOperation((Operation)component);
+
+            throw new IllegalArgumentException("Equations containing components of type "
+                                               + component.getClass().getName() + " can't be compiled.");
+        }
+
+        /**
+         * Compiles the given operation.
+         * @param operation The operation to compile.
+         * @return The node giving the operation's value.
+         * @throws IllegalArgumentException If the backend has no implementation of the operation's operator.
+         */
+        private Node compileOperation(Operation operation)
+        {
+            Operator operator = printer.operatorOf(operation);
+            List<EquationComponent> operands = operation.getComponents();
+            String token = operator.tokens.get(0).toString();
+
+            if(operator instanceof InfixOperator)
+            {
+                if(isConditional(operator))
+                {
+                    return new Conditional(compile(operands.get(0)),
+                                           compile(operands.get(1)),
+                                           compile(operands.get(2)));
+                }
+
+                FloatBackend.BinaryOperator implementation = backend.getInfixOperators().get(token);
+
+                if(operator.tokens.size() == 1 && implementation != null)
+                    return new Binary(implementation, compile(operands.get(0)), compile(operands.get(1)));
+            }
+            else
+            {
+                FloatBackend.UnaryOperator implementation = operator instanceof PostfixOperator
+                                                           ? backend.getPostfixOperators().get(token)
+                                                           : backend.getPrefixOperators().get(token);
+
+                if(implementation != null)
+                    return new Unary(implementation, compile(operands.get(0)));
+            }
+
+            throw new IllegalArgumentException("The backend has no implementation of the operator " + operator.tokens
+                                               + ".");
+        }
+
+        /**
+         * Gets whether the given operator is the conditional operator, which is compiled to only evaluate the operand
+         * it gives.
+         * @param operator The operator.
+         * @return True if the operator is an infix operator with the tokens "?" and ":". Otherwise, false.
+         */
+        private boolean isConditional(Operator operator)
+        {
+            return operator.tokens.size() == 2
+                && operator.tokens.get(0).toString().equals("?")
+                && operator.tokens.get(1).toString().equals(":");
+        }
+
+        /**
+         * Adds a slot.
+         * @param initialValue The initial value of the slot.
+         * @return The position of the new slot.
+         */
+        private int addSlot(float initialValue)
+        {
+            initialValues.add(initialValue);
+            return initialValues.size() - 1;
+        }
+    }
+    //endregion
+
+    //region variables
+    /**
+     * The names of the equation's variables, whether or not they're referenced by it.
+     */
+    private final Set<String> variableNames;
+
+    /**
+     * The positions in {@link #values} of the variables referenced by the equation, against their names.
+     */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /**
+     * The values of the variables referenced by the equation and the indices of its iterations.
+     */
+    private final float[] values;
+
+    /**
+     * The node giving the result of the equation.
+     */
+    private final Node root;
+
+    /**
+     * The object upon which access to this evaluator should be locked.
+     */
+    private final Object syncLock = new Object();
+    //endregion
+
+    //region initialisation
+    /**
+     * Compiles the given equation.
+     * @param equation The equation to compile.
+     * @param backend The backend whose operators and functions are used.
+     * @throws IllegalArgumentException If the equation can't be compiled against the given backend.
+     */
+    FloatEvaluator(Equation equation, FloatBackend backend)
+    {
+        Compiler compiler = new Compiler(equation, backend);
+
+        synchronized(equation.syncLock)
+        {
+            this.variableNames = Collections.unmodifiableSet(new HashSet<>(equation.variableSlots.keySet()));
+            this.root = compiler.compile(equation.topLevelComponent);
+        }
+
+        this.values = new float[compiler.initialValues.size()];
+
+        for(int i = 0; i < values.length; i++)
+            values[i] = compiler.initialValues.get(i);
+    }
+    //endregion
+
+    //region methods
+    /**
+     * Evaluates the equation.
+     * @return The result of the equation.
+     */
+    public float evaluate()
+    {
+        synchronized(syncLock)
+        { return root.evaluate(); }
+    }
+
+    /**
+     * Sets the value of one of the equation's variables in this evaluator. This doesn't affect the equation itself.
+     * @param variableName The name of the variable.
+     * @param newValue The new value of the variable.
+     * @return True if the equation has a variable by the given name. Otherwise, false.
+     */
+    public boolean setVariable(String variableName, float newValue)
+    {
+        synchronized(syncLock)
+        {
+            Integer slot = slots.get(variableName);
+
+            if(slot != null)
+                values[slot] = newValue;
+
+            return variableNames.contains(variableName);
+        }
+    }
+
+    /**
+     * Evaluates the equation once for each of the given values of one of its variables. The variable has its previous
+     * value again afterwards.
+     * @param variableName The name of the variable.
+     * @param inputs The values of the variable to evaluate the equation with.
+     * @return A new array of the results of the equation for each of the given values, in the same order.
+     * @throws IllegalArgumentException If the equation has no variable by the given name.
+     */
+    public float[] tabulate(String variableName, float[] inputs)
+    {
+        if(!variableNames.contains(variableName))
+            throw new IllegalArgumentException("The equation has no variable \"" + variableName + "\".");
+
+        float[] results = new float[inputs.length];
+
+        synchronized(syncLock)
+        {
+            Integer slot = slots.get(variableName);
+
+            if(slot == null)
+            {
+                if(inputs.length != 0)
+                    Arrays.fill(results, root.evaluate());
+
+                return results;
+            }
+
+            float previous = values[slot];
+
+            try
+            {
+                for(int i = 0; i < inputs.length; i++)
+                {
+                    values[slot] = inputs[i];
+                    results[i] = root.evaluate();
+                }
+            }
+            finally
+            { values[slot] = previous; }
+        }
+
+        return results;
+    }
+    //endregion
+}
@@ -0,0 +1,387 @@
+package scot.massie.lib.maths;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * <p>Implementations of operators and functions in exact 64-bit integer arithmetic, used to evaluate equations as
+ * {@code long}s rather than {@code double}s. See {@link LongEvaluator}.</p>
+ *
+ * <p>Equations are parsed by their builders as normal, then {@link #compile(Equation) compiled} against a backend,
+ * which replaces each operation with this backend's implementation of the operator with the same tokens and fixity,
+ * and each function call with this backend's function of the same name. The builder's own implementations, which
+ * operate on {@code double}s, aren't used.</p>
+ *
+ * <p>The default operators are:</p>
+ *
+ * <ul>
+ *     <li>"+", "-", "*", "×", and "^", which throw {@link ArithmeticException} where the result overflows.</li>
+ *     <li>"/" and "÷", which divide, rounding towards zero, and "%", which gives the remainder of doing so. These
+ *     throw {@link ArithmeticException} where dividing by zero, and "/" and "÷" also where the result overflows.</li>
+ *     <li>Prefix "-" and "+", where negating throws {@link ArithmeticException} where the result overflows.</li>
+ *     <li>The {@link Equation.Builder#withComparativeOperators() comparative operators}, which give 1 for true and 0
+ *     for false, and treat numbers of at least 1 as true.</li>
+ * </ul>
+ *
+ * <p>The "?" and ":" conditional operator is always available, and only evaluates the operand it gives. The default
+ * functions are "min", "max", "sum", and "prod", where "sum" and "prod" likewise throw where the result overflows, and
+ * "floor", "ceil", "ceiling", "round", "truncate", and "trunc", which give their argument as it is.</p>
+ *
+ * <p>Backends are immutable - methods that add operators or functions return new backends.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * Equation eq = new Equation.Builder().withVariable("n", 0).build("n * (n + 1) / 2");
+ * LongEvaluator evaluator = new LongBackend().compile(eq);
+ * evaluator.setVariable("n", 3_000_000_000L);
+ * evaluator.evaluate(); // == 4_500_000_001_500_000_000L, exactly.
+ * }</pre>
+ */
+public final class LongBackend
+{
+    //region inner classes
+    /**
+     * The implementation of a function in a {@link LongBackend}.
+     */
+    @FunctionalInterface
+    public interface Function
+    {
+        /**
+         * Calls the function.
+         * @param arguments The values of the function call's arguments. This array is reused between calls, and must
+         *                  not be kept or modified.
+         * @return The result of the function call.
+         */
+        long apply(long[] arguments);
+    }
+    //endregion
+
+    //region constants
+    /**
+     * The backend with only the default operators and functions, used where none is given.
+     */
+    static final LongBackend DEFAULT = new LongBackend();
+    //endregion
+
+    //region variables
+    /**
+     * The implementations of binary infix operators, against their tokens.
+     */
+    private final Map<String, LongBinaryOperator> infixOperators;
+
+    /**
+     * The implementations of prefix operators, against their tokens.
+     */
+    private final Map<String, LongUnaryOperator> prefixOperators;
+
+    /**
+     * The implementations of postfix operators, against their tokens.
+     */
+    private final Map<String, LongUnaryOperator> postfixOperators;
+
+    /**
+     * The implementations of functions, against their names.
+     */
+    private final Map<String, Function> functions;
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new backend with the default operators and functions.
+     */
+    public LongBackend()
+    {
+        this.infixOperators = new HashMap<>();
+        this.prefixOperators = new HashMap<>();
+        this.postfixOperators = new HashMap<>();
+        this.functions = new HashMap<>();
+
+        infixOperators.put("+", Math::addExact);
+        infixOperators.put("-", Math::subtractExact);
+        infixOperators.put("*", Math::multiplyExact);
+        infixOperators.put("×", Math::multiplyExact);
+        infixOperators.put("/", LongBackend::divide);
+        infixOperators.put("÷", LongBackend::divide);
+        infixOperators.put("%", (l, r) -> l % r);
+        infixOperators.put("^", LongBackend::pow);
+        prefixOperators.put("-", Math::negateExact);
+        prefixOperators.put("+", x -> x);
+
+        prefixOperators.put("!", x -> isTrue(x) ? 0 : 1);
+        infixOperators.put("<", (l, r) -> l < r ? 1 : 0);
+        infixOperators.put(">", (l, r) -> l > r ? 1 : 0);
+        infixOperators.put("<=", (l, r) -> l <= r ? 1 : 0);
+        infixOperators.put("≤", (l, r) -> l <= r ? 1 : 0);
+        infixOperators.put(">=", (l, r) -> l >= r ? 1 : 0);
+        infixOperators.put("≥", (l, r) -> l >= r ? 1 : 0);
+        infixOperators.put("=", (l, r) -> l == r ? 1 : 0);
+        infixOperators.put("!=", (l, r) -> l != r ? 1 : 0);
+        infixOperators.put("≠", (l, r) -> l != r ? 1 : 0);
+        infixOperators.put("=/=", (l, r) -> l != r ? 1 : 0);
+
+        for(String and : new String[] { "&&", "∧", "⋀", "⋏" })
+            infixOperators.put(and, (l, r) -> isTrue(l) && isTrue(r) ? 1 : 0);
+
+        for(String or : new String[] { "||", "∨", "⋁", "⋎" })
+            infixOperators.put(or, (l, r) -> isTrue(l) || isTrue(r) ? 1 : 0);
+
+        functions.put("min", LongBackend::min);
+        functions.put("max", LongBackend::max);
+        functions.put("sum", LongBackend::sum);
+        functions.put("prod", LongBackend::prod);
+
+        for(String rounding : new String[] { "floor", "ceil", "ceiling", "round", "truncate", "trunc" })
+            functions.put(rounding, a -> a[0]);
+    }
+
+    /**
+     * Creates a copy of a backend, to be modified before it's returned.
+     * @param source The backend to copy.
+     */
+    private LongBackend(LongBackend source)
+    {
+        this.infixOperators = new HashMap<>(source.infixOperators);
+        this.prefixOperators = new HashMap<>(source.prefixOperators);
+        this.postfixOperators = new HashMap<>(source.postfixOperators);
+        this.functions = new HashMap<>(source.functions);
+    }
+    //endregion
+
+    //region methods
+    //region with
+    /**
+     * Gets a copy of this backend with the given implementation of the binary infix operator with the given token.
+     * @param token The token of the operator.
+     * @param operator The implementation of the operator, given its left and right operands.
+     * @return A new backend.
+     */
+    public LongBackend withOperator(String token, LongBinaryOperator operator)
+    {
+        LongBackend result = new LongBackend(this);
+        result.infixOperators.put(token, operator);
+        return result;
+    }
+
+    /**
+     * Gets a copy of this backend with the given implementation of the prefix operator with the given token.
+     * @param token The token of the operator.
+     * @param operator The implementation of the operator.
+     * @return A new backend.
+     */
+    public LongBackend withPrefixOperator(String token, LongUnaryOperator operator)
+    {
+        LongBackend result = new LongBackend(this);
+        result.prefixOperators.put(token, operator);
+        return result;
+    }
+
+    /**
+     * Gets a copy of this backend with the given implementation of the postfix operator with the given token.
+     * @param token The token of the operator.
+     * @param operator The implementation of the operator.
+     * @return A new backend.
+     */
+    public LongBackend withPostfixOperator(String token, LongUnaryOperator operator)
+    {
+        LongBackend result = new LongBackend(this);
+        result.postfixOperators.put(token, operator);
+        return result;
+    }
+
+    /**
+     * Gets a copy of this backend with the given implementation of the function with the given name.
+     * @param name The name of the function.
+     * @param function The implementation of the function.
+     * @return A new backend.
+     */
+    public LongBackend withFunction(String name, Function function)
+    {
+        LongBackend result = new LongBackend(this);
+        result.functions.put(name, function);
+        return result;
+    }
+    //endregion
+
+    //region accessors
+    /**
+     * Gets the implementations of this backend's binary infix operators.
+     * @return An unmodifiable map of the implementations of binary infix operators, against their tokens.
+     */
+    Map<String, LongBinaryOperator> getInfixOperators()
+    { return Collections.unmodifiableMap(infixOperators); }
+
+    /**
+     * Gets the implementations of this backend's prefix operators.
+     * @return An unmodifiable map of the implementations of prefix operators, against their tokens.
+     */
+    Map<String, LongUnaryOperator> getPrefixOperators()
+    { return Collections.unmodifiableMap(prefixOperators); }
+
+    /**
+     * Gets the implementations of this backend's postfix operators.
+     * @return An unmodifiable map of the implementations of postfix operators, against their tokens.
+     */
+    Map<String, LongUnaryOperator> getPostfixOperators()
+    { return Collections.unmodifiableMap(postfixOperators); }
+
+    /**
+     * Gets the implementations of this backend's functions.
+     * @return An unmodifiable map of the implementations of functions, against their names.
+     */
+    Map<String, Function> getFunctions()
+    { return Collections.unmodifiableMap(functions); }
+    //endregion
+
+    /**
+     * Compiles the given equation into an evaluator using this backend's operators and functions. The equation's
+     * variables start with their current values in the equation.
+     * @param equation The equation to compile.
+     * @return A new evaluator of the given equation.
+     * @throws IllegalArgumentException If the equation contains an operator or function this backend has no
+     *                                  implementation of, a number that isn't a whole number within the range of a
+     *                                  {@code long}, or references a variable whose current value isn't one.
+     */
+    public LongEvaluator compile(Equation equation)
+    { return new LongEvaluator(equation, this); }
+
+    //region implementations
+    /**
+     * Gets whether the given number is considered true by conditional and logical operators.
+     * @param x The number.
+     * @return True if the given number is at least 1. Otherwise, false.
+     */
+    static boolean isTrue(long x)
+    { return x >= 1; }
+
+    /**
+     * Divides one number by another, rounding towards zero.
+     * @param dividend The number to divide.
+     * @param divisor The number to divide by.
+     * @return The dividend divided by the divisor.
+     * @throws ArithmeticException If the divisor is zero, or the result overflows, as where {@link Long#MIN_VALUE} is
+     *                             divided by -1.
+     */
+    public static long divide(long dividend, long divisor)
+    {
+        if(dividend == Long.MIN_VALUE && divisor == -1)
+            throw new ArithmeticException(dividend + " divided by " + divisor + " overflows.");
+
+        return dividend / divisor;
+    }
+
+    /**
+     * Raises one number to the power of another, exactly.
+     * @param base The base.
+     * @param exponent The exponent.
+     * @return The base raised to the power of the exponent.
+     * @throws ArithmeticException If the result overflows, or the exponent is negative and the result isn't a whole
+     *                             number.
+     */
+    public static long pow(long base, long exponent)
+    {
+        if(exponent < 0)
+        {
+            if(base == 1)
+                return 1;
+
+            if(base == -1)
+                return (exponent & 1) == 0 ? 1 : -1;
+
+            throw new ArithmeticException(base + " to the power of " + exponent + " isn't a whole number.");
+        }
+
+        long result = 1;
+
+        // Exponentiation by squaring, where the base is only squared where there's more of the exponent to use it for.
+        while(exponent != 0)
+        {
+            if((exponent & 1) != 0)
+                result = Math.multiplyExact(result, base);
+
+            exponent >>= 1;
+
+            if(exponent != 0)
+                base = Math.multiplyExact(base, base);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the least of the given numbers.
+     * @param a The numbers.
+     * @return The least of the given numbers.
+     * @throws ArithmeticException If no numbers were given.
+     */
+    static long min(long[] a)
+    {
+        if(a.length == 0)
+            throw new ArithmeticException("min requires at least one argument.");
+
+        long result = a[0];
+
+        for(int i = 1; i < a.length; i++)
+            if(a[i] < result)
+                result = a[i];
+
+        return result;
+    }
+
+    /**
+     * Gets the greatest of the given numbers.
+     * @param a The numbers.
+     * @return The greatest of the given numbers.
+     * @throws ArithmeticException If no numbers were given.
+     */
+    static long max(long[] a)
+    {
+        if(a.length == 0)
+            throw new ArithmeticException("max requires at least one argument.");
+
+        long result = a[0];
+
+        for(int i = 1; i < a.length; i++)
+            if(a[i] > result)
+                result = a[i];
+
+        return result;
+    }
+
+    /**
+     * Gets the sum of the given numbers, exactly.
+     * @param a The numbers.
+     * @return The sum of the given numbers, or 0 if none were given.
+     * @throws ArithmeticException If the sum overflows.
+     */
+    static long sum(long[] a)
+    {
+        long result = 0;
+
+        for(long x : a)
+            result = Math.addExact(result, x);
+
+        return result;
+    }
+
+    /**
+     * Gets the product of the given numbers, exactly.
+     * @param a The numbers.
+     * @return The product of the given numbers, or 1 if none were given.
+     * @throws ArithmeticException If the product overflows.
+     */
+    static long prod(long[] a)
+    {
+        long result = 1;
+
+        for(long x : a)
+            result = Math.multiplyExact(result, x);
+
+        return result;
+    }
+    //endregion
+    //endregion
+}
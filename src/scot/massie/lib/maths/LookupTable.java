@@ -0,0 +1,644 @@
+package scot.massie.lib.maths;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>A function of one argument defined by a table of points, interpolating between them. e.g. an empirical curve.</p>
+ *
+ * <p>Tables are registered with builders using {@link Equation.Builder#withLookupTable(String, LookupTable)}, and may
+ * then be called from equations like any other function of one argument. The table's points are held once, in
+ * primitive arrays or a memory-mapped file, and are shared by every equation using the table and every builder it's
+ * registered with. Tables are immutable, and safe to use from several threads at once.</p>
+ *
+ * <p>A value is looked up by finding the pair of points it falls between - by binary search, or by direct index
+ * calculation where the table's x values are a uniform grid - and interpolating between them by the table's
+ * interpolation: {@link #NEAREST}, {@link #LINEAR}, or {@link #CUBIC}. Values before the first point or after the last
+ * point take the y value of the first or last point respectively. NaN is looked up as NaN.</p>
+ *
+ * <p>Tables written with {@link #writeTo(Path)}, and read with {@link #map(Path)}, have the following layout, all
+ * little-endian:</p>
+ *
+ * <pre>
+ * offset  size      content
+ * 0       8         {@link #FILE_MAGIC}
+ * 8       4         {@link #FILE_VERSION}
+ * 12      4         1 if the x values are a uniform grid, otherwise 0
+ * 16      8         number of points (n)
+ * 24      16        for uniform grids: the first x value (double), the step between x values (double)
+ * 24      8 * n     otherwise: the x value of each point (double)
+ * ...     8 * n     the y value of each point (double)
+ * </pre>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * LookupTable curve = LookupTable.of(new double[] {0, 1, 4}, new double[] {10, 20, 50});
+ * Equation eq = new Equation.Builder().withLookupTable("curve", curve).build("curve(2) * 2");
+ * eq.evaluate(); // == 60
+ *
+ * LookupTable smooth = LookupTable.uniform(0, 0.5, ys).withInterpolation(LookupTable.CUBIC);
+ * LookupTable big = LookupTable.map(Paths.get("curve.table"));
+ * }</pre>
+ */
+public final class LookupTable implements ToDoubleFunction<double[]>
+{
+    //region constants
+    /**
+     * Interpolation taking the y value of whichever point is nearest. Values exactly half-way between two points take
+     * the y value of the latter.
+     */
+    public static final int NEAREST = 0;
+
+    /**
+     * Interpolation along the straight line between the two points either side of a value.
+     */
+    public static final int LINEAR = 1;
+
+    /**
+     * Interpolation along a cubic Hermite spline through the points, with the gradient at each point being that of the
+     * line between its neighbours (or between it and its only neighbour, at either end of the table). The curve
+     * passes through every point, and only depends on the four points nearest to the value looked up.
+     */
+    public static final int CUBIC = 2;
+
+    /**
+     * The first 8 bytes of every file written by {@link #writeTo(Path)}.
+     */
+    public static final long FILE_MAGIC = 0x4D4C4B5554424C31L; // "MLKUTBL1"
+
+    /**
+     * The version of the file layout written by {@link #writeTo(Path)}.
+     */
+    public static final int FILE_VERSION = 1;
+
+    /**
+     * The size, in bytes, of the fixed part of the header of a file written by {@link #writeTo(Path)}.
+     */
+    private static final int FILE_HEADER_SIZE = 24;
+    //endregion
+
+    //region variables
+    /**
+     * The number of points in this table.
+     */
+    private final int size;
+
+    /**
+     * The x values of this table's points, in strictly ascending order. Null where the x values are a uniform grid.
+     */
+    private final DoubleBuffer xs;
+
+    /**
+     * The y values of this table's points, in the same order as their x values.
+     */
+    private final DoubleBuffer ys;
+
+    /**
+     * The x value of the first point, where the x values are a uniform grid.
+     */
+    private final double firstX;
+
+    /**
+     * The distance between the x values of consecutive points, where the x values are a uniform grid.
+     */
+    private final double step;
+
+    /**
+     * How values between points are interpolated. One of {@link #NEAREST}, {@link #LINEAR}, or {@link #CUBIC}.
+     */
+    private final int interpolation;
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new lookup table. Arguments are assumed to have already been checked.
+     * @param size The number of points.
+     * @param xs The x values of the points, or null if they're a uniform grid.
+     * @param ys The y values of the points.
+     * @param firstX The first x value, where the x values are a uniform grid.
+     * @param step The distance between consecutive x values, where the x values are a uniform grid.
+     * @param interpolation How values between points are interpolated.
+     */
+    private LookupTable(int size, DoubleBuffer xs, DoubleBuffer ys, double firstX, double step, int interpolation)
+    {
+        this.size = size;
+        this.xs = xs;
+        this.ys = ys;
+        this.firstX = firstX;
+        this.step = step;
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * Creates a new lookup table of the given points, interpolating linearly. The arrays are copied.
+     * @param xs The x values of the points, which must be finite and in strictly ascending order.
+     * @param ys The y values of the points, in the same order as their x values.
+     * @return A new lookup table.
+     * @throws IllegalArgumentException If the arrays are empty or of different lengths, or the x values aren't finite
+     *                                  and strictly ascending.
+     */
+    public static LookupTable of(double[] xs, double[] ys)
+    {
+        if(xs.length != ys.length)
+            throw new IllegalArgumentException("There are " + xs.length + " x values but " + ys.length
+                                               + " y values.");
+
+        DoubleBuffer xBuffer = DoubleBuffer.wrap(xs.clone());
+        checkXValues(xBuffer, xs.length);
+        return new LookupTable(xs.length, xBuffer, DoubleBuffer.wrap(ys.clone()), 0, 0, LINEAR);
+    }
+
+    /**
+     * Creates a new lookup table of points at evenly spaced x values, interpolating linearly. Looking up values in
+     * tables of this kind doesn't require searching. The array is copied.
+     * @param firstX The x value of the first point.
+     * @param step The distance between the x values of consecutive points.
+     * @param ys The y values of the points.
+     * @return A new lookup table.
+     * @throws IllegalArgumentException If the array is empty, the first x value isn't finite, or the step isn't finite
+     *                                  and positive.
+     */
+    public static LookupTable uniform(double firstX, double step, double[] ys)
+    {
+        checkGrid(firstX, step, ys.length);
+        return new LookupTable(ys.length, null, DoubleBuffer.wrap(ys.clone()), firstX, step, LINEAR);
+    }
+
+    /**
+     * Reads a lookup table from a CSV file. See {@link #readCsv(Reader)}.
+     * @param file The file to read.
+     * @return A new lookup table of the points in the file, interpolating linearly.
+     * @throws IOException If an IO error occurs while reading the file.
+     * @throws IllegalArgumentException If the file isn't a valid table.
+     */
+    public static LookupTable readCsv(Path file) throws IOException
+    {
+        try(Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        { return readCsv(reader); }
+    }
+
+    /**
+     * <p>Reads a lookup table from CSV text, with a point per line written as its x value, a comma, and its y value.
+     * Columns after the second are ignored.</p>
+     *
+     * <p>Blank lines and lines starting with "#" are skipped. If the first remaining line isn't a point, it's taken to
+     * be a header and skipped.</p>
+     * @param reader The source of the CSV text. This is not closed.
+     * @return A new lookup table of the points in the text, interpolating linearly.
+     * @throws IOException If an IO error occurs while reading.
+     * @throws IllegalArgumentException If a line other than the header isn't a point, or the points aren't a valid
+     *                                  table, as described in {@link #of(double[], double[])}.
+     */
+    public static LookupTable readCsv(Reader reader) throws IOException
+    {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader)reader : new BufferedReader(reader);
+        double[] xs = new double[64];
+        double[] ys = new double[64];
+        int count = 0;
+        int lineNumber = 0;
+        boolean mayBeHeader = true;
+
+        for(String line; (line = lines.readLine()) != null; )
+        {
+            lineNumber++;
+            line = line.trim();
+
+            if(line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            int firstComma = line.indexOf(',');
+            int secondComma = firstComma < 0 ? -1 : line.indexOf(',', firstComma + 1);
+            Equation.NumberToken x = null;
+            Equation.NumberToken y = null;
+
+            if(firstComma >= 0)
+            {
+                x = Equation.Tokeniser.tryScanNumber(line.substring(0, firstComma));
+                y = Equation.Tokeniser.tryScanNumber(secondComma < 0 ? line.substring(firstComma + 1)
+                                                                     : line.substring(firstComma + 1, secondComma));
+            }
+
+            if(x == null || y == null)
+            {
+                if(mayBeHeader)
+                {
+                    mayBeHeader = false;
+                    continue;
+                }
+
+                throw new IllegalArgumentException("Line " + lineNumber + " is not a point: " + line);
+            }
+
+            mayBeHeader = false;
+
+            if(count == xs.length)
+            {
+                xs = Arrays.copyOf(xs, count * 2);
+                ys = Arrays.copyOf(ys, count * 2);
+            }
+
+            xs[count] = x.getValue();
+            ys[count] = y.getValue();
+            count++;
+        }
+
+        return of(Arrays.copyOf(xs, count), Arrays.copyOf(ys, count));
+    }
+
+    /**
+     * <p>Opens a lookup table written by {@link #writeTo(Path)}, by memory-mapping the file rather than reading it
+     * onto the heap. The file's points are checked when it's opened.</p>
+     *
+     * <p>The mapping remains valid after the file is closed, until the table is garbage collected. The file must not
+     * be modified while the table is in use.</p>
+     * @param file The file to open.
+     * @return A new lookup table of the points in the file, interpolating linearly.
+     * @throws IOException If an IO error occurs while opening the file.
+     * @throws IllegalArgumentException If the file doesn't hold a valid table.
+     */
+    public static LookupTable map(Path file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long fileSize = channel.size();
+
+            if(fileSize < FILE_HEADER_SIZE)
+                throw new IllegalArgumentException("The file " + file + " does not hold a lookup table.");
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_SIZE)
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+
+            if(header.getLong(0) != FILE_MAGIC || header.getInt(8) != FILE_VERSION)
+                throw new IllegalArgumentException("The file " + file + " does not hold a lookup table.");
+
+            boolean isUniform = header.getInt(12) == 1;
+            long size = header.getLong(16);
+            long xBytes = isUniform ? 2 * Double.BYTES : size * Double.BYTES;
+
+            if(size <= 0 || size > Integer.MAX_VALUE / Double.BYTES)
+                throw new IllegalArgumentException("The file " + file + " holds an unsupported number of points: "
+                                                   + size);
+
+            if(fileSize != FILE_HEADER_SIZE + xBytes + size * Double.BYTES)
+                throw new IllegalArgumentException("The file " + file + " does not hold a lookup table.");
+
+            DoubleBuffer xs = channel.map(FileChannel.MapMode.READ_ONLY, FILE_HEADER_SIZE, xBytes)
+                                     .order(ByteOrder.LITTLE_ENDIAN)
+                                     .asDoubleBuffer();
+
+            DoubleBuffer ys = channel.map(FileChannel.MapMode.READ_ONLY, FILE_HEADER_SIZE + xBytes, size * Double.BYTES)
+                                     .order(ByteOrder.LITTLE_ENDIAN)
+                                     .asDoubleBuffer();
+
+            if(isUniform)
+            {
+                checkGrid(xs.get(0), xs.get(1), (int)size);
+                return new LookupTable((int)size, null, ys, xs.get(0), xs.get(1), LINEAR);
+            }
+
+            checkXValues(xs, (int)size);
+            return new LookupTable((int)size, xs, ys, 0, 0, LINEAR);
+        }
+    }
+
+    /**
+     * Checks that the given x values are a valid table's x values.
+     * @param xs The x values.
+     * @param size The number of x values.
+     * @throws IllegalArgumentException If there are no x values, or they aren't finite and strictly ascending.
+     */
+    private static void checkXValues(DoubleBuffer xs, int size)
+    {
+        if(size == 0)
+            throw new IllegalArgumentException("Lookup tables must have at least one point.");
+
+        double previous = Double.NEGATIVE_INFINITY;
+
+        for(int i = 0; i < size; i++)
+        {
+            double x = xs.get(i);
+
+            if(!Double.isFinite(x))
+                throw new IllegalArgumentException("The x value of point " + i + " is not finite: " + x);
+
+            if(!(x > previous))
+                throw new IllegalArgumentException("The x values are not in strictly ascending order at point " + i
+                                                   + ": " + previous + ", " + x);
+
+            previous = x;
+        }
+    }
+
+    /**
+     * Checks that the given uniform grid is valid for a table.
+     * @param firstX The first x value.
+     * @param step The distance between consecutive x values.
+     * @param size The number of points.
+     * @throws IllegalArgumentException If there are no points, the first x value isn't finite, or the step isn't finite
+     *                                  and positive.
+     */
+    private static void checkGrid(double firstX, double step, int size)
+    {
+        if(size == 0)
+            throw new IllegalArgumentException("Lookup tables must have at least one point.");
+
+        if(!Double.isFinite(firstX))
+            throw new IllegalArgumentException("The first x value is not finite: " + firstX);
+
+        if(!(step > 0) || !Double.isFinite(step))
+            throw new IllegalArgumentException("The step between x values is not finite and positive: " + step);
+    }
+    //endregion
+
+    //region methods
+    //region getters
+    /**
+     * Gets the number of points in this table.
+     * @return The number of points in this table.
+     */
+    public int size()
+    { return size; }
+
+    /**
+     * Gets the x value of a point in this table.
+     * @param index The index of the point.
+     * @return The x value of the point.
+     * @throws IndexOutOfBoundsException If the index is not that of a point in this table.
+     */
+    public double getX(int index)
+    {
+        if(index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " points.");
+
+        return xAt(index);
+    }
+
+    /**
+     * Gets the y value of a point in this table.
+     * @param index The index of the point.
+     * @return The y value of the point.
+     * @throws IndexOutOfBoundsException If the index is not that of a point in this table.
+     */
+    public double getY(int index)
+    {
+        if(index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " points.");
+
+        return ys.get(index);
+    }
+
+    /**
+     * Gets whether this table's x values are a uniform grid, such that values are looked up without searching.
+     * @return True if this table's x values are a uniform grid. Otherwise, false.
+     */
+    public boolean isUniform()
+    { return xs == null; }
+
+    /**
+     * Gets how this table interpolates between points.
+     * @return One of {@link #NEAREST}, {@link #LINEAR}, or {@link #CUBIC}.
+     */
+    public int getInterpolation()
+    { return interpolation; }
+
+    /**
+     * Gets the x value of a point, without checking the index.
+     * @param index The index of the point.
+     * @return The x value of the point.
+     */
+    private double xAt(int index)
+    { return xs == null ? firstX + index * step : xs.get(index); }
+    //endregion
+
+    //region lookup
+    /**
+     * Looks up the y value at the given x value, interpolating between this table's points.
+     * @param x The x value to look up.
+     * @return The interpolated y value, the y value of the first or last point where the x value is before the first
+     *         point or after the last point, or NaN where the x value is NaN.
+     */
+    public double get(double x)
+    {
+        if(x != x) // NaN
+            return Double.NaN;
+
+        int last = size - 1;
+        int i;
+        double t;
+
+        if(xs == null)
+        {
+            double position = (x - firstX) / step;
+
+            if(!(position > 0))
+                return ys.get(0);
+
+            if(position >= last)
+                return ys.get(last);
+
+            i = (int)position;
+            t = position - i;
+        }
+        else
+        {
+            if(!(x > xs.get(0)))
+                return ys.get(0);
+
+            if(x >= xs.get(last))
+                return ys.get(last);
+
+            i = lowerIndex(x);
+            double x0 = xs.get(i);
+            t = (x - x0) / (xs.get(i + 1) - x0);
+        }
+
+        double y0 = ys.get(i);
+        double y1 = ys.get(i + 1);
+
+        switch(interpolation)
+        {
+            case NEAREST: return t < 0.5 ? y0 : y1;
+            case LINEAR:  return t == 0 ? y0 : y0 + (y1 - y0) * t;
+            default:      return cubic(i, t, y0, y1);
+        }
+    }
+
+    /**
+     * Looks up the y value at the first of the given arguments. Other arguments are ignored.
+     * @param args The arguments to the table as a function.
+     * @return The y value at the first argument, as by {@link #get(double)}.
+     * @throws Equation.MissingFunctionArgumentsException If no arguments are given.
+     */
+    @Override
+    public double applyAsDouble(double[] args)
+    {
+        if(args.length < 1)
+            throw new Equation.MissingFunctionArgumentsException("lookup table", 1, 0);
+
+        return get(args[0]);
+    }
+
+    /**
+     * Finds the index of the last point whose x value is no greater than the given value, by binary search.
+     * @param x The x value, which must be greater than the first point's and less than the last point's.
+     * @return The index of the point at or before the given value.
+     */
+    private int lowerIndex(double x)
+    {
+        int low = 0;
+        int high = size - 1;
+
+        while(high - low > 1)
+        {
+            int mid = (low + high) >>> 1;
+
+            if(xs.get(mid) <= x)
+                low = mid;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    /**
+     * Interpolates between two consecutive points along the cubic Hermite spline described in {@link #CUBIC}.
+     * @param i The index of the first of the two points.
+     * @param t How far along the interval between the two points the value being looked up is, from 0 to 1.
+     * @param y0 The y value of the first point.
+     * @param y1 The y value of the second point.
+     * @return The interpolated value.
+     */
+    private double cubic(int i, double t, double y0, double y1)
+    {
+        if(t == 0)
+            return y0;
+
+        double x0 = xAt(i);
+        double x1 = xAt(i + 1);
+        double h = x1 - x0;
+        double m0 = gradientAt(i);
+        double m1 = gradientAt(i + 1);
+        double t2 = t * t;
+        double t3 = t2 * t;
+
+        return (2 * t3 - 3 * t2 + 1) * y0
+             + (t3 - 2 * t2 + t) * h * m0
+             + (-2 * t3 + 3 * t2) * y1
+             + (t3 - t2) * h * m1;
+    }
+
+    /**
+     * Gets the gradient of the cubic spline described in {@link #CUBIC} at one of this table's points.
+     * @param i The index of the point. There must be at least two points.
+     * @return The gradient of the line between the point's neighbours, or between the point and its only neighbour.
+     */
+    private double gradientAt(int i)
+    {
+        int before = i == 0 ? 0 : i - 1;
+        int after = i == size - 1 ? i : i + 1;
+        return (ys.get(after) - ys.get(before)) / (xAt(after) - xAt(before));
+    }
+    //endregion
+
+    //region derive
+    /**
+     * Gets a table of the same points as this, interpolating between them in the given way. The points are shared
+     * between the two tables rather than copied.
+     * @param interpolation One of {@link #NEAREST}, {@link #LINEAR}, or {@link #CUBIC}.
+     * @return A table of the same points as this, with the given interpolation.
+     * @throws IllegalArgumentException If the interpolation isn't one of the interpolation constants.
+     */
+    public LookupTable withInterpolation(int interpolation)
+    {
+        if(interpolation != NEAREST && interpolation != LINEAR && interpolation != CUBIC)
+            throw new IllegalArgumentException("Not an interpolation: " + interpolation);
+
+        return interpolation == this.interpolation
+                       ? this
+                       : new LookupTable(size, xs, ys, firstX, step, interpolation);
+    }
+    //endregion
+
+    //region output
+    /**
+     * Writes this table's points to a file, in the layout described in {@link LookupTable}, to be opened with
+     * {@link #map(Path)}. Any existing file is replaced.
+     * @param file The file to write to.
+     * @throws IOException If an IO error occurs while writing the file.
+     */
+    public void writeTo(Path file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                                         StandardOpenOption.TRUNCATE_EXISTING,
+                                                         StandardOpenOption.WRITE))
+        {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(FILE_MAGIC).putInt(FILE_VERSION).putInt(xs == null ? 1 : 0).putLong(size).flip();
+            writeFully(channel, header);
+
+            if(xs == null)
+            {
+                ByteBuffer grid = ByteBuffer.allocate(2 * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                grid.putDouble(firstX).putDouble(step).flip();
+                writeFully(channel, grid);
+            }
+            else
+                writeValues(channel, xs);
+
+            writeValues(channel, ys);
+        }
+    }
+
+    /**
+     * Writes this table's values to a channel, in little-endian order.
+     * @param channel The channel to write to.
+     * @param values The values to write, being all of this table's x values or all of its y values.
+     * @throws IOException If an IO error occurs while writing.
+     */
+    private void writeValues(FileChannel channel, DoubleBuffer values) throws IOException
+    {
+        ByteBuffer chunk = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+
+        for(int i = 0; i < size; i++)
+        {
+            chunk.putDouble(values.get(i));
+
+            if(!chunk.hasRemaining())
+            {
+                chunk.flip();
+                writeFully(channel, chunk);
+                chunk.clear();
+            }
+        }
+
+        chunk.flip();
+        writeFully(channel, chunk);
+    }
+
+    /**
+     * Writes the remaining contents of a buffer to a channel.
+     * @param channel The channel to write to.
+     * @param buffer The buffer to write the remaining contents of.
+     * @throws IOException If an IO error occurs while writing.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+    }
+    //endregion
+    //endregion
+}
@@ -0,0 +1,284 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.Iteration;
+import scot.massie.lib.maths.Equation.IterationIndex;
+import scot.massie.lib.maths.Equation.Operation;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * <p>Which arguments of which function calls in an equation are evaluated concurrently, and the pool they're evaluated
+ * on. See {@link Equation#setParallelArguments(EquationCostModel, double, ForkJoinPool)}.</p>
+ *
+ * <p>Where at least two arguments of a function call are each estimated to cost at least the threshold to evaluate,
+ * all but the last of them are forked onto the pool, and the rest of the arguments are evaluated by the thread
+ * evaluating the call, which then waits for the forked arguments. Functions are made expensive by weighting them in the
+ * {@link EquationCostModel cost model}, so that calls to them are costly arguments.</p>
+ *
+ * <p>Arguments containing iterations are never forked, as iterations keep the values of their indices in the equation
+ * being evaluated. Arguments referring to the indices of iterations they're within are only forked where none of the
+ * call's other arguments contain iterations, as evaluating those pushes further indices onto the equation, including
+ * the same indices where they're of inlined function definitions, while the forked arguments are reading them.</p>
+ *
+ * <p>Results are the same as evaluating every argument in order on a single thread, where the functions called are
+ * safe to call from several threads at once. Where evaluating more than one argument throws an exception, the
+ * exception thrown by the first of them is rethrown.</p>
+ */
+final class ParallelArguments
+{
+    //region variables
+    /**
+     * The pool forked arguments are evaluated on, where the thread evaluating the function call isn't in a pool.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * For each function call with arguments to fork, whether each of its arguments is forked, by position.
+     */
+    private final Map<FunctionCall, boolean[]> forkedArguments = new IdentityHashMap<>();
+
+    /**
+     * Whether each component visited contains an iteration.
+     */
+    private final Map<EquationComponent, Boolean> containsIteration = new IdentityHashMap<>();
+
+    /**
+     * Whether each component visited refers to an iteration index.
+     */
+    private final Map<EquationComponent, Boolean> refersToIndex = new IdentityHashMap<>();
+    //endregion
+
+    //region initialisation
+    /**
+     * Works out which arguments of which function calls in the given component are forked.
+     * @param component The top level component of the equation.
+     * @param costModel The cost model estimating the cost of arguments.
+     * @param costThreshold The least estimated cost an argument may have to be forked.
+     * @param pool The pool to fork arguments onto.
+     */
+    ParallelArguments(EquationComponent component, EquationCostModel costModel, double costThreshold, ForkJoinPool pool)
+    {
+        this.pool = pool;
+        findForkedArguments(component, costModel, costThreshold, new IdentityHashMap<>());
+    }
+
+    /**
+     * Finds the function calls in the given component with arguments to fork.
+     * @param component The component to search.
+     * @param costModel The cost model estimating the cost of arguments.
+     * @param costThreshold The least estimated cost an argument may have to be forked.
+     * @param visited The components already searched, which are skipped where shared.
+     */
+    private void findForkedArguments(EquationComponent component,
+                                     EquationCostModel costModel,
+                                     double costThreshold,
+                                     Map<EquationComponent, Boolean> visited)
+    {
+        if(visited.put(component, Boolean.TRUE) != null)
+            return;
+
+        if(component instanceof Operation)
+        {
+            for(EquationComponent operand : ((Operation)component).getComponents())
+                findForkedArguments(operand, costModel, costThreshold, visited);
+        }
+        else if(component instanceof Iteration)
+        {
+            Iteration iteration = (Iteration)component;
+            findForkedArguments(iteration.getFrom(), costModel, costThreshold, visited);
+            findForkedArguments(iteration.getTo(), costModel, costThreshold, visited);
+            findForkedArguments(iteration.getBody(), costModel, costThreshold, visited);
+        }
+        else if(component instanceof FunctionCall)
+        {
+            FunctionCall call = (FunctionCall)component;
+            EquationComponent[] arguments = call.getArguments();
+            boolean[] forked = new boolean[arguments.length];
+            int lastCostly = -1;
+            int costlyCount = 0;
+            boolean anyContainIterations = false;
+
+            for(EquationComponent argument : arguments)
+            {
+                findForkedArguments(argument, costModel, costThreshold, visited);
+                anyContainIterations |= containsIteration(argument);
+            }
+
+            for(int i = 0; i < arguments.length; i++)
+            {
+                if(containsIteration(arguments[i]) || (anyContainIterations && refersToIndex(arguments[i])))
+                    continue;
+
+                if(costModel.estimate(arguments[i]).getCost() >= costThreshold)
+                {
+                    forked[i] = true;
+                    lastCostly = i;
+                    costlyCount++;
+                }
+            }
+
+            if(costlyCount < 2)
+                return;
+
+            // The last costly argument is evaluated by the thread evaluating the call, rather than it waiting idly.
+            forked[lastCostly] = false;
+            forkedArguments.put(call, forked);
+        }
+    }
+
+    /**
+     * Gets whether the given component contains an iteration.
+     * @param component The component to check.
+     * @return True if the given component is or contains an iteration. Otherwise, false.
+     */
+    private boolean containsIteration(EquationComponent component)
+    {
+        Boolean known = containsIteration.get(component);
+
+        if(known != null)
+            return known;
+
+        boolean result = component instanceof Iteration;
+
+        if(component instanceof Operation)
+        {
+            for(EquationComponent operand : ((Operation)component).getComponents())
+                if(containsIteration(operand))
+                {
+                    result = true;
+                    break;
+                }
+        }
+        else if(component instanceof FunctionCall)
+        {
+            for(EquationComponent argument : ((FunctionCall)component).getArguments())
+                if(containsIteration(argument))
+                {
+                    result = true;
+                    break;
+                }
+        }
+
+        containsIteration.put(component, result);
+        return result;
+    }
+
+    /**
+     * Gets whether the given component refers to an iteration index.
+     * @param component The component to check, which doesn't contain any iterations.
+     * @return True if the given component is or contains a reference to an iteration index. Otherwise, false.
+     */
+    private boolean refersToIndex(EquationComponent component)
+    {
+        Boolean known = refersToIndex.get(component);
+
+        if(known != null)
+            return known;
+
+        boolean result = component instanceof IterationIndex;
+
+        if(component instanceof Operation)
+        {
+            for(EquationComponent operand : ((Operation)component).getComponents())
+                if(refersToIndex(operand))
+                {
+                    result = true;
+                    break;
+                }
+        }
+        else if(component instanceof FunctionCall)
+        {
+            for(EquationComponent argument : ((FunctionCall)component).getArguments())
+                if(refersToIndex(argument))
+                {
+                    result = true;
+                    break;
+                }
+        }
+
+        refersToIndex.put(component, result);
+        return result;
+    }
+    //endregion
+
+    //region methods
+    /**
+     * Gets which arguments of the given function call are forked.
+     * @param call The function call.
+     * @return For each argument of the function call, by position, whether it's forked. Null where none are.
+     */
+    boolean[] forkedArgumentsOf(FunctionCall call)
+    { return forkedArguments.get(call); }
+
+    /**
+     * Evaluates the given arguments of a function call, forking those marked as forked onto the pool.
+     * @param arguments The arguments to evaluate.
+     * @param forked Whether each argument is forked, by position.
+     * @param equationBeingEvaluated The equation the function call is being evaluated in the context of.
+     * @return The results of the arguments, by position.
+     */
+    double[] evaluateArguments(EquationComponent[] arguments, boolean[] forked, Equation equationBeingEvaluated)
+    {
+        double[] results = new double[arguments.length];
+        Throwable[] thrown = new Throwable[arguments.length];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[arguments.length];
+        boolean inPool = ForkJoinTask.inForkJoinPool();
+
+        for(int i = 0; i < arguments.length; i++)
+        {
+            if(!forked[i])
+                continue;
+
+            int argumentIndex = i;
+
+            // Exceptions are caught rather than rethrown by join(), which may rethrow copies of them.
+            tasks[i] = ForkJoinTask.adapt(() ->
+            {
+                try
+                { results[argumentIndex] = arguments[argumentIndex].evaluate(equationBeingEvaluated); }
+                catch(Throwable e)
+                { thrown[argumentIndex] = e; }
+            });
+
+            if(inPool)
+                tasks[i].fork();
+            else
+                pool.execute(tasks[i]);
+        }
+
+        for(int i = 0; i < arguments.length; i++)
+        {
+            if(forked[i])
+                continue;
+
+            try
+            { results[i] = arguments[i].evaluate(equationBeingEvaluated); }
+            catch(Throwable e)
+            { thrown[i] = e; }
+        }
+
+        for(ForkJoinTask<?> task : tasks)
+            if(task != null)
+                task.join();
+
+        for(Throwable e : thrown)
+        {
+            if(e instanceof RuntimeException)
+                throw (RuntimeException)e;
+
+            if(e instanceof Error)
+                throw (Error)e;
+
+            if(e != null)
+                throw new IllegalStateException(e);
+        }
+
+        return results;
+    }
+    //endregion
+}
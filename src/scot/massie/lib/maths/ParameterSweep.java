@@ -0,0 +1,627 @@
+package scot.massie.lib.maths;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * <p>The evaluation of an equation at every point of a regular grid of variable values, written straight into a
+ * {@link ByteBuffer} or a memory-mapped file rather than collected on the heap.</p>
+ *
+ * <p>Each dimension of the grid is a {@link Range} over one of the equation's variables. The points of the grid are
+ * numbered in row-major order: the last range given varies fastest, and the first range given varies slowest. The
+ * result at point n is written as an 8-byte double at byte offset (n * 8) from the start of the output's data.</p>
+ *
+ * <p>Points are evaluated in blocks of {@link #DEFAULT_POINTS_PER_BLOCK} points, spread across all available
+ * processors. Each processor evaluates its own copy of the equation, so the equation passed in is never modified, and
+ * functions used by the equation must be safe to call from several threads at once.</p>
+ *
+ * <p>Sweeps written to a file with {@link #writeTo(Path)} can be resumed: the file starts with a header describing the
+ * sweep, followed by a flag for each block recording whether it has been written. Writing the same sweep to the same
+ * file again only evaluates the blocks not already flagged as written. The file's layout, all little-endian, is:</p>
+ *
+ * <pre>
+ * offset  size      content
+ * 0       8         {@link #FILE_MAGIC}
+ * 8       4         {@link #FILE_VERSION}
+ * 12      4         number of ranges (d)
+ * 16      8         number of points
+ * 24      4         points per block
+ * 28      4         reserved, 0
+ * 32      24 * d    for each range: start (double), end (double), steps (long)
+ * ...     1 * b     for each block: 1 if the block has been written, otherwise 0
+ * ...     0 - 7     padding to a multiple of 8 bytes
+ * ...     8 * n     the result at each point (double)
+ * </pre>
+ *
+ * <p>A block's flag is only set after all of its results have been written. Resumption is robust against the process
+ * being stopped part-way through a sweep, but not against the machine itself losing power, as changes to the file are
+ * only forced to the storage device once the sweep completes.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * Equation eq = new Equation.Builder().withVariable("x", 0).withVariable("y", 0).build("x * y");
+ * ParameterSweep sweep = eq.sweep(new ParameterSweep.Range("x", 0, 1, 1000),
+ *                                 new ParameterSweep.Range("y", 0, 1, 1000));
+ *
+ * sweep.writeTo(Paths.get("xy.sweep")); // 1,000,000 results.
+ * }</pre>
+ */
+public final class ParameterSweep
+{
+    //region inner classes
+
+    /**
+     * A range of values for a single variable, evenly spaced from a start value to an end value inclusive.
+     */
+    public static final class Range
+    {
+        /**
+         * The name of the variable this range is of.
+         */
+        private final String variableName;
+
+        /**
+         * The first value in this range.
+         */
+        private final double start;
+
+        /**
+         * The last value in this range. Where this range has only one step, this is not used.
+         */
+        private final double end;
+
+        /**
+         * The number of values in this range.
+         */
+        private final int steps;
+
+        /**
+         * Creates a new range.
+         * @param variableName The name of the variable this range is of.
+         * @param start The first value in the range.
+         * @param end The last value in the range. Where the range has only one step, this is ignored.
+         * @param steps The number of values in the range, including the start and end values.
+         * @throws IllegalArgumentException If the number of steps is less than 1, or either end of the range is not a
+         *                                  finite number.
+         */
+        public Range(String variableName, double start, double end, int steps)
+        {
+            if(steps < 1)
+                throw new IllegalArgumentException("A range must have at least one step.");
+
+            if(!Double.isFinite(start) || !Double.isFinite(end))
+                throw new IllegalArgumentException("A range must start and end on finite numbers.");
+
+            this.variableName = variableName;
+            this.start = start;
+            this.end = end;
+            this.steps = steps;
+        }
+
+        /**
+         * Gets the name of the variable this range is of.
+         * @return The name of the variable this range is of.
+         */
+        public String getVariableName()
+        { return variableName; }
+
+        /**
+         * Gets the first value in this range.
+         * @return The first value in this range.
+         */
+        public double getStart()
+        { return start; }
+
+        /**
+         * Gets the last value in this range.
+         * @return The last value in this range.
+         */
+        public double getEnd()
+        { return end; }
+
+        /**
+         * Gets the number of values in this range.
+         * @return The number of values in this range.
+         */
+        public int getSteps()
+        { return steps; }
+
+        /**
+         * Gets the value at the given step of this range.
+         * @param step The step to get the value at, where 0 is the start of the range and (steps - 1) is the end.
+         * @return The value at the given step of this range.
+         */
+        public double valueAt(int step)
+        {
+            if(steps == 1)
+                return start;
+
+            return step == steps - 1 ? end : start + (end - start) * step / (steps - 1);
+        }
+    }
+    //endregion
+
+    //region constants
+    /**
+     * The number of points evaluated together as a single unit of work, and flagged together as written in files.
+     */
+    public static final int DEFAULT_POINTS_PER_BLOCK = 1 << 16;
+
+    /**
+     * The value of the first 8 bytes of a file written by a parameter sweep. (ASCII "EQSWEEP1", little-endian)
+     */
+    public static final long FILE_MAGIC = 0x3150454557535145L;
+
+    /**
+     * The version of the file layout written by parameter sweeps.
+     */
+    public static final int FILE_VERSION = 1;
+
+    /**
+     * The size of the fixed part of a file's header, in bytes.
+     */
+    static final int FILE_FIXED_HEADER_SIZE = 32;
+
+    /**
+     * The size of the part of a file's header describing a single range, in bytes.
+     */
+    static final int FILE_RANGE_HEADER_SIZE = 24;
+    //endregion
+
+    //region variables
+    /**
+     * The equation being evaluated. Copies of this are made for each thread evaluating it.
+     */
+    private final Equation equation;
+
+    /**
+     * The ranges of variable values making up the dimensions of the grid of points, slowest-varying first.
+     */
+    private final List<Range> ranges;
+
+    /**
+     * The total number of points in the grid.
+     */
+    private final long pointCount;
+
+    /**
+     * The number of points evaluated together as a single unit of work.
+     */
+    private final int pointsPerBlock;
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new parameter sweep.
+     * @param equation The equation to evaluate.
+     * @param ranges The ranges making up the dimensions of the grid of points, slowest-varying first.
+     * @param pointsPerBlock The number of points to evaluate together as a single unit of work.
+     * @throws IllegalArgumentException If no ranges were given, a range is of a variable not available to the
+     *                                  equation, more than one range is of the same variable, or the grid would have
+     *                                  more than {@link Long#MAX_VALUE} / 8 points.
+     */
+    ParameterSweep(Equation equation, List<Range> ranges, int pointsPerBlock)
+    {
+        if(ranges.isEmpty())
+            throw new IllegalArgumentException("A parameter sweep must have at least one range.");
+
+        if(pointsPerBlock < 1)
+            throw new IllegalArgumentException("A parameter sweep must have at least one point per block.");
+
+        long count = 1;
+        List<String> variableNames = new ArrayList<>();
+
+        synchronized(equation.syncLock)
+        {
+            for(Range range : ranges)
+            {
+                if(!equation.variableSlots.containsKey(range.variableName))
+                    throw new IllegalArgumentException("The equation has no variable \"" + range.variableName + "\".");
+
+                if(variableNames.contains(range.variableName))
+                    throw new IllegalArgumentException("The variable \"" + range.variableName + "\" is swept over "
+                                                       + "more than once.");
+
+                variableNames.add(range.variableName);
+
+                try
+                { count = Math.multiplyExact(count, range.steps); }
+                catch(ArithmeticException e)
+                { throw new IllegalArgumentException("A parameter sweep has too many points.", e); }
+            }
+        }
+
+        if(count > Long.MAX_VALUE / Double.BYTES)
+            throw new IllegalArgumentException("A parameter sweep has too many points.");
+
+        this.equation = equation;
+        this.ranges = Collections.unmodifiableList(new ArrayList<>(ranges));
+        this.pointCount = count;
+        this.pointsPerBlock = pointsPerBlock;
+    }
+    //endregion
+
+    //region methods
+    //region getters
+    /**
+     * Gets the ranges making up the dimensions of this sweep's grid of points.
+     * @return The ranges making up the dimensions of this sweep, slowest-varying first.
+     */
+    public List<Range> getRanges()
+    { return ranges; }
+
+    /**
+     * Gets the number of points in this sweep's grid, and so the number of results it produces.
+     * @return The number of points in this sweep.
+     */
+    public long getPointCount()
+    { return pointCount; }
+
+    /**
+     * Gets the number of blocks of points this sweep is evaluated in.
+     * @return The number of blocks of points in this sweep.
+     */
+    public long getBlockCount()
+    { return (pointCount + pointsPerBlock - 1) / pointsPerBlock; }
+
+    /**
+     * Gets the size in bytes of the results of this sweep, without any header.
+     * @return The number of bytes needed to hold all results of this sweep.
+     */
+    public long getDataSize()
+    { return pointCount * Double.BYTES; }
+
+    /**
+     * Gets the offset in bytes from the start of a file written by this sweep at which the results begin.
+     * @return The size of the header of a file written by this sweep, including padding.
+     */
+    public long getFileDataOffset()
+    {
+        long headerSize = FILE_FIXED_HEADER_SIZE + (long)FILE_RANGE_HEADER_SIZE * ranges.size() + getBlockCount();
+        return (headerSize + 7) & ~7L;
+    }
+
+    /**
+     * Gets the value the given variable takes at the given point of this sweep.
+     * @param pointIndex The index of the point, as described in {@link ParameterSweep}.
+     * @param rangeIndex The index of the range the variable is swept over.
+     * @return The value of the variable of the given range at the given point.
+     */
+    public double getVariableValueAt(long pointIndex, int rangeIndex)
+    {
+        if(pointIndex < 0 || pointIndex >= pointCount)
+            throw new IndexOutOfBoundsException("Point index " + pointIndex + " out of range for " + pointCount
+                                                + " points.");
+
+        for(int i = ranges.size() - 1; i > rangeIndex; i--)
+            pointIndex /= ranges.get(i).steps;
+
+        Range range = ranges.get(rangeIndex);
+        return range.valueAt((int)(pointIndex % range.steps));
+    }
+    //endregion
+
+    //region write
+    /**
+     * <p>Evaluates every point of this sweep and writes the results into the given buffer, starting at the buffer's
+     * position. Results are written in the buffer's byte order, as described in {@link ParameterSweep}. The buffer's
+     * position is not changed.</p>
+     * @param buffer The buffer to write the results into.
+     * @throws IllegalArgumentException If the buffer has fewer bytes remaining than {@link #getDataSize()}.
+     */
+    public void writeTo(ByteBuffer buffer)
+    { writeTo(buffer, 0); }
+
+    /**
+     * <p>Evaluates every point of this sweep from the given point onward, and writes the results into the given
+     * buffer. The buffer's position is taken as the start of the results of the whole sweep, so the result at the given
+     * point is written (fromPoint * 8) bytes after it, and results at earlier points are left as they are. This allows
+     * a sweep into a buffer to be resumed by callers that track how far through it they got.</p>
+     *
+     * <p>Results are written in the buffer's byte order, as described in {@link ParameterSweep}. The buffer's position
+     * is not changed.</p>
+     * @param buffer The buffer to write the results into.
+     * @param fromPoint The index of the first point to evaluate.
+     * @throws IllegalArgumentException If the buffer has fewer bytes remaining than {@link #getDataSize()}, or the
+     *                                  given point isn't in this sweep.
+     */
+    public void writeTo(ByteBuffer buffer, long fromPoint)
+    {
+        if(fromPoint < 0 || fromPoint > pointCount)
+            throw new IllegalArgumentException("Point index " + fromPoint + " out of range for " + pointCount
+                                               + " points.");
+
+        if(buffer.remaining() < getDataSize())
+            throw new IllegalArgumentException("The buffer has " + buffer.remaining() + " bytes remaining, but "
+                                               + getDataSize() + " are needed.");
+
+        ByteBuffer data = buffer.slice().order(buffer.order());
+        long firstBlock = fromPoint / pointsPerBlock;
+        long firstPointInFirstBlock = fromPoint;
+
+        evaluateBlocks(getBlockCount() - firstBlock, (evaluator, i) ->
+        {
+            long block = firstBlock + i;
+            long from = (i == 0) ? firstPointInFirstBlock : block * pointsPerBlock;
+            long to = Math.min((block + 1) * pointsPerBlock, pointCount);
+            evaluator.evaluate(from, to, data, (int)(from * Double.BYTES));
+        });
+    }
+
+    /**
+     * <p>Evaluates every point of this sweep and writes the results into the given file via memory-mapping, in the
+     * layout described in {@link ParameterSweep}.</p>
+     *
+     * <p>If the file doesn't exist or is empty, it's created and written in full. If it already holds this sweep,
+     * partially or fully written, only the blocks not yet written are evaluated.</p>
+     * @param file The file to write the results into.
+     * @return The number of points evaluated and written by this call.
+     * @throws IOException If an IO error occurs while writing the file.
+     * @throws IllegalArgumentException If the file already exists, is not empty, and doesn't hold this sweep.
+     */
+    public long writeTo(Path file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                                         StandardOpenOption.READ,
+                                                         StandardOpenOption.WRITE))
+        {
+            long dataOffset = getFileDataOffset();
+            long blockCount = getBlockCount();
+            boolean isNewFile = channel.size() == 0;
+
+            if(!isNewFile && channel.size() != dataOffset + getDataSize())
+                throw new IllegalArgumentException("The file " + file + " does not hold this parameter sweep.");
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            if(isNewFile)
+            {
+                writeHeader(header);
+                channel.write(ByteBuffer.allocate(1), dataOffset + getDataSize() - 1);
+            }
+            else if(!headerMatches(header))
+                throw new IllegalArgumentException("The file " + file + " does not hold this parameter sweep.");
+
+            int flagsOffset = FILE_FIXED_HEADER_SIZE + FILE_RANGE_HEADER_SIZE * ranges.size();
+            long[] blocksToWrite = unwrittenBlocks(header, flagsOffset, blockCount);
+            AtomicLong pointsWritten = new AtomicLong();
+
+            try
+            {
+                evaluateBlocks(blocksToWrite.length, (evaluator, i) ->
+                {
+                    long block = blocksToWrite[(int)i];
+                    long from = block * pointsPerBlock;
+                    long to = Math.min(from + pointsPerBlock, pointCount);
+                    MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE,
+                                                        dataOffset + from * Double.BYTES,
+                                                        (to - from) * Double.BYTES);
+                    data.order(ByteOrder.LITTLE_ENDIAN);
+                    evaluator.evaluate(from, to, data, 0);
+                    header.put(flagsOffset + (int)block, (byte)1);
+                    pointsWritten.addAndGet(to - from);
+                });
+            }
+            catch(UncheckedIOException e)
+            { throw e.getCause(); }
+
+            header.force();
+            channel.force(false);
+            return pointsWritten.get();
+        }
+    }
+
+    /**
+     * Writes the header of a file holding this sweep into the given buffer, with all blocks flagged as unwritten.
+     * @param header The buffer to write the header into, starting at index 0, in little-endian order.
+     */
+    private void writeHeader(ByteBuffer header)
+    {
+        header.putLong(0, FILE_MAGIC);
+        header.putInt(8, FILE_VERSION);
+        header.putInt(12, ranges.size());
+        header.putLong(16, pointCount);
+        header.putInt(24, pointsPerBlock);
+        header.putInt(28, 0);
+
+        for(int i = 0; i < ranges.size(); i++)
+        {
+            Range range = ranges.get(i);
+            int offset = FILE_FIXED_HEADER_SIZE + FILE_RANGE_HEADER_SIZE * i;
+            header.putDouble(offset, range.start);
+            header.putDouble(offset + 8, range.end);
+            header.putLong(offset + 16, range.steps);
+        }
+    }
+
+    /**
+     * Checks whether the header in the given buffer is of this sweep.
+     * @param header The buffer holding the header, starting at index 0, in little-endian order.
+     * @return True if the header describes this sweep. Otherwise, false.
+     */
+    private boolean headerMatches(ByteBuffer header)
+    {
+        if(header.getLong(0) != FILE_MAGIC
+        || header.getInt(8) != FILE_VERSION
+        || header.getInt(12) != ranges.size()
+        || header.getLong(16) != pointCount
+        || header.getInt(24) != pointsPerBlock)
+        {
+            return false;
+        }
+
+        for(int i = 0; i < ranges.size(); i++)
+        {
+            Range range = ranges.get(i);
+            int offset = FILE_FIXED_HEADER_SIZE + FILE_RANGE_HEADER_SIZE * i;
+
+            if(Double.doubleToLongBits(header.getDouble(offset)) != Double.doubleToLongBits(range.start)
+            || Double.doubleToLongBits(header.getDouble(offset + 8)) != Double.doubleToLongBits(range.end)
+            || header.getLong(offset + 16) != range.steps)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the indices of the blocks not flagged as written in the given header.
+     * @param header The buffer holding the header.
+     * @param flagsOffset The index in the buffer of the first block's flag.
+     * @param blockCount The number of blocks.
+     * @return The indices of the blocks not yet written, in ascending order.
+     */
+    private static long[] unwrittenBlocks(ByteBuffer header, int flagsOffset, long blockCount)
+    {
+        long[] result = new long[(int)blockCount];
+        int resultSize = 0;
+
+        for(int i = 0; i < blockCount; i++)
+            if(header.get(flagsOffset + i) == 0)
+                result[resultSize++] = i;
+
+        return Arrays.copyOf(result, resultSize);
+    }
+    //endregion
+
+    //region evaluation
+    /**
+     * A unit of work, evaluating a single block of points.
+     */
+    @FunctionalInterface
+    private interface BlockTask
+    {
+        /**
+         * Evaluates a single block.
+         * @param evaluator The evaluator belonging to the thread evaluating the block.
+         * @param taskIndex The index of the block among those being evaluated.
+         * @throws IOException If an IO error occurs while writing the block's results.
+         */
+        void run(BlockEvaluator evaluator, long taskIndex) throws IOException;
+    }
+
+    /**
+     * Runs the given task for every index from 0 up to but not including the given count, across all available
+     * processors. Each processor is given its own {@link BlockEvaluator}, and takes the next index not yet taken each
+     * time it finishes one.
+     * @param taskCount The number of times to run the task.
+     * @param task The task to run.
+     */
+    private void evaluateBlocks(long taskCount, BlockTask task)
+    {
+        if(taskCount <= 0)
+            return;
+
+        AtomicLong nextTask = new AtomicLong();
+        int threadCount = (int)Math.min(Runtime.getRuntime().availableProcessors(), taskCount);
+
+        IntStream.range(0, threadCount).parallel().forEach(threadIndex ->
+        {
+            BlockEvaluator evaluator = new BlockEvaluator(new Equation(equation));
+
+            for(long i = nextTask.getAndIncrement(); i < taskCount; i = nextTask.getAndIncrement())
+            {
+                try
+                { task.run(evaluator, i); }
+                catch(IOException e)
+                { throw new UncheckedIOException(e); }
+            }
+        });
+    }
+
+    /**
+     * Evaluates runs of consecutive points on a single thread, using its own copy of the equation.
+     */
+    private final class BlockEvaluator
+    {
+        /**
+         * This evaluator's copy of the equation.
+         */
+        private final Equation equationCopy;
+
+        /**
+         * Handles to the variables of this evaluator's copy of the equation being swept over, in the same order as the
+         * ranges.
+         */
+        private final Equation.VariableHandle[] variables = new Equation.VariableHandle[ranges.size()];
+
+        /**
+         * The step each range is currently at.
+         */
+        private final int[] steps = new int[ranges.size()];
+
+        /**
+         * Creates a new block evaluator.
+         * @param equationCopy The evaluator's own copy of the equation.
+         */
+        BlockEvaluator(Equation equationCopy)
+        {
+            this.equationCopy = equationCopy;
+
+            for(int i = 0; i < variables.length; i++)
+                variables[i] = equationCopy.variableHandle(ranges.get(i).variableName);
+        }
+
+        /**
+         * Evaluates the points from one index up to but not including another, writing the results consecutively
+         * into the given buffer.
+         * @param from The index of the first point to evaluate.
+         * @param to The index after the last point to evaluate.
+         * @param out The buffer to write the results into.
+         * @param outIndex The index in the buffer to write the first result at.
+         */
+        void evaluate(long from, long to, ByteBuffer out, int outIndex)
+        {
+            if(from >= to)
+                return;
+
+            long remainder = from;
+
+            for(int i = ranges.size() - 1; i >= 0; i--)
+            {
+                Range range = ranges.get(i);
+                steps[i] = (int)(remainder % range.steps);
+                remainder /= range.steps;
+                variables[i].set(range.valueAt(steps[i]));
+            }
+
+            for(long point = from; point < to; point++)
+            {
+                out.putDouble(outIndex, equationCopy.evaluate());
+                outIndex += Double.BYTES;
+
+                for(int i = ranges.size() - 1; i >= 0; i--)
+                {
+                    Range range = ranges.get(i);
+
+                    if(++steps[i] < range.steps)
+                    {
+                        variables[i].set(range.valueAt(steps[i]));
+                        break;
+                    }
+
+                    steps[i] = 0;
+                    variables[i].set(range.valueAt(0));
+                }
+            }
+        }
+    }
+    //endregion
+    //endregion
+}
@@ -0,0 +1,206 @@
+package scot.massie.lib.maths;
+
+import scot.massie.lib.maths.Equation.VariableSlot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>A layer of variable values, which may have a parent scope whose variables it inherits and may shadow. e.g. a
+ * global scope, with a child scope per tenant, each with a child scope per request.</p>
+ *
+ * <p>Equations are bound to scopes with {@link Equation#bind(VariableScope)}. Binding resolves each of the equation's
+ * variables to the innermost scope defining it once, so that evaluating a bound equation costs the same however deeply
+ * its scope is nested. Bound equations see changes made to the values of the variables they're bound to.</p>
+ *
+ * <p>Creating a scope is cheap - a scope only holds its own variables, and doesn't copy its parent's.</p>
+ *
+ * <p>Examples:</p>
+ *
+ * <pre>{@code
+ * VariableScope global = new VariableScope().withVariable("rate", 0.2).withVariable("fee", 1);
+ * VariableScope tenant = global.newChild().withVariable("rate", 0.1);
+ *
+ * Equation eq = new Equation.Builder().withVariable("rate", 0).withVariable("fee", 0).withVariable("x", 0)
+ *                                     .build("x * (1 + rate) + fee");
+ *
+ * Equation forTenant = eq.bind(tenant);
+ * forTenant.setVariable("x", 10);
+ * forTenant.evaluate(); // == 12
+ * global.setVariable("fee", 2);
+ * forTenant.evaluate(); // == 13
+ * }</pre>
+ */
+public final class VariableScope
+{
+    //region variables
+    /**
+     * The scope this inherits variables from, or null if this is a root scope.
+     */
+    private final VariableScope parent;
+
+    /**
+     * The number of ancestors this scope has.
+     */
+    private final int depth;
+
+    /**
+     * The slots of the variables defined in this scope, against the variables' names. Null until a variable is
+     * defined in this scope.
+     */
+    private Map<String, VariableSlot> slots;
+
+    /**
+     * The object upon which access to this object should be locked.
+     */
+    private final Object syncLock = new Object();
+    //endregion
+
+    //region initialisation
+    /**
+     * Creates a new root scope, with no variables.
+     */
+    public VariableScope()
+    { this(null); }
+
+    /**
+     * Creates a new scope, with no variables of its own.
+     * @param parent The scope to inherit variables from, or null to create a root scope.
+     */
+    private VariableScope(VariableScope parent)
+    {
+        this.parent = parent;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    /**
+     * Creates a new scope inheriting the variables of this one.
+     * @return A new child scope of this one, with no variables of its own.
+     */
+    public VariableScope newChild()
+    { return new VariableScope(this); }
+    //endregion
+
+    //region methods
+    //region getters
+    /**
+     * Gets the scope this inherits variables from.
+     * @return This scope's parent, or null if this is a root scope.
+     */
+    public VariableScope getParent()
+    { return parent; }
+
+    /**
+     * Gets how deeply this scope is nested.
+     * @return The number of ancestors this scope has. 0 for root scopes.
+     */
+    public int getDepth()
+    { return depth; }
+
+    /**
+     * Gets whether this scope defines the given variable itself, rather than inheriting it.
+     * @param name The name of the variable.
+     * @return True if the variable is defined in this scope. Otherwise, false.
+     */
+    public boolean definesVariable(String name)
+    {
+        synchronized(syncLock)
+        { return slots != null && slots.containsKey(name); }
+    }
+
+    /**
+     * Gets whether this scope or any of its ancestors defines the given variable.
+     * @param name The name of the variable.
+     * @return True if the variable is available in this scope. Otherwise, false.
+     */
+    public boolean hasVariable(String name)
+    { return resolveSlot(name) != null; }
+
+    /**
+     * Gets the value of a variable in this scope, as defined by the innermost scope defining it.
+     * @param name The name of the variable.
+     * @return The value of the variable.
+     * @throws IllegalArgumentException If neither this scope nor any of its ancestors defines the variable.
+     */
+    public double getVariable(String name)
+    {
+        VariableSlot slot = resolveSlot(name);
+
+        if(slot == null)
+            throw new IllegalArgumentException("No variable \"" + name + "\" is defined in this scope.");
+
+        return slot.value;
+    }
+
+    /**
+     * Gets the slot of the given variable in the innermost of this scope and its ancestors that defines it.
+     * @param name The name of the variable.
+     * @return The variable's slot, or null if neither this scope nor any of its ancestors defines it.
+     */
+    VariableSlot resolveSlot(String name)
+    {
+        for(VariableScope scope = this; scope != null; scope = scope.parent)
+        {
+            VariableSlot slot;
+
+            synchronized(scope.syncLock)
+            { slot = scope.slots == null ? null : scope.slots.get(name); }
+
+            if(slot != null)
+                return slot;
+        }
+
+        return null;
+    }
+    //endregion
+
+    //region setters
+    /**
+     * <p>Defines a variable in this scope, shadowing any variable of the same name defined by its ancestors. If the
+     * variable is already defined in this scope, sets its value.</p>
+     *
+     * <p>Equations already bound to this scope or its descendants that were bound to a variable of the same name in an
+     * ancestor of this scope remain bound to that variable.</p>
+     * @param name The name of the variable.
+     * @param value The value of the variable.
+     * @return This.
+     */
+    public VariableScope withVariable(String name, double value)
+    {
+        synchronized(syncLock)
+        {
+            if(slots == null)
+                slots = new HashMap<>();
+
+            VariableSlot slot = slots.get(name);
+
+            if(slot == null)
+                slots.put(name, new VariableSlot(value, true));
+            else
+                slot.set(value);
+        }
+
+        return this;
+    }
+
+    /**
+     * Sets the value of a variable, in the innermost of this scope and its ancestors that defines it. Equations bound
+     * to that variable see the new value.
+     * @param name The name of the variable.
+     * @param value The new value of the variable.
+     * @return True if the variable was set. False if it wasn't, as a result of neither this scope nor any of its
+     *         ancestors defining it.
+     */
+    public boolean setVariable(String name, double value)
+    {
+        VariableSlot slot = resolveSlot(name);
+
+        if(slot == null)
+            return false;
+
+        slot.set(value);
+        return true;
+    }
+    //endregion
+    //endregion
+}
@@ -0,0 +1,174 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchEvaluatorTest
+{
+    static final double[] interestingValues
+            = { 0.0, -0.0, 1.0, -1.0, 2.5, -3.75, 1e300, -1e-300, Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+
+    Equation.Builder newBuilder()
+    {
+        return new Equation.Builder().withVariable("x", 0)
+                                     .withVariable("y", 0)
+                                     .withVariable("k", 3)
+                                     .withFunction("f", a -> a[0] * 2 + 1);
+    }
+
+    /**
+     * Gets arrays of x and y values covering every pair of interesting values, followed by some random ones, making up
+     * more than one block.
+     */
+    double[][] inputs()
+    {
+        int pairs = interestingValues.length * interestingValues.length;
+        int length = pairs + BatchEvaluator.BLOCK_SIZE + 37;
+        double[] xs = new double[length];
+        double[] ys = new double[length];
+        Random random = new Random(35);
+
+        for(int i = 0; i < length; i++)
+        {
+            if(i < pairs)
+            {
+                xs[i] = interestingValues[i / interestingValues.length];
+                ys[i] = interestingValues[i % interestingValues.length];
+            }
+            else
+            {
+                xs[i] = random.nextDouble() * 200 - 100;
+                ys[i] = random.nextDouble() * 200 - 100;
+            }
+        }
+
+        return new double[][] { xs, ys };
+    }
+
+    /**
+     * Asserts that batch evaluating the given equation over x and y gives the same results as evaluating it for each
+     * pair of values, to within the given tolerance in ulps. A tolerance of 0 requires bit-for-bit equality.
+     */
+    void assertBatchMatchesScalar(String equation, double ulps)
+    {
+        Equation eq = newBuilder().build(equation);
+        double[][] inputs = inputs();
+        double[] results = eq.batchEvaluator("x", "y").evaluate(inputs);
+
+        for(int i = 0; i < results.length; i++)
+        {
+            eq.setVariable("x", inputs[0][i]);
+            eq.setVariable("y", inputs[1][i]);
+            double expected = eq.evaluate();
+            String message = equation + " with x = " + inputs[0][i] + ", y = " + inputs[1][i];
+
+            if(ulps == 0 || Double.isNaN(expected) || Double.isInfinite(expected))
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(results[i]), message);
+            else
+                assertEquals(expected, results[i], Math.ulp(expected) * ulps, message);
+        }
+    }
+
+    @Test
+    void arithmetic()
+    {
+        assertBatchMatchesScalar("x + y", 0);
+        assertBatchMatchesScalar("x - y * 2", 0);
+        assertBatchMatchesScalar("(x + 1) / (y - 2)", 0);
+        assertBatchMatchesScalar("-x * +y", 0);
+        assertBatchMatchesScalar("√x + y%", 0);
+        assertBatchMatchesScalar("k * x + k / y", 0);
+    }
+
+    @Test
+    void minAndMax()
+    {
+        assertBatchMatchesScalar("min(x, y)", 0);
+        assertBatchMatchesScalar("max(x, y, 0)", 0);
+        assertBatchMatchesScalar("min(1, x, k, y)", 0);
+        assertBatchMatchesScalar("max(x)", 0);
+        assertBatchMatchesScalar("max(1, 2, x)", 0);
+        assertBatchMatchesScalar("min(k, 2, x, 0, y)", 0);
+    }
+
+    @Test
+    void roundingAndSquareRoot()
+    {
+        assertBatchMatchesScalar("floor(x) + ceil(y)", 0);
+        assertBatchMatchesScalar("sqrt(x * x + y * y)", 0);
+    }
+
+    @Test
+    void transcendental()
+    {
+        assertBatchMatchesScalar("sin(x) + cos(y)", 2);
+        assertBatchMatchesScalar("tan(x) * log(y) - log10(x) + cbrt(y)", 2);
+        assertBatchMatchesScalar("x ^ y", 2);
+    }
+
+    @Test
+    void fallbacks()
+    {
+        assertBatchMatchesScalar("f(x) + y % 3", 0);
+        assertBatchMatchesScalar("f(y) - 3 √ x", 0);
+        assertBatchMatchesScalar("median(x, y, 1) + fib(3)", 0);
+    }
+
+    @Test
+    void uniform()
+    {
+        Equation eq = newBuilder().build("k * 2 + sqrt(k + 1)");
+        assertArrayEquals(new double[] { 8, 8, 8 }, eq.batchEvaluator("x").evaluate(new double[] { 1, 2, 3 }));
+    }
+
+    @Test
+    void otherVariablesReadEachEvaluation()
+    {
+        Equation eq = newBuilder().build("x * k");
+        BatchEvaluator evaluator = eq.batchEvaluator("x");
+        assertArrayEquals(new double[] { 3, 6 }, evaluator.evaluate(new double[] { 1, 2 }));
+        eq.setVariable("k", 10);
+        assertArrayEquals(new double[] { 10, 20 }, evaluator.evaluate(new double[] { 1, 2 }));
+    }
+
+    @Test
+    void redefinedFunctions()
+    {
+        Equation eq = newBuilder().build("sqrt(x) + f(x)");
+        BatchEvaluator evaluator = eq.batchEvaluator("x");
+        assertArrayEquals(new double[] { 11, 22 }, evaluator.evaluate(new double[] { 4, 9 }));
+        eq.redefineFunction("sqrt", a -> a[0]);
+        assertArrayEquals(new double[] { 13, 28 }, evaluator.evaluate(new double[] { 4, 9 }));
+    }
+
+    @Test
+    void impureFunctionsCalledPerValue()
+    {
+        int[] calls = { 0 };
+        Equation eq = newBuilder().withFunction("count", () -> ++calls[0]).build("count() + x * 0");
+        double[] results = eq.batchEvaluator("x").evaluate(new double[] { 5, 5, 5 });
+        assertArrayEquals(new double[] { 1, 2, 3 }, results);
+    }
+
+    @Test
+    void invalidArguments()
+    {
+        Equation eq = newBuilder().build("x + y");
+        assertThrows(IllegalArgumentException.class, () -> eq.batchEvaluator("z"));
+        assertThrows(IllegalArgumentException.class, () -> eq.batchEvaluator("x", "x"));
+
+        BatchEvaluator evaluator = eq.batchEvaluator("x", "y");
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(new double[] { 1 }));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(new double[] { 1 }, new double[0]));
+        assertThrows(IllegalArgumentException.class,
+                     () -> evaluator.evaluate(new double[][] { { 1 }, { 1 } }, new double[2]));
+    }
+
+    @Test
+    void emptyInputs()
+    { assertEquals(0, newBuilder().build("x + 1").batchEvaluator("x").evaluate(new double[0]).length); }
+}
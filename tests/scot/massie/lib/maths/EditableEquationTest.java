@@ -0,0 +1,194 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+import scot.massie.lib.maths.Equation.TokenList;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EditableEquationTest
+{
+    Equation.Builder newBuilder()
+    {
+        return new Equation.Builder().withVariable("x", 2)
+                                     .withVariable("y", 3);
+    }
+
+    static void assertSameTokenisation(TokenList expected, TokenList actual)
+    {
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.toListOfTokens(), actual.toListOfTokens());
+        assertEquals(expected.toListOfSpacingSizes(), actual.toListOfSpacingSizes());
+
+        for(int i = 0; i < expected.size(); i++)
+            assertEquals(expected.getMatchingBracketIndex(i), actual.getMatchingBracketIndex(i));
+    }
+
+    static void assertMatchesFullParse(Equation.Builder builder, EditableEquation edited)
+    {
+        EditableEquation full = builder.buildEditable(edited.getText());
+        assertSameTokenisation(full.getTokenisation(), edited.getTokenisation());
+        assertEquals(full.isValid(), edited.isValid(), edited.getText());
+
+        if(full.isValid())
+        {
+            double expected = builder.build(edited.getText()).evaluate();
+            assertEquals(expected, edited.build().evaluate(), edited.getText());
+        }
+        else
+            assertEquals(full.getError().getClass(), edited.getError().getClass(), edited.getText());
+    }
+
+    @Test
+    void edit()
+    {
+        Equation.Builder builder = newBuilder();
+        EditableEquation eq = builder.buildEditable("(x + 1) * (x - 1)");
+        assertEquals(3, eq.build().evaluate());
+
+        eq = eq.edit(15, 1, "3");
+        assertEquals("(x + 1) * (x - 3)", eq.getText());
+        assertEquals(-3, eq.build().evaluate());
+        assertMatchesFullParse(builder, eq);
+    }
+
+    @Test
+    void edit_reusesUnchangedGroups()
+    {
+        Equation.Builder builder = newBuilder();
+        EditableEquation before = builder.buildEditable("(x + (y * 2)) * (x - 1)");
+        EditableEquation after = before.edit(21, 1, "4");
+
+        Equation.Operation beforeOp = (Equation.Operation)before.getComponent();
+        Equation.Operation afterOp = (Equation.Operation)after.getComponent();
+        assertSame(beforeOp.getComponents().get(0), afterOp.getComponents().get(0));
+        assertNotSame(beforeOp.getComponents().get(1), afterOp.getComponents().get(1));
+        assertEquals(8 * -2, after.build().evaluate());
+    }
+
+    @Test
+    void edit_invalidInBetween()
+    {
+        Equation.Builder builder = newBuilder();
+        EditableEquation eq = builder.buildEditable("sin(x)");
+
+        eq = eq.edit(6, 0, " + (");
+        assertFalse(eq.isValid());
+        assertInstanceOf(Equation.Builder.UnmatchedOpenBracketException.class, eq.getError());
+        assertThrows(Equation.Builder.UnmatchedOpenBracketException.class, eq::build);
+
+        eq = eq.edit(10, 0, "y");
+        assertFalse(eq.isValid());
+
+        eq = eq.edit(11, 0, ")");
+        assertTrue(eq.isValid());
+        assertEquals(Math.sin(2) + 3, eq.build().evaluate());
+        assertMatchesFullParse(builder, eq);
+    }
+
+    @Test
+    void edit_emptyText()
+    {
+        Equation.Builder builder = newBuilder();
+        EditableEquation eq = builder.buildEditable("x");
+
+        eq = eq.edit(0, 1, "");
+        assertFalse(eq.isValid());
+        assertInstanceOf(IllegalArgumentException.class, eq.getError());
+
+        eq = eq.edit(0, 0, "y");
+        assertEquals(3, eq.build().evaluate());
+    }
+
+    @Test
+    void edit_invalidRange()
+    {
+        EditableEquation eq = newBuilder().buildEditable("x + y");
+
+        assertThrows(IndexOutOfBoundsException.class, () -> eq.edit(-1, 0, "1"));
+        assertThrows(IndexOutOfBoundsException.class, () -> eq.edit(3, 3, "1"));
+        assertThrows(IndexOutOfBoundsException.class, () -> eq.edit(6, 0, "1"));
+        assertThrows(IllegalArgumentException.class, () -> eq.edit(0, 0, null));
+    }
+
+    @Test
+    void edit_afterBuilderChanges()
+    {
+        Equation.Builder builder = newBuilder();
+        EditableEquation eq = builder.buildEditable("(z) + (x)");
+        assertFalse(eq.isValid());
+
+        builder.withVariable("z", 10);
+        eq = eq.edit(8, 0, " ");
+        assertEquals(12, eq.build().evaluate());
+
+        builder.withOperator("&", (l, r) -> l * 100 + r);
+        eq = eq.edit(4, 1, "&");
+        assertEquals(1002, eq.build().evaluate());
+    }
+
+    @Test
+    void edit_functionsAndIterations()
+    {
+        Equation.Builder builder = newBuilder().withFunctionDefinition("sq(a) = a * a");
+        EditableEquation eq = builder.buildEditable("sum(i, 1, (x + 1), sq(i)) + max(x, (y))");
+        assertEquals(14 + 3, eq.build().evaluate());
+
+        eq = eq.edit(15, 1, "2");
+        assertEquals(30 + 3, eq.build().evaluate());
+        assertMatchesFullParse(builder, eq);
+    }
+
+    @Test
+    void edit_randomEditsMatchFullParse()
+    {
+        Equation.Builder builder = newBuilder();
+        Random random = new Random(39);
+        String[] insertions = { "(", ")", "x", "y", "1", "+", "-", "*", " ", "sin(", ",", "max(x, ", "2.5" };
+        EditableEquation eq = builder.buildEditable("(x + (y * (2 - x))) / (max(x, (y + 1)) - sin((x)))");
+
+        for(int i = 0; i < 2000; i++)
+        {
+            String text = eq.getText();
+            int offset = random.nextInt(text.length() + 1);
+            int removed = random.nextInt(3) == 0 ? random.nextInt(Math.min(3, text.length() - offset) + 1) : 0;
+            String inserted = removed > 0 && random.nextBoolean() ? "" : insertions[random.nextInt(insertions.length)];
+
+            eq = eq.edit(offset, removed, inserted);
+            assertMatchesFullParse(builder, eq);
+
+            if(eq.getText().length() > 200)
+                eq = builder.buildEditable("(x + (y * (2 - x))) / (max(x, (y + 1)) - sin((x)))");
+        }
+    }
+
+    @Test
+    void edit_largeEquationReusesMostGroups()
+    {
+        Equation.Builder builder = newBuilder();
+        StringBuilder text = new StringBuilder("(x)");
+
+        for(int i = 0; i < 200; i++)
+            text.append(" + (x * ").append(i).append(")");
+
+        EditableEquation eq = builder.buildEditable(text.toString());
+        int offset = text.indexOf("* 100)") + 2;
+        EditableEquation edited = eq.edit(offset, 3, "1000");
+
+        assertEquals(builder.build(edited.getText()).evaluate(), edited.build().evaluate());
+        assertMatchesFullParse(builder, edited);
+    }
+
+    @Test
+    void buildEditable_sharesComponentsAcrossBuilds()
+    {
+        EditableEquation eq = newBuilder().buildEditable("x * y");
+        Equation a = eq.build();
+        Equation b = eq.build();
+        a.setVariable("x", 10);
+
+        assertEquals(30, a.evaluate());
+        assertEquals(6, b.evaluate());
+    }
+}
@@ -0,0 +1,147 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ElementWiseEvaluatorTest
+{
+    Equation.Builder newBuilder()
+    {
+        return new Equation.Builder().withVariable("xs", 0)
+                                     .withVariable("ys", 0)
+                                     .withVariable("k", 2);
+    }
+
+    Equation build(String equation, double[] xs)
+    {
+        Equation eq = newBuilder().build(equation);
+        assertTrue(eq.setArrayVariable("xs", xs));
+        return eq;
+    }
+
+    @Test
+    void operatorsAndMonoFunctions()
+    {
+        double[] xs = { 1, 4, 9 };
+        assertArrayEquals(new double[] { 3, 6, 11 }, build("xs + k", xs).evaluateElementWise());
+        assertArrayEquals(new double[] { 2, 6, 12 }, build("sqrt(xs) * k - sqrt(xs) + xs", xs).evaluateElementWise());
+        assertArrayEquals(new double[] { -1, -4, -9 }, build("-xs", xs).evaluateElementWise());
+        assertArrayEquals(new double[] { 1, 4, 9 }, xs);
+    }
+
+    @Test
+    void broadcasting()
+    {
+        Equation eq = build("xs * ys", new double[] { 1, 2, 3 });
+        eq.setArrayVariable("ys", new double[] { 10, 20, 30 });
+        assertArrayEquals(new double[] { 10, 40, 90 }, eq.evaluateElementWise());
+
+        // Arrays of length 1 broadcast like single numbers.
+        eq.setArrayVariable("ys", new double[] { 10 });
+        assertArrayEquals(new double[] { 10, 20, 30 }, eq.evaluateElementWise());
+
+        eq.setArrayVariable("ys", new double[] { 1, 2 });
+        assertThrows(IllegalArgumentException.class, eq::evaluateElementWise);
+    }
+
+    @Test
+    void reductions()
+    {
+        double[] xs = { 1, 3, 4 };
+        assertArrayEquals(new double[] { 0.125, 0.375, 0.5 }, build("xs / sum(xs)", xs).evaluateElementWise());
+        assertEquals(8.0, build("sum(xs)", xs).evaluate());
+        assertEquals(12.0, build("prod(xs)", xs).evaluate());
+        assertEquals(10.0, build("sum(xs, k)", xs).evaluate());
+        assertEquals(24.0, build("prod(xs, k)", xs).evaluate());
+        assertEquals(11.0, build("sum(xs, 1, 2, 0)", xs).evaluate());
+        assertEquals(4.0, build("max(xs)", xs).evaluate());
+        assertEquals(10.0, build("max(xs, 10)", xs).evaluate());
+        assertEquals(3.0, build("median(xs, k, 5)", xs).evaluate());
+        assertArrayEquals(new double[] { 0, 2, 3 }, build("xs - min(xs)", xs).evaluateElementWise());
+    }
+
+    @Test
+    void iterations()
+    {
+        double[] xs = { 1, 2, 3 };
+        assertArrayEquals(new double[] { 3, 14, 39 }, build("sum(i, 1, 3, xs^i)", xs).evaluateElementWise());
+        assertArrayEquals(new double[] { 2, 4, 6 }, build("max over(i, 1, k, xs * i)", xs).evaluateElementWise());
+        assertArrayEquals(new double[] { 0 }, build("sum(i, 1, 0, xs)", xs).evaluateElementWise());
+        assertThrows(IllegalArgumentException.class, () -> build("sum(i, 1, xs, i)", xs).evaluateElementWise());
+    }
+
+    @Test
+    void scalarResults()
+    {
+        Equation eq = newBuilder().build("xs + k");
+        assertArrayEquals(new double[] { 2 }, eq.evaluateElementWise());
+        eq.setArrayVariable("xs", new double[] { 1, 2 });
+        assertThrows(IllegalStateException.class, eq::evaluate);
+
+        eq.setArrayVariable("xs", new double[] { 5 });
+        assertEquals(7.0, eq.evaluate());
+    }
+
+    @Test
+    void binding()
+    {
+        Equation eq = newBuilder().build("xs + k");
+        double[] xs = { 1, 2 };
+        assertFalse(eq.setArrayVariable("zs", xs));
+        assertThrows(IllegalArgumentException.class, () -> eq.setArrayVariable("xs", new double[0]));
+
+        eq.setArrayVariable("xs", xs);
+        double[] results = eq.evaluateElementWise();
+        results[0] = 100;
+        xs[1] = 10;
+        assertArrayEquals(new double[] { 3, 12 }, eq.evaluateElementWise());
+        assertArrayEquals(new double[] { 3, 12 }, new Equation(eq).evaluateElementWise());
+
+        eq.setVariable("xs", 5);
+        assertEquals(7.0, eq.evaluate());
+        eq.setArrayVariable("xs", xs);
+        eq.revertVariable("xs");
+        assertEquals(2.0, eq.evaluate());
+
+        Equation identity = newBuilder().build("xs");
+        identity.setArrayVariable("xs", xs);
+        identity.evaluateElementWise()[0] = 100;
+        assertEquals(1.0, xs[0]);
+    }
+
+    @Test
+    void evaluateWithinBudget()
+    {
+        assertThrows(IllegalStateException.class,
+                     () -> build("xs * 2", new double[] { 1, 2 }).evaluateWithinBudget(1e9));
+
+        // Everything is charged once per element, so 3 * (1 + 1 + 2 + 3 * (1 + 3)).
+        Equation eq = build("sum(sum(i, 1, 3, xs * i))", new double[] { 1, 2, 3 });
+        assertEquals(36.0, eq.evaluateWithinBudget(48));
+        assertThrows(EquationCostModel.BudgetExceededException.class, () -> eq.evaluateWithinBudget(47));
+
+        eq.revertVariable("xs");
+        assertEquals(0.0, eq.evaluateWithinBudget(16));
+    }
+
+    @Test
+    void sumAndProd_ofSeveralArrays()
+    {
+        Equation eq = build("sum(xs, ys) + prod(xs, ys, k)", new double[] { 1, 2 });
+        eq.setArrayVariable("ys", new double[] { 3, 4 });
+        assertEquals(10.0 + 48.0, eq.evaluate());
+        assertEquals(4.0, build("max(xs, ys)", new double[] { 1, 4 }).evaluate());
+    }
+
+    @Test
+    void sumAndProd_iterationsTakePrecedence()
+    {
+        Equation.Builder builder = newBuilder().withVariable("n", 3);
+        assertEquals(6.0, builder.build("sum(i, 1, n, i)").evaluate());
+        assertEquals(6.0, builder.build("prod(i, 1, n, i)").evaluate());
+        assertEquals(3.0, builder.build("sum(n)").evaluate());
+        assertEquals(4.0, builder.build("sum(n, 1)").evaluate());
+        assertEquals(9.0, builder.build("sum(n, 1, 2, 3)").evaluate());
+    }
+}
@@ -0,0 +1,217 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EquationCacheTest
+{
+    @TempDir
+    Path directory;
+
+    Equation.Builder builder()
+    {
+        return new Equation.Builder().withComparativeOperators()
+                                     .withVariable("x", 3)
+                                     .withVariable("y", 4)
+                                     .withFunctionDefinition("twice(a) = a + a");
+    }
+
+    static final String[] equations = { "x + y * 2",
+                                        "-(x + y)^2 % + √x",
+                                        "x > y ? max(x, y) : min(x, y)",
+                                        "sum(i, 1, x, prod(j, 1, i, i * j))",
+                                        "sum(i, 1, 3, twice(i))",
+                                        "avg(x)",
+                                        "1.5e300 * NaN" };
+
+    @Test
+    void loadsStoredEquations() throws IOException
+    {
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            Equation.Builder builder = builder().withCache(cache);
+
+            for(String equation : equations)
+                builder.build(equation);
+
+            assertEquals(0, cache.getHitCount());
+            assertEquals(equations.length, cache.getMissCount());
+        }
+
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            Equation.Builder builder = builder().withCache(cache);
+            Equation.Builder uncached = builder();
+
+            for(String equation : equations)
+            {
+                Equation loaded = builder.build(equation);
+                Equation parsed = uncached.build(equation);
+                assertEquals(parsed.toCanonicalString(), loaded.toCanonicalString(), equation);
+                assertEquals(parsed.evaluate(), loaded.evaluate(), equation);
+            }
+
+            assertEquals(equations.length, cache.getHitCount());
+            assertEquals(0, cache.getMissCount());
+        }
+    }
+
+    @Test
+    void loadedEquationsUseCurrentImplementations() throws IOException
+    {
+        try(EquationCache cache = new EquationCache(directory))
+        { builder().withCache(cache).build("x + y"); }
+
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            Equation equation = builder().withOperator("+", 100, (l, r) -> l * r).withCache(cache).build("x + y");
+            assertEquals(12.0, equation.evaluate());
+        }
+    }
+
+    @Test
+    void sharedIterationIndices() throws IOException
+    {
+        // The inlined definition's argument is the outer index, inside an inner iteration with an index of the same
+        // name.
+        String equation = "sum(i, 1, 2, f(i))";
+
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            builder().withFunctionDefinition("f(a) = sum(i, 1, 3, a * 10 + i)").withCache(cache).build(equation);
+        }
+
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            Equation loaded = builder().withFunctionDefinition("f(a) = sum(i, 1, 3, a * 10 + i)")
+                                       .withCache(cache)
+                                       .build(equation);
+
+            assertEquals(1, cache.getHitCount());
+            assertEquals((11 + 12 + 13) + (21 + 22 + 23), loaded.evaluate());
+        }
+    }
+
+    @Test
+    void definitionsWithIterationsCalledMoreThanOnce() throws IOException
+    {
+        // Every call of an inlined definition shares the definition's iteration index.
+        String[] calls = { "h(1) + h(2)", "h(h(1))", "h(1) * h(1)" };
+
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            Equation.Builder builder = builder().withFunctionDefinition("h(y) = sum(j, 1, 3, y * j)").withCache(cache);
+
+            for(String call : calls)
+                builder.build(call);
+        }
+
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            Equation.Builder builder = builder().withFunctionDefinition("h(y) = sum(j, 1, 3, y * j)").withCache(cache);
+            assertEquals(18.0, builder.build("h(1) + h(2)").evaluate());
+            assertEquals(36.0, builder.build("h(h(1))").evaluate());
+            assertEquals(36.0, builder.build("h(1) * h(1)").evaluate());
+            assertEquals(calls.length, cache.getHitCount());
+        }
+    }
+
+    @Test
+    void grammarChangesInvalidate() throws IOException
+    {
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            builder().withCache(cache).build("x + y");
+            builder().withVariable("z", 0).withCache(cache).build("x + y");
+            builder().withOperator("@", (l, r) -> l).withCache(cache).build("x + y");
+            builder().withFunction("f", a -> 0).withCache(cache).build("x + y");
+            builder().withFunctionDefinition("twice(a) = a * 2").withCache(cache).build("x + y");
+            assertEquals(0, cache.getHitCount());
+            assertEquals(5, cache.getMissCount());
+
+            Equation.Builder builder = builder().withCache(cache);
+            builder.build("x + y");
+            assertEquals(1, cache.getHitCount());
+
+            builder.withVariable("z", 0);
+            builder.build("x + y");
+            assertEquals(2, cache.getHitCount());
+
+            builder.withOperator("#", (l, r) -> l);
+            builder.build("x + y");
+            assertEquals(2, cache.getHitCount());
+        }
+    }
+
+    @Test
+    void parseErrorsAreNotCached() throws IOException
+    {
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            Equation.Builder builder = builder().withCache(cache);
+            assertThrows(Equation.Builder.EquationParseException.class, () -> builder.build("x +"));
+            assertThrows(Equation.Builder.EquationParseException.class, () -> builder.build("x +"));
+            assertEquals(0, cache.getMissCount());
+        }
+    }
+
+    @Test
+    void corruptDataIsIgnored() throws IOException
+    {
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            Equation.Builder builder = builder().withCache(cache);
+            builder.build("x + y");
+            builder.build("x * y");
+        }
+
+        Path dataFile;
+
+        try(Stream<Path> files = Files.list(directory))
+        { dataFile = files.filter(x -> x.toString().endsWith(".eqdata")).findFirst().orElseThrow(); }
+
+        // Flip the last byte of the last record, and add a partly written record after it.
+        byte[] data = Files.readAllBytes(dataFile);
+        data[data.length - 1] ^= 1;
+        Files.write(dataFile, data);
+
+        try(FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.APPEND))
+        { channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 1 })); }
+
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            Equation.Builder builder = builder().withCache(cache);
+            assertEquals(7.0, builder.build("x + y").evaluate());
+            assertEquals(12.0, builder.build("x * y").evaluate());
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+        }
+
+        try(EquationCache cache = new EquationCache(directory))
+        {
+            Equation.Builder builder = builder().withCache(cache);
+            assertEquals(12.0, builder.build("x * y").evaluate());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    void closedCacheParses() throws IOException
+    {
+        EquationCache cache = new EquationCache(directory);
+        Equation.Builder builder = builder().withCache(cache);
+        cache.close();
+        assertEquals(7.0, builder.build("x + y").evaluate());
+        assertEquals(0, cache.getMissCount());
+    }
+}
@@ -0,0 +1,133 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+import scot.massie.lib.maths.EquationCostModel.BudgetExceededException;
+import scot.massie.lib.maths.EquationCostModel.Estimate;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EquationCostModelTest
+{
+    Equation.Builder newBuilder()
+    {
+        return new Equation.Builder().withVariable("x", 3)
+                                     .withVariable("n", 10);
+    }
+
+    Estimate estimate(String equation)
+    { return new EquationCostModel().estimate(newBuilder().build(equation)); }
+
+    @Test
+    void estimate_operationsAndFunctions()
+    {
+        assertEquals(1, estimate("x").getCost());
+        assertEquals(1, estimate("x").getDepth());
+
+        Estimate e = estimate("x + 2 * x");
+        assertEquals(5, e.getCost());
+        assertEquals(3, e.getDepth());
+        assertTrue(e.isExact());
+
+        assertEquals(4, estimate("max(x, 1, 2)").getCost());
+    }
+
+    @Test
+    void estimate_weights()
+    {
+        EquationCostModel model = new EquationCostModel()
+                .withOperatorWeight(Equation.StandardOperatorActions.POWER, 20)
+                .withFunctionWeight("max", argCount -> argCount * 10)
+                .withFunctionWeight("sin", 5);
+
+        Equation.Builder builder = newBuilder();
+        assertEquals(22, model.estimate(builder.build("x ^ 2")).getCost());
+        assertEquals(22, model.estimate(builder.build("max(x, 1)")).getCost());
+        assertEquals(6, model.estimate(builder.build("sin(x)")).getCost());
+
+        assertThrows(IllegalArgumentException.class, () -> model.withFunctionWeight("f", -1));
+        assertThrows(IllegalArgumentException.class, () -> model.withOperatorWeight(
+                Equation.StandardOperatorActions.ADD, Double.NaN));
+    }
+
+    @Test
+    void estimate_iterations()
+    {
+        // 1 for the sum, 2 for the bounds, and 2 per value of i for the step and body.
+        Estimate constant = estimate("sum(i, 1, 100, i)");
+        assertEquals(1 + 2 + 100 * 2, constant.getCost());
+        assertTrue(constant.isExact());
+
+        Estimate variable = estimate("sum(i, 1, n, i)");
+        assertEquals(1 + 2 + EquationCostModel.DEFAULT_ASSUMED_ITERATION_COUNT * 2, variable.getCost());
+        assertFalse(variable.isExact());
+
+        Estimate nested = estimate("sum(i, 1, 10, sum(j, 1, 5, i * j))");
+        assertEquals(1 + 2 + 10 * (1 + 1 + 2 + 5 * (1 + 3)), nested.getCost());
+        assertEquals(4, nested.getDepth());
+
+        assertEquals(3, estimate("sum(i, 5, 1, i)").getCost());
+        assertEquals(5, estimate("sum(i, 1, 1/0, i)").getCost());
+
+        EquationCostModel pessimistic = new EquationCostModel().withAssumedIterationCount(Double.POSITIVE_INFINITY);
+        assertEquals(Double.POSITIVE_INFINITY, pessimistic.estimate(newBuilder().build("prod(i, 1, n, i)")).getCost());
+    }
+
+    @Test
+    void estimate_sharedComponentsAreExaminedOnce()
+    {
+        // Arguments are shared by each reference to a parameter, so this evaluates x 2^60 times.
+        Equation.Builder builder = newBuilder().withFunctionDefinition("sq(a) = a * a");
+        String equation = "sq(".repeat(60) + "x" + ")".repeat(60);
+
+        Estimate e = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                                               () -> new EquationCostModel().estimate(builder.build(equation)));
+
+        assertEquals(Math.pow(2, 61) - 1, e.getCost());
+        assertEquals(61, e.getDepth());
+    }
+
+    @Test
+    void evaluateWithinBudget()
+    {
+        Equation eq = newBuilder().build("sum(i, 1, n, i * x)");
+        double exactCost = 1 + 2 + 10 * (1 + 3);
+
+        assertEquals(165, eq.evaluateWithinBudget(exactCost));
+        assertThrows(BudgetExceededException.class, () -> eq.evaluateWithinBudget(exactCost - 1));
+
+        eq.setVariable("n", 1_000_000_000);
+        assertThrows(BudgetExceededException.class, () -> eq.evaluateWithinBudget(1_000_000));
+
+        // The equation is left as it was, and may still be evaluated.
+        eq.setVariable("n", 2);
+        assertEquals(9, eq.evaluate());
+        assertEquals(9, eq.evaluateWithinBudget(exactCost));
+    }
+
+    @Test
+    void evaluateWithinBudget_stopsBeforeDoingTheWork()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        Equation eq = newBuilder().withFunction("count", args -> calls.incrementAndGet())
+                                  .build("sum(i, 1, 10, count()) + sum(i, 1, n * 1000, count())");
+
+        assertThrows(BudgetExceededException.class, () -> eq.evaluateWithinBudget(1000));
+        assertEquals(10, calls.get());
+
+        calls.set(0);
+        EquationCostModel expensiveCount = new EquationCostModel().withFunctionWeight("count", 1e6);
+        assertThrows(BudgetExceededException.class, () -> eq.evaluateWithinBudget(expensiveCount, 1e6));
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void evaluateWithinBudget_noIterations()
+    {
+        Equation eq = newBuilder().build("1 + 2 * 3");
+        assertEquals(7, eq.evaluateWithinBudget(5));
+        assertThrows(BudgetExceededException.class, () -> eq.evaluateWithinBudget(4));
+    }
+}
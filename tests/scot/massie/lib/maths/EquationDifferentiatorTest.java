@@ -0,0 +1,89 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EquationDifferentiatorTest
+{
+    /**
+     * Gets the derivative of the given equation with respect to x, evaluated at the given value of x.
+     * @param equation The equation to differentiate.
+     * @param x The value of x.
+     * @return The derivative at the given value of x, or null where the equation can't be differentiated.
+     */
+    Double slope(String equation, double x)
+    {
+        Equation eq = new Equation.Builder().withVariable("x", x)
+                                            .withVariable("k", 3)
+                                            .withFunction("custom", a -> a[0])
+                                            .build(equation);
+
+        Equation.EquationComponent derivative = new EquationDifferentiator("x", eq.functions)
+                                                        .differentiate(eq.topLevelComponent);
+
+        return derivative == null ? null : new Equation(eq, derivative).evaluate();
+    }
+
+    @Test
+    void operators()
+    {
+        assertEquals(1.0, slope("x + k", 2));
+        assertEquals(-1.0, slope("k - x", 2));
+        assertEquals(3.0, slope("k * x", 2));
+        assertEquals(12.0, slope("x^2 * k", 2));
+        assertEquals(-0.75, slope("k / x", 2));
+        assertEquals(-1.0, slope("-x", 2));
+        assertEquals(0.01, slope("x%", 2), 1e-15);
+        assertEquals(0.25, slope("√x", 4), 1e-15);
+        assertEquals(1.0 / 12, slope("3√x", 8), 1e-15);
+        assertEquals(8 * Math.log(2), slope("2^(x + 1)", 2), 1e-12);
+        assertEquals(4 * (Math.log(2) + 1), slope("x^x", 2), 1e-12);
+        assertEquals(1.0, slope("x % k", 4));
+        assertEquals(0.0, slope("k * 2", 4));
+    }
+
+    @Test
+    void functions()
+    {
+        assertEquals(Math.cos(1), slope("sin(x)", 1), 1e-15);
+        assertEquals(-Math.sin(1) * 2, slope("cos(2 * x)", 0.5), 1e-15);
+        assertEquals(1 / (Math.cos(1) * Math.cos(1)), slope("tan(x)", 1), 1e-12);
+        assertEquals(0.25, slope("sqrt(x)", 4), 1e-15);
+        assertEquals(1.0 / 12, slope("cbrt(x)", 8), 1e-15);
+        assertEquals(0.5, slope("log(x)", 2), 1e-15);
+        assertEquals(1 / (2 * Math.log(10)), slope("log10(x)", 2), 1e-15);
+    }
+
+    @Test
+    void functions_independentOfRedefinitions()
+    {
+        Equation eq = new Equation.Builder().withVariable("x", 4).build("sqrt(x) + cbrt(x)");
+        Equation.EquationComponent derivative = new EquationDifferentiator("x", eq.functions)
+                                                        .differentiate(eq.topLevelComponent);
+
+        Equation derivativeEq = new Equation(eq, derivative);
+        derivativeEq.redefineFunction("sqrt", a -> 1);
+        derivativeEq.redefineFunction("cbrt", a -> 1);
+        assertEquals(0.25 + 1 / (3 * Math.cbrt(16)), derivativeEq.evaluate(), 1e-15);
+    }
+
+    @Test
+    void iterations()
+    {
+        // d/dx sum(i, 1, 3, i * x^2) = 2x * (1 + 2 + 3)
+        assertEquals(24.0, slope("sum(i, 1, 3, i * x^2)", 2));
+        assertNull(slope("sum(i, 1, x, i)", 2));
+        assertNull(slope("prod(i, 1, 3, x)", 2));
+    }
+
+    @Test
+    void notDifferentiable()
+    {
+        assertNull(slope("custom(x)", 2));
+        assertNull(slope("max(x, 1)", 2));
+        assertNull(slope("floor(x)", 2));
+        assertNull(slope("k % x", 2));
+        assertEquals(0.0, slope("custom(k)", 2));
+    }
+}
@@ -0,0 +1,124 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EquationFunctionsTest
+{
+    @Test
+    void fib_integers()
+    {
+        assertEquals(0.0, EquationFunctions.fib(0));
+        assertEquals(1.0, EquationFunctions.fib(1));
+        assertEquals(1.0, EquationFunctions.fib(2));
+        assertEquals(55.0, EquationFunctions.fib(10));
+        assertEquals(8944394323791464.0, EquationFunctions.fib(78));
+        assertEquals(new BigInteger("2880067194370816120").doubleValue(), EquationFunctions.fib(90));
+        assertTrue(Double.isFinite(EquationFunctions.fib(EquationFunctions.LARGEST_FINITE_FIBONACCI_INDEX)));
+        assertEquals(Double.POSITIVE_INFINITY,
+                     EquationFunctions.fib(EquationFunctions.LARGEST_FINITE_FIBONACCI_INDEX + 1));
+    }
+
+    @Test
+    void fib_negativeIntegers()
+    {
+        assertEquals(1.0, EquationFunctions.fib(-1));
+        assertEquals(-1.0, EquationFunctions.fib(-2));
+        assertEquals(2.0, EquationFunctions.fib(-3));
+        assertEquals(-55.0, EquationFunctions.fib(-10));
+    }
+
+    @Test
+    void fib_nonIntegers()
+    {
+        // Continuous between integers.
+        assertEquals(EquationFunctions.fib(5), EquationFunctions.fib(5 + 1e-9), 1e-6);
+        assertTrue(EquationFunctions.fib(5.5) > EquationFunctions.fib(5));
+        assertTrue(EquationFunctions.fib(5.5) < EquationFunctions.fib(6));
+        assertTrue(Double.isNaN(EquationFunctions.fib(Double.NaN)));
+    }
+
+    @Test
+    void truncate()
+    {
+        assertEquals(3.0, EquationFunctions.truncate(3.75));
+        assertEquals(-3.0, EquationFunctions.truncate(-3.75));
+        assertEquals(1e20, EquationFunctions.truncate(1e20));
+        assertEquals(Double.POSITIVE_INFINITY, EquationFunctions.truncate(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void sumAndProd()
+    {
+        assertEquals(0.0, EquationFunctions.sum(new double[0]));
+        assertEquals(10.0, EquationFunctions.sum(new double[] { 1, 2, 3, 4 }));
+        assertEquals(1.0, EquationFunctions.prod(new double[0]));
+        assertEquals(24.0, EquationFunctions.prod(new double[] { 1, 2, 3, 4 }));
+        assertTrue(EquationFunctions.SUM.isReduction());
+        assertFalse(EquationFunctions.SQRT.isReduction());
+    }
+
+    @Test
+    void avg()
+    {
+        assertEquals(5.0, EquationFunctions.avg(new double[] { 5 }));
+        assertEquals(1e308, EquationFunctions.avg(new double[] { 1e308, 1e308, 1e308 }));
+    }
+
+    @Test
+    void varianceAndStddev()
+    {
+        double[] values = { 2, 4, 4, 4, 5, 5, 7, 9 };
+        assertEquals(4.0, EquationFunctions.variance(values));
+        assertEquals(2.0, EquationFunctions.stddev(values));
+        assertEquals(0.0, EquationFunctions.variance(new double[] { 3 }));
+
+        // Single-pass variance shouldn't lose precision to a large offset.
+        assertEquals(4.0, EquationFunctions.variance(new double[] { 1e9 + 2, 1e9 + 4, 1e9 + 4, 1e9 + 4, 1e9 + 5,
+                                                                    1e9 + 5, 1e9 + 7, 1e9 + 9 }), 1e-6);
+    }
+
+    @Test
+    void median_doesNotModifyArgs()
+    {
+        double[] values = { 5, 1, 4, 2, 3 };
+        assertEquals(3.0, EquationFunctions.median(values));
+        assertArrayEquals(new double[] { 5, 1, 4, 2, 3 }, values);
+    }
+
+    @Test
+    void median_smallAndNaN()
+    {
+        assertEquals(4.0, EquationFunctions.median(new double[] { 4 }));
+        assertEquals(4.5, EquationFunctions.median(new double[] { 5, 4 }));
+        assertEquals(2.0, EquationFunctions.median(new double[] { 2, 2, 2, 2 }));
+        assertTrue(Double.isNaN(EquationFunctions.median(new double[] { 1, Double.NaN, 3 })));
+    }
+
+    @Test
+    void median_matchesSorting()
+    {
+        Random random = new Random(34);
+
+        for(int i = 0; i < 500; i++)
+        {
+            double[] values = new double[1 + random.nextInt(40)];
+
+            for(int j = 0; j < values.length; j++)
+                values[j] = random.nextInt(10);
+
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            double expected = sorted.length % 2 == 0
+                                      ? (sorted[sorted.length / 2] + sorted[sorted.length / 2 - 1]) / 2
+                                      : sorted[sorted.length / 2];
+
+            assertEquals(expected, EquationFunctions.median(values), Arrays.toString(values));
+        }
+    }
+}
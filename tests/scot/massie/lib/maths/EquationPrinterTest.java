@@ -0,0 +1,136 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EquationPrinterTest
+{
+    final Equation.Builder builder = new Equation.Builder().withComparativeOperators()
+                                                           .withVariable("a", 3)
+                                                           .withVariable("b", 5)
+                                                           .withVariable("c", 7);
+
+    final EquationPrinter printer = new EquationPrinter(builder);
+
+    final EquationPrinter sortingPrinter = printer.withSortedCommutativeOperands();
+
+    String print(String equation)
+    { return printer.print(builder.build(equation)); }
+
+    String printSorted(String equation)
+    { return sortingPrinter.print(builder.build(equation)); }
+
+    @Test
+    void print_whitespaceAndBrackets()
+    {
+        assertEquals("a + b", print("a+b"));
+        assertEquals("a + b", print("  a   +   b "));
+        assertEquals("a + b", print("(a) + (b)"));
+        assertEquals("a + b", print("((a + b))"));
+        assertEquals("a + (b * c)", print("a+b*c"));
+        assertEquals("a + (b * c)", print("a + (b * c)"));
+        assertEquals("(a + b) * c", print("(a + b) * c"));
+        assertEquals("(a - b) - c", print("a - b - c"));
+        assertEquals("a ^ (b ^ c)", print("a ^ b ^ c"));
+    }
+
+    @Test
+    void print_operators()
+    {
+        assertEquals("(- a) + b", print("-a + b"));
+        assertEquals("a %", print("a%"));
+        assertEquals("a % b", print("a % b"));
+        assertEquals("a * b", print("a × b"));
+        assertEquals("a / b", print("a ÷ b"));
+        assertEquals("(a > b) ? c : 1", print("a > b ? c : 1"));
+    }
+
+    @Test
+    void print_functionsAndIterations()
+    {
+        assertEquals("max(a, b + 1)", print("max( a,b+1 )"));
+        assertEquals("sum(i, 1, a, i * b)", print("sum(i, 1, a, (i * b))"));
+        assertEquals("max over(i, 1, 3, i - a)", print("max over(i, 1, 3, i - a)"));
+    }
+
+    @Test
+    void print_numbers()
+    {
+        assertEquals("2", print("2.0"));
+        assertEquals("0.5", print(".5"));
+        assertEquals("1.0E20", print("100000000000000000000"));
+        assertEquals("NaN", EquationPrinter.printNumber(Double.NaN));
+        assertEquals("-0.0", EquationPrinter.printNumber(-0.0));
+    }
+
+    @Test
+    void print_sortedCommutativeOperands()
+    {
+        assertEquals("b + a", print("b + a"));
+        assertEquals("a + b", printSorted("b + a"));
+        assertEquals("(a * c) + b", printSorted("b + c * a"));
+        assertEquals("b - a", printSorted("b - a"));
+        assertEquals("min(b, a)", printSorted("min(b, a)"));
+    }
+
+    @Test
+    void print_customCommutativeOperator()
+    {
+        Equation.OperatorAction avg = o -> (o[0] + o[1]) / 2;
+        Equation.Builder avgBuilder = new Equation.Builder().withVariable("a", 3)
+                                                            .withVariable("b", 5)
+                                                            .withOperator(new String[] { "&" }, avg);
+
+        EquationPrinter avgPrinter = new EquationPrinter(avgBuilder).withSortedCommutativeOperands();
+        assertEquals("b & a", avgPrinter.print(avgBuilder.build("b&a")));
+        assertEquals("a & b", avgPrinter.withCommutativeOperator(avg).print(avgBuilder.build("b&a")));
+    }
+
+    @Test
+    void print_unknownOperator()
+    {
+        Equation.OperatorAction unknown = o -> o[0];
+        Equation.EquationComponent component = new Equation.Operation(new Equation.LiteralNumber(1), unknown);
+        assertThrows(IllegalArgumentException.class, () -> printer.print(component));
+        assertThrows(IllegalArgumentException.class, () -> printer.hash(component));
+    }
+
+    @Test
+    void print_roundTrip()
+    {
+        String[] equations = { "a + b * c - 4 / a",
+                               "-(a + b)^2",
+                               "a > b ? (c%) : sum(i, 1, 4, i * a)",
+                               "√a + b√c" };
+
+        for(String equation : equations)
+        {
+            Equation original = builder.build(equation);
+            String canonical = original.toCanonicalString();
+            Equation reparsed = builder.build(canonical);
+            assertEquals(canonical, reparsed.toCanonicalString(), equation);
+            assertEquals(original.evaluate(), reparsed.evaluate(), equation);
+            assertEquals(original.structuralHash(), reparsed.structuralHash(), equation);
+        }
+    }
+
+    @Test
+    void hash()
+    {
+        assertEquals(printer.hash(builder.build("a+b*c")), printer.hash(builder.build("(a) + ((b) * c)")));
+        assertNotEquals(printer.hash(builder.build("a + b")), printer.hash(builder.build("b + a")));
+        assertNotEquals(printer.hash(builder.build("a + b")), printer.hash(builder.build("a - b")));
+        assertNotEquals(printer.hash(builder.build("a")), printer.hash(builder.build("max(a)")));
+        assertNotEquals(printer.hash(builder.build("1")), printer.hash(builder.build("2")));
+        assertEquals(sortingPrinter.hash(builder.build("a + b * c")), sortingPrinter.hash(builder.build("c * b + a")));
+        assertNotEquals(sortingPrinter.hash(builder.build("a - b")), sortingPrinter.hash(builder.build("b - a")));
+    }
+
+    @Test
+    void hash_stable()
+    {
+        assertEquals(0xaf63dc4c8601ec8cL, EquationPrinter.hashText("a"));
+        assertEquals(printer.hash(builder.build("a + b")), new EquationPrinter(builder).hash(builder.build("a + b")));
+    }
+}
@@ -0,0 +1,230 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+import scot.massie.lib.maths.Equation.EquationComponent;
+import scot.massie.lib.maths.Equation.FunctionCall;
+import scot.massie.lib.maths.Equation.LiteralNumber;
+import scot.massie.lib.maths.Equation.Operation;
+import scot.massie.lib.maths.Equation.StandardOperatorActions;
+import scot.massie.lib.maths.Equation.VariableReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EquationSimplifierTest
+{
+    static final double[] interestingValues
+            = { 0.0, -0.0, 1.0, -1.0, 2.5, -3.75, 1e300, -1e-300, Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+
+    Equation.Builder newBuilder()
+    {
+        return new Equation.Builder().withVariable("x", 0)
+                                     .withVariable("y", 0)
+                                     .withFunction("f", a -> a[0] + 1);
+    }
+
+    /**
+     * Asserts that the given equation, simplified, gives bit-for-bit the same results as the original for all pairs of
+     * interesting values of x and y.
+     */
+    Equation assertSimplifiesExactly(String equation)
+    {
+        Equation original = newBuilder().build(equation);
+        Equation simplified = original.simplified();
+
+        for(double x : interestingValues)
+            for(double y : interestingValues)
+            {
+                original.setVariable("x", x);
+                original.setVariable("y", y);
+                simplified.setVariable("x", x);
+                simplified.setVariable("y", y);
+
+                assertEquals(Double.doubleToLongBits(original.evaluate()),
+                             Double.doubleToLongBits(simplified.evaluate()),
+                             equation + " with x = " + x + ", y = " + y);
+            }
+
+        return simplified;
+    }
+
+    void assertVariable(String name, EquationComponent component)
+    {
+        assertTrue(component instanceof VariableReference, "Not a variable: " + component);
+        assertEquals(name, ((VariableReference)component).getName());
+    }
+
+    void assertLiteral(double value, EquationComponent component)
+    {
+        assertTrue(component instanceof LiteralNumber, "Not a literal: " + component);
+        assertEquals(value, ((LiteralNumber)component).getValue());
+    }
+
+    void assertOperation(Object action, EquationComponent component)
+    { assertTrue(EquationSimplifier.isOperation(component, (Equation.OperatorAction)action)); }
+
+    @Test
+    void identities()
+    {
+        for(String eq : new String[] { "x * 1", "1 * x", "x / 1", "x - 0", "x + -0", "x ^ 1", "+x", "--x", "---x * -1" })
+            assertVariable("x", assertSimplifiesExactly(eq).topLevelComponent);
+    }
+
+    @Test
+    void identities_notExact()
+    {
+        // -0 + 0 is 0, so this must be left alone.
+        assertOperation(StandardOperatorActions.ADD, assertSimplifiesExactly("x + 0").topLevelComponent);
+        assertOperation(StandardOperatorActions.MULTIPLY, assertSimplifiesExactly("x * 0").topLevelComponent);
+        assertOperation(StandardOperatorActions.SUBTRACT, assertSimplifiesExactly("x - x").topLevelComponent);
+    }
+
+    @Test
+    void constantFolding()
+    { assertLiteral(17.0, assertSimplifiesExactly("(2 + 3) * 4 - 6 / 2 ^ 1").topLevelComponent); }
+
+    @Test
+    void constantFolding_functionCallsKept()
+    {
+        EquationComponent c = assertSimplifiesExactly("f(2 + 3)").topLevelComponent;
+        assertTrue(c instanceof FunctionCall);
+        assertLiteral(5.0, ((FunctionCall)c).getArguments()[0]);
+    }
+
+    @Test
+    void powerToMultiply()
+    {
+        EquationComponent c = assertSimplifiesExactly("x ^ 2").topLevelComponent;
+        assertOperation(StandardOperatorActions.MULTIPLY, c);
+        assertVariable("x", ((Operation)c).getComponents().get(0));
+        assertVariable("x", ((Operation)c).getComponents().get(1));
+
+        // Not reduced where the base is more than a single value, as it would be evaluated twice.
+        assertOperation(StandardOperatorActions.POWER, assertSimplifiesExactly("(x + y) ^ 2").topLevelComponent);
+        assertLiteral(1.0, assertSimplifiesExactly("(x + y) ^ 0").topLevelComponent);
+        assertOperation(StandardOperatorActions.POWER, assertSimplifiesExactly("f(x) ^ 0").topLevelComponent);
+    }
+
+    @Test
+    void divideByPowerOfTwo()
+    {
+        EquationComponent c = assertSimplifiesExactly("x / 8").topLevelComponent;
+        assertOperation(StandardOperatorActions.MULTIPLY, c);
+        assertLiteral(0.125, ((Operation)c).getComponents().get(1));
+        assertOperation(StandardOperatorActions.DIVIDE, assertSimplifiesExactly("x / 3").topLevelComponent);
+    }
+
+    @Test
+    void negationFolding()
+    {
+        assertOperation(StandardOperatorActions.SUBTRACT, assertSimplifiesExactly("x + -y").topLevelComponent);
+        assertOperation(StandardOperatorActions.SUBTRACT, assertSimplifiesExactly("-y + x").topLevelComponent);
+        assertOperation(StandardOperatorActions.ADD, assertSimplifiesExactly("x - -y").topLevelComponent);
+
+        EquationComponent c = assertSimplifiesExactly("-x * -y").topLevelComponent;
+        assertOperation(StandardOperatorActions.MULTIPLY, c);
+        assertVariable("x", ((Operation)c).getComponents().get(0));
+
+        assertOperation(StandardOperatorActions.NEGATE, assertSimplifiesExactly("x * -1").topLevelComponent);
+        assertSimplifiesExactly("-x / -y");
+    }
+
+    @Test
+    void nested()
+    { assertVariable("x", assertSimplifiesExactly("((x * 1) ^ 1 - 0) / (3 - 2)").topLevelComponent); }
+
+    @Test
+    void algebraic()
+    {
+        EquationSimplifier simplifier = new EquationSimplifier().allowingAlgebraicRewrites(true);
+        Equation.Builder builder = newBuilder();
+
+        assertVariable("x", builder.build("x + 0").simplified(simplifier).topLevelComponent);
+        assertLiteral(0.0, builder.build("x * 0").simplified(simplifier).topLevelComponent);
+        assertLiteral(0.0, builder.build("(x + y) - (x + y)").simplified(simplifier).topLevelComponent);
+        assertLiteral(1.0, builder.build("x / x").simplified(simplifier).topLevelComponent);
+        assertVariable("x", builder.build("(x * y) / y").simplified(simplifier).topLevelComponent);
+        assertVariable("x", builder.build("(y * x) / y").simplified(simplifier).topLevelComponent);
+        assertVariable("x", builder.build("(x / y) * y").simplified(simplifier).topLevelComponent);
+        assertOperation(StandardOperatorActions.NEGATE, builder.build("0 - x").simplified(simplifier).topLevelComponent);
+        assertOperation(StandardOperatorActions.DIVIDE, builder.build("x ^ -1").simplified(simplifier).topLevelComponent);
+
+        // Function calls aren't assumed to return the same thing each time.
+        assertOperation(StandardOperatorActions.SUBTRACT,
+                        builder.build("f(x) - f(x)").simplified(simplifier).topLevelComponent);
+    }
+
+    @Test
+    void algebraic_givesSameResultsForOrdinaryValues()
+    {
+        EquationSimplifier simplifier = new EquationSimplifier().allowingAlgebraicRewrites(true);
+        Equation original = newBuilder().build("(x * y) / y + x ^ 3 - (x - x) + y * 0");
+        Equation simplified = original.simplified(simplifier);
+        original.setVariable("x", 3);
+        original.setVariable("y", 4);
+        simplified.setVariable("x", 3);
+        simplified.setVariable("y", 4);
+        assertEquals(original.evaluate(), simplified.evaluate());
+    }
+
+    @Test
+    void customOperatorsLeftAlone()
+    {
+        Equation eq = new Equation.Builder().withVariable("x", 5)
+                                            .withOperator("*", 200, (l, r) -> l * r + 1)
+                                            .build("x * 1");
+
+        assertTrue(eq.simplified().topLevelComponent instanceof Operation);
+        assertEquals(6.0, eq.simplified().evaluate());
+    }
+
+    @Test
+    void customRule()
+    {
+        // Rewrites f(f(x)) to x + 2.
+        EquationSimplifier simplifier = new EquationSimplifier().withRule((c, s) ->
+        {
+            if(!(c instanceof FunctionCall) || !((FunctionCall)c).getFunctionName().equals("f"))
+                return null;
+
+            EquationComponent arg = ((FunctionCall)c).getArguments()[0];
+
+            if(!(arg instanceof FunctionCall) || !((FunctionCall)arg).getFunctionName().equals("f"))
+                return null;
+
+            return new Operation(((FunctionCall)arg).getArguments()[0], new LiteralNumber(2),
+                                 StandardOperatorActions.ADD);
+        });
+
+        Equation eq = newBuilder().build("f(f(x * 1))").simplified(simplifier);
+        assertOperation(StandardOperatorActions.ADD, eq.topLevelComponent);
+        eq.setVariable("x", 3);
+        assertEquals(5.0, eq.evaluate());
+    }
+
+    @Test
+    void rulesThatUndoEachOtherTerminate()
+    {
+        EquationSimplifier simplifier = new EquationSimplifier()
+                .withRule((c, s) -> c instanceof VariableReference ? new Operation(c, StandardOperatorActions.NEGATE)
+                                                                   : null)
+                .withRule((c, s) -> EquationSimplifier.isOperation(c, StandardOperatorActions.NEGATE)
+                                            ? ((Operation)c).getComponents().get(0)
+                                            : null);
+
+        assertNotNull(newBuilder().build("x").simplified(simplifier));
+    }
+
+    @Test
+    void simplifiedKeepsState()
+    {
+        Equation eq = newBuilder().build("x * 1 + y");
+        eq.setVariable("x", 3);
+        eq.setVariable("y", 4);
+        Equation simplified = eq.simplified();
+        assertEquals(7.0, simplified.evaluate());
+        simplified.setVariable("x", 10);
+        assertEquals(7.0, eq.evaluate());
+        assertEquals(14.0, simplified.evaluate());
+    }
+}
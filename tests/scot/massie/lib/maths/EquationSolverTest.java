@@ -0,0 +1,117 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+import scot.massie.lib.maths.EquationSolver.NoSolutionException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EquationSolverTest
+{
+    EquationSolver solver(String equation)
+    {
+        return new Equation.Builder().withVariable("x", 0)
+                                     .withVariable("k", 2)
+                                     .build(equation)
+                                     .solver("x");
+    }
+
+    @Test
+    void solve_brent()
+    {
+        assertEquals(Math.sqrt(2), solver("x^2").solve(2, 0, 2), 1e-12);
+        assertEquals(Math.sqrt(2), solver("x^2").solve(2, 2, 0), 1e-12);
+        assertEquals(Math.PI, solver("sin(x)").solve(0, 2, 4), 1e-12);
+        assertEquals(0.0, solver("x * k").solve(0, 0, 1));
+        assertEquals(1e6, solver("log10(x)").solve(6, 1, 1e9), 1e-5);
+    }
+
+    @Test
+    void solve_brent_notBracketed()
+    {
+        assertThrows(NoSolutionException.class, () -> solver("x^2").solve(-1, -2, 2));
+        assertThrows(NoSolutionException.class, () -> solver("x^2").solve(2, 2, 3));
+        assertThrows(NoSolutionException.class, () -> solver("x^2").solve(Double.NaN, 0, 2));
+    }
+
+    @Test
+    void solveNewton()
+    {
+        EquationSolver solver = solver("x^3 - k * x");
+        assertTrue(solver.hasSymbolicDerivative());
+        assertEquals(1.0, Math.pow(solver.solveNewton(1, 1.5), 3) - 2 * solver.solveNewton(1, 1.5), 1e-12);
+        assertEquals(Math.sqrt(2), solver.solveNewton(0, 1.2), 1e-12);
+
+        // Derivatives at stationary points can't be followed.
+        assertThrows(NoSolutionException.class, () -> solver("x^2").solveNewton(1, 0));
+        assertThrows(NoSolutionException.class, () -> solver("x^2").withMaxIterations(3).solveNewton(-1, 5));
+    }
+
+    @Test
+    void solveNewton_estimatedSlope()
+    {
+        EquationSolver solver = new Equation.Builder().withVariable("x", 0)
+                                                      .withFunction("cube", a -> a[0] * a[0] * a[0])
+                                                      .build("cube(x) + x")
+                                                      .solver("x");
+        assertFalse(solver.hasSymbolicDerivative());
+        assertEquals(1.0, solver.solveNewton(2, 3), 1e-9);
+    }
+
+    @Test
+    void minimise()
+    {
+        assertEquals(Math.sqrt(2.0 / 3), solver("x^3 - k * x").minimise(0, 2), 1e-6);
+        assertEquals(3.0, solver("(x - 3)^2 + 1").minimise(10, -10), 1e-6);
+        assertEquals(1.0, solver("x").minimise(1, 4), 1e-6);
+    }
+
+    @Test
+    void solveAll()
+    {
+        double[] targets = new double[1000];
+
+        for(int i = 0; i < targets.length; i++)
+            targets[i] = i;
+
+        targets[7] = -1;
+        double[] roots = solver("x^2").solveAll(targets, 0, 100);
+
+        for(int i = 0; i < targets.length; i++)
+            if(i == 7)
+                assertTrue(Double.isNaN(roots[i]));
+            else
+                assertEquals(Math.sqrt(i), roots[i], 1e-10);
+
+        assertEquals(0, solver("x").solveAll(new double[0], 0, 1).length);
+    }
+
+    @Test
+    void copiesEquation()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        Equation eq = new Equation.Builder().withVariable("x", 0)
+                                            .withVariable("k", 2)
+                                            .withFunction("f", a -> { calls.incrementAndGet(); return a[0]; })
+                                            .build("f(x) - k");
+        EquationSolver solver = eq.solver("x");
+        eq.setVariable("k", 5);
+        assertEquals(2.0, solver.solve(0, 0, 10), 1e-12);
+        assertEquals(0.0, eq.variableHandle("x").get());
+        assertTrue(calls.get() > 0);
+
+        assertThrows(IllegalArgumentException.class, () -> eq.solver("y"));
+        assertThrows(IllegalArgumentException.class, () -> solver.withTolerance(0));
+        assertThrows(IllegalArgumentException.class, () -> solver.withMaxIterations(0));
+    }
+
+    @Test
+    void tolerance()
+    {
+        EquationSolver solver = solver("x^2").withTolerance(1e-3);
+        assertEquals(1e-3, solver.getTolerance());
+        assertEquals(Math.sqrt(2), solver.solve(2, 0, 2), 1e-3);
+        assertEquals(0.0, solver.minimise(-1, 1), 1e-3);
+    }
+}
@@ -0,0 +1,228 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class EquationSourceGeneratorTest
+{
+    static final double[] interestingValues
+            = { 0.0, -0.0, 1.0, -1.0, 2.5, -3.75, 7, 1e300, Double.NaN, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY };
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Compiles the given generated source and loads the class it defines.
+     */
+    Class<?> compile(EquationSourceGenerator generator, String qualifiedClassName) throws Exception
+    {
+        assumeTrue(ToolProvider.getSystemJavaCompiler() != null, "No Java compiler is available.");
+        return compile(generator.writeTo(tempDir, qualifiedClassName), qualifiedClassName);
+    }
+
+    /**
+     * Compiles the given source file and loads the class it defines.
+     */
+    Class<?> compile(Path sourceFile, String qualifiedClassName) throws Exception
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assumeTrue(compiler != null, "No Java compiler is available.");
+
+        String libraryPath = new File(EquationFunctions.class.getProtectionDomain()
+                                                             .getCodeSource()
+                                                             .getLocation()
+                                                             .toURI()).getPath();
+
+        int result = compiler.run(null, null, null, "-encoding", "UTF-8", "-cp", libraryPath,
+                                  "-d", tempDir.toString(), sourceFile.toString());
+        assertEquals(0, result, "The generated source didn't compile.");
+
+        URLClassLoader loader = new URLClassLoader(new URL[] { tempDir.toUri().toURL() },
+                                                   EquationFunctions.class.getClassLoader());
+        return loader.loadClass(qualifiedClassName);
+    }
+
+    /**
+     * Asserts that the generated method for each formula gives bit-for-bit the same results as evaluating the formula,
+     * for every combination of interesting values of x and y, and some random ones.
+     */
+    void assertGeneratedMatchesEvaluated(Map<String, String> formulas) throws Exception
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("x", 0).withVariable("y", 0);
+        Class<?> generated = compile(new EquationSourceGenerator(builder).withInlinedVariables("pi", "e")
+                                                                         .withFormulas(formulas),
+                                     "generated.Formulas");
+        Random random = new Random(38);
+
+        for(Map.Entry<String, String> formula : formulas.entrySet())
+        {
+            Equation eq = builder.build(formula.getValue());
+            Method method = generated.getMethod(formula.getKey(), double.class, double.class);
+
+            for(int i = 0; i < interestingValues.length * interestingValues.length + 100; i++)
+            {
+                double x, y;
+
+                if(i < interestingValues.length * interestingValues.length)
+                {
+                    x = interestingValues[i / interestingValues.length];
+                    y = interestingValues[i % interestingValues.length];
+                }
+                else
+                {
+                    x = random.nextDouble() * 20 - 10;
+                    y = random.nextDouble() * 20 - 10;
+                }
+
+                eq.setVariable("x", x);
+                eq.setVariable("y", y);
+                double expected = eq.evaluate();
+                double actual = (double)method.invoke(null, x, y);
+
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(actual),
+                             formula.getValue() + " with x = " + x + ", y = " + y);
+            }
+        }
+    }
+
+    @Test
+    void operators() throws Exception
+    {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("arithmetic", "x + y * 2 - x / (y - 1) % 3");
+        formulas.put("unary", "-x * +y + y% - -x");
+        formulas.put("powersAndRoots", "x ^ y + 3 √ x + √y - 2 ^ -x");
+        formulas.put("constants", "pi * x + e - y * 1e300");
+        assertGeneratedMatchesEvaluated(formulas);
+    }
+
+    @Test
+    void functions() throws Exception
+    {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("trigonometry", "sin(x) * cos(y) + tan(x + y)");
+        formulas.put("logsAndRoots", "log(x) + log10(y) + sqrt(x) + cbrt(y)");
+        formulas.put("rounding", "floor(x) + ceil(y) + ceiling(x) + truncate(y) + trunc(x) + round(y)");
+        formulas.put("fibonacci", "fib(x) + fib(7) * y");
+        formulas.put("minAndMax", "min(x, y, 1) + max(y, x, 0) + min(x) + max(y, x)");
+        formulas.put("statistics", "avg(x, y, 3) + median(x, y, 1, 2) + variance(x, y) + stddev(x, y, 5)");
+        assertGeneratedMatchesEvaluated(formulas);
+    }
+
+    @Test
+    void iterations() throws Exception
+    {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("sum", "sum(i, 1, x, i^2 * y)");
+        formulas.put("prod", "prod(i, x, y, i)");
+        formulas.put("minOver", "min over(i, -3, x, (i - y)^2)");
+        formulas.put("maxOver", "max over(i, x, 4, i * y)");
+        formulas.put("nested", "sum(i, 1, 3, sum(j, i, x, i * j + y))");
+        formulas.put("shadowed", "x + sum(x, 1, 3, x * y)");
+        assertGeneratedMatchesEvaluated(formulas);
+    }
+
+    @Test
+    void parameters() throws Exception
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("b", 2).withVariable("a", 3);
+        Class<?> generated = compile(new EquationSourceGenerator(builder).withFormula("f", "b * 10 + a")
+                                                                         .withFormula("g", "b * b")
+                                                                         .withFormula("h", "7"),
+                                     "Formulas");
+
+        assertEquals(13.0, generated.getMethod("f", double.class, double.class).invoke(null, 1, 3));
+        assertEquals(16.0, generated.getMethod("g", double.class).invoke(null, 4));
+        assertEquals(7.0, generated.getMethod("h").invoke(null));
+    }
+
+    @Test
+    void variablesNamedAfterClasses() throws Exception
+    {
+        // The generated source refers to Math, Double, and EquationFunctions, which parameters mustn't shadow.
+        Equation.Builder builder = new Equation.Builder().withVariable("Math", 2)
+                                                         .withVariable("Double", 3)
+                                                         .withVariable("EquationFunctions", 4);
+        EquationSourceGenerator generator
+                = new EquationSourceGenerator(builder).withFormula("f", "sum(i, 1, 2, i) + Math ^ Double")
+                                                      .withFormula("g", "avg(EquationFunctions, 0) + 0 / 0");
+        Class<?> generated = compile(generator, "Formulas");
+
+        assertEquals(11.0, generated.getMethod("f", double.class, double.class).invoke(null, 2, 3));
+        assertEquals(Double.NaN, generated.getMethod("g", double.class).invoke(null, 4));
+    }
+
+    @Test
+    void explicitParameters() throws Exception
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("b", 2).withVariable("a", 3);
+        EquationSourceGenerator generator
+                = new EquationSourceGenerator(builder).withInlinedVariables("e", "pi")
+                                                      .withFormula("f", Arrays.asList("a", "b", "e"), "b * 10 + a + e")
+                                                      .withFormula("g", Arrays.asList("a", "b"), "pi");
+        Class<?> generated = compile(generator, "Formulas");
+
+        assertEquals(34.0, generated.getMethod("f", double.class, double.class, double.class).invoke(null, 1, 3, 3));
+        assertEquals(Math.PI, generated.getMethod("g", double.class, double.class).invoke(null, 1, 3));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new EquationSourceGenerator(builder).withFormula("f", Arrays.asList("a"), "a + b")
+                                                               .generate("A"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new EquationSourceGenerator(builder).withFormula("f", Arrays.asList("a", "a"), "a"));
+    }
+
+    @Test
+    void main() throws Exception
+    {
+        assumeTrue(ToolProvider.getSystemJavaCompiler() != null, "No Java compiler is available.");
+
+        EquationSourceGenerator.main(new String[] { tempDir.toString(), "com.example.Formulas",
+                                                    "area(r) = pi * r^2", "hyp(a, b) = sqrt(a^2 + b^2)" });
+
+        Class<?> generated = compile(tempDir.resolve("com/example/Formulas.java"), "com.example.Formulas");
+        assertEquals(Math.PI * 4, generated.getMethod("area", double.class).invoke(null, 2));
+        assertEquals(5.0, generated.getMethod("hyp", double.class, double.class).invoke(null, 3, 4));
+    }
+
+    @Test
+    void unsupported()
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("x", 0)
+                                                         .withFunction("f", a -> a[0])
+                                                         .withOperator("€", (l, r) -> l * 3 + r);
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> new EquationSourceGenerator(builder).withFormula("a", "f(x)").generate("A"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new EquationSourceGenerator(builder).withFormula("a", "x € 2").generate("A"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new EquationSourceGenerator(builder).withFormula("a", "sqrt()").generate("A"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new EquationSourceGenerator(builder).withFormula("a", "x").generate("not a name"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new EquationSourceGenerator(builder).withInlinedVariables("q")
+                                                               .withFormula("a", "x")
+                                                               .generate("A"));
+        assertThrows(IllegalArgumentException.class, () -> new EquationSourceGenerator(builder).generate("A"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new EquationSourceGenerator(builder).withFormula("not a name", "x"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new EquationSourceGenerator(builder).withFormula("a", "x").withFormula("a", "x"));
+    }
+}
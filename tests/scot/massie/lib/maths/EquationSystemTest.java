@@ -0,0 +1,131 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EquationSystemTest
+{
+    Map<String, String> formulas(String... namesAndFormulas)
+    {
+        Map<String, String> result = new LinkedHashMap<>();
+
+        for(int i = 0; i < namesAndFormulas.length; i += 2)
+            result.put(namesAndFormulas[i], namesAndFormulas[i + 1]);
+
+        return result;
+    }
+
+    Equation.Builder newBuilder()
+    {
+        return new Equation.Builder().withVariable("a", 3)
+                                     .withVariable("b", 4)
+                                     .withVariable("c", 5);
+    }
+
+    @Test
+    void singleEquation()
+    {
+        EquationSystem system = newBuilder().buildSystem(formulas("x", "a + b * c"));
+        assertArrayEquals(new double[] {23.0}, system.evaluate());
+    }
+
+    @Test
+    void multipleEquations()
+    {
+        EquationSystem system = newBuilder().buildSystem(formulas("x", "a + b",
+                                                                  "y", "a * b",
+                                                                  "z", "sqrt(a^2 + b^2)"));
+
+        assertArrayEquals(new double[] {7.0, 12.0, 5.0}, system.evaluate());
+        assertEquals(0, system.getOutputIndex("x"));
+        assertEquals(2, system.getOutputIndex("z"));
+        assertEquals(-1, system.getOutputIndex("doot"));
+    }
+
+    @Test
+    void matchesIndividualEquations()
+    {
+        Equation.Builder builder = newBuilder().withComparativeOperators();
+        Map<String, String> fs = formulas("p", "(a + b) * (a + b) / c",
+                                          "q", "max(a, b, c) - min(a, b) % 2",
+                                          "r", "a > b ? c : -c",
+                                          "s", "fib(a + b) + c");
+
+        double[] results = builder.buildSystem(fs).evaluate();
+        int i = 0;
+
+        for(String formula : fs.values())
+            assertEquals(builder.build(formula).evaluate(), results[i++]);
+    }
+
+    @Test
+    void sharedSubexpressions()
+    {
+        EquationSystem shared = newBuilder().buildSystem(formulas("x", "(a + b) * c",
+                                                                  "y", "(a + b) * c + 1",
+                                                                  "z", "(a + b) / 2"));
+
+        // a, b, c, a+b, (a+b)*c, 1, (a+b)*c+1, 2, (a+b)/2
+        assertEquals(9, shared.getNodeCount());
+    }
+
+    @Test
+    void sharedVariables()
+    {
+        EquationSystem system = newBuilder().buildSystem(formulas("x", "a + b", "y", "a * c"));
+        assertTrue(system.setVariable("a", 10));
+        assertArrayEquals(new double[] {14.0, 50.0}, system.evaluate());
+    }
+
+    @Test
+    void unreferencedBuilderVariable()
+    {
+        EquationSystem system = newBuilder().buildSystem(formulas("x", "a + b"));
+        assertTrue(system.setVariable("c", 10));
+        assertFalse(system.setVariable("doot", 10));
+        assertArrayEquals(new double[] {7.0}, system.evaluate());
+    }
+
+    @Test
+    void redefineFunction()
+    {
+        EquationSystem system = newBuilder().withFunction("f", x -> x[0] * 2)
+                                            .buildSystem(formulas("x", "f(a) + 1", "y", "f(b)"));
+
+        assertArrayEquals(new double[] {7.0, 8.0}, system.evaluate());
+        assertTrue(system.redefineFunction("f", x -> x[0] * 3));
+        assertArrayEquals(new double[] {10.0, 12.0}, system.evaluate());
+        assertFalse(system.redefineFunction("doot", x -> 0));
+    }
+
+    @Test
+    void evaluateIntoArray()
+    {
+        EquationSystem system = newBuilder().buildSystem(formulas("x", "a", "y", "b"));
+        double[] results = new double[3];
+        system.evaluate(results);
+        assertArrayEquals(new double[] {3.0, 4.0, 0.0}, results);
+        assertThrows(IllegalArgumentException.class, () -> system.evaluate(new double[1]));
+    }
+
+    @Test
+    void invalidEquation()
+    {
+        assertThrows(Equation.Builder.EquationParseException.class,
+                     () -> newBuilder().buildSystem(formulas("x", "a +", "y", "b")));
+    }
+
+    @Test
+    void iterationsRejected()
+    {
+        assertThrows(IllegalArgumentException.class,
+                     () -> newBuilder().buildSystem(formulas("x", "a", "y", "sum(i, 1, b, i * a)")));
+        assertThrows(IllegalArgumentException.class,
+                     () -> newBuilder().withFunctionDefinition("f(n) = max over(i, 1, n, i)")
+                                       .buildSystem(formulas("x", "f(a) + 1")));
+    }
+}
@@ -2,6 +2,11 @@ package scot.massie.lib.maths;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.function.DoubleSupplier;
 import java.util.function.ToDoubleFunction;
 
@@ -252,6 +257,14 @@ class EquationTest
     void orderRespectingBrackets()
     { assertEquation(65.0, "5 * (6 + 7)"); }
 
+    @Test
+    void deeplyNestedBrackets()
+    {
+        int depth = 40;
+        String eq = "2 * (".repeat(depth) + "1" + ")".repeat(depth);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertEquation(Math.pow(2, depth), eq));
+    }
+
     //region variables
     @Test
     void variables_default()
@@ -270,6 +283,90 @@ class EquationTest
     @Test
     void variables_custom()
     { assertEquals(5.0, new Equation.Builder().withVariable("x", 5).build("x").evaluate()); }
+
+    @Test
+    void variableHandle()
+    {
+        Equation eq = new Equation.Builder().withVariable("x", 5).withVariable("y", 2).build("x * y");
+        Equation.VariableHandle x = eq.variableHandle("x");
+        assertEquals("x", x.getName());
+        assertEquals(5.0, x.get());
+        x.set(7);
+        assertEquals(7.0, x.get());
+        assertEquals(14.0, eq.evaluate());
+        eq.setVariable("x", 3);
+        assertEquals(3.0, x.get());
+        assertEquals(6.0, eq.evaluate());
+    }
+
+    @Test
+    void variableHandle_missingVariable()
+    {
+        Equation eq = new Equation.Builder().withVariable("x", 5).build("x");
+        assertThrows(IllegalArgumentException.class, () -> eq.variableHandle("y"));
+    }
+
+    @Test
+    void variableHandle_validAfterRevertAndPush()
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("doot", 7);
+        Equation eq = builder.build("doot");
+        Equation.VariableHandle doot = eq.variableHandle("doot");
+        doot.set(8);
+        builder.pushVariable("doot", 9);
+        assertEquals(8.0, eq.evaluate());
+        eq.revertVariable("doot");
+        assertEquals(9.0, doot.get());
+        builder.pushVariable("doot", 10);
+        assertEquals(10.0, doot.get());
+        doot.set(11);
+        assertEquals(11.0, eq.evaluate());
+    }
+
+    @Test
+    void variableHandle_notSharedWithCopies()
+    {
+        Equation eq = new Equation.Builder().withVariable("x", 5).build("x");
+        Equation.VariableHandle x = eq.variableHandle("x");
+        x.set(6);
+        Equation copy = new Equation(eq);
+        x.set(7);
+        assertEquals(7.0, eq.evaluate());
+        assertEquals(6.0, copy.evaluate());
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    void variableValues_deprecatedViews()
+    {
+        class ExtendedEquation extends Equation
+        {
+            ExtendedEquation(Equation original)
+            { super(original); }
+        }
+
+        Equation.Builder builder = new Equation.Builder().withVariable("x", 5).withVariable("y", 2);
+        ExtendedEquation eq = new ExtendedEquation(builder.build("x * y"));
+        assertEquals(5.0, eq.variableValues.get("x"));
+        assertNull(eq.variableValues.get("z"));
+        assertTrue(eq.overwrittenVariableValues.isEmpty());
+
+        eq.variableHandle("x").set(3);
+        assertEquals(3.0, eq.variableValues.get("x"));
+        assertEquals(Map.of("x", 3.0), eq.overwrittenVariableValues);
+        assertEquals(2.0, eq.variableValues.get("y"));
+        assertTrue(eq.variableValues.entrySet().contains(Map.entry("x", 3.0)));
+
+        assertNull(eq.overwrittenVariableValues.put("y", 4.0));
+        assertEquals(12.0, eq.evaluate());
+        assertThrows(IllegalArgumentException.class, () -> eq.variableValues.put("z", 1.0));
+        assertThrows(UnsupportedOperationException.class, () -> eq.variableValues.remove("x"));
+
+        assertEquals(3.0, eq.overwrittenVariableValues.remove("x"));
+        builder.pushVariable("x", 6);
+        assertEquals(6.0, eq.variableValues.get("x"));
+        assertEquals(24.0, eq.evaluate());
+    }
     //endregion
 
     //region pushing
@@ -315,6 +412,59 @@ class EquationTest
         eq.revertVariable("doot");
         assertEquals(10.0, eq.evaluate());
     }
+
+    @Test
+    void push_variable_concurrentWithBuilds() throws InterruptedException
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("doot", 0);
+        List<Equation> built = Collections.synchronizedList(new ArrayList<>());
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        for(int i = 0; i < 4; i++)
+        {
+            threads.add(new Thread(() ->
+            {
+                try
+                {
+                    for(int j = 0; j < 200; j++)
+                        built.add(builder.build("doot * 2 + (3 - 1)"));
+                }
+                catch(Throwable e)
+                { errors.add(e); }
+            }));
+        }
+
+        threads.add(new Thread(() ->
+        {
+            for(int j = 1; j <= 200; j++)
+                builder.pushVariable("doot", j);
+        }));
+
+        for(Thread t : threads)
+            t.start();
+
+        for(Thread t : threads)
+            t.join();
+
+        assertTrue(errors.isEmpty());
+        assertEquals(800, built.size());
+
+        for(Equation eq : built)
+            assertEquals(402.0, eq.evaluate());
+    }
+
+    @Test
+    void push_variable_afterOperatorAdded()
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("doot", 7);
+        Equation eq1 = builder.build("doot + 1");
+        builder.withOperator("£", (l, r) -> l * 10 + r);
+        Equation eq2 = builder.build("doot £ 1");
+        builder.pushVariable("doot", 8);
+        assertEquals(9.0, eq1.evaluate());
+        assertEquals(81.0, eq2.evaluate());
+    }
     //endregion
     //region functions
 
@@ -366,7 +516,34 @@ class EquationTest
     //region functions
     @Test
     void functions_premade()
-    { assertEquation(8.25, "avg(5, 8, 9, 11)"); }
+    {
+        assertEquation(8.25, "avg(5, 8, 9, 11)");
+        assertEquation(3.0, "cbrt(27)");
+        assertEquation(55.0, "fib(10)");
+        assertEquation(-3.0, "trunc(-3.75)");
+        assertEquation(8.5, "median(11, 5, 9, 8)");
+        assertEquation(4.0, "variance(2, 4, 4, 4, 5, 5, 7, 9)");
+        assertEquation(2.0, "stddev(2, 4, 4, 4, 5, 5, 7, 9)");
+    }
+
+    @Test
+    void functions_eitherSideOfOperator()
+    {
+        assertEquation(0.0, "max(1, 2) - max(2, 1)");
+        assertEquation(3.0, "max(1, 2) + (1)");
+        assertEquation(5.0, "((4 * 1) ^ 1 + 1) / (3 - 2)");
+    }
+
+    @Test
+    void functions_firstBracketClosedBeforeTheEnd()
+    {
+        // Each of these starts with a name or bracket and ends with ")", but the first bracket is closed before the
+        // end, so the equation as a whole isn't a function call.
+        assertEquation(5.0, "max(2, 3) + min(2, 3)");
+        assertEquation(6.0, "sqrt(4) * (3)");
+        assertEquation(8.0, "max(2, 1) * (3 + 1)");
+        assertEquation(0.5, "((2)) / (4)");
+    }
 
     @Test
     void functions_custom()
@@ -385,6 +562,205 @@ class EquationTest
 
         assertEquals(5.0, new Equation.Builder().withFunction("get5", a -> 5).build("get5()").evaluate());
     }
+
+    @Test
+    void functions_defined()
+    {
+        Equation.Builder builder = new Equation.Builder().withFunctionDefinition("hyp(a, b) = sqrt(a^2 + b^2)");
+        assertEquals(5.0, builder.build("hyp(3, 4)").evaluate());
+        assertEquals(13.0, builder.withVariable("x", 5).build("hyp(x, 2 * 6)").evaluate());
+        assertEquals(11.0, builder.build("hyp(3, 4) * 2 + 1").evaluate());
+    }
+
+    @Test
+    void functions_defined_inlined()
+    {
+        Equation eq = new Equation.Builder().withFunctionDefinition("sq(x) = x * x").build("sq(3)");
+        assertTrue(eq.topLevelComponent instanceof Equation.Operation);
+        assertEquals(9.0, eq.evaluate());
+    }
+
+    @Test
+    void functions_defined_usingOtherFunctionsAndVariables()
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("k", 10)
+                                                         .withFunctionDefinition("sq(x) = x * x")
+                                                         .withFunctionDefinition("f(x, y) = sq(x) + k * y");
+        Equation eq = builder.build("f(2, 3)");
+        assertEquals(34.0, eq.evaluate());
+        eq.setVariable("k", 1);
+        assertEquals(7.0, eq.evaluate());
+    }
+
+    @Test
+    void functions_defined_noParameters()
+    { assertEquals(3.0, new Equation.Builder().withFunctionDefinition("three() = 1 + 2").build("three()").evaluate()); }
+
+    @Test
+    void functions_defined_parameterShadowsVariable()
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("x", 100)
+                                                         .withFunctionDefinition("double(x) = x * 2");
+        assertEquals(200.0, builder.build("double(x)").evaluate());
+        assertEquals(6.0, builder.build("double(3)").evaluate());
+        assertThrows(Equation.Builder.EquationParseException.class,
+                     () -> new Equation.Builder().withFunctionDefinition("double(y) = y * 2").build("y"));
+    }
+
+    @Test
+    void functions_defined_replacesAndReplaced()
+    {
+        Equation.Builder builder = new Equation.Builder().withFunction("f", x -> 1)
+                                                         .withFunctionDefinition("f(x) = x + 10");
+        assertEquals(15.0, builder.build("f(5)").evaluate());
+        builder.withFunction("f", x -> 1);
+        assertEquals(1.0, builder.build("f(5)").evaluate());
+    }
+
+    @Test
+    void functions_defined_invalid()
+    {
+        Equation.Builder builder = new Equation.Builder();
+        assertThrows(IllegalArgumentException.class, () -> builder.withFunctionDefinition("f(x) x + 1"));
+        assertThrows(IllegalArgumentException.class, () -> builder.withFunctionDefinition("(x) = x + 1"));
+        assertThrows(IllegalArgumentException.class, () -> builder.withFunctionDefinition("f(x = x + 1"));
+        assertThrows(IllegalArgumentException.class, () -> builder.withFunctionDefinition("f(x, x) = x + 1"));
+        assertThrows(IllegalArgumentException.class, () -> builder.withFunctionDefinition("f(x, ) = x + 1"));
+        assertThrows(Equation.Builder.EquationParseException.class,
+                     () -> builder.withFunctionDefinition("f(x) = f(x - 1)"));
+        builder.withFunctionDefinition("g(x, y) = x + y");
+        assertThrows(Equation.MissingFunctionArgumentsException.class, () -> builder.build("g(1)"));
+    }
+    //endregion
+
+    //region iterations
+    @Test
+    void iterations()
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("n", 4).withVariable("w", 2);
+        assertEquals(60.0, builder.build("sum(i, 1, n, i^2 * w)").evaluate());
+        assertEquals(24.0, builder.build("prod(i, 1, n, i)").evaluate());
+        assertEquals(-3.0, builder.build("min over(i, 0, n, (i - 2)^2 * -1 + 1)").evaluate());
+        assertEquals(16.0, builder.build("max   over(i, -3, n, i^2)").evaluate());
+        assertEquals(61.0, builder.build("sum(i, 1, n, i^2 * w) + 1").evaluate());
+    }
+
+    @Test
+    void iterations_sumAndProdFunctions()
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("x", 10);
+        assertEquals(6.0, builder.build("sum(1, 2, 3)").evaluate());
+        assertEquals(3.0, builder.build("sum(1, 2)").evaluate());
+        assertEquals(60.0, builder.build("prod(x, 2, 3)").evaluate());
+        assertEquals(16.0, builder.build("sum(x, 1, 2, 3)").evaluate());
+        assertEquals(60.0, builder.build("prod(x, 1, 2, 3)").evaluate());
+        assertEquals(0.0, builder.build("sum()").evaluate());
+        assertEquals(1.0, builder.build("prod()").evaluate());
+
+        // Four arguments, the first a name that isn't a variable, is an iteration.
+        assertEquals(6.0, builder.build("sum(i, 1, 3, i)").evaluate());
+        assertEquals(60.0, builder.build("prod(i, 3, 5, i)").evaluate());
+    }
+
+    @Test
+    void iterations_afterOperators()
+    {
+        // The index isn't a variable outside of the iteration.
+        Equation.Builder builder = new Equation.Builder().withVariable("n", 4);
+        assertEquals(12.0, builder.build("2 + sum(i, 1, n, i)").evaluate());
+        assertEquals(96.0, builder.build("n * prod(i, 1, n, i)").evaluate());
+        assertEquals(20.0, builder.build("max(1, 2) * sum(i, 1, n, i)").evaluate());
+        assertEquals(7.0, builder.build("-min over(i, 1, n, -i) + (3)").evaluate());
+    }
+
+    @Test
+    void iterations_bounds()
+    {
+        Equation.Builder builder = new Equation.Builder();
+        assertEquals(2.0, builder.build("sum(i, 0.5, 2, i)").evaluate());
+        assertEquals(1.0, builder.build("sum(i, 1, 1, i)").evaluate());
+        assertEquals(0.0, builder.build("sum(i, 1, 0, i)").evaluate());
+        assertEquals(1.0, builder.build("prod(i, 1, 0, i)").evaluate());
+        assertEquals(Double.NaN, builder.build("min over(i, 1, 0, i)").evaluate());
+        assertEquals(Double.NaN, builder.build("sum(i, 0, NaN, i)").evaluate());
+        assertEquals(Double.NaN, builder.build("sum(i, 0, Infinity, i)").evaluate());
+        assertEquals(0.0, builder.build("sum(i, 0, -Infinity, i)").evaluate());
+        assertEquals(Double.NaN, builder.build("sum(i, -1e300, 1e300, i)").evaluate());
+        assertEquals(Double.NaN, builder.build("sum(i, 0, 2^63, i)").evaluate());
+    }
+
+    @Test
+    void iterations_nested()
+    {
+        Equation.Builder builder = new Equation.Builder();
+        assertEquals(25.0, builder.build("sum(i, 1, 3, sum(j, 1, i, i * j))").evaluate());
+
+        // Where "sum" is the standard function, an inner "sum" over an index already in scope calls the function.
+        assertEquals(14.0, builder.build("sum(i, 1, 2, sum(i, 1, 3, i))").evaluate());
+        assertEquals(12.0, new Equation.Builder(false).build("sum(i, 1, 2, sum(i, 1, 3, i))").evaluate());
+    }
+
+    @Test
+    void iterations_indexShadowsVariable()
+    {
+        Equation eq = new Equation.Builder(false).withVariable("i", 100).build("sum(i, 1, 3, i)");
+        assertEquals(6.0, eq.evaluate());
+        eq.setVariable("i", 0);
+        assertEquals(6.0, eq.evaluate());
+
+        // Where "sum" is the standard function, it's called with the variable instead.
+        Equation withFunction = new Equation.Builder().withVariable("i", 100).build("i + sum(i, 1, 3, i)");
+        assertEquals(304.0, withFunction.evaluate());
+    }
+
+    @Test
+    void iterations_seeVariablesAndFunctions()
+    {
+        Equation eq = new Equation.Builder().withVariable("w", 1)
+                                            .withFunction("f", a -> a[0] + 1)
+                                            .build("sum(i, 1, 3, f(i) * w)");
+        assertEquals(9.0, eq.evaluate());
+        eq.setVariable("w", 2);
+        assertEquals(18.0, eq.evaluate());
+    }
+
+    @Test
+    void iterations_inFunctionDefinitions()
+    {
+        Equation.Builder builder = new Equation.Builder().withFunctionDefinition("tri(n) = sum(i, 1, n, i)");
+        assertEquals(10.0, builder.build("tri(4)").evaluate());
+        assertEquals(16.0, builder.build("sum(i, 1, 3, tri(i)) + tri(tri(2))").evaluate());
+    }
+
+    @Test
+    void iterations_functionsOfTheSameNameTakePrecedence()
+    {
+        Equation.Builder builder = new Equation.Builder().withFunction("sum", a -> a[0] + a[1] + a[2] + a[3]);
+        assertEquals(10.0, builder.build("sum(1, 2, 3, 4)").evaluate());
+    }
+
+    @Test
+    void iterations_invalid()
+    {
+        Equation.Builder builder = new Equation.Builder();
+        Equation.Builder withoutFunctions = new Equation.Builder(false);
+        assertThrows(Equation.Builder.MalformedIterationException.class, () -> withoutFunctions.build("sum(i, 1, 3)"));
+        assertThrows(Equation.Builder.MalformedIterationException.class, () -> withoutFunctions.build("sum()"));
+        assertThrows(Equation.Builder.MalformedIterationException.class,
+                     () -> withoutFunctions.build("sum(2, 1, 3, 4)"));
+        assertThrows(Equation.Builder.MalformedIterationException.class,
+                     () -> withoutFunctions.build("sum(i, 1, 3, i, 5)"));
+        assertThrows(Equation.Builder.EquationParseException.class, () -> builder.build("sum(i + 1, 1, 3, i)"));
+        assertThrows(Equation.Builder.EquationParseException.class, () -> builder.build("sum(i, 1, 3, j)"));
+        assertThrows(Equation.Builder.EquationParseException.class, () -> builder.build("sum(i, 1, 3, i) + i"));
+    }
+
+    @Test
+    void iterations_simplified()
+    {
+        Equation eq = new Equation.Builder().withVariable("x", 3).build("sum(i, 1, 3, i * 1 + x * 0)");
+        assertEquals(6.0, eq.simplified().evaluate());
+    }
     //endregion
     
     //region separateFromBuilder
@@ -0,0 +1,333 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * <p>Generated stress tests of equations as they grow. Every kind of equation is checked to be parsed and evaluated
+ * correctly at each size, and, in the {@link Timing} tests, that the time taken to tokenise, parse, and evaluate it
+ * grows no faster than its declared complexity.</p>
+ *
+ * <p>The timing tests measure wall-clock time, which depends on whatever else the machine is doing, so they're tagged
+ * "stress" and only run where the system property {@code scot.massie.lib.maths.stress} is "true", on an otherwise idle
+ * machine.</p>
+ *
+ * <p>Each kind of equation is generated at {@link #SIZES sizes} doubling from the smallest to the largest. Each stage
+ * is timed at each size, and the growth in time from the smallest to the largest size is compared to the growth the
+ * declared complexity allows - e.g. where time is declared to grow linearly, multiplying the size by 8 may multiply
+ * the time by at most 8 &times; {@link #TOLERANCE}. Each time is the fastest of several rounds, to keep noise from
+ * garbage collection and compilation out of the comparison.</p>
+ *
+ * <p>The declared complexities are of the parser as it is, rather than as it should be: long chains of infix
+ * operators are parsed in quadratic time, as each operator found splits off a chain one operator shorter to be
+ * parsed, and so are deeply nested function calls, as each call's arguments are searched for separators, and deeply
+ * nested operations on brackets, as each level searches the brackets it contains for operators. Sizes are kept below
+ * those at which long chains overflow the stack.</p>
+ */
+class Equation_BuilderStressTest
+{
+    //region constants
+    /**
+     * The sizes each kind of equation is generated at.
+     */
+    static final int[] SIZES = { 32, 64, 128, 256 };
+
+    /**
+     * How many times more the time taken may grow than the declared complexity allows, to absorb noise. This is less
+     * than the growth from one complexity to the next over the sizes tested, so that's still caught.
+     */
+    static final double TOLERANCE = 4;
+
+    /**
+     * The number of rounds each stage is timed over. The fastest round is used.
+     */
+    static final int ROUNDS = 7;
+
+    /**
+     * The least time a single round takes, in nanoseconds, running the stage as many times as needed.
+     */
+    static final long MIN_ROUND_NANOS = 2_000_000;
+
+    /**
+     * The value of x in generated equations.
+     */
+    static final double X = 2;
+
+    static final int LINEAR = 1;
+    static final int QUADRATIC = 2;
+    //endregion
+
+    //region generated equations
+    /**
+     * A generated equation, and the result it should evaluate to.
+     */
+    static final class Generated
+    {
+        final String text;
+        final double expected;
+
+        Generated(String text, double expected)
+        {
+            this.text = text;
+            this.expected = expected;
+        }
+    }
+
+    static Generated nestedBrackets(int size)
+    { return new Generated("(".repeat(size) + "x" + ")".repeat(size), X); }
+
+    static Generated nestedImplicitMultiplications(int size)
+    { return new Generated("x * (".repeat(size) + "1" + ")".repeat(size), Math.pow(X, size)); }
+
+    static Generated nestedFunctionCalls(int size)
+    { return new Generated("max(x, ".repeat(size) + "1" + ")".repeat(size), X); }
+
+    static Generated operatorChain(int size)
+    {
+        StringBuilder sb = new StringBuilder("x");
+        double expected = X;
+
+        for(int i = 1; i <= size; i++)
+        {
+            if(i % 2 == 0)
+            {
+                sb.append(" + ").append(i);
+                expected += i;
+            }
+            else
+            {
+                sb.append(" - x");
+                expected -= X;
+            }
+        }
+
+        return new Generated(sb.toString(), expected);
+    }
+
+    static Generated manyArguments(int size)
+    {
+        StringBuilder sb = new StringBuilder("max(x");
+
+        for(int i = 1; i <= size; i++)
+            sb.append(", ").append(i);
+
+        return new Generated(sb.append(")").toString(), size);
+    }
+
+    static Generated mixedOperatorRuns(int size)
+    {
+        // Runs like "* -", "% /", and "* -√" each need working out which operators are prefix, postfix, or infix.
+        StringBuilder sb = new StringBuilder("x");
+        double expected = X;
+
+        for(int i = 0; i < size; i++)
+        {
+            switch(i % 3)
+            {
+                case 0:  sb.append(" * -x%"); expected *= -X / 100;         break;
+                case 1:  sb.append(" / √x");  expected /= Math.sqrt(X);     break;
+                default: sb.append(" * -√x"); expected *= -Math.sqrt(X);    break;
+            }
+        }
+
+        return new Generated(sb.toString(), expected);
+    }
+
+    /**
+     * Generates a random equation with the given number of leaves, with random operators, function calls, and
+     * brackets, built from a random tree. Each size is generated from the same seed.
+     * @param size The number of leaves.
+     * @return A random equation.
+     */
+    static Generated random(int size)
+    { return random(new Random(43), size, true); }
+
+    static Generated random(Random random, int size, boolean topLevel)
+    {
+        if(size == 1)
+        {
+            switch(random.nextInt(4))
+            {
+                case 0:  return new Generated("x", X);
+                case 1:  return new Generated("-x", -X);
+                case 2:  return new Generated("x%", X / 100);
+                default: int n = random.nextInt(9) + 1; return new Generated(Integer.toString(n), n);
+            }
+        }
+
+        int leftSize = 1 + random.nextInt(size - 1);
+        Generated left = random(random, leftSize, false);
+        Generated right = random(random, size - leftSize, false);
+        Generated result;
+
+        switch(random.nextInt(4))
+        {
+            case 0:  result = new Generated(left.text + " + " + right.text, left.expected + right.expected); break;
+            case 1:  result = new Generated(left.text + " * " + right.text, left.expected * right.expected); break;
+            case 2:  result = new Generated("max(" + left.text + ", " + right.text + ")",
+                                            Math.max(left.expected, right.expected));
+                     return result;
+            default: result = new Generated(left.text + " - " + right.text, left.expected - right.expected); break;
+        }
+
+        return topLevel ? result : new Generated("(" + result.text + ")", result.expected);
+    }
+    //endregion
+
+    //region timing
+    /**
+     * Gets the time taken to run the given stage once, as the fastest of several rounds.
+     * @param stage The stage to time.
+     * @return The time taken, in nanoseconds.
+     */
+    static double time(Runnable stage)
+    {
+        double fastest = Double.POSITIVE_INFINITY;
+
+        for(int round = 0; round < ROUNDS; round++)
+        {
+            long start = System.nanoTime();
+            long elapsed;
+            int runs = 0;
+
+            do
+            {
+                stage.run();
+                runs++;
+                elapsed = System.nanoTime() - start;
+            }
+            while(elapsed < MIN_ROUND_NANOS);
+
+            fastest = Math.min(fastest, (double)elapsed / runs);
+        }
+
+        return fastest;
+    }
+
+    /**
+     * Checks that the given kind of equation is parsed and evaluated correctly at each size.
+     * @param generator Generates the equation of a given size.
+     */
+    static void assertEvaluates(IntFunction<Generated> generator)
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("x", X);
+
+        for(int size : SIZES)
+        {
+            Generated generated = generator.apply(size);
+            Equation eq = builder.build(generated.text);
+            assertEquals(generated.expected, eq.evaluate(), Math.abs(generated.expected) * 1e-9, generated.text);
+        }
+    }
+
+    /**
+     * Checks that the time taken by each stage of building and evaluating the given kind of equation grows no faster
+     * than its declared complexity.
+     * @param generator Generates the equation of a given size.
+     * @param parseComplexity The power of the size the time taken to parse grows with.
+     */
+    static void assertScales(IntFunction<Generated> generator, int parseComplexity)
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("x", X);
+        int sizeCount = SIZES.length;
+        double[] tokeniseTimes = new double[sizeCount];
+        double[] parseTimes = new double[sizeCount];
+        double[] evaluateTimes = new double[sizeCount];
+
+        for(int i = 0; i < sizeCount; i++)
+        {
+            String text = generator.apply(SIZES[i]).text;
+            Equation.Builder snapshot = builder.getParsingSnapshot();
+            Equation eq = builder.build(text);
+
+            tokeniseTimes[i] = time(() -> snapshot.tokenise(text));
+            parseTimes[i] = time(() -> builder.build(text));
+            evaluateTimes[i] = time(eq::evaluate);
+        }
+
+        assertGrowth("tokenise", tokeniseTimes, LINEAR);
+        assertGrowth("parse", parseTimes, parseComplexity);
+        assertGrowth("evaluate", evaluateTimes, LINEAR);
+    }
+
+    /**
+     * Checks that the times taken at {@link #SIZES each size} grew no faster than the declared complexity allows.
+     * @param stage The name of the stage timed.
+     * @param times The times taken at each size.
+     * @param complexity The power of the size the time taken is declared to grow with.
+     */
+    static void assertGrowth(String stage, double[] times, int complexity)
+    {
+        double sizeGrowth = (double)SIZES[SIZES.length - 1] / SIZES[0];
+        double allowedGrowth = Math.pow(sizeGrowth, complexity) * TOLERANCE;
+        double growth = times[times.length - 1] / times[0];
+
+        StringBuilder message = new StringBuilder(stage).append(" time grew ")
+                                                        .append(String.format("%.1f", growth))
+                                                        .append("x, more than the ")
+                                                        .append(String.format("%.1f", allowedGrowth))
+                                                        .append("x allowed. Times (ns) by size:");
+
+        for(int i = 0; i < SIZES.length; i++)
+            message.append(' ').append(SIZES[i]).append('=').append(String.format("%.0f", times[i]));
+
+        assertTrue(growth <= allowedGrowth, message.toString());
+    }
+    //endregion
+
+    //region tests
+    @Test
+    void generatedEquationsEvaluate()
+    {
+        assertEvaluates(Equation_BuilderStressTest::nestedBrackets);
+        assertEvaluates(Equation_BuilderStressTest::nestedImplicitMultiplications);
+        assertEvaluates(Equation_BuilderStressTest::nestedFunctionCalls);
+        assertEvaluates(Equation_BuilderStressTest::operatorChain);
+        assertEvaluates(Equation_BuilderStressTest::manyArguments);
+        assertEvaluates(Equation_BuilderStressTest::mixedOperatorRuns);
+        assertEvaluates(Equation_BuilderStressTest::random);
+    }
+
+    @Nested
+    @Tag("stress")
+    @EnabledIfSystemProperty(named = "scot.massie.lib.maths.stress", matches = "true")
+    class Timing
+    {
+        @Test
+        void deepBracketNesting()
+        { assertScales(Equation_BuilderStressTest::nestedBrackets, LINEAR); }
+
+        // Quadratic rather than linear: each level of nesting searches the brackets it contains for operators.
+        @Test
+        void deepImplicitMultiplicationNesting()
+        { assertScales(Equation_BuilderStressTest::nestedImplicitMultiplications, QUADRATIC); }
+
+        @Test
+        void deepFunctionCallNesting()
+        { assertScales(Equation_BuilderStressTest::nestedFunctionCalls, QUADRATIC); }
+
+        @Test
+        void longOperatorChains()
+        { assertScales(Equation_BuilderStressTest::operatorChain, QUADRATIC); }
+
+        @Test
+        void manyArgumentFunctionCalls()
+        { assertScales(Equation_BuilderStressTest::manyArguments, LINEAR); }
+
+        @Test
+        void mixedPrefixPostfixAndInfixRuns()
+        { assertScales(Equation_BuilderStressTest::mixedOperatorRuns, QUADRATIC); }
+
+        @Test
+        void randomEquations()
+        { assertScales(Equation_BuilderStressTest::random, QUADRATIC); }
+    }
+    //endregion
+}
@@ -615,6 +615,25 @@ public class Equation_BuilderTest
     void tryParseFunctionCall_notAFunctionCall()
     { assertNull(new Builder().tryParseFunctionCall(newTokenList("doot"))); }
 
+    @Test
+    void tryParseFunctionCall_functionCallsEitherSideOfOperator()
+    {
+        Builder b = new Builder().withFunction("doot", x -> 3).withVariable("x", 5);
+        assertNull(b.tryParseFunctionCall(newTokenList("doot", Token.OPEN_BRACKET, "x", Token.CLOSE_BRACKET,
+                                                       new Token("+"),
+                                                       "doot", Token.OPEN_BRACKET, "x", Token.CLOSE_BRACKET)));
+    }
+
+    @Test
+    void tryParseFunctionCall_bracketsEitherSideOfOperator()
+    {
+        Builder b = new Builder().withVariable("x", 5);
+        assertNull(b.tryParseFunctionCall(newTokenList(Token.OPEN_BRACKET, Token.OPEN_BRACKET, "x",
+                                                       Token.CLOSE_BRACKET, Token.CLOSE_BRACKET,
+                                                       new Token("/"),
+                                                       Token.OPEN_BRACKET, "x", Token.CLOSE_BRACKET)));
+    }
+
     @Test
     void tryParseFunctionCall_functionCallWithNoArgs()
     {
@@ -185,6 +185,15 @@ public class Equation_TokenListTest
                                  Token.CLOSE_BRACKET)
                     .isInBrackets());
     }
+
+    @Test
+    void isInBrackets_subListInBrackets()
+    {
+        TokenList tl = newTokenList("a", Token.OPEN_BRACKET, "b", Token.CLOSE_BRACKET, "c");
+        assertTrue(tl.subList(1, 4).isInBrackets());
+        assertFalse(tl.subList(1, 5).isInBrackets());
+        assertFalse(tl.subList(2, 4).isInBrackets());
+    }
     //endregion
 
     //region withoutFirst()
@@ -478,6 +487,22 @@ public class Equation_TokenListTest
                      () -> newTokenList("a", "b", "c", "d").subList(3, 2));
     }
 
+    @Test
+    void subList_ofSubList()
+    {
+        assertTokenList(newTokenList("a", "b", "c", "d", "e").subList(1, 5).subList(1, 3),
+                        "   c     d        ",
+                        new Object[]{ "c", "d" },
+                        new int[]{ 3, 5, 8 });
+    }
+
+    @Test
+    void subList_ofSubList_bigger()
+    {
+        assertThrows(IllegalArgumentException.class,
+                     () -> newTokenList("a", "b", "c", "d").subList(1, 3).subList(0, 3));
+    }
+
     //endregion
 
     //region splitBy(Token)
@@ -40,6 +40,12 @@ public class Equation_TokeniserTest
             With token list with just numbers
             With token list of a mix of numbers and non-numbers
             With token list containing tokens that start with numbers, but are not numbers
+        .tryScanNumber
+            With plain integers and decimals
+            With numbers too precise for the fast path
+            With exponents, hexadecimal numbers, and type suffixes
+            With NaN and Infinity
+            With text that isn't a number
         .tokeniseStringWithSingleToken
             With empty string
             With string with just spaces
@@ -207,6 +213,68 @@ public class Equation_TokeniserTest
 
     //endregion
 
+    //region tryScanNumber
+    void assertScansAsParseDoubleWould(String text)
+    {
+        NumberToken scanned = Tokeniser.tryScanNumber(text);
+        assertNotNull(scanned, text);
+        assertEquals(text, scanned.toString());
+        assertEquals(Double.doubleToRawLongBits(Double.parseDouble(text)),
+                     Double.doubleToRawLongBits(scanned.getValue()),
+                     text);
+    }
+
+    @Test
+    void tryScanNumber_plain()
+    {
+        for(String s : Arrays.asList("0", "5", "-7", "+7", "-0", "3.1", "0.1", "0.3", ".5", "5.", "-.25", "007",
+                                     "123456789012345", "0.000000000000000000001", "9007199254740993", "1.25"))
+        {
+            assertScansAsParseDoubleWould(s);
+        }
+    }
+
+    @Test
+    void tryScanNumber_slowPath()
+    {
+        for(String s : Arrays.asList("1234567890123456789", "99999999999999999999999", "0.12345678901234567890123",
+                                     "3.141592653589793238", "2.2250738585072011e-308", "1e400", "1e-400",
+                                     "1.7976931348623157E308", "6.02e23", "1E+5", "1e-5"))
+        {
+            assertScansAsParseDoubleWould(s);
+        }
+    }
+
+    @Test
+    void tryScanNumber_hexAndSuffixes()
+    {
+        for(String s : Arrays.asList("0x1p3", "0X1.8P-1", "0x.8p0", "-0x10p0", "0x1p3d", "1f", "1.5F", "2d", "-3.5D",
+                                     "1e3f"))
+        {
+            assertScansAsParseDoubleWould(s);
+        }
+    }
+
+    @Test
+    void tryScanNumber_nanAndInfinity()
+    {
+        for(String s : Arrays.asList("NaN", "+NaN", "-NaN", "Infinity", "-Infinity", "+Infinity"))
+            assertScansAsParseDoubleWould(s);
+    }
+
+    @Test
+    void tryScanNumber_notNumbers()
+    {
+        for(String s : Arrays.asList("", "doot", "e5", "452g", "g847", "3.5.4", "35 43", ".", "-", "+", "1e", "1e+",
+                                     "0x1", "0x.p1", "0xp1", "1ff", "NaNa", "Inf", "infinity", "1_000", "--1",
+                                     "٣", "0x١p1"))
+        {
+            assertNull(Tokeniser.tryScanNumber(s), s);
+            assertThrows(NumberFormatException.class, () -> Double.parseDouble(s), s);
+        }
+    }
+    //endregion
+
     //region tokeniseStringWithSingleToken
     @Test
     void tokeniseStringWithSingleToken_empty()
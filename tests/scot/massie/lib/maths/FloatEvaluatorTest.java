@@ -0,0 +1,86 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FloatEvaluatorTest
+{
+    final Equation.Builder builder = new Equation.Builder().withComparativeOperators()
+                                                           .withVariable("x", 2.5)
+                                                           .withVariable("y", -4);
+
+    float evaluate(String equation)
+    { return builder.build(equation).toFloatEvaluator().evaluate(); }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "x + y * 3", "x / y - 1", "x ^ 3", "-x%", "2 √ (x * 10)", "√x", "x % 1",
+                             "sin(x) + cos(y) * tan(x)", "log(x) - log10(x)", "sqrt(x) + cbrt(y)", "(-y) ^ 0.5",
+                             "floor(y / 3) + ceil(x) + round(x) - trunc(y / 3)", "max(x, y, 1) - min(x, y)",
+                             "sum(x) * prod(y)",
+                             "sum(i, 1, 10, x / i)", "prod(i, y, 0, i + x)", "max over(i, 1, 5, sin(i * x))",
+                             "x > y ? x : y", "x = 2.5", "x != y && !(y > 0) || x < 0" })
+    void matchesDoubleEvaluation(String equation)
+    {
+        double expected = builder.build(equation).evaluate();
+        assertEquals((float)expected, evaluate(equation), Math.max(1e-5f, Math.ulp((float)expected) * 8));
+    }
+
+    @Test
+    void singlePrecision()
+    {
+        assertEquals(16_777_216f, evaluate("16777216 + 1"));
+        assertEquals(0.1f + 0.2f, evaluate("0.1 + 0.2"));
+        assertEquals(Float.POSITIVE_INFINITY, evaluate("3e38 * 10"));
+        assertTrue(Float.isNaN(evaluate("min over(i, 2, 1, i)")));
+        assertEquals(0f, evaluate("sum(i, 2, 1, i)"));
+    }
+
+    @Test
+    void nestedInlinedIterations()
+    {
+        // Every call of the definition shares its index.
+        Equation.Builder withDefinition = builder.withFunctionDefinition("h(y) = sum(j, 1, 3, y * j / 2)");
+        assertEquals(9f, withDefinition.build("h(1) + h(2)").toFloatEvaluator().evaluate());
+        assertEquals(9f, withDefinition.build("h(h(1))").toFloatEvaluator().evaluate());
+        assertEquals(27f, withDefinition.build("h(h(h(1)))").toFloatEvaluator().evaluate());
+    }
+
+    @Test
+    void conditionalsAreLazy()
+    {
+        FloatBackend failing = new FloatBackend().withFunction("fail", a -> { throw new AssertionError(); });
+        Equation equation = new Equation.Builder().withComparativeOperators()
+                                                  .withFunction("fail", a -> 0)
+                                                  .build("1 > 0 ? 5 : fail(1)");
+        assertEquals(5f, failing.compile(equation).evaluate());
+    }
+
+    @Test
+    void customOperatorsAndFunctions()
+    {
+        FloatBackend backend = new FloatBackend().withFunction("lerp", a -> a[0] + (a[1] - a[0]) * a[2])
+                                                 .withPrefixOperator("-", a -> a * 2)
+                                                 .withPostfixOperator("%", a -> a / 1000);
+        Equation equation = builder.withFunction("lerp", a -> 0).build("lerp(10, 20, 0.25) + -x%");
+        assertEquals(12.5f + 0.005f, backend.compile(equation).evaluate(), 1e-6f);
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> new FloatBackend().compile(new Equation.Builder().withFunction("f", a -> 0).build("f(1)")));
+    }
+
+    @Test
+    void variables()
+    {
+        FloatEvaluator evaluator = builder.build("x * y").toFloatEvaluator();
+        assertTrue(evaluator.setVariable("x", 0.5f));
+        assertFalse(evaluator.setVariable("z", 1));
+        assertEquals(-2f, evaluator.evaluate());
+
+        assertArrayEquals(new float[] { -4, -8, 2 }, evaluator.tabulate("x", new float[] { 1, 2, -0.5f }));
+        assertEquals(-2f, evaluator.evaluate());
+        assertThrows(IllegalArgumentException.class, () -> evaluator.tabulate("z", new float[] { 1 }));
+    }
+}
@@ -0,0 +1,144 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongEvaluatorTest
+{
+    final Equation.Builder builder = new Equation.Builder().withComparativeOperators()
+                                                           .withVariable("n", 7)
+                                                           .withVariable("m", 3);
+
+    long evaluate(String equation)
+    { return builder.build(equation).toLongEvaluator().evaluate(); }
+
+    @Test
+    void arithmetic()
+    {
+        assertEquals(10, evaluate("n + m"));
+        assertEquals(4, evaluate("n - m"));
+        assertEquals(21, evaluate("n * m"));
+        assertEquals(2, evaluate("n / m"));
+        assertEquals(-2, evaluate("-n / m"));
+        assertEquals(1, evaluate("n % m"));
+        assertEquals(343, evaluate("n ^ m"));
+        assertEquals(-7, evaluate("-n"));
+        assertEquals(1, evaluate("1 ^ -3"));
+    }
+
+    @Test
+    void exactBeyondDoublePrecision()
+    {
+        LongEvaluator evaluator = builder.build("n * n + 1").toLongEvaluator();
+        evaluator.setVariable("n", 3_037_000_499L);
+        assertEquals(9_223_372_030_926_249_002L, evaluator.evaluate());
+
+        LongEvaluator increment = builder.build("n + 1").toLongEvaluator();
+        increment.setVariable("n", Long.MAX_VALUE - 1);
+        assertEquals(Long.MAX_VALUE, increment.evaluate());
+        increment.setVariable("n", Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, increment::evaluate);
+
+        LongEvaluator quotient = builder.build("n / m").toLongEvaluator();
+        quotient.setVariable("n", Long.MIN_VALUE);
+        quotient.setVariable("m", -1);
+        assertThrows(ArithmeticException.class, quotient::evaluate);
+        quotient.setVariable("m", 1);
+        assertEquals(Long.MIN_VALUE, quotient.evaluate());
+    }
+
+    @Test
+    void overflowAndDivisionByZeroThrow()
+    {
+        assertThrows(ArithmeticException.class, () -> evaluate("2 ^ 63"));
+        assertThrows(ArithmeticException.class, () -> evaluate("n / 0"));
+        assertThrows(ArithmeticException.class, () -> evaluate("2 ^ -1"));
+        assertThrows(ArithmeticException.class, () -> evaluate("min over(i, 2, 1, i)"));
+    }
+
+    @Test
+    void comparisonsAndConditionals()
+    {
+        assertEquals(1, evaluate("n > m"));
+        assertEquals(0, evaluate("n = m"));
+        assertEquals(1, evaluate("n != m && !(n < m)"));
+        assertEquals(3, evaluate("n < m ? n : m"));
+
+        // Only the operand given is evaluated.
+        assertEquals(7, evaluate("n > m ? n : n / 0"));
+    }
+
+    @Test
+    void functionsAndIterations()
+    {
+        assertEquals(7, evaluate("max(n, m, -10)"));
+        assertEquals(7, evaluate("sum(n)"));
+        assertEquals(10, evaluate("round(n) + floor(m)"));
+        assertEquals(5040, evaluate("prod(i, 1, n, i)"));
+        assertEquals(252, evaluate("sum(i, 1, n, sum(j, 1, i, j * m))"));
+        assertEquals(0, evaluate("sum(i, 1, 0, i)"));
+        assertEquals(-6, evaluate("min over(i, 1, m, -i * 2)"));
+
+        LongEvaluator custom = new LongBackend().withFunction("gcd", a -> gcd(a[0], a[1]))
+                                                .withOperator("+", (l, r) -> l * 10 + r)
+                                                .compile(new Equation.Builder().withFunction("gcd", a -> 0)
+                                                                               .build("gcd(12, 18) + 1"));
+        assertEquals(61, custom.evaluate());
+    }
+
+    @Test
+    void nestedInlinedIterations()
+    {
+        // Every call of the definition shares its index.
+        Equation.Builder withDefinition = builder.withFunctionDefinition("h(y) = sum(j, 1, 3, y * j)");
+        assertEquals(18, withDefinition.build("h(1) + h(2)").toLongEvaluator().evaluate());
+        assertEquals(36, withDefinition.build("h(h(1))").toLongEvaluator().evaluate());
+        assertEquals(216, withDefinition.build("h(h(h(1)))").toLongEvaluator().evaluate());
+    }
+
+    @Test
+    void numbersBeyondDoublePrecisionRejected()
+    {
+        assertThrows(IllegalArgumentException.class, () -> evaluate("9007199254740993 + 0"));
+        assertThrows(IllegalArgumentException.class, () -> evaluate("-9007199254740992 + 0"));
+        assertEquals(9_007_199_254_740_991L, evaluate("9007199254740991 + 0"));
+
+        Equation.Builder withLargeVariable = builder.withVariable("big", 0x1p60);
+        assertThrows(IllegalArgumentException.class, () -> withLargeVariable.build("big").toLongEvaluator());
+
+        // Larger values may still be set on the evaluator directly.
+        LongEvaluator evaluator = builder.build("n + 0").toLongEvaluator();
+        evaluator.setVariable("n", 9_007_199_254_740_993L);
+        assertEquals(9_007_199_254_740_993L, evaluator.evaluate());
+    }
+
+    static long gcd(long a, long b)
+    { return b == 0 ? a : gcd(b, a % b); }
+
+    @Test
+    void unsupported()
+    {
+        assertThrows(IllegalArgumentException.class, () -> evaluate("1.5 + n"));
+        assertThrows(IllegalArgumentException.class, () -> evaluate("n%"));
+        assertThrows(IllegalArgumentException.class, () -> evaluate("sqrt(n)"));
+        assertThrows(IllegalArgumentException.class, () -> new Equation.Builder().build("pi * 2").toLongEvaluator());
+    }
+
+    @Test
+    void variables()
+    {
+        Equation equation = builder.build("n * 2");
+        LongEvaluator evaluator = equation.toLongEvaluator();
+        assertTrue(evaluator.setVariable("n", 21));
+        assertTrue(evaluator.setVariable("m", 5));
+        assertFalse(evaluator.setVariable("q", 5));
+        assertEquals(42, evaluator.evaluate());
+        assertEquals(14.0, equation.evaluate());
+
+        assertArrayEquals(new long[] { 2, 4, 6 }, evaluator.tabulate("n", new long[] { 1, 2, 3 }));
+        assertArrayEquals(new long[] { 42, 42 }, evaluator.tabulate("m", new long[] { 1, 2 }));
+        assertEquals(42, evaluator.evaluate());
+        assertThrows(IllegalArgumentException.class, () -> evaluator.tabulate("q", new long[] { 1 }));
+    }
+}
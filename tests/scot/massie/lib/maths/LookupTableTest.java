@@ -0,0 +1,215 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LookupTableTest
+{
+    static final double[] xs = { 0, 1, 4, 5 };
+    static final double[] ys = { 10, 20, 50, 30 };
+
+    @Test
+    void linear()
+    {
+        LookupTable table = LookupTable.of(xs, ys);
+
+        assertEquals(10, table.get(0));
+        assertEquals(15, table.get(0.5));
+        assertEquals(20, table.get(1));
+        assertEquals(30, table.get(2));
+        assertEquals(40, table.get(4.5));
+        assertEquals(30, table.get(5));
+    }
+
+    @Test
+    void outsideTable()
+    {
+        LookupTable table = LookupTable.of(xs, ys);
+
+        assertEquals(10, table.get(-1));
+        assertEquals(10, table.get(Double.NEGATIVE_INFINITY));
+        assertEquals(30, table.get(6));
+        assertEquals(30, table.get(Double.POSITIVE_INFINITY));
+        assertTrue(Double.isNaN(table.get(Double.NaN)));
+    }
+
+    @Test
+    void nearest()
+    {
+        LookupTable table = LookupTable.of(xs, ys).withInterpolation(LookupTable.NEAREST);
+
+        assertEquals(10, table.get(0.4));
+        assertEquals(20, table.get(0.5));
+        assertEquals(20, table.get(2.4));
+        assertEquals(50, table.get(2.6));
+    }
+
+    @Test
+    void cubic_passesThroughPoints()
+    {
+        LookupTable table = LookupTable.of(xs, ys).withInterpolation(LookupTable.CUBIC);
+
+        for(int i = 0; i < xs.length; i++)
+            assertEquals(ys[i], table.get(xs[i]));
+    }
+
+    @Test
+    void cubic_reproducesStraightLines()
+    {
+        double[] lineYs = { 1, 3, 9, 11 };
+        LookupTable table = LookupTable.of(xs, lineYs).withInterpolation(LookupTable.CUBIC);
+
+        for(double x = 0; x <= 5; x += 0.125)
+            assertEquals(1 + 2 * x, table.get(x), 1e-12);
+    }
+
+    @Test
+    void cubic_isSmootherThanLinear()
+    {
+        double[] squares = new double[11];
+
+        for(int i = 0; i < squares.length; i++)
+            squares[i] = i * i;
+
+        LookupTable linear = LookupTable.uniform(0, 1, squares);
+        LookupTable cubic = linear.withInterpolation(LookupTable.CUBIC);
+
+        assertEquals(5.5 * 5.5, cubic.get(5.5), 0.01);
+        assertEquals(30.5, linear.get(5.5));
+    }
+
+    @Test
+    void uniform_matchesSearched()
+    {
+        double[] gridXs = new double[1000];
+        double[] gridYs = new double[1000];
+
+        for(int i = 0; i < gridXs.length; i++)
+        {
+            gridXs[i] = -2 + i * 0.5;
+            gridYs[i] = Math.sin(i * 0.1);
+        }
+
+        for(int interpolation : new int[] { LookupTable.NEAREST, LookupTable.LINEAR, LookupTable.CUBIC })
+        {
+            LookupTable searched = LookupTable.of(gridXs, gridYs).withInterpolation(interpolation);
+            LookupTable uniform = LookupTable.uniform(-2, 0.5, gridYs).withInterpolation(interpolation);
+
+            assertFalse(searched.isUniform());
+            assertTrue(uniform.isUniform());
+
+            for(double x = -3; x < 500; x += 0.37)
+                assertEquals(searched.get(x), uniform.get(x), 1e-12);
+        }
+    }
+
+    @Test
+    void singlePoint()
+    {
+        LookupTable table = LookupTable.of(new double[] { 3 }, new double[] { 7 })
+                                       .withInterpolation(LookupTable.CUBIC);
+
+        assertEquals(7, table.get(-100));
+        assertEquals(7, table.get(3));
+        assertEquals(7, table.get(100));
+    }
+
+    @Test
+    void invalidTables()
+    {
+        assertThrows(IllegalArgumentException.class, () -> LookupTable.of(new double[0], new double[0]));
+        assertThrows(IllegalArgumentException.class, () -> LookupTable.of(new double[] { 1, 2 }, new double[] { 1 }));
+        assertThrows(IllegalArgumentException.class, () -> LookupTable.of(new double[] { 1, 1 }, new double[2]));
+        assertThrows(IllegalArgumentException.class, () -> LookupTable.of(new double[] { 2, 1 }, new double[2]));
+        assertThrows(IllegalArgumentException.class,
+                     () -> LookupTable.of(new double[] { 1, Double.NaN }, new double[2]));
+        assertThrows(IllegalArgumentException.class, () -> LookupTable.uniform(0, 0, new double[2]));
+        assertThrows(IllegalArgumentException.class, () -> LookupTable.uniform(0, 1, new double[0]));
+        assertThrows(IllegalArgumentException.class, () -> LookupTable.of(xs, ys).withInterpolation(7));
+    }
+
+    @Test
+    void arraysAreCopied()
+    {
+        double[] myYs = ys.clone();
+        LookupTable table = LookupTable.of(xs, myYs);
+        myYs[0] = 1000;
+        assertEquals(10, table.get(0));
+    }
+
+    @Test
+    void readCsv() throws IOException
+    {
+        String csv = "x,y\n"
+                   + "# comment\n"
+                   + "0, 10\n"
+                   + "\n"
+                   + "1, 20, ignored\n"
+                   + "4,50\n";
+
+        LookupTable table = LookupTable.readCsv(new StringReader(csv));
+
+        assertEquals(3, table.size());
+        assertEquals(4, table.getX(2));
+        assertEquals(50, table.getY(2));
+        assertEquals(30, table.get(2));
+    }
+
+    @Test
+    void readCsv_invalid()
+    {
+        assertThrows(IllegalArgumentException.class,
+                     () -> LookupTable.readCsv(new StringReader("x,y\n0,1\nnope,2\n")));
+
+        assertThrows(IllegalArgumentException.class, () -> LookupTable.readCsv(new StringReader("1,1\n0,1\n")));
+    }
+
+    @Test
+    void writeAndMap(@TempDir Path dir) throws IOException
+    {
+        Path file = dir.resolve("curve.table");
+
+        for(LookupTable table : new LookupTable[] { LookupTable.of(xs, ys), LookupTable.uniform(1, 0.25, ys) })
+        {
+            table.writeTo(file);
+            LookupTable mapped = LookupTable.map(file).withInterpolation(LookupTable.CUBIC);
+            LookupTable original = table.withInterpolation(LookupTable.CUBIC);
+
+            assertEquals(table.isUniform(), mapped.isUniform());
+            assertEquals(table.size(), mapped.size());
+
+            for(double x = -1; x < 7; x += 0.1)
+                assertEquals(original.get(x), mapped.get(x));
+        }
+    }
+
+    @Test
+    void map_invalidFile(@TempDir Path dir) throws IOException
+    {
+        Path file = dir.resolve("not.table");
+        Files.write(file, new byte[40]);
+        assertThrows(IllegalArgumentException.class, () -> LookupTable.map(file));
+    }
+
+    @Test
+    void inEquations()
+    {
+        LookupTable table = LookupTable.of(xs, ys);
+        Equation.Builder builder = new Equation.Builder().withLookupTable("curve", table).withVariable("x", 0);
+
+        assertEquals(60, builder.build("curve(2) * 2").evaluate());
+
+        Equation eq = builder.build("curve(x) + curve(x + 1)");
+        eq.setVariable("x", 0.5);
+        assertEquals(15 + 25, eq.evaluate());
+
+        assertThrows(Equation.MissingFunctionArgumentsException.class, () -> builder.build("curve()").evaluate());
+    }
+}
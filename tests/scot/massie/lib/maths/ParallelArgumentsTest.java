@@ -0,0 +1,159 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelArgumentsTest
+{
+    final ForkJoinPool pool = new ForkJoinPool(4);
+
+    /**
+     * The threads each call to "slow" was made on.
+     */
+    final Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+
+    @AfterEach
+    void tearDown()
+    { pool.shutdownNow(); }
+
+    /**
+     * Builds an equation where "slow" waits for the given barrier before returning its argument, so that calls to it
+     * only complete where enough of them are made at once.
+     * @param equation The equation to build.
+     * @param barrier The barrier calls to "slow" wait for, or null where they don't wait.
+     * @return The equation.
+     */
+    Equation build(String equation, CyclicBarrier barrier)
+    {
+        return new Equation.Builder().withVariable("a", 1)
+                                     .withVariable("b", 2)
+                                     .withVariable("c", 3)
+                                     .withFunction("slow", args ->
+                                     {
+                                         threads.add(Thread.currentThread());
+
+                                         if(barrier != null)
+                                         {
+                                             try
+                                             { barrier.await(10, TimeUnit.SECONDS); }
+                                             catch(InterruptedException | BrokenBarrierException | TimeoutException e)
+                                             { throw new IllegalStateException(e); }
+                                         }
+
+                                         return args[0];
+                                     })
+                                     .withFunction("fail", args -> { throw new ArithmeticException("" + args[0]); })
+                                     .build(equation);
+    }
+
+    EquationCostModel costModel()
+    { return new EquationCostModel().withFunctionWeight("slow", 1000).withFunctionWeight("fail", 1000); }
+
+    @Test
+    void costlyArgumentsEvaluatedConcurrently()
+    {
+        Equation eq = build("max(slow(a), slow(b) + 1, slow(c) * 2)", new CyclicBarrier(3));
+        eq.setParallelArguments(costModel(), 100, pool);
+        assertEquals(6.0, eq.evaluate());
+        assertEquals(3, threads.size());
+        assertTrue(threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    void nestedCalls()
+    {
+        Equation eq = build("max(min(slow(a), slow(b)), min(slow(c), slow(a + b)))", new CyclicBarrier(4));
+        eq.setParallelArguments(costModel(), 100, pool);
+        assertEquals(3.0, eq.evaluate());
+    }
+
+    @Test
+    void cheapArgumentsEvaluatedInOrder()
+    {
+        Equation eq = build("max(slow(a), slow(b), slow(c))", null);
+        eq.setParallelArguments(costModel(), 10000, pool);
+        assertEquals(3.0, eq.evaluate());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+
+        // One costly argument alone isn't worth forking.
+        threads.clear();
+        eq = build("max(slow(a), b, c)", null);
+        eq.setParallelArguments(costModel(), 100, pool);
+        assertEquals(3.0, eq.evaluate());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    @Test
+    void iterationsEvaluatedInOrder()
+    {
+        Equation eq = build("max(sum(i, 1, 3, slow(i)), sum(i, 1, 2, slow(i)))", null);
+        eq.setParallelArguments(costModel(), 100, pool);
+        assertEquals(6.0, eq.evaluate());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+
+        // Arguments within iterations may still be forked.
+        eq = build("sum(i, 1, 3, max(slow(i), slow(i + 1)))", new CyclicBarrier(2));
+        eq.setParallelArguments(costModel(), 100, pool);
+        assertEquals(9.0, eq.evaluate());
+    }
+
+    @Test
+    void indicesNotReadWhileSiblingsIterate()
+    {
+        // Each call of the inlined definition shares its index, which the inner call pushes again while the outer call
+        // evaluates its third argument, so the outer call's arguments referring to it aren't forked.
+        Set<Thread> outerThreads = Collections.synchronizedSet(new HashSet<>());
+
+        Equation eq = new Equation.Builder().withFunction("slow", args ->
+                                            {
+                                                if(args[0] < 10)
+                                                    outerThreads.add(Thread.currentThread());
+
+                                                return args[0];
+                                            })
+                                            .withFunctionDefinition("g(y, n) = sum(j, n, n + 2, "
+                                                                    + "max(slow(j), slow(j) * 2, y))")
+                                            .build("g(g(1, 10), 1)");
+
+        eq.setParallelArguments(costModel(), 100, pool);
+
+        for(int i = 0; i < 100; i++)
+            assertEquals(198.0, eq.evaluate());
+
+        assertEquals(Collections.singleton(Thread.currentThread()), outerThreads);
+    }
+
+    @Test
+    void firstExceptionRethrown()
+    {
+        Equation eq = build("max(fail(1), fail(2), fail(3))", null);
+        eq.setParallelArguments(costModel(), 100, pool);
+
+        for(int i = 0; i < 20; i++)
+            assertEquals("1.0", assertThrows(ArithmeticException.class, eq::evaluate).getMessage());
+    }
+
+    @Test
+    void clearAndCopies()
+    {
+        Equation eq = build("max(slow(a), slow(b), slow(c))", null);
+        eq.setParallelArguments(costModel(), 100, pool);
+        assertEquals(3.0, new Equation(eq).evaluate());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+
+        eq.clearParallelArguments();
+        assertEquals(3.0, eq.evaluate());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+}
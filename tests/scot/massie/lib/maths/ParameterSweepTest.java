@@ -0,0 +1,192 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParameterSweepTest
+{
+    @TempDir
+    Path tempDir;
+
+    Equation newEquation()
+    {
+        return new Equation.Builder().withVariable("x", 0)
+                                     .withVariable("y", 0)
+                                     .withVariable("z", 0)
+                                     .build("x * 100 + y * 10 + z");
+    }
+
+    ParameterSweep newSweep(int pointsPerBlock)
+    {
+        return new ParameterSweep(newEquation(),
+                                  Arrays.asList(new ParameterSweep.Range("x", 0, 4, 5),
+                                                new ParameterSweep.Range("y", 0, 1, 3),
+                                                new ParameterSweep.Range("z", 1, 7, 7)),
+                                  pointsPerBlock);
+    }
+
+    double expectedAt(ParameterSweep sweep, long point)
+    {
+        return sweep.getVariableValueAt(point, 0) * 100
+               + sweep.getVariableValueAt(point, 1) * 10
+               + sweep.getVariableValueAt(point, 2);
+    }
+
+    void assertResults(ParameterSweep sweep, ByteBuffer data)
+    {
+        for(long i = 0; i < sweep.getPointCount(); i++)
+            assertEquals(expectedAt(sweep, i), data.getDouble((int)(i * 8)), "At point " + i);
+    }
+
+    ByteBuffer readData(ParameterSweep sweep, Path file) throws IOException
+    {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position((int)sweep.getFileDataOffset());
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    void range_values()
+    {
+        ParameterSweep.Range range = new ParameterSweep.Range("x", 1, 2, 5);
+        assertEquals(1.0, range.valueAt(0));
+        assertEquals(1.25, range.valueAt(1));
+        assertEquals(2.0, range.valueAt(4));
+        assertEquals(3.0, new ParameterSweep.Range("x", 3, 9, 1).valueAt(0));
+        assertThrows(IllegalArgumentException.class, () -> new ParameterSweep.Range("x", 0, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ParameterSweep.Range("x", 0, Double.NaN, 2));
+    }
+
+    @Test
+    void variableValuesAt()
+    {
+        ParameterSweep sweep = newSweep(4);
+        assertEquals(105, sweep.getPointCount());
+        // Point 30 is x step 1, y step 1, z step 2.
+        assertEquals(1.0, sweep.getVariableValueAt(30, 0));
+        assertEquals(0.5, sweep.getVariableValueAt(30, 1));
+        assertEquals(3.0, sweep.getVariableValueAt(30, 2));
+    }
+
+    @Test
+    void writeToBuffer()
+    {
+        ParameterSweep sweep = newSweep(4);
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int)sweep.getDataSize());
+        sweep.writeTo(buffer);
+        assertEquals(0, buffer.position());
+        assertResults(sweep, buffer);
+    }
+
+    @Test
+    void writeToBuffer_fromPoint()
+    {
+        ParameterSweep sweep = newSweep(4);
+        ByteBuffer buffer = ByteBuffer.allocate((int)sweep.getDataSize());
+        sweep.writeTo(buffer, 50);
+
+        for(int i = 0; i < 50; i++)
+            assertEquals(0.0, buffer.getDouble(i * 8));
+
+        for(int i = 50; i < sweep.getPointCount(); i++)
+            assertEquals(expectedAt(sweep, i), buffer.getDouble(i * 8));
+    }
+
+    @Test
+    void writeToBuffer_tooSmall()
+    {
+        ParameterSweep sweep = newSweep(4);
+        assertThrows(IllegalArgumentException.class,
+                     () -> sweep.writeTo(ByteBuffer.allocate((int)sweep.getDataSize() - 1)));
+    }
+
+    @Test
+    void writeToFile() throws IOException
+    {
+        ParameterSweep sweep = newSweep(8);
+        Path file = tempDir.resolve("sweep");
+        assertEquals(105, sweep.writeTo(file));
+        assertEquals(sweep.getFileDataOffset() + sweep.getDataSize(), Files.size(file));
+
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(ParameterSweep.FILE_MAGIC, header.getLong(0));
+        assertEquals(3, header.getInt(12));
+        assertEquals(105, header.getLong(16));
+        assertResults(sweep, readData(sweep, file));
+
+        // Already complete, so nothing left to write.
+        assertEquals(0, sweep.writeTo(file));
+    }
+
+    @Test
+    void writeToFile_resume() throws IOException
+    {
+        ParameterSweep sweep = newSweep(8);
+        Path file = tempDir.resolve("sweep");
+        sweep.writeTo(file);
+
+        // Simulate blocks 2 and 13 (the last, partial block) not having been written.
+        int flagsOffset = ParameterSweep.FILE_FIXED_HEADER_SIZE + ParameterSweep.FILE_RANGE_HEADER_SIZE * 3;
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.wrap(new byte[] {0}), flagsOffset + 2);
+            channel.write(ByteBuffer.wrap(new byte[] {0}), flagsOffset + 13);
+            channel.write(ByteBuffer.allocate(8 * 8), sweep.getFileDataOffset() + 2 * 8 * 8);
+            channel.write(ByteBuffer.allocate(8), sweep.getFileDataOffset() + 104 * 8);
+        }
+
+        assertEquals(8 + 1, sweep.writeTo(file));
+        assertResults(sweep, readData(sweep, file));
+    }
+
+    @Test
+    void writeToFile_differentSweep() throws IOException
+    {
+        Path file = tempDir.resolve("sweep");
+        newSweep(8).writeTo(file);
+        ParameterSweep other = new ParameterSweep(newEquation(),
+                                                  Arrays.asList(new ParameterSweep.Range("x", 0, 4, 5),
+                                                                new ParameterSweep.Range("y", 0, 2, 3),
+                                                                new ParameterSweep.Range("z", 1, 7, 7)),
+                                                  8);
+
+        assertThrows(IllegalArgumentException.class, () -> other.writeTo(file));
+    }
+
+    @Test
+    void sweepFromEquation()
+    {
+        Equation eq = newEquation();
+        eq.setVariable("z", 5);
+        ParameterSweep sweep = eq.sweep(new ParameterSweep.Range("x", 0, 9, 10));
+        eq.setVariable("z", 6);
+        ByteBuffer buffer = ByteBuffer.allocate((int)sweep.getDataSize());
+        sweep.writeTo(buffer);
+
+        for(int i = 0; i < 10; i++)
+            assertEquals(i * 100 + 5, buffer.getDouble(i * 8));
+    }
+
+    @Test
+    void invalidRanges()
+    {
+        Equation eq = newEquation();
+        assertThrows(IllegalArgumentException.class, () -> eq.sweep());
+        assertThrows(IllegalArgumentException.class, () -> eq.sweep(new ParameterSweep.Range("doot", 0, 1, 2)));
+        assertThrows(IllegalArgumentException.class, () -> eq.sweep(new ParameterSweep.Range("x", 0, 1, 2),
+                                                                     new ParameterSweep.Range("x", 0, 1, 2)));
+    }
+}
@@ -0,0 +1,131 @@
+package scot.massie.lib.maths;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VariableScopeTest
+{
+    Equation newEquation(String equation)
+    {
+        return new Equation.Builder().withVariable("a", 1)
+                                     .withVariable("b", 2)
+                                     .withVariable("c", 3)
+                                     .build(equation);
+    }
+
+    @Test
+    void scopeValues()
+    {
+        VariableScope root = new VariableScope().withVariable("a", 10).withVariable("b", 20);
+        VariableScope child = root.newChild().withVariable("a", 100);
+
+        assertEquals(100, child.getVariable("a"));
+        assertEquals(20, child.getVariable("b"));
+        assertEquals(10, root.getVariable("a"));
+        assertTrue(child.definesVariable("a"));
+        assertFalse(child.definesVariable("b"));
+        assertTrue(child.hasVariable("b"));
+        assertFalse(child.hasVariable("c"));
+        assertThrows(IllegalArgumentException.class, () -> child.getVariable("c"));
+        assertSame(root, child.getParent());
+        assertEquals(1, child.getDepth());
+    }
+
+    @Test
+    void setVariable_setsInnermostDefiningScope()
+    {
+        VariableScope root = new VariableScope().withVariable("a", 10).withVariable("b", 20);
+        VariableScope child = root.newChild().withVariable("a", 100);
+
+        assertTrue(child.setVariable("b", 21));
+        assertTrue(child.setVariable("a", 101));
+        assertFalse(child.setVariable("c", 1));
+        assertEquals(21, root.getVariable("b"));
+        assertEquals(10, root.getVariable("a"));
+        assertEquals(101, child.getVariable("a"));
+        assertFalse(child.definesVariable("c"));
+    }
+
+    @Test
+    void bind_innermostScopeShadows()
+    {
+        VariableScope root = new VariableScope().withVariable("a", 10).withVariable("b", 20);
+        VariableScope child = root.newChild().withVariable("a", 100);
+        VariableScope grandchild = child.newChild();
+
+        Equation eq = newEquation("a + b + c");
+        assertEquals(123, eq.bind(grandchild).evaluate());
+        assertEquals(33, eq.bind(root).evaluate());
+        assertEquals(6, eq.evaluate());
+    }
+
+    @Test
+    void bind_seesLaterChangesToValues()
+    {
+        VariableScope root = new VariableScope().withVariable("a", 10);
+        VariableScope child = root.newChild();
+        Equation eq = newEquation("a * b").bind(child);
+
+        assertEquals(20, eq.evaluate());
+        root.setVariable("a", 5);
+        assertEquals(10, eq.evaluate());
+        root.withVariable("a", 7);
+        assertEquals(14, eq.evaluate());
+    }
+
+    @Test
+    void bind_doesNotSeeLaterDefinitions()
+    {
+        VariableScope root = new VariableScope().withVariable("a", 10);
+        VariableScope child = root.newChild();
+        Equation eq = newEquation("a + b").bind(child);
+
+        child.withVariable("a", 100).withVariable("b", 200);
+        assertEquals(12, eq.evaluate());
+        assertEquals(300, newEquation("a + b").bind(child).evaluate());
+    }
+
+    @Test
+    void bind_settingVariableSetsScope()
+    {
+        VariableScope scope = new VariableScope().withVariable("a", 10);
+        Equation first = newEquation("a + b").bind(scope);
+        Equation second = newEquation("a * c").bind(scope);
+
+        first.setVariable("a", 4);
+        assertEquals(4, scope.getVariable("a"));
+        assertEquals(12, second.evaluate());
+
+        second.variableHandle("a").set(5);
+        assertEquals(7, first.evaluate());
+    }
+
+    @Test
+    void bind_unscopedVariablesNotShared()
+    {
+        VariableScope scope = new VariableScope().withVariable("a", 10);
+        Equation eq = newEquation("a + b");
+        Equation bound = eq.bind(scope);
+
+        bound.setVariable("b", 50);
+        assertEquals(60, bound.evaluate());
+        assertEquals(3, eq.evaluate());
+        assertFalse(scope.hasVariable("b"));
+    }
+
+    @Test
+    void bind_scopedVariablesIgnorePushesAndReverts()
+    {
+        Equation.Builder builder = new Equation.Builder().withVariable("a", 1).withVariable("b", 2);
+        VariableScope scope = new VariableScope().withVariable("a", 10);
+        Equation eq = builder.build("a + b").bind(scope);
+
+        builder.pushVariable("a", 1000).pushVariable("b", 2000);
+        assertEquals(2010, eq.evaluate());
+
+        eq.revertVariable("a");
+        assertEquals(2010, eq.evaluate());
+        assertEquals(10, scope.getVariable("a"));
+    }
+}